@@ -0,0 +1,190 @@
+package dmg.cells.network;
+
+import com.google.common.io.CountingOutputStream;
+import dmg.cells.nucleus.CellMessage;
+import dmg.cells.nucleus.SerializationHandler;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.dcache.util.NDC;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes messages to the peer of a tunnel on a dedicated thread.
+ * <p>
+ * Messages are serialized on the thread delivering them to the tunnel and are then placed on a
+ * bounded queue. The writer thread drains all queued messages, writes them to the buffered socket
+ * stream and flushes once per batch, such that many small messages share a single system call.
+ * When the queue is full, delivery of further messages blocks until the writer catches up.
+ * <p>
+ * If writing fails, the failure callback is invoked and every message that was not written is
+ * returned to its sender as a {@link dmg.cells.nucleus.NoRouteToCellException}.
+ */
+class BatchingObjectSink implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingObjectSink.class);
+
+    private final SerializationHandler.Serializer serializer;
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final BlockingQueue<CellMessage> queue;
+    private final int maxBatchSize;
+    private final String peer;
+    private final Consumer<CellMessage> replies;
+    private final Runnable onFailure;
+    private final ThroughputMeter throughput = new ThroughputMeter();
+    private final LongAdder batches = new LongAdder();
+    private volatile boolean isClosed;
+    private Thread writer;
+
+    /**
+     * @param out          the stream to write to
+     * @param serializer   the serializer used to encode the messages
+     * @param capacity     maximum number of queued messages
+     * @param maxBatchSize maximum number of messages written before the stream is flushed
+     * @param peer         description of the peer used as logging context
+     * @param replies      receives the replies to messages that could not be written
+     * @param onFailure    invoked if writing to the stream fails
+     */
+    BatchingObjectSink(OutputStream out, SerializationHandler.Serializer serializer,
+          int capacity, int maxBatchSize, String peer, Consumer<CellMessage> replies,
+          Runnable onFailure) {
+        this.counter = new CountingOutputStream(out);
+        this.out = new DataOutputStream(counter);
+        this.serializer = serializer;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.peer = peer;
+        this.replies = replies;
+        this.onFailure = onFailure;
+    }
+
+    void start(ThreadFactory factory) {
+        writer = factory.newThread(this);
+        writer.start();
+    }
+
+    void writeObject(CellMessage message) throws IOException, InterruptedException {
+        // Older versions do not support the new serialization format
+        // Due to lack of message versioning support, always use JOS with different dCache versions
+        message.ensureEncodedWith(serializer);
+
+        while (!queue.offer(message, 1, TimeUnit.SECONDS)) {
+            if (isClosed) {
+                throw new IOException("Tunnel is closed.");
+            }
+        }
+        if (isClosed && queue.remove(message)) {
+            throw new IOException("Tunnel is closed.");
+        }
+    }
+
+    @Override
+    public void run() {
+        NDC.push(peer);
+        List<CellMessage> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!isClosed || !queue.isEmpty()) {
+                CellMessage first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                long before = counter.getCount();
+                for (CellMessage message : batch) {
+                    message.writeTo(out);
+                }
+                out.flush();
+                throughput.add(counter.getCount() - before);
+                batches.increment();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (!isClosed) {
+                LOGGER.warn("Error while sending message: {}", e.getMessage());
+            }
+            onFailure.run();
+        } finally {
+            isClosed = true;
+            queue.drainTo(batch);
+            for (CellMessage message : batch) {
+                replies.accept(LocationMgrTunnel.noRouteReply(message));
+            }
+            NDC.pop();
+        }
+    }
+
+    /**
+     * Stops accepting messages and waits for queued messages to be written.
+     */
+    void close() throws InterruptedException {
+        isClosed = true;
+        if (writer != null && writer != Thread.currentThread()) {
+            writer.join(2_000);
+        }
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    long getBatches() {
+        return batches.sum();
+    }
+
+    long getBytesWritten() {
+        return throughput.getTotal();
+    }
+
+    double getBytesPerSecond() {
+        return throughput.getRate();
+    }
+
+    /**
+     * Measures the rate at which bytes are written, averaged over a window of ten seconds.
+     */
+    private static class ThroughputMeter {
+
+        private static final long WINDOW = TimeUnit.SECONDS.toNanos(10);
+
+        private long total;
+        private long windowStart = System.nanoTime();
+        private long windowStartTotal;
+        private double rate;
+
+        synchronized void add(long bytes) {
+            total += bytes;
+            roll(System.nanoTime());
+        }
+
+        synchronized long getTotal() {
+            return total;
+        }
+
+        synchronized double getRate() {
+            roll(System.nanoTime());
+            return rate;
+        }
+
+        private void roll(long now) {
+            long elapsed = now - windowStart;
+            if (elapsed >= WINDOW) {
+                rate = (total - windowStartTotal) * 1e9 / elapsed;
+                windowStart = now;
+                windowStartTotal = total;
+            }
+        }
+    }
+}
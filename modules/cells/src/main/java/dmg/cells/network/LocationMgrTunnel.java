@@ -35,7 +35,6 @@ import dmg.util.StreamEngine;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -67,6 +66,23 @@ public class LocationMgrTunnel
     private static final Logger _log =
           LoggerFactory.getLogger(LocationMgrTunnel.class);
 
+    /**
+     * Size of the socket output buffer. Messages written in the same batch are flushed to the
+     * socket together.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Default maximum number of messages waiting to be written to the peer. Delivery of further
+     * messages to the tunnel blocks until the writer catches up.
+     */
+    private static final int DEFAULT_OUTBOUND_QUEUE_SIZE = 4096;
+
+    /**
+     * Maximum number of messages written before the output is flushed.
+     */
+    private static final int MAX_BATCH_SIZE = 256;
+
     private final CellNucleus _nucleus;
 
     private final CellDomainInfo _localDomainInfo;
@@ -80,7 +96,8 @@ public class LocationMgrTunnel
     private final InputStream _rawIn;
 
     private ObjectSource _input;
-    private ObjectSink _output;
+    private BatchingObjectSink _output;
+    private final int _outboundQueueSize;
 
     private SerializationHandler.Serializer _serializer;
 
@@ -94,7 +111,7 @@ public class LocationMgrTunnel
         super(cellName, "System", args);
         _nucleus = getNucleus();
         _socket = engine.getSocket();
-        _rawOut = new BufferedOutputStream(engine.getOutputStream());
+        _rawOut = new BufferedOutputStream(engine.getOutputStream(), OUTPUT_BUFFER_SIZE);
         _rawIn = new BufferedInputStream(engine.getInputStream());
         CellDomainRole role = args.hasOption("role") ? CellDomainRole.valueOf(
               args.getOption("role").toUpperCase()) : CellDomainRole.SATELLITE;
@@ -102,6 +119,9 @@ public class LocationMgrTunnel
               Version.of(LocationMgrTunnel.class).getVersion(),
               role,
               _nucleus.getZone());
+        _outboundQueueSize = args.hasOption("outboundQueueSize")
+              ? Integer.parseInt(args.getOption("outboundQueueSize"))
+              : DEFAULT_OUTBOUND_QUEUE_SIZE;
     }
 
     @Override
@@ -114,6 +134,7 @@ public class LocationMgrTunnel
     @Override
     protected void started() {
         installRoutes();
+        _output.start(r -> _nucleus.newThread(r, "Tunnel-writer"));
         _thread = _nucleus.newThread(this, "Tunnel");
         _thread.start();
     }
@@ -123,6 +144,9 @@ public class LocationMgrTunnel
         _log.info("Closing tunnel to {}", getRemoteDomainName());
         _tunnels.remove(this);
         try {
+            if (_output != null) {
+                _output.close();
+            }
             _socket.shutdownOutput();
             if (_thread != null) {
                 _thread.join(2_000);
@@ -183,7 +207,10 @@ public class LocationMgrTunnel
                 /* Since dCache 3.0 we use raw encoding of CellMessage. */
                 _input = new RawObjectSource(_rawIn);
 
-                _output = new RawObjectSink(_rawOut, serializer);
+                _output = new BatchingObjectSink(_rawOut, serializer, _outboundQueueSize,
+                      MAX_BATCH_SIZE, _remoteDomainInfo.toString(),
+                      msg -> _nucleus.sendMessage(noRouteReply(msg), true, true, true),
+                      this::kill);
             }
 
             _allowForwardingOfRemoteMessages = (_remoteDomainInfo.getRole() != CellDomainRole.CORE);
@@ -230,25 +257,45 @@ public class LocationMgrTunnel
                 try {
                     kill();
                     _log.warn("Error while sending message: {}", e.getMessage());
-                    NoRouteToCellException noRoute =
-                          new NoRouteToCellException(msg,
-                                "Communication failure. Message could not be delivered.");
-                    CellMessage envelope = new CellMessage(msg.getSourcePath().revert(), noRoute);
-                    envelope.setLastUOID(msg.getUOID());
-                    _nucleus.sendMessage(envelope, true, true, true);
+                    returnToSender(msg);
                 } finally {
                     NDC.pop();
                 }
+            } catch (InterruptedException e) {
+                returnToSender(msg);
+                Thread.currentThread().interrupt();
             }
         } else {
             super.messageArrived(me);
         }
     }
 
+    private void returnToSender(CellMessage msg) {
+        _nucleus.sendMessage(noRouteReply(msg), true, true, true);
+    }
+
+    /**
+     * Returns a reply informing the sender of a message that it could not be delivered.
+     */
+    static CellMessage noRouteReply(CellMessage msg) {
+        NoRouteToCellException noRoute =
+              new NoRouteToCellException(msg,
+                    "Communication failure. Message could not be delivered.");
+        CellMessage envelope = new CellMessage(msg.getSourcePath().revert(), noRoute);
+        envelope.setLastUOID(msg.getUOID());
+        return envelope;
+    }
+
     @Override
     public CellTunnelInfo getCellTunnelInfo() {
+        BatchingObjectSink output = _output;
+        if (output == null) {
+            return new CellTunnelInfo(getNucleus().getThisAddress(), _localDomainInfo,
+                  _remoteDomainInfo);
+        }
         return new CellTunnelInfo(getNucleus().getThisAddress(), _localDomainInfo,
-              _remoteDomainInfo);
+              _remoteDomainInfo, output.getQueueDepth(), output.getBytesWritten(),
+              output.getBytesPerSecond());
     }
 
     private String getRemoteDomainName() {
@@ -283,6 +330,14 @@ public class LocationMgrTunnel
         pw.println("Messages delivered to");
         pw.println("   Peer       : " + _messagesToTunnel);
         pw.println("   Local      : " + _messagesToSystem);
+        BatchingObjectSink output = _output;
+        if (output != null) {
+            pw.println("Outbound queue");
+            pw.println("   Depth      : " + output.getQueueDepth() + " of " + _outboundQueueSize);
+            pw.println("   Batches    : " + output.getBatches());
+            pw.println("   Bytes      : " + output.getBytesWritten());
+            pw.println("   Bytes/s    : " + String.format("%.0f", output.getBytesPerSecond()));
+        }
         pw.println("Local domain");
         pw.println("   Name       : " + _localDomainInfo.getCellDomainName());
         pw.println("   Version    : " + _localDomainInfo.getVersion());
@@ -352,32 +407,6 @@ public class LocationMgrTunnel
         }
     }
 
-    private interface ObjectSink {
-
-        void writeObject(CellMessage message) throws IOException;
-    }
-
-    private static class RawObjectSink implements ObjectSink {
-
-        private final SerializationHandler.Serializer serializer;
-        private final DataOutputStream out;
-
-        private RawObjectSink(OutputStream out, SerializationHandler.Serializer serializer) {
-            this.out = new DataOutputStream(out);
-            this.serializer = serializer;
-        }
-
-        @Override
-        public void writeObject(CellMessage message) throws IOException {
-            // Older versions do not support the new serialization format
-            // Due to lack of message versioning support, always use JOS with different dCache versions
-            message.ensureEncodedWith(serializer);
-
-            message.writeTo(out);
-            out.flush();
-        }
-    }
-
     private interface ObjectSource {
 
         CellMessage readObject() throws IOException, ClassNotFoundException;
@@ -1,85 +1,91 @@
 package dmg.cells.nucleus;
 
-import static java.util.stream.Collectors.toList;
+import static com.google.common.base.Predicates.not;
+import static java.util.stream.Collectors.toUnmodifiableList;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.LinkedHashMultimap;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.SetMultimap;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 import com.google.common.math.IntMath;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import org.dcache.util.ColumnWriter;
 
+/**
+ * Routing table of a domain.
+ * <p>
+ * Routes are looked up for every message not delivered to a local cell, while routes are only
+ * added and removed when cells and tunnels come and go. The routes are therefore kept in
+ * immutable collections that are replaced on every update. Updates are serialized by
+ * synchronizing on the routing table, while lookups do not lock at all.
+ */
 public class CellRoutingTable implements Serializable {
 
     private static final long serialVersionUID = -1456280129622980563L;
 
-    private final ListMultimap<String, CellRoute> _queue = ArrayListMultimap.create();
-    private final SetMultimap<String, CellRoute> _domain = LinkedHashMultimap.create();
-    private final SetMultimap<String, CellRoute> _exact = LinkedHashMultimap.create();
-    private final Map<String, CopyOnWriteArraySet<CellRoute>> _topic = new HashMap<>();
+    private volatile ImmutableListMultimap<String, CellRoute> _queue =
+          ImmutableListMultimap.of();
+    private volatile ImmutableSetMultimap<String, CellRoute> _domain = ImmutableSetMultimap.of();
+    private volatile ImmutableSetMultimap<String, CellRoute> _exact = ImmutableSetMultimap.of();
+    private volatile ImmutableSetMultimap<String, CellRoute> _topic = ImmutableSetMultimap.of();
     private final AtomicReference<CellRoute> _dumpster = new AtomicReference<>();
-    private final List<CellRoute> _default = new ArrayList<>();
+    private volatile List<CellRoute> _default = List.of();
 
-    public void add(CellRoute route)
+    public synchronized void add(CellRoute route)
           throws IllegalArgumentException {
         String dest;
         switch (route.getRouteType()) {
             case CellRoute.EXACT:
             case CellRoute.ALIAS:
                 dest = route.getCellName() + '@' + route.getDomainName();
-                synchronized (_exact) {
-                    if (!_exact.put(dest, route)) {
-                        throw new IllegalArgumentException("Duplicated route entry for : " + dest);
-                    }
+                if (_exact.containsEntry(dest, route)) {
+                    throw new IllegalArgumentException("Duplicated route entry for : " + dest);
                 }
+                _exact = ImmutableSetMultimap.<String, CellRoute>builder()
+                      .putAll(_exact).put(dest, route).build();
                 break;
             case CellRoute.QUEUE:
                 dest = route.getCellName();
-                synchronized (_queue) {
-                    if (_queue.containsEntry(dest, route)) {
-                        throw new IllegalArgumentException("Duplicated route entry for : " + dest);
-                    }
-                    _queue.put(dest, route);
+                if (_queue.containsEntry(dest, route)) {
+                    throw new IllegalArgumentException("Duplicated route entry for : " + dest);
                 }
+                _queue = ImmutableListMultimap.<String, CellRoute>builder()
+                      .putAll(_queue).put(dest, route).build();
                 break;
             case CellRoute.TOPIC:
                 dest = route.getCellName();
-                synchronized (_topic) {
-                    if (!_topic.computeIfAbsent(dest, key -> new CopyOnWriteArraySet())
-                          .add(route)) {
-                        throw new IllegalArgumentException("Duplicated route entry for : " + dest);
-                    }
+                if (_topic.containsEntry(dest, route)) {
+                    throw new IllegalArgumentException("Duplicated route entry for : " + dest);
                 }
+                _topic = ImmutableSetMultimap.<String, CellRoute>builder()
+                      .putAll(_topic).put(dest, route).build();
                 break;
             case CellRoute.DOMAIN:
                 dest = route.getDomainName();
-                synchronized (_domain) {
-                    if (!_domain.put(dest, route)) {
-                        throw new IllegalArgumentException("Duplicated route entry for : " + dest);
-                    }
+                if (_domain.containsEntry(dest, route)) {
+                    throw new IllegalArgumentException("Duplicated route entry for : " + dest);
                 }
+                _domain = ImmutableSetMultimap.<String, CellRoute>builder()
+                      .putAll(_domain).put(dest, route).build();
                 break;
             case CellRoute.DEFAULT:
-                synchronized (_default) {
-                    if (!_default.contains(route)) {
-                        _default.add(route);
-                    }
+                if (!_default.contains(route)) {
+                    List<CellRoute> routes = new ArrayList<>(_default);
+                    routes.add(route);
+                    _default = List.copyOf(routes);
                 }
                 break;
             case CellRoute.DUMPSTER:
@@ -90,53 +96,45 @@ public class CellRoutingTable implements Serializable {
         }
     }
 
-    public void delete(CellRoute route)
+    public synchronized void delete(CellRoute route)
           throws IllegalArgumentException {
         String dest;
         switch (route.getRouteType()) {
             case CellRoute.EXACT:
             case CellRoute.ALIAS:
                 dest = route.getCellName() + '@' + route.getDomainName();
-                synchronized (_exact) {
-                    if (!_exact.remove(dest, route)) {
-                        throw new IllegalArgumentException("Route entry not found for : " + dest);
-                    }
+                if (!_exact.containsEntry(dest, route)) {
+                    throw new IllegalArgumentException("Route entry not found for : " + dest);
                 }
+                _exact = ImmutableSetMultimap.copyOf(without(_exact, dest, route));
                 break;
             case CellRoute.QUEUE:
                 dest = route.getCellName();
-                synchronized (_queue) {
-                    if (!_queue.remove(dest, route)) {
-                        throw new IllegalArgumentException("Route entry not found for : " + dest);
-                    }
+                if (!_queue.containsEntry(dest, route)) {
+                    throw new IllegalArgumentException("Route entry not found for : " + dest);
                 }
+                _queue = ImmutableListMultimap.copyOf(without(_queue, dest, route));
                 break;
             case CellRoute.TOPIC:
                 dest = route.getCellName();
-                synchronized (_topic) {
-                    Set<CellRoute> routes = _topic.get(dest);
-                    if (!routes.remove(route)) {
-                        throw new IllegalArgumentException("Route entry not found for : " + dest);
-                    }
-                    if (routes.isEmpty()) {
-                        _topic.remove(dest);
-                    }
+                if (!_topic.containsEntry(dest, route)) {
+                    throw new IllegalArgumentException("Route entry not found for : " + dest);
                 }
+                _topic = ImmutableSetMultimap.copyOf(without(_topic, dest, route));
                 break;
             case CellRoute.DOMAIN:
                 dest = route.getDomainName();
-                synchronized (_domain) {
-                    if (!_domain.remove(dest, route)) {
-                        throw new IllegalArgumentException("Route entry not found for : " + dest);
-                    }
+                if (!_domain.containsEntry(dest, route)) {
+                    throw new IllegalArgumentException("Route entry not found for : " + dest);
                 }
+                _domain = ImmutableSetMultimap.copyOf(without(_domain, dest, route));
                 break;
             case CellRoute.DEFAULT:
-                synchronized (_default) {
-                    if (!_default.remove(route)) {
-                        throw new IllegalArgumentException("Route entry not found for default");
-                    }
+                if (!_default.contains(route)) {
+                    throw new IllegalArgumentException("Route entry not found for default");
                 }
+                _default = _default.stream().filter(r -> !r.equals(route))
+                      .collect(toUnmodifiableList());
                 break;
             case CellRoute.DUMPSTER:
                 CellRoute currentDumpster = _dumpster.get();
@@ -148,61 +146,38 @@ public class CellRoutingTable implements Serializable {
         }
     }
 
-    public Collection<CellRoute> delete(CellAddressCore target) {
+    public synchronized Collection<CellRoute> delete(CellAddressCore target) {
         Collection<CellRoute> deleted = new ArrayList<>();
+        Predicate<CellRoute> isTarget = route -> route.getTarget().equals(target);
+
+        deleted.addAll(Multimaps.filterValues(_exact, isTarget).values());
+        _exact = ImmutableSetMultimap.copyOf(Multimaps.filterValues(_exact, not(isTarget)));
+
+        deleted.addAll(Multimaps.filterValues(_queue, isTarget).values());
+        _queue = ImmutableListMultimap.copyOf(Multimaps.filterValues(_queue, not(isTarget)));
+
+        deleted.addAll(Multimaps.filterValues(_domain, isTarget).values());
+        _domain = ImmutableSetMultimap.copyOf(Multimaps.filterValues(_domain, not(isTarget)));
+
+        deleted.addAll(Multimaps.filterValues(_topic, isTarget).values());
+        _topic = ImmutableSetMultimap.copyOf(Multimaps.filterValues(_topic, not(isTarget)));
+
+        deleted.addAll(Collections2.filter(_default, isTarget));
+        _default = List.copyOf(Collections2.filter(_default, not(isTarget)));
 
-        synchronized (_exact) {
-            delete(_exact.values(), target, deleted);
-        }
-        synchronized (_queue) {
-            delete(_queue.values(), target, deleted);
-        }
-        synchronized (_domain) {
-            delete(_domain.values(), target, deleted);
-        }
-        synchronized (_topic) {
-            /* We cannot use the regular delete method because a CopyOnWriteArraySet iterator
-             * doesn't allow manipulating operations. We trade expensive deletion for not having
-             * to copy the set of topic routes in findTopicRoutes.
-             */
-            Iterator<CopyOnWriteArraySet<CellRoute>> iterator = _topic.values().iterator();
-            while (iterator.hasNext()) {
-                Set<CellRoute> routes = iterator.next();
-                List<CellRoute> toRemove =
-                      routes.stream().filter(route -> route.getTarget().equals(target))
-                            .collect(toList());
-                routes.removeAll(toRemove);
-                if (routes.isEmpty()) {
-                    iterator.remove();
-                }
-                deleted.addAll(toRemove);
-            }
-        }
-        synchronized (_default) {
-            delete(_default, target, deleted);
-        }
         return deleted;
     }
 
-    private void delete(Collection<CellRoute> values, CellAddressCore addr,
-          Collection<CellRoute> deleted) {
-        Iterator<CellRoute> iterator = values.iterator();
-        while (iterator.hasNext()) {
-            CellRoute route = iterator.next();
-            if (route.getTarget().equals(addr)) {
-                iterator.remove();
-                deleted.add(route);
-            }
-        }
+    private static Multimap<String, CellRoute> without(Multimap<String, CellRoute> routes,
+          String dest, CellRoute route) {
+        return Multimaps.filterEntries(routes,
+              e -> !e.getKey().equals(dest) || !e.getValue().equals(route));
     }
 
     public CellRoute find(CellAddressCore addr, Optional<String> zone, boolean allowRemote) {
         String cellName = addr.getCellName();
         String domainName = addr.getCellDomainName();
-        Optional<CellRoute> route;
-        synchronized (_exact) {
-            route = _exact.get(cellName + '@' + domainName).stream().findFirst();
-        }
+        Optional<CellRoute> route = _exact.get(cellName + '@' + domainName).stream().findFirst();
         if (route.isPresent()) {
             return route.get();
         }
@@ -211,57 +186,51 @@ public class CellRoutingTable implements Serializable {
             // this is not really local but wellknown
             // we checked for local before we called this.
             //
-            synchronized (_queue) {
-                List<CellRoute> routes = _queue.get(cellName);
-                Random random = ThreadLocalRandom.current();
-                if (!allowRemote) {
-                    CellRoute[] localRoutes =
-                          routes.stream().filter(r -> !r.getTarget().isDomainAddress())
-                                .toArray(CellRoute[]::new);
-                    return (localRoutes.length > 0) ? localRoutes[random.nextInt(
-                          localRoutes.length)] : null;
-                } else if (!routes.isEmpty()) {
+            List<CellRoute> routes = _queue.get(cellName);
+            Random random = ThreadLocalRandom.current();
+            if (!allowRemote) {
+                CellRoute[] localRoutes =
+                      routes.stream().filter(r -> !r.getTarget().isDomainAddress())
+                            .toArray(CellRoute[]::new);
+                return (localRoutes.length > 0) ? localRoutes[random.nextInt(
+                      localRoutes.length)] : null;
+            } else if (!routes.isEmpty()) {
 
-                    if (zone.isPresent()) {
-                        CellRoute[] localRoutes = routes
-                              .stream()
-                              .filter(r -> r.getZone().equals(zone))
-                              .toArray(CellRoute[]::new);
+                if (zone.isPresent()) {
+                    CellRoute[] localRoutes = routes
+                          .stream()
+                          .filter(r -> r.getZone().equals(zone))
+                          .toArray(CellRoute[]::new);
 
-                        if (localRoutes.length > 0) {
-                            return localRoutes[random.nextInt(localRoutes.length)];
-                        }
+                    if (localRoutes.length > 0) {
+                        return localRoutes[random.nextInt(localRoutes.length)];
                     }
-                    return routes.get(random.nextInt(routes.size()));
                 }
+                return routes.get(random.nextInt(routes.size()));
             }
         } else {
-            synchronized (_domain) {
-                route = _domain.get(domainName).stream().findFirst();
-            }
+            route = _domain.get(domainName).stream().findFirst();
             if (route.isPresent()) {
                 return route.get();
             }
         }
-        synchronized (_default) {
-
-            if (_default.isEmpty()) {
-                return null;
-            }
+        List<CellRoute> defaultRoutes = _default;
+        if (defaultRoutes.isEmpty()) {
+            return null;
+        }
 
-            if (zone.isPresent()) {
-                Optional<CellRoute> defaultZonedRoute = _default
-                      .stream()
-                      .filter(r -> r.getZone().equals(zone))
-                      .findAny();
+        if (zone.isPresent()) {
+            Optional<CellRoute> defaultZonedRoute = defaultRoutes
+                  .stream()
+                  .filter(r -> r.getZone().equals(zone))
+                  .findAny();
 
-                if (defaultZonedRoute.isPresent()) {
-                    return defaultZonedRoute.get();
-                }
+            if (defaultZonedRoute.isPresent()) {
+                return defaultZonedRoute.get();
             }
-
-            return _default.get(IntMath.mod(addr.hashCode(), _default.size()));
         }
+
+        return defaultRoutes.get(IntMath.mod(addr.hashCode(), defaultRoutes.size()));
     }
 
     public Set<CellRoute> findTopicRoutes(CellAddressCore addr) {
@@ -270,11 +239,7 @@ public class CellRoutingTable implements Serializable {
         if (!domainName.equals("local")) {
             return Collections.emptySet();
         }
-        CopyOnWriteArraySet<CellRoute> routes;
-        synchronized (_topic) {
-            routes = _topic.get(cellName);
-        }
-        return (routes != null) ? routes : Collections.emptySet();
+        return _topic.get(cellName);
     }
 
     public String toString() {
@@ -291,21 +256,11 @@ public class CellRoutingTable implements Serializable {
                     .value("gateway", route.getTarget())
                     .value("type", route.getRouteTypeName());
 
-        synchronized (_topic) {
-            _topic.values().forEach(routes -> routes.forEach(append));
-        }
-        synchronized (_exact) {
-            _exact.values().forEach(append);
-        }
-        synchronized (_queue) {
-            _queue.values().forEach(append);
-        }
-        synchronized (_domain) {
-            _domain.values().forEach(append);
-        }
-        synchronized (_default) {
-            _default.forEach(append);
-        }
+        _topic.values().forEach(append);
+        _exact.values().forEach(append);
+        _queue.values().forEach(append);
+        _domain.values().forEach(append);
+        _default.forEach(append);
         CellRoute dumpsterRoute = _dumpster.get();
         if (dumpsterRoute != null) {
             append.accept(dumpsterRoute);
@@ -315,21 +270,11 @@ public class CellRoutingTable implements Serializable {
 
     public CellRoute[] getRoutingList() {
         List<CellRoute> routes = new ArrayList<>();
-        synchronized (_topic) {
-            _topic.values().forEach(routes::addAll);
-        }
-        synchronized (_exact) {
-            routes.addAll(_exact.values());
-        }
-        synchronized (_queue) {
-            routes.addAll(_queue.values());
-        }
-        synchronized (_domain) {
-            routes.addAll(_domain.values());
-        }
-        synchronized (_default) {
-            routes.addAll(_default);
-        }
+        routes.addAll(_topic.values());
+        routes.addAll(_exact.values());
+        routes.addAll(_queue.values());
+        routes.addAll(_domain.values());
+        routes.addAll(_default);
         CellRoute dumpsterRoute = _dumpster.get();
         if (dumpsterRoute != null) {
             routes.add(dumpsterRoute);
@@ -338,8 +283,6 @@ public class CellRoutingTable implements Serializable {
     }
 
     public boolean hasDefaultRoute() {
-        synchronized (_default) {
-            return !_default.isEmpty();
-        }
+        return !_default.isEmpty();
     }
 }
@@ -30,11 +30,22 @@ public class CellTunnelInfo implements Serializable {
     private final CellDomainInfo _remote;
     private final CellDomainInfo _local;
     private final CellAddressCore _tunnel;
+    private final int _queueDepth;
+    private final long _bytesSent;
+    private final double _bytesPerSecond;
 
     public CellTunnelInfo(CellAddressCore tunnel, CellDomainInfo local, CellDomainInfo remote) {
+        this(tunnel, local, remote, 0, 0, 0);
+    }
+
+    public CellTunnelInfo(CellAddressCore tunnel, CellDomainInfo local, CellDomainInfo remote,
+          int queueDepth, long bytesSent, double bytesPerSecond) {
         _remote = remote;
         _local = local;
         _tunnel = tunnel;
+        _queueDepth = queueDepth;
+        _bytesSent = bytesSent;
+        _bytesPerSecond = bytesPerSecond;
     }
 
     public CellDomainInfo getRemoteCellDomainInfo() {
@@ -49,6 +60,27 @@ public class CellTunnelInfo implements Serializable {
         return _tunnel;
     }
 
+    /**
+     * Returns the number of messages waiting to be sent to the remote domain.
+     */
+    public int getQueueDepth() {
+        return _queueDepth;
+    }
+
+    /**
+     * Returns the number of bytes sent to the remote domain.
+     */
+    public long getBytesSent() {
+        return _bytesSent;
+    }
+
+    /**
+     * Returns the recent rate at which bytes are sent to the remote domain.
+     */
+    public double getBytesPerSecond() {
+        return _bytesPerSecond;
+    }
+
     public String toString() {
         return _tunnel + " L[" + (_local != null ? _local.toString() : "Unknown") +
               "];R[" + (_remote != null ? _remote.toString() : "Unknown") + ']';
@@ -0,0 +1,69 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dmg.cells.nucleus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A codec encoding messages of a particular type with an explicit schema.
+ * <p>
+ * Codecs are used by the compact serializer, {@link MsgSerializerSchema}, and are discovered
+ * through {@link java.util.ServiceLoader}. Messages for which no codec is registered are
+ * serialized with Java object serialization.
+ * <p>
+ * Each codec has an identifier that is unique among all codecs, and a version that must be
+ * incremented whenever the encoding changes. A codec must be able to decode all versions it
+ * claims to support.
+ *
+ * @param <T> the type of message supported by this codec
+ */
+public interface MessageCodec<T> {
+
+    /**
+     * Returns the class of messages encoded by this codec. Only instances of exactly this class
+     * are encoded by this codec; subclasses are not.
+     */
+    Class<T> getType();
+
+    /**
+     * Returns the unique identifier of this codec.
+     */
+    short getId();
+
+    /**
+     * Returns the version of the encoding produced by {@link #encode}.
+     */
+    short getVersion();
+
+    /**
+     * Returns whether the given message can be encoded by this codec. Messages that cannot be
+     * encoded fall back to Java object serialization.
+     */
+    default boolean canEncode(T message) {
+        return true;
+    }
+
+    void encode(T message, DataOutput out) throws IOException;
+
+    /**
+     * Decodes a message encoded with the given version of this codec.
+     */
+    T decode(DataInput in, short version) throws IOException;
+}
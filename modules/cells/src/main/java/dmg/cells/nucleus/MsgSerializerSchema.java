@@ -0,0 +1,170 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dmg.cells.nucleus;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Compact serializer using registered {@link MessageCodec}s.
+ * <p>
+ * Messages for which a codec is registered are encoded by the codec behind a header identifying
+ * the codec and the version of its encoding. All other messages are encoded with Java object
+ * serialization, which {@link SerializationHandler#decode} recognizes without a header. Messages
+ * containing strings too long for modified UTF-8 encoding also fall back to Java object
+ * serialization.
+ */
+public final class MsgSerializerSchema {
+
+    private static final int INITIAL_BUFFER_SIZE = 128;
+
+    private static final byte[] SCHEMA_MESSAGE_HEADER = new byte[]{
+          0x05, 0x4d,   // 054D -> [o]bject [s]tream [for] [d]Cache
+          0x01, 0x01    // schema codec, version 1
+    };
+
+    private static final Map<Class<?>, MessageCodec<?>> CODECS_BY_TYPE = new HashMap<>();
+    private static final Map<Short, MessageCodec<?>> CODECS_BY_ID = new HashMap<>();
+
+    static {
+        for (MessageCodec<?> codec : ServiceLoader.load(MessageCodec.class,
+              MsgSerializerSchema.class.getClassLoader())) {
+            MessageCodec<?> existing = CODECS_BY_ID.putIfAbsent(codec.getId(), codec);
+            checkState(existing == null, "Codecs %s and %s share identifier %s",
+                  existing, codec, codec.getId());
+            CODECS_BY_TYPE.put(codec.getType(), codec);
+        }
+    }
+
+    private MsgSerializerSchema() {
+    }
+
+    /**
+     * Returns whether a codec is registered for the given class.
+     */
+    public static boolean hasCodec(Class<?> type) {
+        return CODECS_BY_TYPE.containsKey(type);
+    }
+
+    public static byte[] encode(Object message) {
+        checkState(message != null, "Unencoded message payload is null.");
+        MessageCodec<Object> codec = codecFor(message);
+        if (codec == null) {
+            return MsgSerializerJos.encode(message);
+        }
+
+        ByteArrayOutputStream array = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        array.write(SCHEMA_MESSAGE_HEADER, 0, SCHEMA_MESSAGE_HEADER.length);
+        try (DataOutputStream out = new DataOutputStream(array)) {
+            out.writeShort(codec.getId());
+            out.writeShort(codec.getVersion());
+            codec.encode(message, out);
+        } catch (UTFDataFormatException e) {
+            /* DataOutput#writeUTF is limited to 64 KiB; such messages are rare enough to not
+             * warrant a separate encoding.
+             */
+            return MsgSerializerJos.encode(message);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to serialize object: " + e, e);
+        }
+        return array.toByteArray();
+    }
+
+    public static Object decode(byte[] messageStream) {
+        checkState(messageStream != null, "Encoded message payload is null.");
+        checkState(isSchemaEncoded(messageStream));
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(messageStream,
+              SCHEMA_MESSAGE_HEADER.length,
+              messageStream.length - SCHEMA_MESSAGE_HEADER.length))) {
+            short id = in.readShort();
+            short version = in.readShort();
+            MessageCodec<?> codec = CODECS_BY_ID.get(id);
+            if (codec == null) {
+                throw new SerializationException(
+                      "Failed to deserialize object: No codec with identifier " + id
+                            + ". Is there a software version mismatch in your installation?");
+            }
+            return codec.decode(in, version);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to deserialize object: " + e, e);
+        }
+    }
+
+    public static boolean isSchemaEncoded(byte[] messageStream) {
+        return messageStream.length >= SCHEMA_MESSAGE_HEADER.length &&
+              messageStream[0] == SCHEMA_MESSAGE_HEADER[0] &&
+              messageStream[1] == SCHEMA_MESSAGE_HEADER[1] &&
+              messageStream[2] == SCHEMA_MESSAGE_HEADER[2] &&
+              messageStream[3] == SCHEMA_MESSAGE_HEADER[3];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MessageCodec<Object> codecFor(Object message) {
+        MessageCodec<Object> codec = (MessageCodec<Object>) CODECS_BY_TYPE.get(message.getClass());
+        return codec != null && codec.canEncode(message) ? codec : null;
+    }
+
+    /*
+     * Helper methods for codecs.
+     */
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Writes an object with Java object serialization. Intended for rarely used or complex
+     * fields of otherwise schema encoded messages.
+     */
+    public static void writeSerializable(DataOutput out, Object value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            byte[] bytes = MsgSerializerJos.encode(value);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T readSerializable(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return (T) MsgSerializerJos.decode(bytes);
+    }
+}
@@ -26,14 +26,14 @@ import org.slf4j.LoggerFactory;
  * The class contains methods for serializing and deserializing objects to/from a byte array
  * representation. It selects the deserialization method based on a header that is appended to
  * serialized byte arrays based on the used serializer. Currently the class can differentiate
- * between JOS and FST.
+ * between JOS, FST and schema encoded messages.
  */
 public final class SerializationHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SerializationHandler.class);
 
     public enum Serializer {
-        UNDEFINED("undefined"), JOS("standard"), FST("experimental");
+        UNDEFINED("undefined"), JOS("standard"), FST("experimental"), SCHEMA("compact");
 
         private final String displayName;
 
@@ -59,6 +59,8 @@ public final class SerializationHandler {
                 return Serializer.FST;
             case "standard":
                 return Serializer.JOS;
+            case "compact":
+                return Serializer.SCHEMA;
             default:
                 LOGGER.warn("Unknown serializer specified in configuration. Defaulting to {}.",
                       Serializer.JOS);
@@ -68,7 +70,15 @@ public final class SerializationHandler {
     }
 
     public static boolean isEncodedWith(byte[] msgStream, Serializer serializer) {
-        return serializer == Serializer.FST && MsgSerializerFst.isFstEncoded(msgStream);
+        switch (serializer) {
+            case FST:
+                return MsgSerializerFst.isFstEncoded(msgStream);
+            case SCHEMA:
+                /* The compact serializer falls back to JOS for messages without a codec. */
+                return !MsgSerializerFst.isFstEncoded(msgStream);
+            default:
+                return false;
+        }
     }
 
     public static byte[] encode(Object message, Serializer serializer) {
@@ -77,6 +87,8 @@ public final class SerializationHandler {
                 return MsgSerializerJos.encode(message);
             case FST:
                 return MsgSerializerFst.encode(message);
+            case SCHEMA:
+                return MsgSerializerSchema.encode(message);
             case UNDEFINED:
             default:
                 throw new UnsupportedOperationException(
@@ -88,6 +100,9 @@ public final class SerializationHandler {
         if (MsgSerializerFst.isFstEncoded(messageStream)) {
             return MsgSerializerFst.decode(messageStream);
         }
+        if (MsgSerializerSchema.isSchemaEncoded(messageStream)) {
+            return MsgSerializerSchema.decode(messageStream);
+        }
         return MsgSerializerJos.decode(messageStream);
     }
 
@@ -0,0 +1,186 @@
+package dmg.cells.network;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.CellMessage;
+import dmg.cells.nucleus.CellPath;
+import dmg.cells.nucleus.NoRouteToCellException;
+import dmg.cells.nucleus.SerializationHandler;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class BatchingObjectSinkTest {
+
+    private final List<CellMessage> replies = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldWriteMessagesInOrderAndInBatches() throws Exception {
+        FlushCountingOutputStream out = new FlushCountingOutputStream();
+        BatchingObjectSink sink = newSink(out, 100, 4);
+        List<CellMessage> messages = messages(10);
+        for (CellMessage message : messages) {
+            sink.writeObject(message);
+        }
+
+        sink.start(Thread::new);
+        sink.close();
+
+        assertThat(payloads(read(out)), is(payloads(messages)));
+        assertThat(sink.getBatches(), is(3L));
+        assertThat(out.flushes, is(3));
+        assertThat(sink.getBytesWritten(), is((long) out.size()));
+        assertThat(replies.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldBlockWhenQueueIsFull() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchingObjectSink sink = newSink(out, 2, 4);
+        List<CellMessage> messages = messages(3);
+        sink.writeObject(messages.get(0));
+        sink.writeObject(messages.get(1));
+
+        Future<?> third = executor.submit(() -> {
+            sink.writeObject(messages.get(2));
+            return null;
+        });
+        try {
+            third.get(200, TimeUnit.MILLISECONDS);
+            fail("Write to a full queue did not block");
+        } catch (TimeoutException expected) {
+        }
+        assertThat(sink.getQueueDepth(), is(2));
+
+        sink.start(Thread::new);
+        third.get(10, TimeUnit.SECONDS);
+        sink.close();
+
+        assertThat(payloads(read(out)), is(payloads(messages)));
+    }
+
+    @Test
+    public void shouldDrainQueueOnClose() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchingObjectSink sink = newSink(out, 1000, 16);
+        List<CellMessage> messages = messages(500);
+        for (CellMessage message : messages) {
+            sink.writeObject(message);
+        }
+
+        sink.start(Thread::new);
+        sink.close();
+
+        assertThat(payloads(read(out)), is(payloads(messages)));
+        assertThat(sink.getQueueDepth(), is(0));
+    }
+
+    @Test
+    public void shouldRejectMessagesAfterClose() throws Exception {
+        BatchingObjectSink sink = newSink(new ByteArrayOutputStream(), 10, 4);
+        sink.start(Thread::new);
+        sink.close();
+
+        try {
+            sink.writeObject(messages(1).get(0));
+            fail("Closed sink accepted a message");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void shouldReturnQueuedMessagesAfterWriteFailure() throws Exception {
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        BatchingObjectSink sink = newSink(out, 100, 2);
+        List<CellMessage> messages = messages(5);
+        for (CellMessage message : messages) {
+            sink.writeObject(message);
+        }
+
+        sink.start(Thread::new);
+        sink.close();
+
+        assertThat(failures.get(), is(1));
+        assertThat(replies.size(), is(5));
+        List<Object> lastUoids = new ArrayList<>();
+        for (CellMessage reply : replies) {
+            assertThat(reply.getMessageObject(), is(instanceOf(NoRouteToCellException.class)));
+            assertThat(reply.getDestinationPath(), is(new CellPath("sender", "source")));
+            lastUoids.add(reply.getLastUOID());
+        }
+        List<Object> uoids = new ArrayList<>();
+        messages.forEach(m -> uoids.add(m.getUOID()));
+        assertThat(lastUoids.containsAll(uoids), is(true));
+    }
+
+    private BatchingObjectSink newSink(OutputStream out, int capacity, int maxBatchSize) {
+        return new BatchingObjectSink(out, SerializationHandler.Serializer.JOS, capacity,
+              maxBatchSize, "peer", replies::add, failures::incrementAndGet);
+    }
+
+    private static List<CellMessage> messages(int count) {
+        List<CellMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CellMessage message = new CellMessage(new CellPath("foo", "bar"), "payload-" + i);
+            message.addSourceAddress(new CellAddressCore("sender", "source"));
+            messages.add(message.encodeWith(SerializationHandler.Serializer.JOS));
+        }
+        return messages;
+    }
+
+    private static List<CellMessage> read(ByteArrayOutputStream out) throws Exception {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        List<CellMessage> messages = new ArrayList<>();
+        while (in.available() > 0) {
+            messages.add(CellMessage.createFrom(in));
+        }
+        return messages;
+    }
+
+    private static List<Object> payloads(List<CellMessage> messages) throws Exception {
+        List<Object> payloads = new ArrayList<>();
+        for (CellMessage message : messages) {
+            payloads.add(message.decode().getMessageObject());
+        }
+        return payloads;
+    }
+
+    private static class FlushCountingOutputStream extends ByteArrayOutputStream {
+
+        private int flushes;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+}
@@ -6,8 +6,16 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -281,4 +289,55 @@ public class CellRoutingTableTest {
 
         assertEquals(2, alternativeRoutes.size());
     }
+
+    @Test
+    public void testConcurrentLookupsDuringUpdates() throws Exception {
+
+        CellAddressCore gateway1 = new CellAddressCore("gw-1", "core-1");
+        CellAddressCore gateway2 = new CellAddressCore("gw-2", "core-2");
+        CellRoute stable = new CellRoute("cell-A", gateway1, Optional.empty(), CellRoute.QUEUE);
+        CellRoute domain = new CellRoute(null, gateway1, Optional.empty(), CellRoute.DEFAULT);
+        routingTable.add(stable);
+        routingTable.add(domain);
+
+        int senders = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(senders);
+        AtomicBoolean done = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(senders);
+        try {
+            List<Future<Long>> lookups = new ArrayList<>();
+            for (int i = 0; i < senders; i++) {
+                lookups.add(executor.submit(() -> {
+                    started.countDown();
+                    long count = 0;
+                    while (!done.get()) {
+                        assertNotNull(routingTable.find(new CellAddressCore("cell-A"),
+                              Optional.empty(), true));
+                        assertNotNull(routingTable.find(new CellAddressCore("cell-B@core-3"),
+                              Optional.empty(), true));
+                        count++;
+                    }
+                    return count;
+                }));
+            }
+
+            started.await();
+            for (int i = 0; i < 1000; i++) {
+                CellRoute route = new CellRoute("cell-A", gateway2, Optional.empty(),
+                      CellRoute.QUEUE);
+                routingTable.add(route);
+                routingTable.delete(route);
+            }
+            done.set(true);
+
+            long total = 0;
+            for (Future<Long> lookup : lookups) {
+                total += lookup.get(10, TimeUnit.SECONDS);
+            }
+            assertTrue(total > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, routingTable.getRoutingList().length);
+    }
 }
@@ -0,0 +1,261 @@
+/*
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.chimera;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.dcache.chimera.posix.Stat;
+
+/**
+ * A bounded cache of directory entries, mapping a name in a parent directory to the inode number
+ * of the entry.
+ * <p>
+ * Only the binding of a name to an inode is cached. This binding only changes when an entry is
+ * removed or renamed, both of which invalidate the cached entry. Symbolic links are never cached
+ * as path resolution has to follow them.
+ * <p>
+ * To avoid that a lookup which raced with a concurrent invalidation populates the cache with an
+ * outdated entry, every invalidation bumps a stamp in a stripe selected by the name. A lookup
+ * captures the stamps of the names it is about to resolve before querying the database and only
+ * keeps the resulting entries if the stamps did not change in the meantime.
+ */
+public class DentryCache {
+
+    private static final int STRIPES = 1024;
+
+    private final Cache<Key, Long> _entries;
+
+    private final AtomicLongArray _stamps = new AtomicLongArray(STRIPES);
+
+    private final LongAdder _localInvalidations = new LongAdder();
+    private final LongAdder _remoteInvalidations = new LongAdder();
+    private final LongAdder _staleEntries = new LongAdder();
+    private final LongAdder _remoteLag = new LongAdder();
+    private final LongAccumulator _maxRemoteLag = new LongAccumulator(Math::max, 0);
+
+    public DentryCache(long maximumSize, long lifetime, TimeUnit unit) {
+        _entries = CacheBuilder.newBuilder()
+              .maximumSize(maximumSize)
+              .expireAfterWrite(lifetime, unit)
+              .recordStats()
+              .build();
+    }
+
+    private static boolean isCacheable(String name) {
+        return !name.equals(".") && !name.equals("..") && !name.startsWith(".(");
+    }
+
+    private static int stripe(String name) {
+        return name.hashCode() & (STRIPES - 1);
+    }
+
+    /**
+     * Returns the inode number of {@code name} in the directory {@code parent}, or null if not
+     * cached.
+     */
+    public Long lookup(long parent, String name) {
+        return isCacheable(name) ? _entries.getIfPresent(new Key(parent, name)) : null;
+    }
+
+    /**
+     * Captures the current stamps of {@code names}. Must be called before resolving the names in
+     * the database.
+     */
+    long[] stamps(List<String> names) {
+        long[] stamps = new long[names.size()];
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i] = _stamps.get(stripe(names.get(i)));
+        }
+        return stamps;
+    }
+
+    /**
+     * Adds the result of resolving {@code names} starting at the first element of {@code inodes}.
+     * The i'th name resolved to the (i+1)'th inode. Population stops at the first entry that is not
+     * known to be a regular directory entry or whose name was invalidated since {@code stamps}
+     * were captured.
+     */
+    void populate(List<String> names, List<FsInode> inodes, long[] stamps) {
+        int n = Math.min(names.size(), inodes.size() - 1);
+        for (int i = 0; i < n; i++) {
+            String name = names.get(i);
+            Stat stat = inodes.get(i + 1).getStatCache();
+            if (!isCacheable(name) || stat == null
+                  || UnixPermission.getType(stat.getMode()) == UnixPermission.S_IFLNK) {
+                break;
+            }
+            if (!put(inodes.get(i).ino(), name, inodes.get(i + 1).ino(), stamps[i])) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Adds a single entry resolved with the given stamp.
+     */
+    void populate(FsInode parent, String name, FsInode inode, long stamp) {
+        Stat stat = inode.getStatCache();
+        if (isCacheable(name) && stat != null
+              && UnixPermission.getType(stat.getMode()) != UnixPermission.S_IFLNK) {
+            put(parent.ino(), name, inode.ino(), stamp);
+        }
+    }
+
+    long stamp(String name) {
+        return _stamps.get(stripe(name));
+    }
+
+    private boolean put(long parent, String name, long ino, long stamp) {
+        int stripe = stripe(name);
+        if (_stamps.get(stripe) != stamp) {
+            return false;
+        }
+        Key key = new Key(parent, name);
+        _entries.put(key, ino);
+        /* An invalidation may have happened between the check above and the put. As
+         * invalidations bump the stamp before removing the entry, rechecking after the
+         * put guarantees that either the invalidation or this check removes the entry.
+         */
+        if (_stamps.get(stripe) != stamp) {
+            _entries.invalidate(key);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean remove(long parent, String name) {
+        _stamps.incrementAndGet(stripe(name));
+        return _entries.asMap().remove(new Key(parent, name)) != null;
+    }
+
+    /**
+     * Removes an entry without accounting for it as an invalidation. Used while the
+     * modification is not yet committed.
+     */
+    void evict(long parent, String name) {
+        remove(parent, name);
+    }
+
+    /**
+     * Invalidates an entry modified by this file system instance.
+     */
+    public void invalidate(long parent, String name) {
+        _localInvalidations.increment();
+        remove(parent, name);
+    }
+
+    /**
+     * Invalidates an entry modified by another file system instance at {@code timestamp}.
+     */
+    public void invalidateRemote(long parent, String name, long timestamp) {
+        _remoteInvalidations.increment();
+        long lag = Math.max(0, System.currentTimeMillis() - timestamp);
+        _remoteLag.add(lag);
+        _maxRemoteLag.accumulate(lag);
+        if (remove(parent, name)) {
+            _staleEntries.increment();
+        }
+    }
+
+    public long size() {
+        return _entries.size();
+    }
+
+    public CacheStats getStats() {
+        return _entries.stats();
+    }
+
+    public long getLocalInvalidations() {
+        return _localInvalidations.sum();
+    }
+
+    public long getRemoteInvalidations() {
+        return _remoteInvalidations.sum();
+    }
+
+    /**
+     * Returns the number of entries that were cached when invalidated by another file system
+     * instance, i.e. entries that were stale until the invalidation arrived.
+     */
+    public long getStaleEntries() {
+        return _staleEntries.sum();
+    }
+
+    /**
+     * Returns the mean delay in milliseconds between a remote modification and its invalidation
+     * arriving here.
+     */
+    public long getMeanRemoteLag() {
+        long count = _remoteInvalidations.sum();
+        return count == 0 ? 0 : _remoteLag.sum() / count;
+    }
+
+    public long getMaxRemoteLag() {
+        return _maxRemoteLag.get();
+    }
+
+    public void getInfo(PrintWriter pw) {
+        CacheStats stats = getStats();
+        pw.println("Dentry cache:");
+        pw.println("   Entries               : " + size());
+        pw.println("   Hits                  : " + stats.hitCount());
+        pw.println("   Misses                : " + stats.missCount());
+        pw.println(String.format("   Hit ratio             : %.2f%%", stats.hitRate() * 100));
+        pw.println("   Evictions             : " + stats.evictionCount());
+        pw.println("   Local invalidations   : " + getLocalInvalidations());
+        pw.println("   Remote invalidations  : " + getRemoteInvalidations());
+        pw.println("   Stale entries removed : " + getStaleEntries());
+        pw.println("   Remote lag (mean/max) : " + getMeanRemoteLag() + "/" + getMaxRemoteLag()
+              + " ms");
+    }
+
+    private static final class Key {
+
+        private final long _parent;
+        private final String _name;
+
+        Key(long parent, String name) {
+            _parent = parent;
+            _name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return _parent == other._parent && _name.equals(other._name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_parent, _name);
+        }
+    }
+}
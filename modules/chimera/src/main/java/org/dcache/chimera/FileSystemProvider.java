@@ -160,6 +160,24 @@ public interface FileSystemProvider extends Closeable {
     DirectoryStreamB<ChimeraDirectoryEntry> newDirectoryStream(FsInode dir)
           throws ChimeraFsException;
 
+    /**
+     * Returns {@link DirectoryStreamB} of ChimeraDirectoryEntry in the directory, ordered by name
+     * and excluding '.' and '..'.
+     * <p>
+     * Unlike {@link #newDirectoryStream(FsInode)}, the entries are fetched in chunks by
+     * independent queries, such that no system resources are held between chunks. Listing may
+     * start after a given name or skip a number of leading entries without fetching them. The
+     * listing is not a consistent snapshot of the directory.
+     *
+     * @param dir       inode of the directory to list
+     * @param after     if not null, only entries with names sorting after this name are listed
+     * @param skip      number of leading entries to skip
+     * @param chunkSize maximum number of entries fetched at a time
+     * @return stream of directory entries
+     */
+    DirectoryStreamB<ChimeraDirectoryEntry> newDirectoryStream(FsInode dir, String after,
+          int skip, int chunkSize) throws ChimeraFsException;
+
 
     /**
      * Returns {@link DirectoryStreamB} of ChimeraDirectoryEntry in the directory.
@@ -261,6 +279,16 @@ public interface FileSystemProvider extends Closeable {
      */
     FsInode id2inode(String id, StatCacheOption stat) throws ChimeraFsException;
 
+    /**
+     * Maps many persistent identifiers to inodes with a pre-filled stat cache, querying the
+     * underlying store as few times as possible.
+     *
+     * @param ids persistent identifiers
+     * @return the inodes keyed by identifier; identifiers of non-existing inodes are absent
+     * @throws ChimeraFsException
+     */
+    Map<String, FsInode> id2inodes(Collection<String> ids) throws ChimeraFsException;
+
     List<FsInode> path2inodes(String path)
           throws ChimeraFsException;
 
@@ -296,6 +324,14 @@ public interface FileSystemProvider extends Closeable {
      */
     Collection<Link> find(FsInode inode) throws ChimeraFsException;
 
+    /**
+     * Like {@link #find(FsInode)} for many inodes at once.
+     *
+     * @return the links keyed by inode number; inodes without links are absent
+     */
+    Map<Long, List<Link>> find(Collection<FsInode> inodes)
+          throws ChimeraFsException;
+
     void setInodeAttributes(FsInode inode, int level, Stat stat)
           throws ChimeraFsException;
 
@@ -337,6 +373,14 @@ public interface FileSystemProvider extends Closeable {
     List<StorageLocatable> getInodeLocations(FsInode inode)
           throws ChimeraFsException;
 
+    /**
+     * Like {@link #getInodeLocations(FsInode)} for many inodes at once.
+     *
+     * @return the locations keyed by inode number; inodes without locations are absent
+     */
+    Map<Long, List<StorageLocatable>> getInodeLocations(Collection<FsInode> inodes)
+          throws ChimeraFsException;
+
     void addInodeLocation(FsInode inode, int type,
           String location) throws ChimeraFsException;
 
@@ -405,6 +449,15 @@ public interface FileSystemProvider extends Closeable {
     InodeStorageInformation getStorageInfo(FsInode inode)
           throws ChimeraFsException;
 
+    /**
+     * Like {@link #getStorageInfo(FsInode)} for many inodes at once.
+     *
+     * @return the storage information keyed by inode number; inodes without storage
+     * information are absent
+     */
+    Map<Long, InodeStorageInformation> getStorageInfo(Collection<FsInode> inodes)
+          throws ChimeraFsException;
+
     void setInodeChecksum(FsInode inode, int type,
           String checksum) throws ChimeraFsException;
 
@@ -414,6 +467,14 @@ public interface FileSystemProvider extends Closeable {
     Set<Checksum> getInodeChecksums(FsInode inode)
           throws ChimeraFsException;
 
+    /**
+     * Like {@link #getInodeChecksums(FsInode)} for many inodes at once.
+     *
+     * @return the checksums keyed by inode number; inodes without checksums are absent
+     */
+    Map<Long, Set<Checksum>> getInodeChecksums(Collection<FsInode> inodes)
+          throws ChimeraFsException;
+
     String getInfo();
 
     /**
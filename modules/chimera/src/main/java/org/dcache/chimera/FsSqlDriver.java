@@ -16,6 +16,7 @@
  */
 package org.dcache.chimera;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.stream.Collectors.toList;
 import static org.dcache.chimera.FileSystemProvider.SetXattrMode;
 import static org.dcache.chimera.FileSystemProvider.StatCacheOption.STAT;
@@ -73,6 +74,7 @@ import org.springframework.jdbc.LobRetrievalFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
@@ -116,6 +118,19 @@ public class FsSqlDriver {
 
     private final long _root;
 
+    /**
+     * Receives changes of the space used by regular files. Called within the transaction that
+     * modifies the file.
+     */
+    interface UsageListener {
+
+        void usageChanged(int uid, int gid, RetentionPolicy rp, long delta);
+    }
+
+    /**
+     * Notified about changes of space usage, or null if usage is not tracked.
+     */
+    private volatile UsageListener _usageListener;
 
     /**
      * this is a utility class which is issues SQL queries on database
@@ -143,6 +158,15 @@ public class FsSqlDriver {
         return _root;
     }
 
+    void setUsageListener(UsageListener listener) {
+        _usageListener = listener;
+    }
+
+    private static boolean isCountedAsUsage(Stat stat) {
+        return (stat.getMode() & UnixPermission.F_TYPE) == UnixPermission.S_IFREG
+              && stat.isDefined(Stat.StatAttributes.RETENTION_POLICY);
+    }
+
     /**
      * Update file system cache table.
      */
@@ -283,6 +307,94 @@ public class FsSqlDriver {
         };
     }
 
+    /**
+     * Returns {@link DirectoryStreamB} of ChimeraDirectoryEntry in the directory, ordered by name
+     * and excluding '.' and '..'.
+     * <p>
+     * Entries are fetched in chunks of {@code chunkSize} entries using keyset pagination on
+     * {@code (iparent, iname)}. Each chunk is fetched by an independent query, hence no database
+     * connection is held between chunks. In contrast to {@link #newDirectoryStream(FsInode)},
+     * the listing is not a consistent snapshot: entries added or removed while the stream is
+     * consumed may or may not be returned.
+     *
+     * @param dir       the directory to list
+     * @param after     if not null, only entries with a name sorting after this name are listed
+     * @param skip      number of leading entries to skip
+     * @param chunkSize maximum number of entries fetched per query
+     * @return stream of directory entries
+     */
+    DirectoryStreamB<ChimeraDirectoryEntry> newDirectoryStream(FsInode dir, String after,
+          int skip, int chunkSize) {
+        checkArgument(chunkSize > 0, "Chunk size must be positive");
+        checkArgument(skip >= 0, "Number of entries to skip must not be negative");
+        return new DirectoryStreamB<ChimeraDirectoryEntry>() {
+            @Override
+            public Iterator<ChimeraDirectoryEntry> iterator() {
+                return new Iterator<ChimeraDirectoryEntry>() {
+                    private Iterator<ChimeraDirectoryEntry> chunk =
+                          listDirectory(dir, after, skip, chunkSize).iterator();
+                    private String last = after;
+                    private int remaining = chunkSize;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (!chunk.hasNext() && remaining == 0) {
+                            chunk = listDirectory(dir, last, 0, chunkSize).iterator();
+                            remaining = chunkSize;
+                        }
+                        return chunk.hasNext();
+                    }
+
+                    @Override
+                    public ChimeraDirectoryEntry next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException("No more entries");
+                        }
+                        ChimeraDirectoryEntry entry = chunk.next();
+                        last = entry.getName();
+                        remaining--;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Returns up to {@code limit} entries of a directory ordered by name, starting after the entry
+     * {@code after} and skipping {@code skip} entries.
+     */
+    List<ChimeraDirectoryEntry> listDirectory(FsInode dir, String after, int skip, int limit) {
+        String sql = "SELECT i.*, d.iname FROM t_dirs d JOIN t_inodes i ON i.inumber = d.ichild "
+              + "WHERE d.iparent=?" + (after == null ? "" : " AND d.iname > ?")
+              + " ORDER BY d.iname"
+              + (skip == 0 ? "" : " OFFSET ? ROWS")
+              + " FETCH FIRST ? ROWS ONLY";
+        return _jdbc.query(sql,
+              ps -> {
+                  int idx = 1;
+                  ps.setLong(idx++, dir.ino());
+                  if (after != null) {
+                      ps.setString(idx++, after);
+                  }
+                  if (skip != 0) {
+                      ps.setInt(idx++, skip);
+                  }
+                  ps.setInt(idx, limit);
+              },
+              (rs, n) -> {
+                  Stat stat = toStat(rs);
+                  FsInode inode = new FsInode(dir.getFs(), rs.getLong("inumber"),
+                        FsInodeType.INODE, 0, stat);
+                  inode.setParent(dir);
+                  return new ChimeraDirectoryEntry(rs.getString("iname"), inode, stat);
+              });
+    }
+
     /**
      * Removes the hard link {@code name} in {@code parent} to {@code inode}. If the last link is
      * removed the object is deleted.
@@ -341,7 +453,12 @@ public class FsSqlDriver {
         return true;
     }
 
-    void remove(FsInode inode) {
+    /**
+     * Removes all hard links to {@code inode}, deleting the object.
+     *
+     * @return the removed links
+     */
+    Collection<Link> remove(FsInode inode) {
         if (inode.isDirectory()) {
             removeTag(inode);
         }
@@ -352,20 +469,18 @@ public class FsSqlDriver {
         _jdbc.update("UPDATE t_inodes SET inlink=0 WHERE inumber=?", inode.ino());
 
         /* Remove all hard-links. */
-        List<Long> parents =
-              _jdbc.queryForList(
-                    "SELECT iparent FROM t_dirs WHERE ichild=?",
-                    Long.class, inode.ino());
-        for (Long parent : parents) {
-            decNlink(new FsInode(inode.getFs(), parent));
+        Collection<Link> links = find(inode);
+        for (Link link : links) {
+            decNlink(link.getParent());
         }
         int n = _jdbc.update("DELETE FROM t_dirs WHERE ichild=?", inode.ino());
-        if (n != parents.size()) {
+        if (n != links.size()) {
             throw new JdbcUpdateAffectedIncorrectNumberOfRowsException(
-                  "DELETE FROM t_dirs WHERE ichild=?", parents.size(), n);
+                  "DELETE FROM t_dirs WHERE ichild=?", links.size(), n);
         }
 
         removeInodeIfUnlinked(inode);
+        return links;
     }
 
     public Stat stat(String id) {
@@ -393,6 +508,34 @@ public class FsSqlDriver {
         }
     }
 
+    /**
+     * Returns the stat of all inodes with the given ids, keyed by id. Ids without an inode are
+     * absent from the result.
+     */
+    Map<String, Stat> stat(Collection<String> ids) {
+        Map<String, Stat> stats = new HashMap<>(ids.size());
+        queryBySet("SELECT * FROM t_inodes WHERE %s", "ipnfsid", "varchar", ids,
+              rs -> {
+                  Stat stat = toStat(rs);
+                  stats.put(stat.getId(), stat);
+              });
+        return stats;
+    }
+
+    /**
+     * Returns the stat of all given inodes, keyed by inode number. Inodes that do not exist are
+     * absent from the result.
+     */
+    Map<Long, Stat> statInodes(Collection<FsInode> inodes) {
+        Map<Long, Stat> stats = new HashMap<>(inodes.size());
+        queryBySet("SELECT * FROM t_inodes WHERE %s", "inumber", "bigint", inumbers(inodes),
+              rs -> {
+                  Stat stat = toStat(rs);
+                  stats.put(stat.getIno(), stat);
+              });
+        return stats;
+    }
+
     private Stat toStat(ResultSet rs) throws SQLException {
         Stat stat = new Stat();
         stat.setIno(rs.getLong("inumber"));
@@ -673,18 +816,19 @@ public class FsSqlDriver {
     }
 
     boolean removeInodeIfUnlinked(FsInode inode) {
-        List<String> ids
-              = _jdbc.queryForList(
-              "SELECT ipnfsid FROM t_inodes WHERE inumber=? AND inlink=0 FOR UPDATE",
-              String.class, inode.ino());
-        if (ids.isEmpty()) {
+        List<Stat> stats
+              = _jdbc.query(
+              "SELECT * FROM t_inodes WHERE inumber=? AND inlink=0 FOR UPDATE",
+              (rs, rowNum) -> toStat(rs), inode.ino());
+        if (stats.isEmpty()) {
             return false;
         }
-        if (ids.size() > 1) {
-            throw new IncorrectResultSizeDataAccessException(1, ids.size());
+        if (stats.size() > 1) {
+            throw new IncorrectResultSizeDataAccessException(1, stats.size());
         }
         Timestamp now = new Timestamp(System.currentTimeMillis());
-        String id = ids.get(0);
+        Stat stat = stats.get(0);
+        String id = stat.getId();
         _jdbc.update(
               "INSERT INTO t_locationinfo_trash (ipnfsid,itype,ilocation,ipriority,ictime,iatime,istate) "
                     +
@@ -703,9 +847,21 @@ public class FsSqlDriver {
                   ps.setTimestamp(3, now);
               });
         _jdbc.update("DELETE FROM t_inodes WHERE inumber=?", inode.ino());
+        inodeRemoved(stat);
         return true;
     }
 
+    /**
+     * Reports the space released by removing an inode with the given stat.
+     */
+    void inodeRemoved(Stat stat) {
+        UsageListener listener = _usageListener;
+        if (listener != null && isCountedAsUsage(stat)) {
+            listener.usageChanged(stat.getUid(), stat.getGid(), stat.getRetentionPolicy(),
+                  -stat.getSize());
+        }
+    }
+
     boolean removeInodeLevel(FsInode inode, int level) {
         return _jdbc.update("DELETE FROM t_level_" + level + " WHERE inumber=?", inode.ino()) > 0;
     }
@@ -802,8 +958,61 @@ public class FsSqlDriver {
                     rs.getString("iname")));
     }
 
+    /**
+     * Returns the directory entries of all given inodes, keyed by inode number.
+     */
+    Map<Long, List<Link>> find(Collection<FsInode> inodes) {
+        Map<Long, List<Link>> links = new HashMap<>(inodes.size());
+        FileSystemProvider provider = inodes.isEmpty() ? null : inodes.iterator().next().getFs();
+        queryBySet("SELECT ichild,iparent,iname FROM t_dirs WHERE %s", "ichild", "bigint",
+              inumbers(inodes),
+              rs -> links.computeIfAbsent(rs.getLong("ichild"), k -> new ArrayList<>())
+                    .add(new Link(new FsInode(provider, rs.getLong("iparent")),
+                          rs.getString("iname"))));
+        return links;
+    }
+
     boolean setInodeAttributes(FsInode inode, int level, Stat stat) {
-        return _jdbc.update(con -> generateAttributeUpdateStatement(con, inode, stat, level)) > 0;
+        UsageListener listener = _usageListener;
+        if (listener == null || level != 0 || !(stat.isDefined(Stat.StatAttributes.SIZE)
+              || stat.isDefined(Stat.StatAttributes.UID)
+              || stat.isDefined(Stat.StatAttributes.GID)
+              || stat.isDefined(Stat.StatAttributes.RETENTION_POLICY))) {
+            return _jdbc.update(con -> generateAttributeUpdateStatement(con, inode, stat, level))
+                  > 0;
+        }
+
+        /* The row lock keeps concurrent updates from interleaving between reading the old
+         * usage and writing the new one.
+         */
+        Stat old = _jdbc.query("SELECT * FROM t_inodes WHERE inumber=? FOR UPDATE",
+              ps -> ps.setLong(1, inode.ino()),
+              rs -> rs.next() ? toStat(rs) : null);
+        if (_jdbc.update(con -> generateAttributeUpdateStatement(con, inode, stat, level)) == 0) {
+            return false;
+        }
+        if (old != null && (old.getMode() & UnixPermission.F_TYPE) == UnixPermission.S_IFREG) {
+            int uid = stat.isDefined(Stat.StatAttributes.UID) ? stat.getUid() : old.getUid();
+            int gid = stat.isDefined(Stat.StatAttributes.GID) ? stat.getGid() : old.getGid();
+            long size = stat.isDefined(Stat.StatAttributes.SIZE) ? stat.getSize() : old.getSize();
+            RetentionPolicy rp = stat.isDefined(Stat.StatAttributes.RETENTION_POLICY)
+                  ? stat.getRetentionPolicy()
+                  : old.isDefined(Stat.StatAttributes.RETENTION_POLICY)
+                        ? old.getRetentionPolicy() : null;
+            boolean unchanged = uid == old.getUid() && gid == old.getGid()
+                  && size == old.getSize() && isCountedAsUsage(old)
+                  && rp.equals(old.getRetentionPolicy());
+            if (!unchanged) {
+                if (isCountedAsUsage(old)) {
+                    listener.usageChanged(old.getUid(), old.getGid(), old.getRetentionPolicy(),
+                          -old.getSize());
+                }
+                if (rp != null) {
+                    listener.usageChanged(uid, gid, rp, size);
+                }
+            }
+        }
+        return true;
     }
 
     /**
@@ -983,6 +1192,29 @@ public class FsSqlDriver {
     }
 
 
+    /**
+     * Returns the 'online' locations of all given inodes, keyed by inode number. Inodes without
+     * locations are absent from the result.
+     */
+    Map<Long, List<StorageLocatable>> getInodeLocations(Collection<FsInode> inodes) {
+        Map<Long, List<StorageLocatable>> locations = new HashMap<>(inodes.size());
+        queryBySet("SELECT inumber,itype,ilocation,ipriority,ictime,iatime FROM t_locationinfo "
+                    + "WHERE %s AND istate=1 ORDER BY ipriority DESC", "inumber", "bigint",
+              inumbers(inodes),
+              rs -> {
+                  int type = rs.getInt("itype");
+                  long ctime = rs.getTimestamp("ictime").getTime();
+                  long atime = rs.getTimestamp("iatime").getTime();
+                  int priority = rs.getInt("ipriority");
+                  String location = rs.getString("ilocation");
+                  locations.computeIfAbsent(rs.getLong("inumber"), k -> new ArrayList<>())
+                        .add(new StorageGenericLocation(type, priority, location, ctime, atime,
+                              true));
+              });
+        return locations;
+    }
+
+
     /**
      * adds a new location for the inode
      *
@@ -1526,6 +1758,25 @@ public class FsSqlDriver {
         }
     }
 
+    /**
+     * Returns the storage information of all given inodes, keyed by inode number. Inodes without
+     * storage information are absent from the result.
+     */
+    Map<Long, InodeStorageInformation> getStorageInfo(Collection<FsInode> inodes) {
+        Map<Long, FsInode> byNumber = new HashMap<>(inodes.size());
+        inodes.forEach(inode -> byNumber.put(inode.ino(), inode));
+        Map<Long, InodeStorageInformation> storageInfo = new HashMap<>(inodes.size());
+        queryBySet("SELECT inumber, ihsmName, istorageGroup, istorageSubGroup FROM t_storageinfo "
+                    + "WHERE %s", "inumber", "bigint", byNumber.keySet(),
+              rs -> {
+                  long ino = rs.getLong("inumber");
+                  storageInfo.put(ino, new InodeStorageInformation(byNumber.get(ino),
+                        rs.getString("ihsmName"), rs.getString("istoragegroup"),
+                        rs.getString("istoragesubgroup")));
+              });
+        return storageInfo;
+    }
+
     /**
      * add a checksum value of <i>type</i> to an inode
      *
@@ -1561,6 +1812,23 @@ public class FsSqlDriver {
               });
     }
 
+    /**
+     * Returns the checksums of all given inodes, keyed by inode number. Inodes without checksums
+     * are absent from the result.
+     */
+    Map<Long, List<Checksum>> getInodeChecksums(Collection<FsInode> inodes) {
+        Map<Long, List<Checksum>> checksums = new HashMap<>(inodes.size());
+        queryBySet("SELECT inumber, isum, itype FROM t_inodes_checksum WHERE %s", "inumber",
+              "bigint", inumbers(inodes),
+              rs -> {
+                  String checksum = rs.getString("isum");
+                  int type = rs.getInt("itype");
+                  checksums.computeIfAbsent(rs.getLong("inumber"), k -> new ArrayList<>())
+                        .add(new Checksum(ChecksumType.getChecksumType(type), checksum));
+              });
+        return checksums;
+    }
+
     /**
      * @param inode
      * @param type
@@ -1776,6 +2044,54 @@ public class FsSqlDriver {
         writeAcl(inode, type, acl);
     }
 
+    /**
+     * Maximum number of values matched by a single set query. Larger sets are split into several
+     * queries.
+     */
+    private static final int MAX_SET_SIZE = 1000;
+
+    private static List<Long> inumbers(Collection<FsInode> inodes) {
+        return inodes.stream().map(FsInode::ino).distinct().collect(toList());
+    }
+
+    /**
+     * Runs {@code sql} for all {@code values}, calling {@code handler} for every row. The query
+     * must contain a single {@code %s} placeholder, which is replaced by a predicate matching
+     * {@code column} against a subset of the values.
+     */
+    private void queryBySet(String sql, String column, String sqlType, Collection<?> values,
+          RowCallbackHandler handler) {
+        for (List<?> subset : Lists.partition(new ArrayList<>(values), MAX_SET_SIZE)) {
+            _jdbc.query(String.format(sql, inSet(column, subset.size())),
+                  ps -> bindSet(ps, 1, sqlType, subset.toArray()), handler);
+        }
+    }
+
+    /**
+     * Returns a predicate matching {@code column} against a set of {@code size} values. The
+     * values are bound with {@link #bindSet}.
+     * <p>
+     * The default implementation uses an IN list with one parameter per value.
+     */
+    protected String inSet(String column, int size) {
+        return column + " IN (" + String.join(",", Collections.nCopies(size, "?")) + ")";
+    }
+
+    /**
+     * Binds the values of a predicate generated by {@link #inSet} starting at parameter {@code
+     * index}.
+     *
+     * @param sqlType SQL type name of the values
+     * @return the index of the next parameter
+     */
+    protected int bindSet(PreparedStatement ps, int index, String sqlType, Object[] values)
+          throws SQLException {
+        for (Object value : values) {
+            ps.setObject(index++, value);
+        }
+        return index;
+    }
+
     /**
      * Check <i>SQLException</i> for foreign key violation.
      *
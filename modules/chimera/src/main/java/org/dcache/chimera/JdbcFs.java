@@ -26,6 +26,7 @@ import static org.dcache.chimera.FileSystemProvider.StatCacheOption.STAT;
 import static org.dcache.util.ByteUnit.EiB;
 import static org.dcache.util.SqlHelper.tryToClose;
 
+import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -39,8 +40,12 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -49,6 +54,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import javax.sql.DataSource;
 import org.dcache.acl.ACE;
 import org.dcache.acl.enums.RsType;
@@ -67,6 +73,8 @@ import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.TransactionSystemException;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * JDBC-FS is THE building block of Chimera. It's an abstraction layer, which allows to build
@@ -151,6 +159,16 @@ public class JdbcFs implements FileSystemProvider {
                 .maximumSize(100000)
                 .build();
 
+    /**
+     * Cache of directory entries used for path resolution, or null if disabled.
+     */
+    private DentryCache _dentryCache;
+
+    /**
+     * Notified about removed directory entries once the removal is committed.
+     */
+    private Consumer<Collection<Link>> _dentryInvalidationListener;
+
     private QuotaHandler _quota;
 
     /**
@@ -171,6 +189,8 @@ public class JdbcFs implements FileSystemProvider {
      */
     private static final int MAX_NAME_LEN = 255;
 
+    private static final Splitter PATH_SPLITTER = Splitter.on('/').omitEmptyStrings();
+
     /**
      * switch quota check on/off
      */
@@ -206,12 +226,45 @@ public class JdbcFs implements FileSystemProvider {
         if (_quotaEnabled) {
             _quota.scheduleRefreshQuota();
         }
+        _sqlDriver.setUsageListener(
+              _quotaEnabled && _quota.isIncrementalUpdate() ? this::usageChanged : null);
+    }
+
+    /**
+     * Reports a change of space usage to the quota system once the transaction making the change
+     * is committed.
+     */
+    private void usageChanged(int uid, int gid, RetentionPolicy rp, long delta) {
+        QuotaHandler quota = _quota;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            quota.addUsage(uid, gid, rp, delta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+              new TransactionSynchronizationAdapter() {
+                  @Override
+                  public void afterCommit() {
+                      quota.addUsage(uid, gid, rp, delta);
+                  }
+              });
     }
 
     public void setDefaultRetentionPolicy(RetentionPolicy rp) {
         _defaultRetentionPolicy = rp;
     }
 
+    public void setDentryCache(DentryCache cache) {
+        _dentryCache = cache;
+    }
+
+    public DentryCache getDentryCache() {
+        return _dentryCache;
+    }
+
+    public void setDentryInvalidationListener(Consumer<Collection<Link>> listener) {
+        _dentryInvalidationListener = listener;
+    }
+
     private FsInode getWormID() throws ChimeraFsException {
 
         return this.path2inode("/admin/etc/config");
@@ -304,6 +357,7 @@ public class JdbcFs implements FileSystemProvider {
                       EnumSet.of(INHERIT_ONLY_ACE, DIRECTORY_INHERIT_ACE, FILE_INHERIT_ACE),
                       EnumSet.of(FILE_INHERIT_ACE));
                 fillIdCaches(inode);
+                discardDentryOnRollback(parent, name);
             } catch (DuplicateKeyException e) {
                 throw new FileExistsChimeraFsException(e);
             }
@@ -329,6 +383,7 @@ public class JdbcFs implements FileSystemProvider {
         return inTransaction(status -> {
             try {
                 _sqlDriver.createEntryInParent(parent, name, inode);
+                discardDentryOnRollback(parent, name);
                 _sqlDriver.incNlink(inode);
                 _sqlDriver.incNlink(parent);
             } catch (DuplicateKeyException e) {
@@ -445,6 +500,7 @@ public class JdbcFs implements FileSystemProvider {
                       EnumSet.of(INHERIT_ONLY_ACE, DIRECTORY_INHERIT_ACE, FILE_INHERIT_ACE),
                       EnumSet.of(FILE_INHERIT_ACE));
                 fillIdCaches(inode);
+                discardDentryOnRollback(parent, name);
                 return inode;
             } catch (DuplicateKeyException e) {
                 throw new FileExistsChimeraFsException(e);
@@ -491,6 +547,7 @@ public class JdbcFs implements FileSystemProvider {
                       EnumSet.of(INHERIT_ONLY_ACE, DIRECTORY_INHERIT_ACE, FILE_INHERIT_ACE),
                       EnumSet.of(FILE_INHERIT_ACE));
                 fillIdCaches(inode);
+                discardDentryOnRollback(parent, name);
                 return null;
             } catch (DuplicateKeyException e) {
                 throw new FileExistsChimeraFsException(e);
@@ -504,6 +561,12 @@ public class JdbcFs implements FileSystemProvider {
         return _sqlDriver.newDirectoryStream(dir);
     }
 
+    @Override
+    public DirectoryStreamB<ChimeraDirectoryEntry> newDirectoryStream(FsInode dir, String after,
+          int skip, int chunkSize) throws ChimeraFsException {
+        return _sqlDriver.newDirectoryStream(dir, after, skip, chunkSize);
+    }
+
     @Override
     public DirectoryStreamB<ChimeraDirectoryEntry> virtualDirectoryStream(FsInode dir,
           String labelname) throws ChimeraFsException {
@@ -527,6 +590,7 @@ public class JdbcFs implements FileSystemProvider {
             if (inode == null || !_sqlDriver.remove(parent, name, inode)) {
                 throw FileNotFoundChimeraFsException.ofPath(path);
             }
+            invalidateDentries(Collections.singletonList(new Link(parent, name)));
             return null;
         });
     }
@@ -537,6 +601,7 @@ public class JdbcFs implements FileSystemProvider {
             if (!_sqlDriver.remove(directory, name, inode)) {
                 throw FileNotFoundChimeraFsException.ofFileInDirectory(directory, name);
             }
+            invalidateDentries(Collections.singletonList(new Link(directory, name)));
             return null;
         });
     }
@@ -557,7 +622,7 @@ public class JdbcFs implements FileSystemProvider {
             if (inode.isDirectory() && inode.statCache().getNlink() > 2) {
                 throw new DirNotEmptyChimeraFsException("Directory is not empty");
             }
-            _sqlDriver.remove(inode);
+            invalidateDentries(_sqlDriver.remove(inode));
             return null;
         });
     }
@@ -626,6 +691,7 @@ public class JdbcFs implements FileSystemProvider {
                 _sqlDriver.copyAcl(parent, inode, RsType.DIR, EnumSet.of(INHERIT_ONLY_ACE),
                       EnumSet.of(FILE_INHERIT_ACE, DIRECTORY_INHERIT_ACE));
                 fillIdCaches(inode);
+                discardDentryOnRollback(parent, name);
                 return inode;
             } catch (DuplicateKeyException e) {
                 throw new FileExistsChimeraFsException(name, e);
@@ -665,6 +731,7 @@ public class JdbcFs implements FileSystemProvider {
                 _sqlDriver.createTags(inode, owner, gid, perm & 0666, tags);
                 _sqlDriver.writeAcl(inode, RsType.DIR, acl);
                 fillIdCaches(inode);
+                discardDentryOnRollback(parent, name);
                 return inode;
             } catch (DuplicateKeyException e) {
                 throw new FileExistsChimeraFsException(name, e);
@@ -679,7 +746,13 @@ public class JdbcFs implements FileSystemProvider {
 
     @Override
     public FsInode path2inode(String path, FsInode startFrom) throws ChimeraFsException {
-        FsInode inode = _sqlDriver.path2inode(startFrom, path);
+        FsInode inode;
+        if (_dentryCache == null) {
+            inode = _sqlDriver.path2inode(startFrom, path);
+        } else {
+            List<FsInode> inodes = resolve(_dentryCache, startFrom, path);
+            inode = inodes.isEmpty() ? null : inodes.get(inodes.size() - 1);
+        }
         if (inode == null) {
             throw FileNotFoundChimeraFsException.ofPath(path);
         }
@@ -687,6 +760,121 @@ public class JdbcFs implements FileSystemProvider {
         return inode;
     }
 
+    /**
+     * Resolves {@code path} relative to {@code startFrom}, serving as many leading path elements
+     * as possible from the dentry cache and resolving the remainder in the database. The stat of
+     * all cached path elements is fetched in a single query.
+     *
+     * @return the inodes along the path starting with {@code startFrom}, or an empty list if the
+     * path does not exist
+     */
+    private List<FsInode> resolve(DentryCache cache, FsInode startFrom, String path)
+          throws ChimeraFsException {
+        List<String> elements = PATH_SPLITTER.splitToList(path);
+        List<FsInode> inodes = new ArrayList<>(elements.size() + 1);
+        FsInode inode = startFrom;
+        inodes.add(inode);
+
+        int i = 0;
+        for (; i < elements.size(); i++) {
+            Long ino = cache.lookup(inode.ino(), elements.get(i));
+            if (ino == null) {
+                break;
+            }
+            inode = new FsInode(this, ino);
+            inodes.add(inode);
+        }
+
+        if (i > 0) {
+            Map<Long, Stat> stats = _sqlDriver.statInodes(inodes.subList(1, inodes.size()));
+            for (int j = 1; j < inodes.size(); j++) {
+                Stat stat = stats.get(inodes.get(j).ino());
+                if (stat == null) {
+                    /* Stale entry of an inode removed by another file system instance; the
+                     * invalidation has not arrived yet.
+                     */
+                    return _sqlDriver.path2inodes(startFrom, path);
+                }
+                inodes.set(j, new FsInode(this, stat.getIno(), FsInodeType.INODE, 0, stat));
+            }
+            inode = inodes.get(inodes.size() - 1);
+        }
+
+        if (i < elements.size()) {
+            List<String> remaining = elements.subList(i, elements.size());
+            long[] stamps = cache.stamps(remaining);
+            List<FsInode> resolved = _sqlDriver.path2inodes(inode, String.join("/", remaining));
+            if (resolved.isEmpty()) {
+                return Collections.emptyList();
+            }
+            cache.populate(remaining, resolved, stamps);
+            inodes.addAll(resolved.subList(1, resolved.size()));
+        }
+        return inodes;
+    }
+
+    /**
+     * Invalidates removed directory entries in the dentry cache and notifies the invalidation
+     * listener.
+     * <p>
+     * Entries are invalidated immediately and again once the transaction completed, since a
+     * concurrent lookup may observe the old entry until the removal is committed. The listener
+     * is only notified after a successful commit.
+     */
+    private void invalidateDentries(Collection<Link> links) {
+        DentryCache cache = _dentryCache;
+        Consumer<Collection<Link>> listener = _dentryInvalidationListener;
+        if (links.isEmpty() || (cache == null && listener == null)) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (cache != null) {
+                links.forEach(l -> cache.invalidate(l.getParent().ino(), l.getName()));
+            }
+            if (listener != null) {
+                listener.accept(links);
+            }
+            return;
+        }
+
+        if (cache != null) {
+            links.forEach(l -> cache.evict(l.getParent().ino(), l.getName()));
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+              new TransactionSynchronizationAdapter() {
+                  @Override
+                  public void afterCompletion(int status) {
+                      if (cache != null) {
+                          links.forEach(l -> cache.invalidate(l.getParent().ino(), l.getName()));
+                      }
+                      if (listener != null && status == STATUS_COMMITTED) {
+                          listener.accept(links);
+                      }
+                  }
+              });
+    }
+
+    /**
+     * Evicts a directory entry created in the current transaction from the dentry cache if the
+     * transaction is rolled back. Lookups within the transaction may have cached the entry
+     * although it never became visible to anybody else.
+     */
+    private void discardDentryOnRollback(FsInode parent, String name) {
+        DentryCache cache = _dentryCache;
+        if (cache != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                  new TransactionSynchronizationAdapter() {
+                      @Override
+                      public void afterCompletion(int status) {
+                          if (status != STATUS_COMMITTED) {
+                              cache.evict(parent.ino(), name);
+                          }
+                      }
+                  });
+        }
+    }
+
     @Override
     public String inode2id(FsInode inode) throws ChimeraFsException {
         try {
@@ -733,6 +921,17 @@ public class JdbcFs implements FileSystemProvider {
         }
     }
 
+    @Override
+    public Map<String, FsInode> id2inodes(Collection<String> ids) throws ChimeraFsException {
+        Map<String, FsInode> inodes = new HashMap<>(ids.size());
+        for (Stat stat : _sqlDriver.stat(ids).values()) {
+            _inoCache.put(stat.getId(), stat.getIno());
+            _idCache.put(stat.getIno(), stat.getId());
+            inodes.put(stat.getId(), new FsInode(this, stat.getIno(), FsInodeType.INODE, 0, stat));
+        }
+        return inodes;
+    }
+
     @Override
     public List<FsInode> path2inodes(String path) throws ChimeraFsException {
         return path2inodes(path, new RootInode(this, _sqlDriver.getRootInumber()));
@@ -741,7 +940,9 @@ public class JdbcFs implements FileSystemProvider {
     @Override
     public List<FsInode> path2inodes(String path, FsInode startFrom)
           throws ChimeraFsException {
-        List<FsInode> inodes = _sqlDriver.path2inodes(startFrom, path);
+        List<FsInode> inodes = (_dentryCache == null)
+              ? _sqlDriver.path2inodes(startFrom, path)
+              : resolve(_dentryCache, startFrom, path);
         if (inodes.isEmpty()) {
             throw FileNotFoundChimeraFsException.ofPath(path);
         }
@@ -972,10 +1173,24 @@ public class JdbcFs implements FileSystemProvider {
             }
         }
 
+        DentryCache cache = _dentryCache;
+        if (cache != null && cacheOption == NO_STAT) {
+            Long ino = cache.lookup(parent.ino(), name);
+            if (ino != null) {
+                FsInode inode = new FsInode(this, ino);
+                inode.setParent(parent);
+                return inode;
+            }
+        }
+
+        long stamp = (cache == null) ? 0 : cache.stamp(name);
         FsInode inode = _sqlDriver.inodeOf(parent, name, cacheOption);
         if (inode == null) {
             throw FileNotFoundChimeraFsException.ofFileInDirectory(parent, name);
         }
+        if (cache != null) {
+            cache.populate(parent, name, inode, stamp);
+        }
         fillIdCaches(inode);
         inode.setParent(parent);
         return inode;
@@ -1007,6 +1222,11 @@ public class JdbcFs implements FileSystemProvider {
         return _sqlDriver.find(inode);
     }
 
+    @Override
+    public Map<Long, List<Link>> find(Collection<FsInode> inodes) throws ChimeraFsException {
+        return _sqlDriver.find(inodes);
+    }
+
     @Override
     public void setInodeAttributes(FsInode inode, int level, Stat stat) throws ChimeraFsException {
         inTransaction(status -> {
@@ -1141,6 +1361,7 @@ public class JdbcFs implements FileSystemProvider {
             if (!_sqlDriver.rename(inode, srcDir, source, destDir, dest)) {
                 throw FileNotFoundChimeraFsException.ofPath(source);
             }
+            invalidateDentries(Arrays.asList(new Link(srcDir, source), new Link(destDir, dest)));
             return true;
         });
     }
@@ -1161,6 +1382,12 @@ public class JdbcFs implements FileSystemProvider {
         return _sqlDriver.getInodeLocations(inode);
     }
 
+    @Override
+    public Map<Long, List<StorageLocatable>> getInodeLocations(Collection<FsInode> inodes)
+          throws ChimeraFsException {
+        return _sqlDriver.getInodeLocations(inodes);
+    }
+
     @Override
     public void addInodeLocation(FsInode inode, int type, String location)
           throws ChimeraFsException {
@@ -1326,6 +1553,12 @@ public class JdbcFs implements FileSystemProvider {
         return _sqlDriver.getStorageInfo(inode);
     }
 
+    @Override
+    public Map<Long, InodeStorageInformation> getStorageInfo(Collection<FsInode> inodes)
+          throws ChimeraFsException {
+        return _sqlDriver.getStorageInfo(inodes);
+    }
+
     /*
      * inode checksum handling
      */
@@ -1355,6 +1588,15 @@ public class JdbcFs implements FileSystemProvider {
         return new HashSet<>(_sqlDriver.getInodeChecksums(inode));
     }
 
+    @Override
+    public Map<Long, Set<Checksum>> getInodeChecksums(Collection<FsInode> inodes)
+          throws ChimeraFsException {
+        Map<Long, Set<Checksum>> checksums = new HashMap<>();
+        _sqlDriver.getInodeChecksums(inodes)
+              .forEach((ino, c) -> checksums.put(ino, new HashSet<>(c)));
+        return checksums;
+    }
+
     /**
      * Get inode's Access Control List. An empty list is returned if there are no ACL assigned to
      * the <code>inode</code>.
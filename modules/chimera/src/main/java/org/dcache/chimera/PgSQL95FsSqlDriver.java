@@ -17,9 +17,12 @@
 package org.dcache.chimera;
 
 import com.google.common.base.Throwables;
+import diskCacheV111.util.RetentionPolicy;
 import java.io.File;
 import java.net.SocketException;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -127,7 +130,27 @@ public class PgSQL95FsSqlDriver extends FsSqlDriver {
 
     @Override
     boolean removeInodeIfUnlinked(FsInode inode) {
-        return _jdbc.update("DELETE FROM t_inodes WHERE inumber=? AND inlink = 0", inode.ino()) > 0;
+        List<Stat> stats = _jdbc.query(
+              "DELETE FROM t_inodes WHERE inumber=? AND inlink = 0 "
+                    + "RETURNING iuid,igid,isize,itype,iretention_policy",
+              (rs, rowNum) -> {
+                  Stat stat = new Stat();
+                  stat.setUid(rs.getInt("iuid"));
+                  stat.setGid(rs.getInt("igid"));
+                  stat.setSize(rs.getLong("isize"));
+                  stat.setMode(rs.getInt("itype"));
+                  int rp = rs.getInt("iretention_policy");
+                  if (!rs.wasNull()) {
+                      stat.setRetentionPolicy(RetentionPolicy.getRetentionPolicy(rp));
+                  }
+                  return stat;
+              },
+              inode.ino());
+        if (stats.isEmpty()) {
+            return false;
+        }
+        inodeRemoved(stats.get(0));
+        return true;
     }
 
     /**
@@ -436,4 +459,20 @@ public class PgSQL95FsSqlDriver extends FsSqlDriver {
             }
         }
     }
+
+    /**
+     * Matches the whole set with a single array parameter, such that the statement text does
+     * not depend on the size of the set.
+     */
+    @Override
+    protected String inSet(String column, int size) {
+        return column + " = ANY(?)";
+    }
+
+    @Override
+    protected int bindSet(PreparedStatement ps, int index, String sqlType, Object[] values)
+          throws SQLException {
+        ps.setArray(index, ps.getConnection().createArrayOf(sqlType, values));
+        return index + 1;
+    }
 }
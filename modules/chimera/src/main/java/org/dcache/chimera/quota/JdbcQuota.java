@@ -63,6 +63,8 @@ package org.dcache.chimera.quota;
 import diskCacheV111.util.RetentionPolicy;
 import java.sql.SQLException;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -70,6 +72,7 @@ import javax.sql.DataSource;
 import org.dcache.util.FireAndForgetTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 
 public class JdbcQuota implements QuotaHandler {
 
@@ -81,6 +84,18 @@ public class JdbcQuota implements QuotaHandler {
     private volatile Map<Integer, Quota> groupQuotas;
     private ScheduledExecutorService quotaRefreshExecutor;
 
+    private boolean incrementalUpdate;
+    private long usageFlushInterval = 10;
+    private TimeUnit usageFlushIntervalUnit = TimeUnit.SECONDS;
+
+    /**
+     * Changes in space usage not yet applied to the backend, indexed by retention policy id.
+     * Guarded by usageLock.
+     */
+    private final Object usageLock = new Object();
+    private SortedMap<Integer, long[]> userUsage = new TreeMap<>();
+    private SortedMap<Integer, long[]> groupUsage = new TreeMap<>();
+
     public JdbcQuota(DataSource ds)
           throws SQLException {
         sqlDriver = QuotaSqlDriver.getDriverInstance(ds);
@@ -92,6 +107,33 @@ public class JdbcQuota implements QuotaHandler {
         quotaRefreshExecutor = executor;
     }
 
+    /**
+     * Whether space usage is maintained from changes reported by the file system rather than by
+     * periodically scanning all inodes.
+     */
+    public void setIncrementalUpdate(boolean incremental) {
+        incrementalUpdate = incremental;
+    }
+
+    public void setUsageFlushInterval(long interval) {
+        usageFlushInterval = interval;
+    }
+
+    public void setUsageFlushIntervalUnit(TimeUnit unit) {
+        usageFlushIntervalUnit = unit;
+    }
+
+    @Override
+    public boolean isIncrementalUpdate() {
+        return incrementalUpdate;
+    }
+
+    public void shutdown() {
+        if (incrementalUpdate) {
+            flushUsage();
+        }
+    }
+
     public void scheduleRefreshQuota() {
         ScheduledFuture<?> refreshUserQuota = quotaRefreshExecutor.
               scheduleWithFixedDelay(
@@ -124,6 +166,14 @@ public class JdbcQuota implements QuotaHandler {
                     60000,
                     60000,
                     TimeUnit.MILLISECONDS);
+
+        if (incrementalUpdate) {
+            quotaRefreshExecutor.scheduleWithFixedDelay(
+                  new FireAndForgetTask(this::flushUsage),
+                  usageFlushInterval,
+                  usageFlushInterval,
+                  usageFlushIntervalUnit);
+        }
     }
 
 
@@ -201,15 +251,107 @@ public class JdbcQuota implements QuotaHandler {
         groupQuotas = tmp;
     }
 
+    /**
+     * Recalculates the space used by all users with quota from the inodes table.
+     * <p>
+     * With incremental updates, changes reported before the recalculation starts are already
+     * committed and thus included in the recalculated usage. They are cut off before the
+     * recalculation and discarded once it succeeded. The lock is not held while the
+     * recalculation runs, as it would block all name space updates reporting usage. Changes
+     * committed while the recalculation runs, and changes not yet flushed by other name space
+     * instances, may still be counted twice until the next recalculation.
+     */
     @Override
     public void updateUserQuotas() {
         LOGGER.info("Running updateUserQuotas.");
-        sqlDriver.updateUserQuota();
+        if (incrementalUpdate) {
+            SortedMap<Integer, long[]> pending;
+            synchronized (usageLock) {
+                pending = userUsage;
+                userUsage = new TreeMap<>();
+            }
+            if (!sqlDriver.updateUserQuota()) {
+                synchronized (usageLock) {
+                    addUsage(userUsage, pending);
+                }
+            }
+        } else {
+            sqlDriver.updateUserQuota();
+        }
     }
 
+    /**
+     * Recalculates the space used by all groups with quota from the inodes table. See {@link
+     * #updateUserQuotas} for how pending changes are treated.
+     */
     @Override
     public void updateGroupQuotas() {
         LOGGER.info("Running updateGroupQuotas.");
-        sqlDriver.updateGroupQuota();
+        if (incrementalUpdate) {
+            SortedMap<Integer, long[]> pending;
+            synchronized (usageLock) {
+                pending = groupUsage;
+                groupUsage = new TreeMap<>();
+            }
+            if (!sqlDriver.updateGroupQuota()) {
+                synchronized (usageLock) {
+                    addUsage(groupUsage, pending);
+                }
+            }
+        } else {
+            sqlDriver.updateGroupQuota();
+        }
+    }
+
+    @Override
+    public void addUsage(int uid, int gid, RetentionPolicy rp, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        synchronized (usageLock) {
+            addUsage(userUsage, uid, rp.getId(), delta);
+            addUsage(groupUsage, gid, rp.getId(), delta);
+        }
+    }
+
+    private static void addUsage(Map<Integer, long[]> usage, int id, int rp, long delta) {
+        usage.computeIfAbsent(id, k -> new long[RetentionPolicy.getAllPolicies().length])[rp]
+              += delta;
+    }
+
+    private static void addUsage(Map<Integer, long[]> usage, Map<Integer, long[]> other) {
+        other.forEach((id, delta) -> {
+            for (int rp = 0; rp < delta.length; rp++) {
+                addUsage(usage, id, rp, delta[rp]);
+            }
+        });
+    }
+
+    /**
+     * Applies buffered changes in space usage. Changes that fail to be applied are returned to
+     * the buffer to be retried by the next flush.
+     */
+    @Override
+    public void flushUsage() {
+        SortedMap<Integer, long[]> users;
+        SortedMap<Integer, long[]> groups;
+        synchronized (usageLock) {
+            users = userUsage;
+            groups = groupUsage;
+            userUsage = new TreeMap<>();
+            groupUsage = new TreeMap<>();
+        }
+        try {
+            sqlDriver.addUserUsage(users);
+            users.clear();
+            sqlDriver.addGroupUsage(groups);
+            groups.clear();
+        } catch (DataAccessException e) {
+            LOGGER.warn("Failed to update quota usage: {}", e.getMessage());
+            synchronized (usageLock) {
+                addUsage(userUsage, users);
+                addUsage(groupUsage, groups);
+            }
+        }
     }
 }
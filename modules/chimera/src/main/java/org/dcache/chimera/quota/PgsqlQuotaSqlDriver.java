@@ -96,16 +96,20 @@ public class PgsqlQuotaSqlDriver extends QuotaSqlDriver {
 
     /**
      * Update user quotas
+     *
+     * @return true if usage was recalculated, false if the update failed
      */
     @Override
-    public void updateUserQuota() {
+    public boolean updateUserQuota() {
         try {
             jdbc.update(UPDATE_USER_QUOTAS_SQL);
+            return true;
         } catch (DataAccessException e) {
             Throwable cause = Throwables.getRootCause(e);
             if (cause instanceof SocketException) {
                 LOGGER.warn("User quotas update interrupted {}", e.getMessage());
             }
+            return false;
         }
     }
 
@@ -125,16 +129,20 @@ public class PgsqlQuotaSqlDriver extends QuotaSqlDriver {
 
     /**
      * Update group quotas
+     *
+     * @return true if usage was recalculated, false if the update failed
      */
     @Override
-    public void updateGroupQuota() {
+    public boolean updateGroupQuota() {
         try {
             jdbc.update(UPDATE_GROUP_QUOTAS_SQL);
+            return true;
         } catch (DataAccessException e) {
             Throwable cause = Throwables.getRootCause(e);
             if (cause instanceof SocketException) {
                 LOGGER.warn("Group quotas update interrupted {}", e.getMessage());
             }
+            return false;
         }
     }
 }
@@ -146,4 +146,22 @@ public interface QuotaHandler {
 
     void scheduleRefreshQuota();
 
+    /**
+     * Returns true if space usage is maintained by applying changes reported through {@link
+     * #addUsage}, in which case {@link #updateUserQuotas} and {@link #updateGroupQuotas} only
+     * serve to correct drift.
+     */
+    boolean isIncrementalUpdate();
+
+    /**
+     * Record a change in the space used by files of a user and group. Recorded changes are
+     * buffered and periodically applied to the backend.
+     */
+    void addUsage(int uid, int gid, RetentionPolicy rp, long delta);
+
+    /**
+     * Apply buffered changes in space usage to the backend.
+     */
+    void flushUsage();
+
 }
@@ -60,16 +60,20 @@ documents or software obtained from this server.
 
 package org.dcache.chimera.quota;
 
+import diskCacheV111.util.RetentionPolicy;
 import java.math.BigDecimal;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.ServiceLoader;
 import javax.sql.DataSource;
 import org.dcache.chimera.quota.spi.DbDriverProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 public class QuotaSqlDriver {
@@ -123,12 +127,16 @@ public class QuotaSqlDriver {
 
     /**
      * Update user quotas
+     *
+     * @return true if usage was recalculated, false if the update failed
      */
-    public void updateUserQuota() {
+    public boolean updateUserQuota() {
         try {
             jdbc.update(UPDATE_USER_QUOTAS_SQL);
+            return true;
         } catch (DataAccessException e) {
             LOGGER.error("Failed to update user quotas {}", e.getMessage());
+            return false;
         }
     }
 
@@ -153,15 +161,81 @@ public class QuotaSqlDriver {
 
     /**
      * Update group quotas
+     *
+     * @return true if usage was recalculated, false if the update failed
      */
-    public void updateGroupQuota() {
+    public boolean updateGroupQuota() {
         try {
             jdbc.update(UPDATE_GROUP_QUOTAS_SQL);
+            return true;
         } catch (DataAccessException e) {
             LOGGER.error("Failed to update group quotas {}", e.getMessage());
+            return false;
         }
     }
 
+    private static final String ADD_USER_USAGE_SQL =
+          "UPDATE t_user_quota SET " +
+                "icustodial_used = icustodial_used + ?, " +
+                "ioutput_used = ioutput_used + ?, " +
+                "ireplica_used = ireplica_used + ? " +
+                "WHERE iuid = ?";
+
+    /**
+     * Add changes in space usage to user quotas. The changes are indexed by retention policy id.
+     * Users without quota are ignored.
+     */
+    public void addUserUsage(SortedMap<Integer, long[]> usage) {
+        addUsage(ADD_USER_USAGE_SQL, usage);
+    }
+
+    private static final String ADD_GROUP_USAGE_SQL =
+          "UPDATE t_group_quota SET " +
+                "icustodial_used = icustodial_used + ?, " +
+                "ioutput_used = ioutput_used + ?, " +
+                "ireplica_used = ireplica_used + ? " +
+                "WHERE igid = ?";
+
+    /**
+     * Add changes in space usage to group quotas. The changes are indexed by retention policy id.
+     * Groups without quota are ignored.
+     */
+    public void addGroupUsage(SortedMap<Integer, long[]> usage) {
+        addUsage(ADD_GROUP_USAGE_SQL, usage);
+    }
+
+    /**
+     * Applies all changes in a single transaction. Rows are updated in the order of the map such
+     * that concurrent updates from several instances lock rows in the same order.
+     */
+    private void addUsage(String query, SortedMap<Integer, long[]> usage) {
+        if (usage.isEmpty()) {
+            return;
+        }
+        jdbc.execute((ConnectionCallback<Void>) con -> {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(query)) {
+                for (Map.Entry<Integer, long[]> e : usage.entrySet()) {
+                    long[] delta = e.getValue();
+                    ps.setLong(1, delta[RetentionPolicy.CUSTODIAL.getId()]);
+                    ps.setLong(2, delta[RetentionPolicy.OUTPUT.getId()]);
+                    ps.setLong(3, delta[RetentionPolicy.REPLICA.getId()]);
+                    ps.setInt(4, e.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
     private static final String SELECT_USER_QUOTAS_SQL =
           "SELECT iuid, " +
                 "icustodial_used, icustodial_limit, " +
@@ -0,0 +1,172 @@
+package org.dcache.chimera;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+public class DentryCacheTest extends ChimeraTestCaseHelper {
+
+    private DentryCache _cache;
+    private final List<String> _invalidated = new ArrayList<>();
+
+    @Before
+    public void setUpCache() {
+        _cache = new DentryCache(1000, 1, TimeUnit.HOURS);
+        ((JdbcFs) _fs).setDentryCache(_cache);
+        ((JdbcFs) _fs).setDentryInvalidationListener(this::invalidated);
+    }
+
+    private void invalidated(Collection<Link> links) {
+        links.stream()
+              .map(l -> l.getParent().ino() + "/" + l.getName())
+              .collect(Collectors.toCollection(() -> _invalidated));
+    }
+
+    @Test
+    public void shouldResolveRepeatedLookupsFromCache() throws Exception {
+        FsInode dir = _rootInode.mkdir("a").mkdir("b").mkdir("c");
+        FsInode file = dir.create("file", 0, 0, 0644);
+
+        assertThat(_fs.path2inode("/a/b/c/file").ino(), is(file.ino()));
+        long misses = _cache.getStats().missCount();
+        long hits = _cache.getStats().hitCount();
+
+        assertThat(_fs.path2inode("/a/b/c/file").ino(), is(file.ino()));
+        assertThat(_cache.getStats().missCount(), is(misses));
+        assertThat(_cache.getStats().hitCount(), is(hits + 4));
+    }
+
+    @Test
+    public void shouldReturnInodesAlongPathFromCache() throws Exception {
+        FsInode a = _rootInode.mkdir("a");
+        FsInode b = a.mkdir("b");
+
+        _fs.path2inodes("/a/b");
+        List<FsInode> inodes = _fs.path2inodes("/a/b");
+
+        assertThat(inodes.stream().map(FsInode::ino).collect(Collectors.toList()),
+              contains(_rootInode.ino(), a.ino(), b.ino()));
+    }
+
+    @Test
+    public void shouldReturnStatOfCachedPathElements() throws Exception {
+        FsInode a = _rootInode.mkdir("a");
+        FsInode file = a.create("file", 1000, 2000, 0644);
+        _fs.path2inodes("/a/file");
+
+        List<FsInode> inodes = _fs.path2inodes("/a/file");
+
+        assertThat(inodes.get(1).getStatCache().getIno(), is(a.ino()));
+        assertThat(inodes.get(2).getStatCache().getIno(), is(file.ino()));
+        assertThat(inodes.get(2).getStatCache().getUid(), is(1000));
+        assertThat(inodes.get(2).getStatCache().getGid(), is(2000));
+    }
+
+    @Test(expected = FileNotFoundChimeraFsException.class)
+    public void shouldNotResolveEntryRemovedByOtherInstance() throws Exception {
+        FsInode dir = _rootInode.mkdir("a");
+        dir.create("file", 0, 0, 0644);
+        _fs.path2inode("/a/file");
+
+        try (JdbcFs other = new JdbcFs(_dataSource,
+              new DataSourceTransactionManager(_dataSource))) {
+            other.remove("/a/file");
+        }
+
+        _fs.path2inode("/a/file");
+    }
+
+    @Test(expected = FileNotFoundChimeraFsException.class)
+    public void shouldInvalidateRemovedEntry() throws Exception {
+        FsInode dir = _rootInode.mkdir("a");
+        dir.create("file", 0, 0, 0644);
+        _fs.path2inode("/a/file");
+
+        _fs.remove("/a/file");
+
+        _fs.path2inode("/a/file");
+    }
+
+    @Test
+    public void shouldResolveRecreatedEntry() throws Exception {
+        FsInode dir = _rootInode.mkdir("a");
+        FsInode file = dir.create("file", 0, 0, 0644);
+        _fs.path2inode("/a/file");
+
+        _fs.remove(dir, "file", file);
+        FsInode newFile = dir.create("file", 0, 0, 0644);
+
+        assertThat(_fs.path2inode("/a/file").ino(), is(newFile.ino()));
+        assertThat(_invalidated, contains(dir.ino() + "/file"));
+    }
+
+    @Test
+    public void shouldInvalidateAllLinksOfRemovedInode() throws Exception {
+        FsInode dir = _rootInode.mkdir("a");
+        FsInode file = dir.create("file", 0, 0, 0644);
+        _fs.createHLink(_rootInode, file, "link");
+        _fs.path2inode("/a/file");
+        _fs.path2inode("/link");
+
+        _fs.remove(file);
+
+        assertThat(_invalidated,
+              containsInAnyOrder(dir.ino() + "/file", _rootInode.ino() + "/link"));
+        assertThat(_cache.lookup(dir.ino(), "file"), is((Long) null));
+        assertThat(_cache.lookup(_rootInode.ino(), "link"), is((Long) null));
+    }
+
+    @Test
+    public void shouldInvalidateSourceAndDestinationOfRename() throws Exception {
+        FsInode dir = _rootInode.mkdir("a");
+        FsInode source = dir.create("source", 0, 0, 0644);
+        FsInode dest = dir.create("dest", 0, 0, 0644);
+        _fs.path2inode("/a/source");
+        _fs.path2inode("/a/dest");
+
+        _fs.rename(source, dir, "source", dir, "dest");
+
+        assertThat(_fs.path2inode("/a/dest").ino(), is(source.ino()));
+        assertThat(_fs.path2inode("/a/dest").ino(), is(not(dest.ino())));
+        assertThat(_invalidated, contains(dir.ino() + "/source", dir.ino() + "/dest"));
+    }
+
+    @Test
+    public void shouldNotCacheSymbolicLinks() throws Exception {
+        FsInode dir = _rootInode.mkdir("a");
+        FsInode target = dir.mkdir("target");
+        FsInode file = target.create("file", 0, 0, 0644);
+        _fs.createLink(dir, "link", 0, 0, 0777, "target".getBytes(UTF_8));
+
+        assertThat(_fs.path2inode("/a/link/file").ino(), is(file.ino()));
+        assertThat(_fs.path2inode("/a/link/file").ino(), is(file.ino()));
+        assertThat(_cache.lookup(dir.ino(), "link"), is((Long) null));
+    }
+
+    @Test
+    public void shouldCountStaleEntriesOnRemoteInvalidation() throws Exception {
+        FsInode dir = _rootInode.mkdir("a");
+        _fs.path2inode("/a");
+
+        _cache.invalidateRemote(_rootInode.ino(), "a", System.currentTimeMillis());
+        _cache.invalidateRemote(_rootInode.ino(), "a", System.currentTimeMillis());
+
+        assertThat(_cache.getRemoteInvalidations(), is(2L));
+        assertThat(_cache.getStaleEntries(), is(1L));
+        assertThat(_fs.path2inode("/a").ino(), is(dir.ino()));
+        assertThat(_cache.size(), is(greaterThan(0L)));
+    }
+}
@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.ListenableFuture;
+import diskCacheV111.util.RetentionPolicy;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -30,12 +31,18 @@ import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.dcache.acl.ACE;
@@ -44,6 +51,9 @@ import org.dcache.acl.enums.AceType;
 import org.dcache.acl.enums.RsType;
 import org.dcache.acl.enums.Who;
 import org.dcache.chimera.posix.Stat;
+import org.dcache.chimera.quota.JdbcQuota;
+import org.dcache.chimera.quota.Quota;
+import org.dcache.chimera.store.InodeStorageInformation;
 import org.dcache.util.Checksum;
 import org.dcache.util.ChecksumType;
 import org.junit.Ignore;
@@ -776,6 +786,59 @@ public class JdbcFsTest extends ChimeraTestCaseHelper {
         assertHasChecksum(new Checksum(ChecksumType.getChecksumType(2), sum2), fileInode);
     }
 
+    @Test
+    public void testId2Inodes() throws Exception {
+        FsInode base = _rootInode.mkdir("junit");
+        FsInode file1 = base.create("file1", 0, 0, 0644);
+        FsInode file2 = base.create("file2", 1, 2, 0644);
+
+        List<String> ids = IntStream.range(0, 1500)
+              .mapToObj(i -> Strings.padStart(Integer.toHexString(i), 36, 'F'))
+              .collect(Collectors.toList());
+        ids.add(file1.getId());
+        ids.add(file2.getId());
+
+        Map<String, FsInode> inodes = _fs.id2inodes(ids);
+
+        assertThat(inodes.keySet(), containsInAnyOrder(file1.getId(), file2.getId()));
+        assertEquals(file2.ino(), inodes.get(file2.getId()).ino());
+        assertEquals(2, inodes.get(file2.getId()).getStatCache().getGid());
+    }
+
+    @Test
+    public void testBulkLocationsChecksumsAndStorageInfo() throws Exception {
+        FsInode base = _rootInode.mkdir("junit");
+        FsInode file1 = base.create("file1", 0, 0, 0644);
+        FsInode file2 = base.create("file2", 0, 0, 0644);
+        FsInode file3 = base.create("file3", 0, 0, 0644);
+        _fs.addInodeLocation(file1, StorageGenericLocation.DISK, "pool1");
+        _fs.addInodeLocation(file1, StorageGenericLocation.DISK, "pool2");
+        _fs.addInodeLocation(file2, StorageGenericLocation.TAPE, "osm://tape/1");
+        _fs.setInodeChecksum(file2, 1, "abc");
+        _fs.setStorageInfo(file2, new InodeStorageInformation(file2, "osm", "sg", "ssg"));
+
+        List<FsInode> inodes = Arrays.asList(file1, file2, file3);
+
+        Map<Long, List<StorageLocatable>> locations = _fs.getInodeLocations(inodes);
+        assertThat(locations.keySet(), containsInAnyOrder(file1.ino(), file2.ino()));
+        assertThat(locations.get(file1.ino()).stream().map(StorageLocatable::location)
+              .collect(Collectors.toList()), containsInAnyOrder("pool1", "pool2"));
+        assertEquals(StorageGenericLocation.TAPE, locations.get(file2.ino()).get(0).type());
+
+        Map<Long, Set<Checksum>> checksums = _fs.getInodeChecksums(inodes);
+        assertThat(checksums.keySet(), containsInAnyOrder(file2.ino()));
+        assertThat(checksums.get(file2.ino()),
+              containsInAnyOrder(new Checksum(ChecksumType.getChecksumType(1), "abc")));
+
+        Map<Long, InodeStorageInformation> storageInfo = _fs.getStorageInfo(inodes);
+        assertThat(storageInfo.keySet(), containsInAnyOrder(file2.ino()));
+        assertEquals("sg", storageInfo.get(file2.ino()).storageGroup());
+
+        Map<Long, List<Link>> links = _fs.find(inodes);
+        assertEquals("file3", links.get(file3.ino()).get(0).getName());
+        assertEquals(base.ino(), links.get(file3.ino()).get(0).getParent().ino());
+    }
+
     @Test
     public void testResolveLinkOnPathToId() throws Exception {
 
@@ -901,6 +964,116 @@ public class JdbcFsTest extends ChimeraTestCaseHelper {
         assertTrue("change count is not updated", inode.stat().getGeneration() != oldChage);
     }
 
+    @Test
+    public void testIncrementalQuotaUsage() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            JdbcQuota quota = new JdbcQuota(_dataSource);
+            quota.setQuotaRefreshExecutor(executor);
+            quota.setIncrementalUpdate(true);
+            quota.setUsageFlushIntervalUnit(TimeUnit.HOURS);
+            quota.createUserQuota(new Quota(1, 0, null, 0, null, 0, null));
+            quota.createGroupQuota(new Quota(2, 0, null, 0, null, 0, null));
+            ((JdbcFs) _fs).setQuota(quota);
+            ((JdbcFs) _fs).setQuotaEnabled(true);
+
+            FsInode custodial = _rootInode.create("custodial", 1, 2, 0644);
+            FsInode replica = _rootInode.create("replica", 1, 2, 0644);
+
+            Stat stat = new Stat();
+            stat.setSize(100);
+            stat.setRetentionPolicy(RetentionPolicy.CUSTODIAL);
+            _fs.setInodeAttributes(custodial, 0, stat);
+
+            stat = new Stat();
+            stat.setSize(50);
+            stat.setRetentionPolicy(RetentionPolicy.REPLICA);
+            _fs.setInodeAttributes(replica, 0, stat);
+
+            stat = new Stat();
+            stat.setSize(150);
+            _fs.setInodeAttributes(custodial, 0, stat);
+
+            _fs.remove(_rootInode, "replica", replica);
+
+            quota.flushUsage();
+            quota.refreshUserQuotas();
+            quota.refreshGroupQuotas();
+
+            Quota user = quota.getUserQuotas().get(1);
+            Quota group = quota.getGroupQuotas().get(2);
+            assertEquals(150, user.getUsedCustodialSpace());
+            assertEquals(0, user.getUsedReplicaSpace());
+            assertEquals(150, group.getUsedCustodialSpace());
+            assertEquals(0, group.getUsedReplicaSpace());
+
+            quota.updateUserQuotas();
+            quota.refreshUserQuotas();
+            assertEquals(150, quota.getUserQuotas().get(1).getUsedCustodialSpace());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIncrementalQuotaUsageOnRemove() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            JdbcQuota quota = new JdbcQuota(_dataSource);
+            quota.setQuotaRefreshExecutor(executor);
+            quota.setIncrementalUpdate(true);
+            quota.setUsageFlushIntervalUnit(TimeUnit.HOURS);
+            quota.createUserQuota(new Quota(1, 0, null, 0, null, 0, null));
+            ((JdbcFs) _fs).setQuota(quota);
+            ((JdbcFs) _fs).setQuotaEnabled(true);
+
+            FsInode inode = _rootInode.create("file", 1, 2, 0644);
+            Stat stat = new Stat();
+            stat.setSize(100);
+            stat.setRetentionPolicy(RetentionPolicy.CUSTODIAL);
+            _fs.setInodeAttributes(inode, 0, stat);
+
+            quota.flushUsage();
+            quota.refreshUserQuotas();
+            assertEquals(100, quota.getUserQuotas().get(1).getUsedCustodialSpace());
+
+            _fs.remove(_rootInode, "file", inode);
+
+            quota.flushUsage();
+            quota.refreshUserQuotas();
+            assertEquals(0, quota.getUserQuotas().get(1).getUsedCustodialSpace());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQuotaRecalculationDiscardsPendingUsage() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            JdbcQuota quota = new JdbcQuota(_dataSource);
+            quota.setQuotaRefreshExecutor(executor);
+            quota.setIncrementalUpdate(true);
+            quota.setUsageFlushIntervalUnit(TimeUnit.HOURS);
+            quota.createUserQuota(new Quota(1, 0, null, 0, null, 0, null));
+            ((JdbcFs) _fs).setQuota(quota);
+            ((JdbcFs) _fs).setQuotaEnabled(true);
+
+            FsInode inode = _rootInode.create("file", 1, 2, 0644);
+            Stat stat = new Stat();
+            stat.setSize(100);
+            stat.setRetentionPolicy(RetentionPolicy.CUSTODIAL);
+            _fs.setInodeAttributes(inode, 0, stat);
+
+            quota.updateUserQuotas();
+            quota.flushUsage();
+            quota.refreshUserQuotas();
+            assertEquals(100, quota.getUserQuotas().get(1).getUsedCustodialSpace());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testSetAcl() throws Exception {
         FsInode dirInode = _rootInode.mkdir("testDir", 0, 0, 0755);
@@ -1129,6 +1302,58 @@ public class JdbcFsTest extends ChimeraTestCaseHelper {
         }
     }
 
+    @Test
+    public void testChunkedDirectoryStream() throws Exception {
+        FsInode dir = _rootInode.mkdir("junit");
+        for (int i = 0; i < 25; i++) {
+            dir.create(String.format("file%02d", i), 0, 0, 0644);
+        }
+
+        List<String> names;
+        try (DirectoryStreamB<ChimeraDirectoryEntry> stream =
+              _fs.newDirectoryStream(dir, null, 0, 10)) {
+            names = stream.stream().map(ChimeraDirectoryEntry::getName)
+                  .collect(Collectors.toList());
+        }
+
+        assertEquals(25, names.size());
+        assertEquals("file00", names.get(0));
+        assertEquals("file24", names.get(24));
+        assertEquals(names.stream().sorted().collect(Collectors.toList()), names);
+    }
+
+    @Test
+    public void testChunkedDirectoryStreamWithSkip() throws Exception {
+        FsInode dir = _rootInode.mkdir("junit");
+        for (int i = 0; i < 10; i++) {
+            dir.create(String.format("file%02d", i), 0, 0, 0644);
+        }
+
+        try (DirectoryStreamB<ChimeraDirectoryEntry> stream =
+              _fs.newDirectoryStream(dir, null, 7, 2)) {
+            assertEquals(Arrays.asList("file07", "file08", "file09"),
+                  stream.stream().map(ChimeraDirectoryEntry::getName)
+                        .collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testChunkedDirectoryStreamResumesAfterName() throws Exception {
+        FsInode dir = _rootInode.mkdir("junit");
+        for (int i = 0; i < 10; i++) {
+            dir.create(String.format("file%02d", i), 0, 0, 0644);
+        }
+
+        try (DirectoryStreamB<ChimeraDirectoryEntry> stream =
+              _fs.newDirectoryStream(dir, "file05", 1, 3)) {
+            List<ChimeraDirectoryEntry> entries = stream.stream().collect(Collectors.toList());
+            assertEquals(Arrays.asList("file07", "file08", "file09"),
+                  entries.stream().map(ChimeraDirectoryEntry::getName)
+                        .collect(Collectors.toList()));
+            assertEquals(dir.ino(), entries.get(0).getInode().getParent().ino());
+        }
+    }
+
     private void assertHasChecksum(Checksum expectedChecksum, FsInode inode) throws Exception {
         for (Checksum checksum : _fs.getInodeChecksums(inode)) {
             if (checksum.equals(expectedChecksum)) {
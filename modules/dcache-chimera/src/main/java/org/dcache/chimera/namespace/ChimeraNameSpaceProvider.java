@@ -28,6 +28,7 @@ import static org.dcache.namespace.FileAttribute.STORAGEINFO;
 import static org.dcache.namespace.FileAttribute.TYPE;
 import static org.dcache.namespace.FileAttribute.XATTR;
 
+import com.google.common.collect.BoundType;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -101,11 +102,13 @@ import org.dcache.chimera.StorageGenericLocation;
 import org.dcache.chimera.StorageLocatable;
 import org.dcache.chimera.UnixPermission;
 import org.dcache.chimera.posix.Stat;
+import org.dcache.chimera.store.InodeStorageInformation;
 import org.dcache.commons.stats.MonitoringProxy;
 import org.dcache.commons.stats.RequestCounters;
 import org.dcache.commons.stats.RequestExecutionTimeGauges;
 import org.dcache.namespace.CreateOption;
 import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileAttributesHandler;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
 import org.dcache.namespace.PermissionHandler;
@@ -157,6 +160,7 @@ public class ChimeraNameSpaceProvider
     private PermissionHandler _permissionHandler;
     private String _uploadDirectory;
     private String _uploadSubDirectory;
+    private int _listQuerySize;
 
     private final ThreadLocal<Integer> threadId = new ThreadLocal<Integer>() {
         private final AtomicInteger counter = new AtomicInteger();
@@ -228,6 +232,15 @@ public class ChimeraNameSpaceProvider
         _uploadSubDirectory = path;
     }
 
+    /**
+     * Maximum number of directory entries fetched by a single query when listing a directory. If
+     * zero, a directory is listed by a single query.
+     */
+    public void setListQuerySize(int size) {
+        checkArgument(size >= 0, "List query size must not be negative");
+        _listQuerySize = size;
+    }
+
     private void checkLookupPermissions(Subject subject, List<FsInode> inodes, String path)
           throws ChimeraFsException, CacheException {
         for (FsInode inode : inodes) {
@@ -1097,6 +1110,107 @@ public class ChimeraNameSpaceProvider
         }
     }
 
+    /**
+     * Attributes for which the storage info extractor consults the tags of the parent
+     * directory.
+     */
+    private static final Set<FileAttribute> PARENT_TAG_ATTRIBUTES =
+          EnumSet.of(ACCESS_LATENCY, RETENTION_POLICY, STORAGEINFO, STORAGECLASS, CACHECLASS, HSM);
+
+    /**
+     * Attributes that are derived from the location of a file.
+     */
+    private static final Set<FileAttribute> LOCATION_ATTRIBUTES =
+          EnumSet.of(LOCATIONS, SIZE, STORAGEINFO, STORAGECLASS, CACHECLASS, HSM);
+
+    @Override
+    public void getFileAttributes(Subject subject, Collection<PnfsId> pnfsIds,
+          Set<FileAttribute> attr, FileAttributesHandler<PnfsId> handler)
+          throws CacheException {
+        boolean isExempt = Subjects.isExemptFromNamespaceChecks(subject);
+        Set<FileAttribute> required = EnumSet.noneOf(FileAttribute.class);
+        required.addAll(attr);
+        if (!isExempt) {
+            required.addAll(_permissionHandler.getRequiredAttributes());
+        }
+
+        try {
+            Map<String, ExtendedInode> inodes = new HashMap<>();
+            _fs.id2inodes(pnfsIds.stream().map(PnfsId::toString).collect(Collectors.toSet()))
+                  .forEach((id, inode) -> inodes.put(id, new ExtendedInode(_fs, inode)));
+            prefetch(inodes.values(), required);
+
+            for (PnfsId pnfsId : pnfsIds) {
+                ExtendedInode inode = inodes.get(pnfsId.toString());
+                try {
+                    if (inode == null) {
+                        throw new FileNotFoundCacheException(
+                              "No such file or directory: " + pnfsId);
+                    }
+                    FileAttributes fileAttributes = getFileAttributes(inode, required);
+                    if (!isExempt && _permissionHandler.canGetAttributes(subject, fileAttributes,
+                          attr) != ACCESS_ALLOWED) {
+                        throw new PermissionDeniedCacheException("Access denied: " + pnfsId);
+                    }
+                    handler.addEntry(pnfsId, fileAttributes);
+                } catch (FileNotFoundChimeraFsException e) {
+                    handler.addError(pnfsId,
+                          new FileNotFoundCacheException("No such file or directory: " + pnfsId));
+                } catch (CacheException e) {
+                    handler.addError(pnfsId, e);
+                } catch (IOException e) {
+                    handler.addError(pnfsId, new CacheException(
+                          CacheException.UNEXPECTED_SYSTEM_EXCEPTION, e.getMessage()));
+                }
+            }
+        } catch (IOException e) {
+            throw new CacheException(CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
+                  e.getMessage());
+        }
+    }
+
+    /**
+     * Fills the caches of the given inodes with the data needed to derive {@code attr}, using one
+     * query per kind of data rather than one per inode. Inodes sharing a parent directory also
+     * share the parent's cached tags.
+     */
+    private void prefetch(Collection<ExtendedInode> inodes, Set<FileAttribute> attr)
+          throws ChimeraFsException {
+        if (inodes.isEmpty()) {
+            return;
+        }
+        List<FsInode> list = new ArrayList<>(inodes);
+        if (attr.contains(CHECKSUM)) {
+            Map<Long, Set<Checksum>> checksums = _fs.getInodeChecksums(list);
+            for (ExtendedInode inode : inodes) {
+                inode.setChecksums(checksums.getOrDefault(inode.ino(), Collections.emptySet()));
+            }
+        }
+        if (!Collections.disjoint(attr, LOCATION_ATTRIBUTES)) {
+            Map<Long, List<StorageLocatable>> locations = _fs.getInodeLocations(list);
+            for (ExtendedInode inode : inodes) {
+                inode.setLocations(locations.getOrDefault(inode.ino(), Collections.emptyList()));
+            }
+        }
+        if (!Collections.disjoint(attr, PARENT_TAG_ATTRIBUTES)) {
+            Map<Long, InodeStorageInformation> storageInfo = _fs.getStorageInfo(list);
+            Map<Long, List<org.dcache.chimera.Link>> links = _fs.find(list);
+            Map<Long, ExtendedInode> parents = new HashMap<>();
+            for (ExtendedInode inode : inodes) {
+                InodeStorageInformation info = storageInfo.get(inode.ino());
+                if (info != null) {
+                    inode.setStorageInfo(info);
+                }
+                List<org.dcache.chimera.Link> parentLinks = links.get(inode.ino());
+                if (parentLinks != null && !parentLinks.isEmpty()) {
+                    FsInode parent = parentLinks.get(0).getParent();
+                    inode.setParent(parents.computeIfAbsent(parent.ino(),
+                          ino -> new ExtendedInode(_fs, parent)));
+                }
+            }
+        }
+    }
+
     @Override
     public FileAttributes setFileAttributes(Subject subject, PnfsId pnfsId,
           FileAttributes attr, Set<FileAttribute> acquire)
@@ -1257,6 +1371,23 @@ public class ChimeraNameSpaceProvider
     public void list(Subject subject, String path, Glob glob, Range<Integer> range,
           Set<FileAttribute> attrs, ListHandler handler)
           throws CacheException {
+        list(subject, path, glob, range, null, attrs, handler);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Resuming a listing is only supported with chunked listing, as only then are entries
+     * returned in name order. Names are compared by the database, using its collation.
+     */
+    @Override
+    public void list(Subject subject, String path, Glob glob, Range<Integer> range,
+          String resumeAfter, Set<FileAttribute> attrs, ListHandler handler)
+          throws CacheException {
+        if (resumeAfter != null && _listQuerySize == 0) {
+            throw new InvalidMessageCacheException(
+                  "Resuming a directory listing requires a positive list query size");
+        }
         try {
             Pattern pattern = (glob == null) ? null : glob.toPattern();
             ExtendedInode dir = pathToInode(subject, path);
@@ -1275,10 +1406,21 @@ public class ChimeraNameSpaceProvider
                 }
             }
 
+            /* With chunked listing, leading entries outside the range are skipped by the
+             * database, unless a pattern has to be matched first.
+             */
             int counter = 0;
-            try (DirectoryStreamB<ChimeraDirectoryEntry> dirStream = dir
-                  .newDirectoryStream()) {
+            if (_listQuerySize > 0 && pattern == null && range.hasLowerBound()) {
+                counter = Math.max(0, range.lowerBoundType() == BoundType.OPEN
+                      ? range.lowerEndpoint() + 1 : range.lowerEndpoint());
+            }
+            try (DirectoryStreamB<ChimeraDirectoryEntry> dirStream = (_listQuerySize > 0)
+                  ? _fs.newDirectoryStream(dir, resumeAfter, counter, _listQuerySize)
+                  : dir.newDirectoryStream()) {
                 for (ChimeraDirectoryEntry entry : dirStream) {
+                    if (isAboveRange(range, counter)) {
+                        break;
+                    }
                     try {
                         String name = entry.getName();
                         if (!name.equals(".") && !name.equals("..") &&
@@ -1311,6 +1453,11 @@ public class ChimeraNameSpaceProvider
     }
 
 
+    private static boolean isAboveRange(Range<Integer> range, int counter) {
+        return range.hasUpperBound() && !range.contains(counter)
+              && counter >= range.upperEndpoint();
+    }
+
     @Override
     public void listVirtualDirectory(Subject subject, String path, Range<Integer> range,
                      Set<FileAttribute> attrs, ListHandler handler)
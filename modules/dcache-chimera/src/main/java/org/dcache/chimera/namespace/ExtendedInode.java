@@ -26,6 +26,7 @@ import com.google.common.io.ByteSource;
 import diskCacheV111.util.FsPath;
 import diskCacheV111.util.PnfsId;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -130,6 +131,14 @@ public class ExtendedInode extends FsInode {
         return parent.orElse(null);
     }
 
+    /**
+     * Sets the parent, allowing inodes in the same directory to share the parent and its cached
+     * data.
+     */
+    void setParent(ExtendedInode parent) {
+        this.parent = Optional.ofNullable(parent);
+    }
+
     public PnfsId getPnfsId() throws ChimeraFsException {
         return new PnfsId(getId());
     }
@@ -160,6 +169,13 @@ public class ExtendedInode extends FsInode {
         return checksums;
     }
 
+    /**
+     * Pre-fills the cached checksums, e.g. with the result of a bulk query.
+     */
+    void setChecksums(Collection<Checksum> checksums) {
+        this.checksums = ImmutableList.copyOf(checksums);
+    }
+
     public ImmutableList<String> getLocations(int type) throws ChimeraFsException {
         return ImmutableList.copyOf(
               getLocations().stream().filter(l -> l.type() == type).map(StorageLocatable::location)
@@ -173,6 +189,13 @@ public class ExtendedInode extends FsInode {
         return locations;
     }
 
+    /**
+     * Pre-fills the cached locations, e.g. with the result of a bulk query.
+     */
+    void setLocations(List<StorageLocatable> locations) {
+        this.locations = ImmutableList.copyOf(locations);
+    }
+
     public ImmutableMap<String, String> getFlags() throws ChimeraFsException {
         if (flags == null) {
             ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
@@ -217,6 +240,13 @@ public class ExtendedInode extends FsInode {
         return storageInfo;
     }
 
+    /**
+     * Pre-fills the cached storage information, e.g. with the result of a bulk query.
+     */
+    void setStorageInfo(InodeStorageInformation storageInfo) {
+        this.storageInfo = storageInfo;
+    }
+
     public FsPath getPath() throws ChimeraFsException {
         return FsPath.create(_fs.inode2path(this));
     }
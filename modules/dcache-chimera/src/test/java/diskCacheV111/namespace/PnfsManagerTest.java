@@ -18,17 +18,32 @@ import static org.dcache.namespace.FileAttribute.TYPE;
 import static org.dcache.namespace.FileType.DIR;
 import static org.dcache.namespace.FileType.REGULAR;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
-
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Range;
 import com.google.common.io.Resources;
 import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FsPath;
+import diskCacheV111.util.InvalidMessageCacheException;
 import diskCacheV111.util.PnfsId;
 import diskCacheV111.util.RetentionPolicy;
 import diskCacheV111.vehicles.PnfsAddCacheLocationMessage;
@@ -38,23 +53,34 @@ import diskCacheV111.vehicles.PnfsCreateEntryMessage;
 import diskCacheV111.vehicles.PnfsCreateUploadPath;
 import diskCacheV111.vehicles.PnfsDeleteEntryMessage;
 import diskCacheV111.vehicles.PnfsGetCacheLocationsMessage;
+import diskCacheV111.vehicles.PnfsMessage;
 import diskCacheV111.vehicles.PnfsRenameMessage;
 import diskCacheV111.vehicles.StorageInfo;
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.CellEndpoint;
+import dmg.cells.nucleus.CellMessage;
+import dmg.cells.nucleus.CellPath;
+import dmg.cells.nucleus.NoRouteToCellException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import junit.framework.JUnit4TestAdapter;
 import liquibase.Liquibase;
 import liquibase.database.Database;
 import liquibase.database.DatabaseFactory;
 import liquibase.database.jvm.JdbcConnection;
 import liquibase.resource.ClassLoaderResourceAccessor;
+import org.dcache.acl.enums.AccessMask;
 import org.dcache.auth.Subjects;
 import org.dcache.auth.attributes.Restrictions;
 import org.dcache.chimera.ChimeraFsException;
@@ -73,6 +99,7 @@ import org.dcache.util.Checksum;
 import org.dcache.util.ChecksumType;
 import org.dcache.vehicles.FileAttributes;
 import org.dcache.vehicles.PnfsGetFileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributesBatch;
 import org.dcache.vehicles.PnfsSetFileAttributes;
 import org.junit.After;
 import org.junit.Before;
@@ -94,6 +121,7 @@ public class PnfsManagerTest {
     private PnfsManagerV3 _pnfsManager;
     private Connection _conn;
     private FileSystemProvider _fs;
+    private ChimeraNameSpaceProvider _chimera;
 
     @Before
     public void setUp() throws Exception {
@@ -128,7 +156,7 @@ public class PnfsManagerTest {
               dbProperties.getProperty("chimera.db.user"),
               dbProperties.getProperty("chimera.db.password"));
 
-        ChimeraNameSpaceProvider chimera = new ChimeraNameSpaceProvider();
+        ChimeraNameSpaceProvider chimera = _chimera = new ChimeraNameSpaceProvider();
         chimera.setExtractor(new ChimeraOsmStorageInfoExtractor(StorageInfo.DEFAULT_ACCESS_LATENCY,
               StorageInfo.DEFAULT_RETENTION_POLICY));
         chimera.setInheritFileOwnership(true);
@@ -363,6 +391,157 @@ public class PnfsManagerTest {
     }
 
 
+    @Test
+    public void testGetFileAttributesBatch() {
+        List<PnfsId> pnfsIds = new ArrayList<>();
+        for (String name : Arrays.asList("file1", "file2")) {
+            PnfsCreateEntryMessage message = new PnfsCreateEntryMessage(
+                  "/pnfs/testRoot/" + name, FileAttributes.ofFileType(REGULAR));
+            _pnfsManager.createEntry(message);
+            assertThat(message.getReturnCode(), is(0));
+            pnfsIds.add(message.getPnfsId());
+        }
+        PnfsId missing = new PnfsId(FsInode.generateNewID());
+        pnfsIds.add(missing);
+        pnfsIds.add(pnfsIds.get(0));
+
+        PnfsGetFileAttributesBatch message =
+              PnfsGetFileAttributesBatch.ofPnfsIds(pnfsIds, SOME_ATTRIBUTES);
+        _pnfsManager.getFileAttributes(message);
+
+        PnfsGetFileAttributes single = new PnfsGetFileAttributes(pnfsIds.get(1), SOME_ATTRIBUTES);
+        _pnfsManager.getFileAttributes(single);
+        FileAttributes expected = single.getFileAttributes();
+
+        assertThat(message.getReturnCode(), is(0));
+        for (int i : new int[]{0, 1, 3}) {
+            FileAttributes attributes = message.getFileAttributes(i);
+            assertThat(attributes.getPnfsId(), is(pnfsIds.get(i)));
+            assertThat(attributes.getStorageInfo().getStorageClass(),
+                  is(expected.getStorageInfo().getStorageClass()));
+            assertThat(attributes.getStorageInfo().getHsm(),
+                  is(expected.getStorageInfo().getHsm()));
+            assertThat(attributes.getAccessLatency(), is(expected.getAccessLatency()));
+        }
+        assertThat(message.getFileAttributes(1).getStorageInfo().getKey("path"),
+              is(expected.getStorageInfo().getKey("path")));
+        assertThat(message.getFileAttributes(0).getStorageInfo().getKey("path"),
+              is("/pnfs/testRoot/file1"));
+        assertThat(message.getFileAttributes(2), is(nullValue()));
+        assertThat(message.getError(2).getRc(), is(CacheException.FILE_NOT_FOUND));
+    }
+
+    @Test
+    public void testGetFileAttributesBatchByPath() {
+        PnfsCreateEntryMessage create = new PnfsCreateEntryMessage(
+              "/pnfs/testRoot/file", FileAttributes.ofFileType(REGULAR));
+        _pnfsManager.createEntry(create);
+        assertThat(create.getReturnCode(), is(0));
+
+        PnfsGetFileAttributesBatch message = PnfsGetFileAttributesBatch.ofPaths(
+              Arrays.asList("/pnfs/testRoot/file", "/pnfs/testRoot/missing"),
+              EnumSet.of(FileAttribute.PNFSID, FileAttribute.STORAGEINFO));
+        _pnfsManager.getFileAttributes(message);
+
+        assertThat(message.getReturnCode(), is(0));
+        assertThat(message.getFileAttributes(0).getPnfsId(), is(create.getPnfsId()));
+        assertThat(message.getFileAttributes(0).getStorageInfo().getKey("path"),
+              is("/pnfs/testRoot/file"));
+        assertThat(message.getError(1).getRc(), is(CacheException.FILE_NOT_FOUND));
+    }
+
+    @Test
+    public void testGetFileAttributesBatchFetchesAttributesInOneCall() throws Exception {
+        List<PnfsId> pnfsIds = new ArrayList<>();
+        for (String name : Arrays.asList("file1", "file2", "file3")) {
+            PnfsCreateEntryMessage message = new PnfsCreateEntryMessage(
+                  "/pnfs/testRoot/" + name, FileAttributes.ofFileType(REGULAR));
+            _pnfsManager.createEntry(message);
+            assertThat(message.getReturnCode(), is(0));
+            pnfsIds.add(message.getPnfsId());
+        }
+        NameSpaceProvider provider = spy(_chimera);
+        _pnfsManager.setNameSpaceProvider(provider);
+        _pnfsManager.setPermissionHandler(new PosixPermissionHandler());
+
+        PnfsGetFileAttributesBatch message =
+              PnfsGetFileAttributesBatch.ofPnfsIds(pnfsIds, EnumSet.of(TYPE));
+        message.setSubject(Subjects.of(1000, 1000, new int[]{1000}));
+        message.setAccessMask(EnumSet.of(AccessMask.READ_DATA));
+        _pnfsManager.getFileAttributes(message);
+
+        assertThat(message.getReturnCode(), is(0));
+        for (int i = 0; i < pnfsIds.size(); i++) {
+            assertThat(message.getError(i), is(nullValue()));
+            assertThat(message.getFileAttributes(i).getFileType(), is(REGULAR));
+        }
+        verify(provider).getFileAttributes(any(), anyCollection(), any(), any());
+        verify(provider, never()).getFileAttributes(any(), any(PnfsId.class), any());
+        verify(provider, never()).pnfsidToPath(any(), any());
+    }
+
+    @Test
+    public void testGetFileAttributesBatchResolvesStorageInfoPathPerFile() throws Exception {
+        List<PnfsId> pnfsIds = new ArrayList<>();
+        for (String name : Arrays.asList("file1", "file2", "file3")) {
+            PnfsCreateEntryMessage message = new PnfsCreateEntryMessage(
+                  "/pnfs/testRoot/" + name, FileAttributes.ofFileType(REGULAR));
+            _pnfsManager.createEntry(message);
+            assertThat(message.getReturnCode(), is(0));
+            pnfsIds.add(message.getPnfsId());
+        }
+        NameSpaceProvider provider = spy(_chimera);
+        _pnfsManager.setNameSpaceProvider(provider);
+
+        PnfsGetFileAttributesBatch message =
+              PnfsGetFileAttributesBatch.ofPnfsIds(pnfsIds, EnumSet.of(STORAGEINFO));
+        _pnfsManager.getFileAttributes(message);
+
+        assertThat(message.getReturnCode(), is(0));
+        verify(provider).getFileAttributes(any(), anyCollection(), any(), any());
+        verify(provider, times(pnfsIds.size())).pnfsidToPath(any(), any());
+    }
+
+    @Test
+    public void testChunkedListResumesAfterName() throws Exception {
+        for (String name : Arrays.asList("e", "b", "d", "a", "c", "f")) {
+            _fs.createFile("/pnfs/testRoot/" + name);
+        }
+        _chimera.setListQuerySize(2);
+
+        List<String> names = new ArrayList<>();
+        _chimera.list(Subjects.ROOT, "/pnfs/testRoot", null, Range.closedOpen(1, 3), "b",
+              EnumSet.noneOf(FileAttribute.class), (name, attrs) -> names.add(name));
+
+        assertThat(names, contains("d", "e"));
+    }
+
+    @Test
+    public void testChunkedListResumesAfterMixedCaseName() throws Exception {
+        for (String name : Arrays.asList("b", "B", "a", "C", "c", "A")) {
+            _fs.createFile("/pnfs/testRoot/" + name);
+        }
+        _chimera.setListQuerySize(2);
+
+        List<String> all = new ArrayList<>();
+        _chimera.list(Subjects.ROOT, "/pnfs/testRoot", null, Range.all(),
+              EnumSet.noneOf(FileAttribute.class), (name, attrs) -> all.add(name));
+        List<String> names = new ArrayList<>();
+        _chimera.list(Subjects.ROOT, "/pnfs/testRoot", null, Range.all(), all.get(2),
+              EnumSet.noneOf(FileAttribute.class), (name, attrs) -> names.add(name));
+
+        assertThat(names, is(all.subList(3, all.size())));
+    }
+
+    @Test(expected = InvalidMessageCacheException.class)
+    public void testUnchunkedListRejectsResumeAfter() throws Exception {
+        _fs.createFile("/pnfs/testRoot/a");
+        _chimera.setListQuerySize(0);
+
+        _chimera.list(Subjects.ROOT, "/pnfs/testRoot", null, Range.all(), "a",
+              EnumSet.noneOf(FileAttribute.class), (name, attrs) -> fail());
+    }
+
     @Test
     public void testWriteTokenTag() throws ChimeraFsException {
 
@@ -775,6 +954,117 @@ public class PnfsManagerTest {
               stat_after.getATime() == stat_before.getATime());
     }
 
+    @Test
+    public void testShutdownRejectsCoalescedRequests() throws Exception {
+        PnfsId blocking = new PnfsId("000000000000000000000000000000000001");
+        PnfsId queued = new PnfsId("000000000000000000000000000000000002");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        NameSpaceProvider provider = mock(NameSpaceProvider.class);
+        when(provider.getFileAttributes(any(), eq(blocking), any())).thenAnswer(i -> {
+            started.countDown();
+            release.await();
+            return FileAttributes.ofSize(0);
+        });
+        CellEndpoint endpoint = mock(CellEndpoint.class);
+
+        PnfsManagerV3 pnfsManager = new PnfsManagerV3();
+        pnfsManager.setCellEndpoint(endpoint);
+        pnfsManager.setThreads(1);
+        pnfsManager.setListThreads(1);
+        pnfsManager.setCacheModificationRelay(null);
+        pnfsManager.setLogSlowThreshold(0);
+        pnfsManager.setNameSpaceProvider(provider);
+        pnfsManager.setQueueMaxSize(0);
+        pnfsManager.setCoalescing(true);
+        pnfsManager.setDirectoryListLimit(100);
+        pnfsManager.init();
+
+        CellMessage leader = lookupEnvelope(queued);
+        CellMessage waiter = lookupEnvelope(queued);
+        try {
+            pnfsManager.messageArrived(lookupEnvelope(blocking),
+                  new PnfsGetFileAttributes(blocking, EnumSet.of(SIZE)));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            pnfsManager.messageArrived(leader, (PnfsMessage) leader.getMessageObject());
+            pnfsManager.messageArrived(waiter, (PnfsMessage) waiter.getMessageObject());
+        } finally {
+            pnfsManager.shutdown();
+            release.countDown();
+        }
+
+        assertThat(leader.getMessageObject(), is(instanceOf(NoRouteToCellException.class)));
+        assertThat(waiter.getMessageObject(), is(instanceOf(NoRouteToCellException.class)));
+        verify(endpoint).sendMessage(leader);
+        verify(endpoint).sendMessage(waiter);
+    }
+
+    @Test
+    public void testFoldedCoalescingLeaderAnswersWaiters() throws Exception {
+        PnfsId blocking = new PnfsId("000000000000000000000000000000000001");
+        PnfsId file = new PnfsId("000000000000000000000000000000000002");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        NameSpaceProvider provider = mock(NameSpaceProvider.class);
+        when(provider.getFileAttributes(any(), eq(blocking), any())).thenAnswer(i -> {
+            started.countDown();
+            release.await();
+            return FileAttributes.ofSize(0);
+        });
+        when(provider.getFileAttributes(any(), eq(file), any()))
+              .thenReturn(FileAttributes.ofSize(42));
+        CellEndpoint endpoint = mock(CellEndpoint.class);
+
+        PnfsManagerV3 pnfsManager = new PnfsManagerV3();
+        pnfsManager.setCellEndpoint(endpoint);
+        pnfsManager.setThreads(1);
+        pnfsManager.setListThreads(1);
+        pnfsManager.setCacheModificationRelay(null);
+        pnfsManager.setLogSlowThreshold(0);
+        pnfsManager.setNameSpaceProvider(provider);
+        pnfsManager.setQueueMaxSize(0);
+        pnfsManager.setFolding(true);
+        pnfsManager.setCoalescing(true);
+        pnfsManager.setDirectoryListLimit(100);
+        pnfsManager.init();
+
+        CellMessage superset = lookupEnvelope(file, EnumSet.of(SIZE, TYPE));
+        CellMessage leader = lookupEnvelope(file);
+        CellMessage waiter = lookupEnvelope(file);
+        try {
+            pnfsManager.messageArrived(lookupEnvelope(blocking),
+                  new PnfsGetFileAttributes(blocking, EnumSet.of(SIZE)));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            pnfsManager.messageArrived(superset, (PnfsMessage) superset.getMessageObject());
+            pnfsManager.messageArrived(leader, (PnfsMessage) leader.getMessageObject());
+            pnfsManager.messageArrived(waiter, (PnfsMessage) waiter.getMessageObject());
+            release.countDown();
+
+            verify(endpoint, timeout(10_000)).sendMessage(leader);
+            verify(endpoint, timeout(10_000)).sendMessage(waiter);
+            verify(provider, times(1)).getFileAttributes(any(), eq(file), any());
+        } finally {
+            release.countDown();
+            pnfsManager.shutdown();
+        }
+
+        PnfsGetFileAttributes reply = (PnfsGetFileAttributes) waiter.getMessageObject();
+        assertThat(reply.getReturnCode(), is(0));
+        assertThat(reply.getFileAttributes().getSize(), is(42L));
+    }
+
+    private static CellMessage lookupEnvelope(PnfsId pnfsId) {
+        return lookupEnvelope(pnfsId, EnumSet.of(SIZE));
+    }
+
+    private static CellMessage lookupEnvelope(PnfsId pnfsId, Set<FileAttribute> attributes) {
+        PnfsGetFileAttributes message = new PnfsGetFileAttributes(pnfsId, attributes);
+        message.setSubject(Subjects.ROOT);
+        CellMessage envelope = new CellMessage(new CellPath("PnfsManager"), message);
+        envelope.addSourceAddress(new CellAddressCore("door", "local"));
+        return envelope;
+    }
+
     private void assertNotExists(String path) throws ChimeraFsException {
         try {
             _fs.path2inode(path);
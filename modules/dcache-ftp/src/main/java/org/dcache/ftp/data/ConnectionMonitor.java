@@ -1,5 +1,9 @@
 package org.dcache.ftp.data;
 
+/**
+ * Receives notifications about transferred blocks. Notifications may arrive concurrently if the
+ * mode serves data channels from several threads.
+ */
 public interface ConnectionMonitor {
 
     void receivedBlock(long position, long size) throws FTPException;
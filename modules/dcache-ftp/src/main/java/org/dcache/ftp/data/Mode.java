@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import org.dcache.pool.movers.ChecksumChannel;
 import org.dcache.pool.repository.RepositoryChannel;
 import org.dcache.util.Strings;
 import org.slf4j.Logger;
@@ -52,11 +53,32 @@ public abstract class Mode extends AbstractMultiplexerListener {
 
     protected long _fileSize;
 
+    /**
+     * Size of the direct buffer used by transferTo when zero-copy is enabled but cannot be used.
+     */
+    private static final int DIRECT_BUFFER_SIZE = KiB.toBytes(256);
+
     /**
      * Buffer for transferTo and transferFrom.
      */
     private final ByteBuffer _buffer = ByteBuffer.allocate(KiB.toBytes(8));
 
+    /**
+     * Direct buffer for transferTo when zero-copy is enabled but cannot be used. Allocated on
+     * first use.
+     */
+    private ByteBuffer _directBuffer;
+
+    /**
+     * Whether transferTo lets the operating system send file data directly to the socket.
+     */
+    private boolean _zeroCopy;
+
+    /**
+     * Why zero-copy was abandoned, or null if it was not.
+     */
+    private String _zeroCopyFailure;
+
     /**
      * The address to connect to for outgoing connections.
      */
@@ -189,6 +211,22 @@ public abstract class Mode extends AbstractMultiplexerListener {
         _parallelism = value;
     }
 
+    /**
+     * Enables or disables zero-copy sending. When enabled, file data is sent using
+     * RepositoryChannel#transferTo, which for regular files allows the kernel to pass data from
+     * the page cache to the socket without copying it through user space (sendfile on Linux).
+     * <p>
+     * Zero-copy is not used if the file channel computes checksums. Should zero-copy fail, the
+     * mode falls back to copying the data through a large direct buffer for the remainder of the
+     * transfer. Disabled by default.
+     */
+    public void setZeroCopy(boolean value) {
+        _zeroCopy = value && !_file.optionallyAs(ChecksumChannel.class).isPresent();
+        if (value && !_zeroCopy) {
+            _zeroCopyFailure = "file channel computes checksums";
+        }
+    }
+
     /**
      * Returns the starting position of the transfer.
      */
@@ -213,33 +251,60 @@ public abstract class Mode extends AbstractMultiplexerListener {
     /**
      * Like calling _file.transferTo().
      * <p>
-     * This method behaves similarly to FileChannel.transferTo, except that it never uses zero-copy
-     * mode. FileChannel.transferTo has been subject to a large number of bugs throughout the
-     * history of Java.
+     * Unless zero-copy is enabled, this method behaves similarly to FileChannel.transferTo, except
+     * that it never uses zero-copy mode. FileChannel.transferTo has been subject to a large number
+     * of bugs throughout the history of Java, hence zero-copy mode is opt-in and abandoned on the
+     * first failure.
+     * <p>
+     * In contrast to FileChannel.transferTo, this method returns -1 if position is at or beyond the
+     * end of the file.
      */
     protected long transferTo(long position, long count, SocketChannel socket)
           throws IOException {
+        if (_zeroCopy) {
+            try {
+                long nw = _file.transferTo(position, count, socket);
+                if (nw == 0 && position >= _file.size()) {
+                    return -1;
+                }
+                return nw;
+            } catch (IOException | UnsupportedOperationException e) {
+                if (!socket.isOpen()) {
+                    throw e;
+                }
+                LOGGER.debug("Zero-copy transfer failed, falling back to copying: {}",
+                      e.toString());
+                _zeroCopy = false;
+                _zeroCopyFailure = e.toString();
+                _directBuffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+            }
+        }
+        return copy(position, count, socket, (_directBuffer != null) ? _directBuffer : _buffer);
+    }
+
+    private long copy(long position, long count, SocketChannel socket, ByteBuffer buffer)
+          throws IOException {
         long tr = 0;                        // Total bytes read
         long pos = position;
-        _buffer.clear();
+        buffer.clear();
         while (tr < count) {
-            _buffer.limit((int) Math.min((count - tr),
-                  (long) _buffer.capacity()));
-            int nr = _file.read(_buffer, pos);
+            buffer.limit((int) Math.min((count - tr),
+                  (long) buffer.capacity()));
+            int nr = _file.read(buffer, pos);
             if (nr < 0 && tr == 0) {
                 return -1;
             }
             if (nr <= 0) {
                 break;
             }
-            _buffer.flip();
-            int nw = socket.write(_buffer);
+            buffer.flip();
+            int nw = socket.write(buffer);
             tr += nw;
             if (nw != nr) {
                 break;
             }
             pos += nw;
-            _buffer.clear();
+            buffer.clear();
         }
         return tr;
     }
@@ -262,28 +327,37 @@ public abstract class Mode extends AbstractMultiplexerListener {
      */
     protected long transferFrom(SocketChannel socket, long position, long count)
           throws IOException {
+        return transferFrom(socket, position, count, _buffer);
+    }
+
+    /**
+     * Like transferFrom(SocketChannel, long, long), but copies the data through the given buffer.
+     * Data channels served concurrently must each use a buffer of their own.
+     */
+    protected long transferFrom(SocketChannel socket, long position, long count,
+          ByteBuffer buffer) throws IOException {
         long tw = 0;                    // Total bytes written
         long pos = position;
         try {
-            _buffer.clear();
+            buffer.clear();
             while (tw < count) {
-                _buffer.limit((int) Math.min((count - tw),
-                      (long) _buffer.capacity()));
-                int nr = socket.read(_buffer);
+                buffer.limit((int) Math.min((count - tw),
+                      (long) buffer.capacity()));
+                int nr = socket.read(buffer);
                 if (nr < 0 && tw == 0) {
                     return -1;
                 }
                 if (nr <= 0) {
                     break;
                 }
-                _buffer.flip();
-                int nw = _file.write(_buffer, pos);
+                buffer.flip();
+                int nw = _file.write(buffer, pos);
                 tw += nw;
                 if (nw != nr) {
                     break;
                 }
                 pos += nw;
-                _buffer.clear();
+                buffer.clear();
             }
             return tw;
         } catch (IOException x) {
@@ -424,9 +498,11 @@ public abstract class Mode extends AbstractMultiplexerListener {
         SocketChannel channel = server.accept();
         if (channel != null) {
             Socket socket = channel.socket();
-            _opened++;
+            synchronized (this) {
+                _opened++;
+                _addresses.add((InetSocketAddress) socket.getRemoteSocketAddress());
+            }
             LOGGER.debug("Opened {}", socket);
-            _addresses.add((InetSocketAddress) socket.getRemoteSocketAddress());
             channel.configureBlocking(false);
             if (_bufferSize > 0) {
                 channel.socket().setSendBufferSize(_bufferSize);
@@ -450,9 +526,11 @@ public abstract class Mode extends AbstractMultiplexerListener {
             SocketChannel channel = (SocketChannel) key.channel();
             if (channel.finishConnect()) {
                 Socket socket = channel.socket();
-                _opened++;
+                synchronized (this) {
+                    _opened++;
+                    _addresses.add((InetSocketAddress) socket.getLocalSocketAddress());
+                }
                 LOGGER.debug("Opened {}", socket);
-                _addresses.add((InetSocketAddress) socket.getLocalSocketAddress());
                 newConnection(multiplexer, channel);
             }
         } catch (IOException e) {
@@ -483,9 +561,11 @@ public abstract class Mode extends AbstractMultiplexerListener {
         key.cancel();
         channel.close();
 
-        _closed++;
-        if (mayShutdown && _closed == _opened) {
-            multiplexer.shutdown();
+        synchronized (this) {
+            _closed++;
+            if (mayShutdown && _closed == _opened) {
+                multiplexer.shutdown();
+            }
         }
     }
 
@@ -579,6 +659,11 @@ public abstract class Mode extends AbstractMultiplexerListener {
                 break;
         }
         pw.println("Closed connections: " + _closed);
+        if (_zeroCopy) {
+            pw.println("Zero-copy: enabled");
+        } else if (_zeroCopyFailure != null) {
+            pw.println("Zero-copy: not used (" + _zeroCopyFailure + ")");
+        }
 
         if (_size > 0) {
             if (_fileSize > 0) {
@@ -1,6 +1,9 @@
 package org.dcache.ftp.data;
 
+import static org.dcache.util.ByteUnit.BYTES;
+import static org.dcache.util.ByteUnit.KiB;
 import static org.dcache.util.Exceptions.messageOrClassName;
+import static org.dcache.util.Strings.describe;
 import static org.dcache.util.Strings.describeSize;
 import static org.dcache.util.Strings.toThreeSigFig;
 
@@ -9,15 +12,24 @@ import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import org.dcache.pool.repository.RepositoryChannel;
+import org.dcache.util.LineIndentingPrintWriter;
 
 /**
  * Implementation of MODE E.
  * <p>
  * Be aware that it is quite easy to introduce race conditions, so please keep this in mind when
  * making changes. In particular the EOD and EOD count handling is a little tricky.
+ * <p>
+ * Receiving data channels may be distributed over several selector threads (see {@link
+ * #setSelectorThreads}). Each block is written at its own offset, so the order in which blocks of
+ * different data channels are written does not matter. The EOD count and the number of closed
+ * channels are shared between the threads and guarded by the mode.
  */
 public class ModeE extends Mode {
 
@@ -60,6 +72,26 @@ public class ModeE extends Mode {
      */
     private long _eodc;
 
+    /**
+     * Number of selector threads serving receiving data channels.
+     */
+    private int _selectorThreads = 1;
+
+    /**
+     * Worker multiplexers serving receiving data channels besides the multiplexer of the mode.
+     */
+    private final List<Multiplexer> _workers = new ArrayList<>();
+
+    /**
+     * Number of receiving data channels assigned to a multiplexer so far.
+     */
+    private int _assigned;
+
+    /**
+     * All data channels of the transfer.
+     */
+    private final List<Stream> _streams = new CopyOnWriteArrayList<>();
+
     /**
      * Whether the transfer has started.
      */
@@ -75,24 +107,62 @@ public class ModeE extends Mode {
      */
     private final LongAdder _errorDataChannels = new LongAdder();
 
-    private String _lastError;
+    private volatile String _lastError;
+
+    /**
+     * Base class of data channels, keeping per channel statistics.
+     */
+    private abstract class Stream extends AbstractMultiplexerListener {
+
+        /**
+         * Socket used for data channel.
+         */
+        protected final SocketChannel _socket;
+
+        private final String _address;
+        private final long _started = System.nanoTime();
+        private volatile long _stopped;
+        private volatile long _bytes;
+        private volatile int _selector;
+
+        Stream(SocketChannel socket) {
+            _socket = socket;
+            _address = describe(socket.socket().getRemoteSocketAddress());
+        }
+
+        protected void servedBy(int selector) {
+            _selector = selector;
+        }
+
+        protected void transferred(long nbytes) {
+            _bytes += nbytes;
+        }
+
+        protected void closed() {
+            _stopped = System.nanoTime();
+        }
+
+        void getInfo(PrintWriter pw) {
+            long stopped = _stopped;
+            long elapsed = (stopped == 0 ? System.nanoTime() : stopped) - _started;
+            double mibPerSecond = elapsed > 0 ? BYTES.toMiB(_bytes * 1e9 / elapsed) : 0;
+            pw.println(_address + " [selector " + _selector + "]: " + describeSize(_bytes)
+                  + ", " + toThreeSigFig(mibPerSecond, 1000) + " MiB/s"
+                  + (stopped == 0 ? "" : " (closed)"));
+        }
+    }
 
     /**
      * Implementation of send in mode E. There will be an instance per data channel. The sender
      * repeatedly bites _blockSize bytes of the file and transfers it as a single block. I.e.
      * _currentPosition is incremented by _blockSize bytes at a time.
      */
-    private class Sender extends AbstractMultiplexerListener {
+    private class Sender extends Stream {
 
         protected static final int PREPARE_BLOCK = 0;
         protected static final int SEND_HEADER = 1;
         protected static final int SEND_DATA = 2;
 
-        /**
-         * Socket used for data channel.
-         */
-        protected final SocketChannel _socket;
-
         /**
          * State of the sender.
          */
@@ -120,7 +190,7 @@ public class ModeE extends Mode {
               ByteBuffer.allocate(HEADER_LENGTH);
 
         public Sender(SocketChannel socket) {
-            _socket = socket;
+            super(socket);
             _state = PREPARE_BLOCK;
             _sendEOF = (_opened == 1); // First sender sends EOF
         }
@@ -208,6 +278,7 @@ public class ModeE extends Mode {
                     if (_count == 0) {
                         close(multiplexer, key, true);
                         _activeDataChannels.decrementAndGet();
+                        closed();
                         break;
                     }
                     _state = SEND_DATA;
@@ -217,6 +288,7 @@ public class ModeE extends Mode {
                      */
                     long nbytes = transferTo(_position, _count, _socket);
                     _monitor.sentBlock(_position, nbytes);
+                    transferred(nbytes);
                     _position += nbytes;
                     _count -= nbytes;
                     if (_count == 0) {
@@ -230,12 +302,7 @@ public class ModeE extends Mode {
     /**
      * Implementation of receive in mode E. There will be an instance per data channel.
      */
-    class Receiver extends AbstractMultiplexerListener {
-
-        /**
-         * Socket used for data channel.
-         */
-        protected final SocketChannel _socket;
+    class Receiver extends Stream {
 
         /**
          * Number of bytes left of current block.
@@ -263,8 +330,14 @@ public class ModeE extends Mode {
         protected final ByteBuffer _header =
               ByteBuffer.allocate(HEADER_LENGTH);
 
+        /**
+         * Buffer for receiving data. Each receiver has its own, as receivers may be served by
+         * different threads.
+         */
+        protected final ByteBuffer _buffer = ByteBuffer.allocate(KiB.toBytes(8));
+
         public Receiver(SocketChannel socket) {
-            _socket = socket;
+            super(socket);
             _count = 0;
             _position = 0;
             _flags = 0;
@@ -309,8 +382,7 @@ public class ModeE extends Mode {
                     if (_used) {
                         throw new FTPException("Stream ended before EOD");
                     }
-                    close(multiplexer, key, _opened == _eodc);
-                    _activeDataChannels.decrementAndGet();
+                    closeReceiver(multiplexer, key);
                     return;
                 }
 
@@ -361,13 +433,15 @@ public class ModeE extends Mode {
                  * send after EOF, however we handle that case.
                  */
                 if ((_flags & EOF_DESCRIPTOR) != 0) {
-                    if (_eodc != 0) {
-                        throw new FTPException("Multible EODC received");
-                    }
-                    if (_position <= 0) {
-                        throw new FTPException("Non-positive EODC received");
+                    synchronized (ModeE.this) {
+                        if (_eodc != 0) {
+                            throw new FTPException("Multible EODC received");
+                        }
+                        if (_position <= 0) {
+                            throw new FTPException("Non-positive EODC received");
+                        }
+                        _eodc = (int) _position;
                     }
-                    _eodc = (int) _position;
                     _count = _position = 0; // No data
                 }
 
@@ -379,8 +453,7 @@ public class ModeE extends Mode {
                     /* If EOD was received, then close channel.
                      */
                     if ((_flags & EOD_DESCRIPTOR) != 0) {
-                        close(multiplexer, key, _opened == _eodc);
-                        _activeDataChannels.decrementAndGet();
+                        closeReceiver(multiplexer, key);
                     }
                     return;
                 }
@@ -389,20 +462,33 @@ public class ModeE extends Mode {
 
             /* Receive data.
              */
-            long nbytes = transferFrom(_socket, _position, _count);
+            long nbytes = transferFrom(_socket, _position, _count, _buffer);
             if (nbytes == -1) {
                 throw new FTPException("Stream was closed in the middle of a block");
             }
             _monitor.receivedBlock(_position, nbytes);
+            transferred(nbytes);
             _position += nbytes;
             _count -= nbytes;
 
             /* If EOD was received, then close channel.
              */
             if (_count == 0 && (_flags & EOD_DESCRIPTOR) != 0) {
+                closeReceiver(multiplexer, key);
+            }
+        }
+
+        /**
+         * Closes the data channel. Whether this was the last data channel depends on the EOD count
+         * and the number of closed channels, which other receivers may update concurrently.
+         */
+        private void closeReceiver(Multiplexer multiplexer, SelectionKey key)
+              throws IOException {
+            synchronized (ModeE.this) {
                 close(multiplexer, key, _opened == _eodc);
                 _activeDataChannels.decrementAndGet();
             }
+            closed();
         }
     }
 
@@ -416,6 +502,19 @@ public class ModeE extends Mode {
         _blockSize = blockSize;
     }
 
+    /**
+     * Sets the number of selector threads serving receiving data channels. Data channels are
+     * assigned round robin to the thread running the transfer and up to {@code threads - 1}
+     * additional threads, such that a transfer with many parallel streams is not limited by a
+     * single core. Sending data channels are always served by the thread running the transfer.
+     */
+    public void setSelectorThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of selector threads must be positive");
+        }
+        _selectorThreads = threads;
+    }
+
     @Override
     public void setPartialRetrieveParameters(long position, long size) {
         super.setPartialRetrieveParameters(position, size);
@@ -430,14 +529,35 @@ public class ModeE extends Mode {
         _activeDataChannels.incrementAndGet();
         switch (_role) {
             case Sender:
-                multiplexer.add(new Sender(socket));
+                Sender sender = new Sender(socket);
+                _streams.add(sender);
+                multiplexer.add(sender);
                 break;
             case Receiver:
-                multiplexer.add(new Receiver(socket));
+                Receiver receiver = new Receiver(socket);
+                _streams.add(receiver);
+                assign(multiplexer, receiver).add(receiver);
                 break;
         }
     }
 
+    /**
+     * Returns the multiplexer to serve a receiving data channel.
+     */
+    private Multiplexer assign(Multiplexer multiplexer, Receiver receiver) throws IOException {
+        int selector = _assigned++ % _selectorThreads;
+        receiver.servedBy(selector);
+        if (selector == 0) {
+            return multiplexer;
+        }
+        if (_workers.size() < selector) {
+            _workers.add(multiplexer.newWorker(
+                  Thread.currentThread().getName() + "-selector-" + selector));
+        }
+        multiplexer.deregister(receiver._socket);
+        return _workers.get(selector - 1);
+    }
+
     @Override
     public String name() {
         return "E (Extended)";
@@ -465,6 +585,14 @@ public class ModeE extends Mode {
                 break;
         }
 
+        if (_selectorThreads > 1) {
+            pw.println("Selector threads: " + _selectorThreads);
+        }
+        if (!_streams.isEmpty()) {
+            pw.println("Data channels:");
+            _streams.forEach(s -> s.getInfo(new LineIndentingPrintWriter(pw, "    ")));
+        }
+
         if (_lastError != null) {
             pw.println("Last error: " + _lastError);
         }
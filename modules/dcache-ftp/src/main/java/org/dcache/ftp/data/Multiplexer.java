@@ -1,9 +1,13 @@
 package org.dcache.ftp.data;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.IOException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,23 +18,61 @@ import org.slf4j.LoggerFactory;
  * Besides the infrastructure for registering listeners and the event loop, this class provides
  * little functionality.
  * <p>
- * Notice that the multiplexer is not thread-safe.
+ * Notice that the multiplexer is not thread-safe. The exception are workers: a multiplexer may
+ * create worker multiplexers, each running its event loop on a thread of its own. Listeners may
+ * be added to a worker from the thread of the multiplexer that created it, and shutting down
+ * either shuts down both.
  */
 public class Multiplexer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Multiplexer.class);
 
-    protected boolean _shutdown;
+    protected volatile boolean _shutdown;
     protected Selector _selector;
 
+    /**
+     * The multiplexer that created this worker, or null if this is not a worker.
+     */
+    private final Multiplexer _parent;
+
+    /**
+     * Workers created by this multiplexer.
+     */
+    private final List<Worker> _workers = new CopyOnWriteArrayList<>();
+
+    /**
+     * The first failure of a listener of a worker. Rethrown by the event loop.
+     */
+    private volatile Exception _failure;
+
     /**
      * Constructs a new multiplexer. The multiplexer must be destroyed by a call to close().
      */
     public Multiplexer() throws IOException {
+        this(null);
+    }
+
+    private Multiplexer(Multiplexer parent) throws IOException {
+        _parent = parent;
         _shutdown = false;
         _selector = Selector.open();
     }
 
+    /**
+     * Creates a worker multiplexer running its event loop on a new thread. Listeners added to the
+     * worker are served concurrently with the listeners of this multiplexer.
+     * <p>
+     * If a listener of the worker fails, the event loop of this multiplexer throws the failure.
+     * The worker is shut down and closed together with this multiplexer.
+     */
+    public Multiplexer newWorker(String name) throws IOException {
+        Multiplexer multiplexer = new Multiplexer(this);
+        Worker worker = new Worker(multiplexer, name);
+        _workers.add(worker);
+        worker.start();
+        return multiplexer;
+    }
+
     /**
      * The event loop. The event loop continues running until shutdown() is called or the current
      * thread has been interrupted.
@@ -45,6 +87,14 @@ public class Multiplexer {
                 throw new InterruptedException();
             }
 
+            Exception failure = _failure;
+            if (failure != null) {
+                Throwables.throwIfInstanceOf(failure, IOException.class);
+                Throwables.throwIfInstanceOf(failure, FTPException.class);
+                Throwables.throwIfUnchecked(failure);
+                throw new IOException(failure.getMessage(), failure);
+            }
+
             for (SelectionKey key : _selector.selectedKeys()) {
                 MultiplexerListener listener =
                       (MultiplexerListener) key.attachment();
@@ -74,7 +124,25 @@ public class Multiplexer {
     public SelectionKey register(MultiplexerListener listener,
           int op, SelectableChannel channel)
           throws IOException {
-        return channel.register(_selector, op, listener);
+        if (_parent == null) {
+            return channel.register(_selector, op, listener);
+        }
+
+        /* The registration only takes effect once the worker's select returns. */
+        SelectionKey key = channel.register(_selector, op, listener);
+        _selector.wakeup();
+        return key;
+    }
+
+    /**
+     * Cancels the registration of a channel with this multiplexer, e.g. before handing the
+     * channel over to a worker.
+     */
+    public void deregister(SelectableChannel channel) {
+        SelectionKey key = channel.keyFor(_selector);
+        if (key != null) {
+            key.cancel();
+        }
     }
 
     /**
@@ -90,6 +158,13 @@ public class Multiplexer {
      * registered in the selector.
      */
     public void close() throws IOException {
+        for (Worker worker : _workers) {
+            worker.multiplexer.stop();
+            Uninterruptibles.joinUninterruptibly(worker);
+            worker.multiplexer.close();
+        }
+        _workers.clear();
+
         for (SelectionKey key : _selector.keys()) {
             key.channel().close();
         }
@@ -101,7 +176,50 @@ public class Multiplexer {
      * Shuts down the multiplexer, causing it to leave the event loop.
      */
     public void shutdown() {
+        if (_parent != null) {
+            _parent.shutdown();
+            return;
+        }
         LOGGER.trace("Multiplexer shutting down");
         _shutdown = true;
+        _workers.forEach(w -> w.multiplexer.stop());
+        _selector.wakeup();
+    }
+
+    private void stop() {
+        _shutdown = true;
+        _selector.wakeup();
+    }
+
+    private synchronized void failed(Exception e) {
+        if (_failure == null) {
+            _failure = e;
+        }
+        _selector.wakeup();
+    }
+
+    /**
+     * Thread running the event loop of a worker.
+     */
+    private class Worker extends Thread {
+
+        private final Multiplexer multiplexer;
+
+        Worker(Multiplexer multiplexer, String name) {
+            super(name);
+            this.multiplexer = multiplexer;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                multiplexer.loop();
+            } catch (InterruptedException e) {
+                LOGGER.debug("Worker interrupted");
+            } catch (Exception e) {
+                failed(e);
+            }
+        }
     }
 }
@@ -227,6 +227,8 @@ import org.dcache.auth.attributes.RootDirectory;
 import org.dcache.cells.CellStub;
 import org.dcache.ftp.TransferMode;
 import org.dcache.ftp.proxy.ActiveAdapter;
+import org.dcache.ftp.proxy.NettyProxyAdapter;
+import org.dcache.ftp.proxy.NettyProxyService;
 import org.dcache.ftp.proxy.PassiveConnectionHandler;
 import org.dcache.ftp.proxy.ProxyAdapter;
 import org.dcache.ftp.proxy.ProxyAdapter.Direction;
@@ -369,6 +371,7 @@ public abstract class AbstractFtpDoorV1
     private LoadingCache<GetSpaceTokensKey, long[]> _spaceDescriptionCache;
     private LoadingCache<String, Optional<Space>> _spaceLookupCache;
     protected Executor _executor;
+    protected NettyProxyService _nettyProxyService;
     private IdentityResolverFactory _identityResolverFactory;
     private IdentityResolver _identityResolver;
     private EnumSet<WorkAround> _activeWorkarounds = EnumSet.noneOf(WorkAround.class);
@@ -1063,8 +1066,10 @@ public abstract class AbstractFtpDoorV1
               throws IOException {
             switch (_mode) {
                 case PASSIVE:
-                    _adapter =
-                          new SocketAdapter(_clientConnectionHandler, _internalInetAddress);
+                    _adapter = _nettyProxyService == null
+                          ? new SocketAdapter(_clientConnectionHandler, _internalInetAddress)
+                          : new NettyProxyAdapter(_clientConnectionHandler, _internalInetAddress,
+                                _nettyProxyService, _executor);
                     break;
 
                 case ACTIVE:
@@ -1522,6 +1527,14 @@ public abstract class AbstractFtpDoorV1
         _executor = new CDCExecutorDecorator<>(executor);
     }
 
+    /**
+     * Relay passive transfers through the given shared event loop rather than through a thread
+     * per data channel. May be null.
+     */
+    public void setNettyProxyService(NettyProxyService service) {
+        _nettyProxyService = service;
+    }
+
     public void setSpaceDescriptionCache(LoadingCache<GetSpaceTokensKey, long[]> cache) {
         _spaceDescriptionCache = cache;
     }
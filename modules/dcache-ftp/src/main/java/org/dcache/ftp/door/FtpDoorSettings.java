@@ -149,6 +149,20 @@ public class FtpDoorSettings {
           defaultValue = "false")
     protected boolean isProxyRequiredOnActive;
 
+    /**
+     * True if passive transfers relayed through the door are served by a shared event loop rather
+     * than by a thread per data channel.
+     */
+    @Option(name = "proxyEventLoop",
+          description = "Whether to relay passive transfers through a shared event loop",
+          defaultValue = "false")
+    protected boolean isProxyEventLoopEnabled;
+
+    @Option(name = "proxyEventLoopThreads",
+          description = "Number of threads of the proxy event loop, or 0 for the default",
+          defaultValue = "0")
+    protected int proxyEventLoopThreads;
+
     /**
      * File (StageConfiguration.conf) containing DNs and FQANs whose owner are allowed to STAGE
      * files (i.e. allowed to copy file from dCache in case file is stored on tape but not on disk).
@@ -271,6 +285,14 @@ public class FtpDoorSettings {
         return isProxyRequiredOnActive;
     }
 
+    public boolean isProxyEventLoopEnabled() {
+        return isProxyEventLoopEnabled;
+    }
+
+    public int getProxyEventLoopThreads() {
+        return proxyEventLoopThreads;
+    }
+
     public String getStageConfigurationFilePath() {
         return stageConfigurationFilePath;
     }
@@ -24,10 +24,13 @@ import diskCacheV111.services.space.Space;
 import diskCacheV111.util.ConfigurationException;
 import dmg.cells.nucleus.CellAddressCore;
 import dmg.cells.nucleus.CellEndpoint;
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.util.LineWriter;
+import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.util.Optional;
 import java.util.concurrent.Executor;
+import org.dcache.ftp.proxy.NettyProxyService;
 import org.dcache.poolmanager.PoolManagerHandler;
 import org.dcache.services.login.IdentityResolverFactory;
 import org.dcache.space.ReservationCaches.GetSpaceTokensKey;
@@ -37,13 +40,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
-public abstract class FtpInterpreterFactory implements NettyLineBasedInterpreterFactory {
+public abstract class FtpInterpreterFactory implements NettyLineBasedInterpreterFactory,
+      CellInfoProvider {
 
     public static final Logger LOGGER =
           LoggerFactory.getLogger(FtpInterpreterFactory.class);
 
     protected final FtpDoorSettings settings = new FtpDoorSettings();
 
+    private NettyProxyService proxyService;
+
     protected abstract AbstractFtpDoorV1 createInterpreter() throws Exception;
 
     @Override
@@ -56,6 +62,9 @@ public abstract class FtpInterpreterFactory implements NettyLineBasedInterpreter
             LOGGER.info("Creating KafkaProducer");
 
         }
+        if (settings.isProxyEventLoopEnabled()) {
+            proxyService = new NettyProxyService(settings.getProxyEventLoopThreads());
+        }
     }
 
     @Override
@@ -74,6 +83,7 @@ public abstract class FtpInterpreterFactory implements NettyLineBasedInterpreter
         interpreter.setLocalSocketAddress(localAddress);
         interpreter.setProxySocketAddress(proxyAddress);
         interpreter.setExecutor(executor);
+        interpreter.setNettyProxyService(proxyService);
         interpreter.setCellEndpoint(endpoint);
         interpreter.setCellAddress(myAddress);
         interpreter.setPoolManagerHandler(poolManagerHandler);
@@ -90,5 +100,15 @@ public abstract class FtpInterpreterFactory implements NettyLineBasedInterpreter
             settings.destroy();
             LOGGER.info("Shutdow KafkaProducer");
         }
+        if (proxyService != null) {
+            proxyService.shutdown();
+        }
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw) {
+        if (proxyService != null) {
+            proxyService.getInfo(pw);
+        }
     }
 }
@@ -0,0 +1,737 @@
+package org.dcache.ftp.proxy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+import static org.dcache.ftp.TransferMode.MODE_E;
+import static org.dcache.ftp.TransferMode.MODE_S;
+import static org.dcache.ftp.proxy.ProxyAdapter.Direction.UPLOAD;
+import static org.dcache.util.ByteUnit.KiB;
+import static org.dcache.util.Strings.indentLines;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.ChannelInputShutdownEvent;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import javax.annotation.concurrent.GuardedBy;
+import org.dcache.ftp.TransferMode;
+import org.dcache.util.PortRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The NettyProxyAdapter relays data like the {@link SocketAdapter}, but serves all data channels
+ * from an event loop shared by all transfers of the door rather than by a thread per data channel.
+ * <p>
+ * As with the SocketAdapter, there is a single TCP connection from the door to the data recipient
+ * and potentially several connections from the data sender.  All connections of a transfer are
+ * served by the same event loop thread, so blocks received on different data channels in mode E
+ * are never interleaved on the connection to the recipient.  Data is read into pooled direct
+ * buffers and reading from the data sender is suspended while the connection to the recipient is
+ * congested.
+ * <p>
+ * Accepting data channels is still delegated to the {@link PassiveConnectionHandler} of the
+ * client, which allows data channels to be reused by subsequent transfers.  The adapter thread
+ * only drives the accept loop and waits for the transfer to complete.  Calls into the connection
+ * handlers may block and are therefore never made from the event loop.
+ */
+public class NettyProxyAdapter implements Runnable, ProxyAdapter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NettyProxyAdapter.class);
+
+    /**
+     * Marks the end of the data in mode E. Fired by the decoder after the last block of a data
+     * channel.
+     */
+    private static final Object EOD = new Object();
+
+    private static final int HEADER_LENGTH = EDataBlockNio.HEADER_LENGTH;
+
+    private final NettyProxyService _service;
+    private final Executor _executor;
+    private final EventLoop _eventLoop;
+
+    /**
+     * Connection orientated ChannelHandler references.
+     */
+    private final PassiveConnectionHandler _clientConnectionHandler;
+    private final PassiveConnectionHandler _poolConnectionHandler;
+
+    /**
+     * Data direction orientated ChannelHandler references.
+     */
+    private PassiveConnectionHandler _inbound;
+    private PassiveConnectionHandler _outbound;
+
+    private TransferMode _mode;
+
+    private Direction _direction = Direction.UPLOAD;
+
+    /**
+     * Size of the largest block allocated in mode E. Blocks larger than this are divided into
+     * smaller blocks.
+     */
+    private int _maxBlockSize = KiB.toBytes(128);
+
+    /**
+     * A thread driving the adapter
+     */
+    private final Thread _thread;
+
+    /**
+     * The number of EOD markers we have seen. This is only used for mode E transfers.
+     */
+    @GuardedBy("this")
+    private int _eodSeen;
+
+    /**
+     * The number of EOD markers expected, or zero if that number is not yet known.  This is only
+     * used for mode E transfers.
+     */
+    @GuardedBy("this")
+    private long _eodExpected;
+
+    /**
+     * Non null if an error has occurred and the transfer has failed.
+     */
+    @GuardedBy("this")
+    private String _error;
+
+    /**
+     * True when the adapter is closing or has been closed. Used to suppress error messages when
+     * killing the adapter.
+     */
+    @GuardedBy("this")
+    private boolean _closing;
+
+    /**
+     * Data channels from the data sender that have not yet been returned to the connection
+     * handler.
+     */
+    @GuardedBy("this")
+    private final List<Stream> _streams = new ArrayList<>();
+
+    /**
+     * Streams waiting for the connection to the data recipient to become writable. Only accessed
+     * from the event loop.
+     */
+    private final Queue<ChannelHandlerContext> _suspended = new ArrayDeque<>();
+
+    private volatile SocketChannel _outputSocket;
+    private volatile NioSocketChannel _output;
+    private volatile String _outputRemoteAddress = "awaiting";
+
+    private final ChannelFutureListener _writeListener = future -> {
+        if (!future.isSuccess()) {
+            fail("Error writing to " + _outputRemoteAddress + ": "
+                  + future.cause().getMessage());
+        }
+    };
+
+    /**
+     * A data channel from the data sender.
+     */
+    private class Stream {
+
+        private final SocketChannel _socket;
+        private final NioSocketChannel _channel;
+        private final String _remoteAddress;
+        private final ByteBuf _initial;
+
+        /**
+         * Whether the stream has been returned to the connection handler. Only accessed from the
+         * event loop.
+         */
+        private boolean _finished;
+
+        /**
+         * Whether any block has been received in mode E. Only accessed from the event loop.
+         */
+        private boolean _used;
+
+        /**
+         * Whether the EOD marker has been received in mode E. Only accessed from the event loop.
+         */
+        private boolean _eod;
+
+        /**
+         * Whether the channel may be reused by the next transfer. Only accessed from the event
+         * loop.
+         */
+        private boolean _reusable = true;
+
+        Stream(SocketChannel socket, ByteBuffer initial) {
+            _socket = requireNonNull(socket);
+            _remoteAddress = SocketAdapter.toString(socket.socket().getRemoteSocketAddress());
+            _initial = Unpooled.wrappedBuffer(initial);
+            _channel = newChannel(socket);
+            if (_mode == MODE_E) {
+                _channel.pipeline().addLast("decoder", new ModeEDecoder());
+            }
+            _channel.pipeline().addLast("relay", new RelayHandler());
+        }
+
+        void register() {
+            _eventLoop.register(_channel).addListener((ChannelFuture future) -> {
+                if (!future.isSuccess()) {
+                    _initial.release();
+                    fail("Failed to register data channel from " + _remoteAddress + ": "
+                          + future.cause().getMessage());
+                    _executor.execute(this::returnChannel);
+                    return;
+                }
+                _channel.closeFuture().addListener(f -> finish(false));
+
+                /* Data read by the connection handler while waiting for the channel to become
+                 * active is processed before anything is read from the channel itself.
+                 */
+                if (_initial.isReadable()) {
+                    _channel.pipeline().fireChannelRead(_initial);
+                } else {
+                    _initial.release();
+                }
+                _channel.pipeline().fireChannelReadComplete();
+            });
+        }
+
+        /**
+         * Stops relaying data from this stream and returns the channel to the connection handler.
+         * The channel is closed unless it may be reused by the next transfer.
+         */
+        void finish(boolean close) {
+            assert _eventLoop.inEventLoop();
+            if (!_finished) {
+                _finished = true;
+                _output.flush();
+                ChannelFuture future = close || !_channel.isOpen()
+                      ? _channel.close() : _channel.deregister();
+                future.addListener(f -> _executor.execute(this::returnChannel));
+            }
+        }
+
+        private void returnChannel() {
+            LOGGER.debug("Returning input channel");
+            _inbound.returnChannel(_socket);
+            streamFinished(this);
+        }
+
+        void close() {
+            _channel.close();
+        }
+
+        /**
+         * Forwards data to the data recipient.
+         */
+        private class RelayHandler extends ChannelInboundHandlerAdapter {
+
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                if (msg == EOD) {
+                    LOGGER.debug("Block just received contains EOD");
+                    incrementEODSeen();
+                    if (hasSeenAllExpectedEOD()) {
+                        finishAcceptLater();
+                    }
+                    finish(!_reusable);
+                } else if (_finished) {
+                    ReferenceCountUtil.release(msg);
+                } else {
+                    ByteBuf data = (ByteBuf) msg;
+                    _service.proxied(data.readableBytes());
+                    _output.write(data).addListener(_writeListener);
+                }
+            }
+
+            @Override
+            public void channelReadComplete(ChannelHandlerContext ctx) {
+                if (!_finished) {
+                    _output.flush();
+                    if (_output.isWritable()) {
+                        ctx.read();
+                    } else {
+                        _suspended.add(ctx);
+                    }
+                }
+            }
+
+            @Override
+            public void userEventTriggered(ChannelHandlerContext ctx, Object event) {
+                if (event instanceof ChannelInputShutdownEvent) {
+                    if (_mode == MODE_E && !_eod && _used) {
+                        fail("Data channel from " + _remoteAddress
+                              + " was closed before EOD marker");
+                    }
+                    finish(false);
+                }
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                Throwable t = cause instanceof DecoderException && cause.getCause() != null
+                      ? cause.getCause() : cause;
+                fail("Error reading from " + _remoteAddress + ": " + t.getMessage());
+                finish(true);
+            }
+        }
+
+        /**
+         * Splits the mode E stream into blocks of at most {@code _maxBlockSize} bytes, each
+         * with its own header. EOF blocks are never forwarded as they do not contain any data
+         * and the adapter sends an EOF at the beginning of the stream.
+         */
+        private class ModeEDecoder extends ByteToMessageDecoder {
+
+            private long _count;
+            private long _position;
+            private boolean _eodPending;
+
+            @Override
+            protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out)
+                  throws IOException {
+                while (!_eod) {
+                    if (_count == 0) {
+                        if (_eodPending) {
+                            _eod = true;
+                            out.add(EOD);
+                            break;
+                        }
+                        if (in.readableBytes() < HEADER_LENGTH) {
+                            return;
+                        }
+                        int descriptors = in.readUnsignedByte();
+                        long size = in.readLong();
+                        long offset = in.readLong();
+                        _used = true;
+
+                        if ((descriptors & EDataBlockNio.EOF_DESCRIPTOR) != 0) {
+                            if (offset <= 0) {
+                                throw new IOException(
+                                      "Invalid Data Channel Count value: " + offset);
+                            }
+                            LOGGER.debug("EOF descriptor: conns={}", offset);
+                            setEODExcepted(offset);
+                            if (hasSeenAllExpectedEOD()) {
+                                finishAcceptLater();
+                            }
+                        } else {
+                            LOGGER.debug("Read header of {} bytes for offset {}", size, offset);
+                            _count = size;
+                            _position = offset;
+                        }
+                        _eodPending = (descriptors & EDataBlockNio.EOD_DESCRIPTOR) != 0;
+                    }
+
+                    while (_count > 0) {
+                        int len = (int) Math.min(_count, _maxBlockSize);
+                        if (in.readableBytes() < len) {
+                            return;
+                        }
+                        ByteBuf header = ctx.alloc().directBuffer(HEADER_LENGTH)
+                              .writeByte(0)
+                              .writeLong(len)
+                              .writeLong(_position);
+                        out.add(ctx.alloc().compositeDirectBuffer(2)
+                              .addComponents(true, header, in.readRetainedSlice(len)));
+                        _count -= len;
+                        _position += len;
+                    }
+                }
+
+                /* Only a single read is made per read request, so anything following the EOD
+                 * arrived with the last block. The channel cannot be reused if data of a later
+                 * transfer has already been consumed.
+                 */
+                if (in.isReadable()) {
+                    LOGGER.warn("Discarding {} bytes received after EOD from {}",
+                          in.readableBytes(), _remoteAddress);
+                    in.skipBytes(in.readableBytes());
+                    _reusable = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Resumes reading from the data sender once the connection to the recipient is writable
+     * again.
+     */
+    private class OutputHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            while (ctx.channel().isWritable() && !_suspended.isEmpty()) {
+                _suspended.remove().read();
+            }
+            ctx.fireChannelWritabilityChanged();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            fail("Error writing to " + _outputRemoteAddress + ": " + cause.getMessage());
+            ctx.close();
+        }
+    }
+
+    public NettyProxyAdapter(PassiveConnectionHandler handler, InetAddress addressForPools,
+          NettyProxyService service, Executor executor) throws IOException {
+        _service = requireNonNull(service);
+        _executor = requireNonNull(executor);
+        _eventLoop = service.next();
+
+        _clientConnectionHandler = handler;
+        _clientConnectionHandler.setErrorConsumer(this::setError);
+
+        _poolConnectionHandler = new PassiveConnectionHandler(addressForPools, PortRange.ANY);
+        _poolConnectionHandler.open();
+
+        _thread = new Thread(this,
+              "NettyProxyAdapter-" + SocketAdapter.toString(
+                    _clientConnectionHandler.getLocalAddress()));
+    }
+
+    private NioSocketChannel newChannel(SocketChannel socket) {
+        NioSocketChannel channel = new NioSocketChannel(socket);
+        channel.config().setAllocator(_service.getAllocator());
+        channel.config().setAutoRead(false);
+        channel.config().setAllowHalfClosure(true);
+        return channel;
+    }
+
+    private synchronized void incrementEODSeen() {
+        _eodSeen++;
+    }
+
+    private synchronized int getEODSeen() {
+        return _eodSeen;
+    }
+
+    private synchronized void setEODExcepted(long value) {
+        checkArgument(value > 0);
+        _eodExpected = value;
+    }
+
+    private synchronized boolean hasSeenAllExpectedEOD() {
+        return isEODExpectedSpecified() && _eodSeen == _eodExpected;
+    }
+
+    private synchronized boolean isEODExpectedSpecified() {
+        return _eodExpected > 0;
+    }
+
+    private synchronized long getEODExpected() {
+        return _eodExpected;
+    }
+
+    /**
+     * Sets the error field. This indicates that the transfer has failed. All data channels of the
+     * transfer are closed.
+     */
+    protected synchronized void setError(String msg) {
+        if (!isClosing()) {
+            LOGGER.error(msg);
+            if (_error == null) {
+                closeChannels();
+                _inbound.close();
+                _error = msg;
+            }
+        }
+    }
+
+    /**
+     * Like {@link #setError}, but safe to call from the event loop.
+     */
+    private void fail(String msg) {
+        _executor.execute(() -> setError(msg));
+    }
+
+    private void finishAcceptLater() {
+        _executor.execute(() -> {
+            try {
+                LOGGER.debug("Finishing accept");
+                _inbound.finishAccept();
+            } catch (InterruptedException e) {
+                LOGGER.warn("Interrupted while waiting for accept loop to terminate");
+            }
+        });
+    }
+
+    private synchronized void streamFinished(Stream stream) {
+        if (_streams.remove(stream)) {
+            _service.streamClosed();
+            notifyAll();
+        }
+    }
+
+    private synchronized void awaitStreams() throws InterruptedException {
+        LOGGER.debug("Waiting for {} streams to finish", _streams.size());
+        while (!_streams.isEmpty()) {
+            wait();
+        }
+        LOGGER.debug("All streams have finished");
+    }
+
+    private void closeChannels() {
+        List<Stream> streams;
+        synchronized (this) {
+            streams = new ArrayList<>(_streams);
+        }
+        streams.forEach(Stream::close);
+
+        NioSocketChannel output = _output;
+        if (output != null) {
+            output.close();
+        }
+    }
+
+    @Override
+    public synchronized String getError() {
+        return _error;
+    }
+
+    @Override
+    public synchronized boolean hasError() {
+        return _error != null;
+    }
+
+    @Override
+    public void setMaxBlockSize(int size) {
+        _maxBlockSize = size;
+    }
+
+    @Override
+    public synchronized void setMode(TransferMode mode) {
+        checkArgument(mode == MODE_S || mode == MODE_E, "Unsupported transfer mode %s", mode);
+        _mode = mode;
+    }
+
+    @Override
+    public InetSocketAddress getInternalAddress() {
+        return _poolConnectionHandler.getLocalAddress();
+    }
+
+    @Override
+    public void setDataDirection(Direction dir) {
+        _direction = dir;
+
+        switch (dir) {
+            case UPLOAD:
+                _inbound = _clientConnectionHandler;
+                _outbound = _poolConnectionHandler;
+                break;
+            case DOWNLOAD:
+                _inbound = _poolConnectionHandler;
+                _outbound = _clientConnectionHandler;
+                break;
+        }
+    }
+
+    private synchronized void setClosing(boolean closing) {
+        _closing = closing;
+    }
+
+    private synchronized boolean isClosing() {
+        return _closing;
+    }
+
+    @Override
+    public void run() {
+        LOGGER.debug("Netty proxy adapter thread starting");
+        assert _direction == UPLOAD || _mode == MODE_S;
+
+        _service.transferStarted();
+        try {
+            /* Accept connection on output channel. As for the SocketAdapter, there will be
+             * exactly one connection on the output channel.
+             */
+            SocketChannel output = _outbound.accept();
+            _outputSocket = output;
+            _outputRemoteAddress = SocketAdapter.toString(
+                  output.socket().getRemoteSocketAddress());
+
+            NioSocketChannel channel = newChannel(output);
+            channel.pipeline().addLast("output", new OutputHandler());
+            ChannelFuture registered = _eventLoop.register(channel).await();
+            if (!registered.isSuccess()) {
+                output.close();
+                throw new IOException("Failed to register connection to "
+                      + _outputRemoteAddress + ": " + registered.cause().getMessage());
+            }
+            _output = channel;
+
+            try {
+                /* Send the EOF. The GridFTP protocol allows us to send
+                 * this information at any time. Doing it up front will
+                 * make sure, that the other end doesn't need to wait for
+                 * it.
+                 */
+                if (_mode == MODE_E) {
+                    send(EDataBlockNio.EOF_DESCRIPTOR, 0, 1);
+                }
+
+                _inbound.accept(this::acceptNewChannel);
+
+                awaitStreams();
+
+                /* Send the EOD (remember that we already sent the EOF
+                 * earlier).
+                 */
+                if (_mode == MODE_E) {
+                    if (!isEODExpectedSpecified()) {
+                        setError("Did not receive EOF marker. Transfer failed.");
+                    } else if (!hasSeenAllExpectedEOD()) {
+                        setError("Transfer failed: not enough EOD markers (expected " +
+                              getEODExpected() + ", got " + getEODSeen() + ")");
+                    } else {
+                        send(EDataBlockNio.EOD_DESCRIPTOR, 0, 0);
+                    }
+                }
+
+                /* Closing the channel discards pending writes, so wait for all data to
+                 * have been written first.
+                 */
+                ChannelFuture flushed = _output.writeAndFlush(Unpooled.EMPTY_BUFFER).await();
+                if (!flushed.isSuccess() && !hasError()) {
+                    setError("Error writing to " + _outputRemoteAddress + ": "
+                          + flushed.cause().getMessage());
+                }
+            } finally {
+                _output.close().awaitUninterruptibly();
+                _outputRemoteAddress = "closed";
+            }
+        } catch (InterruptedException e) {
+            /* This will always be a symptom of another error, so
+             * there is no reason to log this exception.
+             */
+        } catch (IOException e) {
+            setError(e.getMessage());
+        } catch (RuntimeException e) {
+            _thread.getUncaughtExceptionHandler().uncaughtException(_thread, e);
+            setError(e.getMessage());
+        } finally {
+            closeChannels();
+
+            /* Close down everything on the pool side. */
+            _poolConnectionHandler.close();
+            _service.transferFinished();
+        }
+    }
+
+    private void send(int descriptors, long count, long offset)
+          throws IOException, InterruptedException {
+        ByteBuf block = _service.getAllocator().directBuffer(HEADER_LENGTH)
+              .writeByte(descriptors)
+              .writeLong(count)
+              .writeLong(offset);
+        ChannelFuture future = _output.writeAndFlush(block).await();
+        if (!future.isSuccess()) {
+            throw new IOException("Error writing to " + _outputRemoteAddress + ": "
+                  + future.cause().getMessage());
+        }
+    }
+
+    private void acceptNewChannel(SocketChannel input, ByteBuffer initialInput) {
+        LOGGER.debug("Accepting new TCP connection");
+        Stream stream = new Stream(input, initialInput);
+        synchronized (this) {
+            _streams.add(stream);
+        }
+        _service.streamOpened();
+        stream.register();
+
+        if (_mode == MODE_S) {
+            finishAcceptLater(); // only expect a single connection.
+        }
+    }
+
+    @Override
+    public void close() {
+        LOGGER.debug("Closing listener sockets");
+        _poolConnectionHandler.close();
+
+        setClosing(true);
+        closeChannels();
+        try {
+            _inbound.finishAccept();
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while closing NettyProxyAdapter");
+        }
+    }
+
+    @Override
+    public boolean isAlive() {
+        return _thread.isAlive();
+    }
+
+    @Override
+    public void join(long millis) throws InterruptedException {
+        _thread.join(millis);
+    }
+
+    @Override
+    public void start() {
+        LOGGER.debug("NettyProxyAdapter calling _thread.start");
+        _thread.start();
+    }
+
+    @Override
+    public String toString() {
+        return "NettyProxyAdapter[mode=" + _mode.getLabel() + " in=" + _inbound + ", out="
+              + _outbound + "]";
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw) {
+        pw.println("Passive adapter (event loop):");
+        pw.println("    Transfer mode: " + _mode.getLabel());
+        pw.println("    Listening on:");
+        pw.println("        Client: " + _clientConnectionHandler.getLocalAddress());
+        pw.println("        Pool: " + _poolConnectionHandler.getLocalAddress());
+        SocketChannel out = _outputSocket;
+        if (out == null) {
+            pw.println("    Proxy status: not connected");
+        } else {
+            List<Stream> streams;
+            synchronized (this) {
+                streams = new ArrayList<>(_streams);
+            }
+            pw.println("    Proxy status:");
+            ProxyPrinter proxy = new ProxyPrinter();
+            boolean isFirstRow = true;
+            for (Stream stream : streams) {
+                if (isFirstRow) {
+                    if (_direction == UPLOAD) {
+                        proxy.pool(out.socket());
+                    } else {
+                        proxy.client(out.socket());
+                    }
+                    isFirstRow = false;
+                }
+                if (_direction == UPLOAD) {
+                    proxy.client(stream._socket.socket());
+                } else {
+                    proxy.pool(stream._socket.socket());
+                }
+                proxy.add();
+            }
+            pw.println(indentLines("        ", proxy.toString()));
+        }
+    }
+}
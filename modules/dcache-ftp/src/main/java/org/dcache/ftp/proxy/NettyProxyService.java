@@ -0,0 +1,101 @@
+package org.dcache.ftp.proxy;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dmg.cells.nucleus.CellInfoProvider;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoop;
+import io.netty.channel.nio.NioEventLoopGroup;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.dcache.util.CDCThreadFactory;
+
+/**
+ * Event loop, buffer allocator and statistics shared by all {@link NettyProxyAdapter}s of a door.
+ * <p>
+ * Data channels of all proxied transfers are served by a fixed number of event loop threads and
+ * relay data through pooled direct buffers, so neither the number of threads nor the heap usage
+ * of the door grows with the number of concurrent data channels.
+ */
+public class NettyProxyService implements CellInfoProvider {
+
+    private final NioEventLoopGroup _group;
+    private final ByteBufAllocator _allocator = PooledByteBufAllocator.DEFAULT;
+
+    private final AtomicInteger _activeTransfers = new AtomicInteger();
+    private final AtomicInteger _activeStreams = new AtomicInteger();
+    private final LongAdder _streams = new LongAdder();
+    private final LongAdder _bytes = new LongAdder();
+
+    /**
+     * @param threads number of event loop threads, or zero for Netty's default of twice the
+     *                number of cores.
+     */
+    public NettyProxyService(int threads) {
+        _group = new NioEventLoopGroup(threads, new CDCThreadFactory(
+              new ThreadFactoryBuilder().setNameFormat("ftp-proxy-%d").build()));
+    }
+
+    /**
+     * Returns the event loop serving all data channels of a new transfer.
+     */
+    EventLoop next() {
+        return _group.next();
+    }
+
+    ByteBufAllocator getAllocator() {
+        return _allocator;
+    }
+
+    void transferStarted() {
+        _activeTransfers.incrementAndGet();
+    }
+
+    void transferFinished() {
+        _activeTransfers.decrementAndGet();
+    }
+
+    void streamOpened() {
+        _activeStreams.incrementAndGet();
+        _streams.increment();
+    }
+
+    void streamClosed() {
+        _activeStreams.decrementAndGet();
+    }
+
+    void proxied(long bytes) {
+        _bytes.add(bytes);
+    }
+
+    public int getActiveTransfers() {
+        return _activeTransfers.get();
+    }
+
+    public int getActiveStreams() {
+        return _activeStreams.get();
+    }
+
+    public long getStreams() {
+        return _streams.sum();
+    }
+
+    public long getProxiedBytes() {
+        return _bytes.sum();
+    }
+
+    public void shutdown() {
+        _group.shutdownGracefully(500, 2000, TimeUnit.MILLISECONDS).syncUninterruptibly();
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw) {
+        pw.println("Proxy event loop threads : " + _group.executorCount());
+        pw.println("Active proxied transfers : " + getActiveTransfers());
+        pw.println("Active proxied streams   : " + getActiveStreams());
+        pw.println("Proxied streams          : " + getStreams());
+        pw.println("Proxied bytes            : " + getProxiedBytes());
+    }
+}
@@ -35,6 +35,7 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.OpenOption;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.EnumSet;
 import java.util.Optional;
@@ -173,6 +174,16 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
      */
     protected boolean _allowPassivePool;
 
+    /**
+     * Whether data is sent using zero-copy transfers. See {@link Mode#setZeroCopy}.
+     */
+    protected boolean _zeroCopy;
+
+    /**
+     * Number of selector threads serving receiving data channels in mode E.
+     */
+    protected int _modeESelectorThreads = 1;
+
     /**
      * True while the transfer is in progress.
      */
@@ -200,22 +211,32 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
     protected Mode createMode(String mode, Role role, RepositoryChannel fileChannel)
           throws IOException {
         int blockSize;
+        Mode result;
         switch (Character.toUpperCase(mode.charAt(0))) {
             case 'S':
                 blockSize =
                       (_blockSize == null) ? MODE_S_DEFAULT_BLOCK_SIZE : _blockSize;
-                return new ModeS(role, fileChannel, this, blockSize);
+                result = new ModeS(role, fileChannel, this, blockSize);
+                break;
             case 'E':
                 blockSize =
                       (_blockSize == null) ? MODE_E_DEFAULT_BLOCK_SIZE : _blockSize;
-                return new ModeE(role, fileChannel, this, blockSize);
+                ModeE modeE = new ModeE(role, fileChannel, this, blockSize);
+                modeE.setSelectorThreads(_modeESelectorThreads);
+                result = modeE;
+                break;
             case 'X':
                 blockSize =
                       (_blockSize == null) ? MODE_X_DEFAULT_BLOCK_SIZE : _blockSize;
-                return new ModeX(role, fileChannel, this, blockSize);
+                result = new ModeX(role, fileChannel, this, blockSize);
+                break;
             default:
                 throw new IllegalArgumentException("Unknown mode");
         }
+        if (role == Role.Sender) {
+            result.setZeroCopy(_zeroCopy);
+        }
+        return result;
     }
 
     @Override
@@ -581,7 +602,7 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
      * Part of the ConnectionMonitor interface.
      */
     @Override
-    public void receivedBlock(long position, long size) throws FTPException {
+    public synchronized void receivedBlock(long position, long size) throws FTPException {
         checkState(_role == Role.Receiver, "Only receivers can receive");
         checkArgument(position >= 0, "Position must be non-negative");
         checkArgument(size >= 0, "Size must be non-negative");
@@ -597,7 +618,7 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
      * Part of the ConnectionMonitor interface.
      */
     @Override
-    public void sentBlock(long position, long size) throws FTPException {
+    public synchronized void sentBlock(long position, long size) throws FTPException {
         checkState(_role == Role.Sender, "Only senders can send");
         checkArgument(position >= 0, "Position must be non-negative");
         checkArgument(size >= 0, "Size must be non-negative");
@@ -631,6 +652,12 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
         System.out.println("  -size=BYTES");
         System.out.println("  -mode=(S|E|X)");
         System.out.println("  -digest=ALGORITHM");
+        System.out.println("  -zero-copy=(true|false)");
+        System.out.println("  -selectors=NUMBER");
+        System.out.println();
+        System.out.println("On completion the throughput and the CPU time used by the");
+        System.out.println("process per GiB are printed. Run a listening receiver");
+        System.out.println("and a sender on the loopback interface to benchmark a mode.");
         System.exit(1);
     }
 
@@ -658,6 +685,8 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
 
             GFtpProtocol_2_nio mover =
                   new GFtpProtocol_2_nio(null);
+            mover._zeroCopy = Boolean.parseBoolean(getOption(args, "zero-copy", "false"));
+            mover._modeESelectorThreads = Integer.parseInt(getOption(args, "selectors", "1"));
 
             RepositoryChannel fileChannel =
                   new FileRepositoryChannel(FileSystems.getDefault().getPath(args.argv(0)),
@@ -700,7 +729,21 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
                 fileChannel = new ChecksumChannel(fileChannel, EnumSet.of(type));
             }
 
+            Duration cpuStart = ProcessHandle.current().info().totalCpuDuration()
+                  .orElse(Duration.ZERO);
+            long start = System.nanoTime();
             mover.transfer(fileChannel, role, mode);
+            long elapsed = System.nanoTime() - start;
+            long cpu = ProcessHandle.current().info().totalCpuDuration()
+                  .orElse(Duration.ZERO).minus(cpuStart).toNanos();
+
+            long bytes = mover.getBytesTransferred();
+            if (bytes > 0 && elapsed > 0) {
+                System.out.println(String.format(
+                      "%d bytes in %.3f s = %.1f MiB/s, %.3f s CPU per GiB",
+                      bytes, elapsed / 1e9, BYTES.toMiB(bytes * 1e9 / elapsed),
+                      cpu / 1e9 / BYTES.toGiB((double) bytes)));
+            }
 
             if (fileChannel instanceof ChecksumChannel) {
                 Set<Checksum> checksums = ((ChecksumChannel) fileChannel).getChecksums();
@@ -717,6 +760,9 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
     public void setCellArgs(Args args) {
         _allowPassivePool = args.getBooleanOption("ftpAllowIncomingConnections");
 
+        _zeroCopy = args.getBooleanOption("ftpZeroCopy");
+        _modeESelectorThreads = args.getIntOption("ftpModeESelectorThreads", 1);
+
         if (args.hasOption("gsiftpBlockSize")) {
             _blockSize = args.getIntOption("gsiftpBlockSize");
         }
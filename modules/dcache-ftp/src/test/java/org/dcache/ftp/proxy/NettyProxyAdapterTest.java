@@ -0,0 +1,174 @@
+package org.dcache.ftp.proxy;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.dcache.ftp.TransferMode;
+import org.dcache.ftp.data.ConnectionMonitor;
+import org.dcache.ftp.data.Mode;
+import org.dcache.ftp.data.ModeE;
+import org.dcache.ftp.data.ModeS;
+import org.dcache.ftp.data.Multiplexer;
+import org.dcache.ftp.data.Role;
+import org.dcache.ftp.proxy.ProxyAdapter.Direction;
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.FileStore;
+import org.dcache.pool.repository.RepositoryChannel;
+import org.dcache.util.PortRange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NettyProxyAdapterTest {
+
+    private static final int FILE_SIZE = 3 * 1024 * 1024 + 17;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NettyProxyService service;
+    private ExecutorService executor;
+    private PassiveConnectionHandler clientConnectionHandler;
+    private Path source;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        service = new NettyProxyService(2);
+        executor = Executors.newCachedThreadPool();
+        clientConnectionHandler = new PassiveConnectionHandler(InetAddress.getLoopbackAddress(),
+              PortRange.ANY);
+        clientConnectionHandler.open();
+        data = new byte[FILE_SIZE];
+        new Random(42).nextBytes(data);
+        source = folder.newFile("source").toPath();
+        Files.write(source, data);
+    }
+
+    @After
+    public void tearDown() {
+        clientConnectionHandler.close();
+        executor.shutdownNow();
+        service.shutdown();
+    }
+
+    @Test
+    public void shouldRelayUploadInModeS() throws Exception {
+        assertArrayEquals(data, transfer(TransferMode.MODE_S, Direction.UPLOAD, 1));
+        assertThat(service.getProxiedBytes(), is((long) FILE_SIZE));
+        assertThat(service.getStreams(), is(1L));
+        assertThat(service.getActiveStreams(), is(0));
+    }
+
+    @Test
+    public void shouldRelayDownloadInModeS() throws Exception {
+        assertArrayEquals(data, transfer(TransferMode.MODE_S, Direction.DOWNLOAD, 1));
+        assertThat(service.getActiveStreams(), is(0));
+    }
+
+    @Test
+    public void shouldRelayUploadInModeE() throws Exception {
+        assertArrayEquals(data, transfer(TransferMode.MODE_E, Direction.UPLOAD, 4));
+        // channels closed by the client after EOD may be seen as reused
+        assertThat(service.getStreams(), is(greaterThanOrEqualTo(4L)));
+        assertThat(service.getActiveStreams(), is(0));
+        assertThat(service.getActiveTransfers(), is(0));
+    }
+
+    @Test
+    public void shouldReuseDataChannelsInModeE() throws Exception {
+        assertArrayEquals(data, transfer(TransferMode.MODE_E, Direction.UPLOAD, 4));
+        assertArrayEquals(data, transfer(TransferMode.MODE_E, Direction.UPLOAD, 4));
+    }
+
+    /**
+     * Relays a file between a sender and a receiver connecting to the adapter like a client and a
+     * pool do.
+     */
+    private byte[] transfer(TransferMode mode, Direction direction, int parallelism)
+          throws Exception {
+        Path target = folder.newFile().toPath();
+
+        NettyProxyAdapter adapter = new NettyProxyAdapter(clientConnectionHandler,
+              InetAddress.getLoopbackAddress(), service, executor);
+        adapter.setMode(mode);
+        adapter.setMaxBlockSize(64 * 1024);
+        adapter.setDataDirection(direction);
+        adapter.start();
+
+        InetSocketAddress door = clientConnectionHandler.getLocalAddress();
+        InetSocketAddress pool = adapter.getInternalAddress();
+        InetSocketAddress receiverEndpoint = direction == Direction.UPLOAD ? pool : door;
+        InetSocketAddress senderEndpoint = direction == Direction.UPLOAD ? door : pool;
+
+        try {
+            RepositoryChannel targetChannel = new FileRepositoryChannel(target, FileStore.O_RW);
+            Mode receiveMode = createMode(mode, Role.Receiver, targetChannel);
+            receiveMode.setActive(receiverEndpoint);
+            Future<?> received = executor.submit(() -> {
+                run(receiveMode);
+                return null;
+            });
+
+            try (RepositoryChannel sourceChannel = new FileRepositoryChannel(source,
+                  FileStore.O_READ)) {
+                Mode sendMode = createMode(mode, Role.Sender, sourceChannel);
+                sendMode.setActive(senderEndpoint);
+                sendMode.setParallelism(parallelism);
+                sendMode.setPartialRetrieveParameters(0, FILE_SIZE);
+                run(sendMode);
+            }
+
+            received.get(1, TimeUnit.MINUTES);
+            targetChannel.close();
+
+            adapter.join(TimeUnit.MINUTES.toMillis(1));
+            assertThat(adapter.isAlive(), is(false));
+            assertThat(adapter.getError(), is(nullValue()));
+        } finally {
+            adapter.close();
+        }
+        return Files.readAllBytes(target);
+    }
+
+    private static Mode createMode(TransferMode mode, Role role, RepositoryChannel file)
+          throws IOException {
+        ConnectionMonitor monitor = new ConnectionMonitor() {
+            @Override
+            public void receivedBlock(long position, long size) {
+            }
+
+            @Override
+            public void sentBlock(long position, long size) {
+            }
+        };
+        return mode == TransferMode.MODE_E
+              ? new ModeE(role, file, monitor, 64 * 1024)
+              : new ModeS(role, file, monitor, 64 * 1024);
+    }
+
+    private static void run(Mode mode) throws Exception {
+        Multiplexer multiplexer = new Multiplexer();
+        try {
+            multiplexer.add(mode);
+            multiplexer.loop();
+        } finally {
+            multiplexer.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.dcache.pool.movers;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.dcache.ftp.data.Mode;
+import org.dcache.ftp.data.Role;
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.FileStore;
+import org.dcache.pool.repository.RepositoryChannel;
+import org.dcache.util.Args;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GFtpProtocol_2_nioTest {
+
+    private static final int FILE_SIZE = 3 * 1024 * 1024 + 17;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+    private Path source;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newSingleThreadExecutor();
+        data = new byte[FILE_SIZE];
+        new Random(42).nextBytes(data);
+        source = folder.newFile("source").toPath();
+        Files.write(source, data);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldSendInModeS() throws Exception {
+        assertArrayEquals(data, transfer("S", "", 1));
+    }
+
+    @Test
+    public void shouldSendInModeSWithZeroCopy() throws Exception {
+        assertArrayEquals(data, transfer("S", "-ftpZeroCopy=true", 1));
+    }
+
+    @Test
+    public void shouldSendInModeE() throws Exception {
+        assertArrayEquals(data, transfer("E", "", 4));
+    }
+
+    @Test
+    public void shouldSendInModeEWithZeroCopy() throws Exception {
+        assertArrayEquals(data, transfer("E", "-ftpZeroCopy=true", 4));
+    }
+
+    @Test
+    public void shouldReceiveInModeEWithSeveralSelectorThreads() throws Exception {
+        assertArrayEquals(data, transfer("E", "-ftpModeESelectorThreads=3", 8));
+    }
+
+    private byte[] transfer(String modeName, String cellArgs, int parallelism)
+          throws Exception {
+        Path target = folder.newFile().toPath();
+
+        GFtpProtocol_2_nio receiver = new GFtpProtocol_2_nio(null);
+        receiver.setCellArgs(new Args(cellArgs));
+        RepositoryChannel targetChannel = new FileRepositoryChannel(target, FileStore.O_RW);
+        Mode receiveMode = receiver.createMode(modeName, Role.Receiver, targetChannel);
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        receiveMode.setPassive(listener);
+        Future<?> received = executor.submit(() -> {
+            receiver.transfer(targetChannel, Role.Receiver, receiveMode);
+            return null;
+        });
+
+        GFtpProtocol_2_nio sender = new GFtpProtocol_2_nio(null);
+        sender.setCellArgs(new Args(cellArgs));
+        try (RepositoryChannel sourceChannel = new FileRepositoryChannel(source,
+              FileStore.O_READ)) {
+            Mode sendMode = sender.createMode(modeName, Role.Sender, sourceChannel);
+            sendMode.setActive((InetSocketAddress) listener.getLocalAddress());
+            sendMode.setParallelism(parallelism);
+            sendMode.setPartialRetrieveParameters(0, FILE_SIZE);
+            sender.transfer(sourceChannel, Role.Sender, sendMode);
+        }
+
+        received.get(1, TimeUnit.MINUTES);
+        targetChannel.close();
+        return Files.readAllBytes(target);
+    }
+}
@@ -80,6 +80,13 @@ public class PnfsId implements Serializable, Comparable<PnfsId> {
         return BaseEncoding.base16().upperCase().encode(_a);
     }
 
+    /**
+     * Returns the binary representation of this id.
+     */
+    public byte[] toByteArray() {
+        return _a.clone();
+    }
+
     public static Funnel<PnfsId> funnel() {
         return PnfsIdFunnel.INSTANCE;
     }
@@ -28,4 +28,18 @@ public class PnfsMapPathMessage extends PnfsMessage {
     public boolean invalidates(Message message) {
         return false;
     }
+
+    @Override
+    public boolean fold(Message message) {
+        if (message instanceof PnfsMapPathMessage) {
+            PnfsMapPathMessage other = (PnfsMapPathMessage) message;
+            if (other.getPnfsId().equals(getPnfsId()) &&
+                  getSubject().equals(other.getSubject())) {
+                setGlobalPath(other.getGlobalPath());
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
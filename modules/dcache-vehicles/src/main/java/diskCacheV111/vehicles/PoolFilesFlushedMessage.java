@@ -0,0 +1,84 @@
+package diskCacheV111.vehicles;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import java.util.ArrayList;
+import java.util.List;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Signals that many files were flushed.
+ * <p>
+ * Like {@link PoolFileFlushedMessage}, but for several files in a single request. The name space
+ * is updated for every file individually; if the update of the i'th file failed, the reason is
+ * available through {@link #getError(int)}. A failure for an individual file does not fail the
+ * message as a whole.
+ */
+public class PoolFilesFlushedMessage extends PnfsMessage {
+
+    private static final long serialVersionUID = -2262467104338211447L;
+
+    private final String _poolName;
+    private final List<PnfsId> _pnfsIds;
+    private final List<FileAttributes> _fileAttributes;
+    private final CacheException[] _errors;
+
+    public PoolFilesFlushedMessage(String poolName, List<PnfsId> pnfsIds,
+          List<FileAttributes> fileAttributes) {
+        checkArgument(pnfsIds.size() == fileAttributes.size(),
+              "Number of PnfsIds and file attributes differ.");
+        _poolName = poolName;
+        _pnfsIds = new ArrayList<>(pnfsIds);
+        _fileAttributes = new ArrayList<>(fileAttributes);
+        _errors = new CacheException[_pnfsIds.size()];
+        setReplyRequired(true);
+    }
+
+    public String getPoolName() {
+        return _poolName;
+    }
+
+    public int size() {
+        return _pnfsIds.size();
+    }
+
+    public List<PnfsId> getPnfsIds() {
+        return _pnfsIds;
+    }
+
+    public PnfsId getPnfsId(int i) {
+        return _pnfsIds.get(i);
+    }
+
+    public FileAttributes getFileAttributes(int i) {
+        return _fileAttributes.get(i);
+    }
+
+    public void setError(int i, CacheException error) {
+        _errors[i] = error;
+    }
+
+    /**
+     * Returns the reason why the name space could not be updated for the i'th file, or null if it
+     * was updated.
+     */
+    public CacheException getError(int i) {
+        return _errors[i];
+    }
+
+    @Override
+    public boolean invalidates(Message message) {
+        if (message instanceof PnfsMessage) {
+            PnfsId pnfsId = ((PnfsMessage) message).getPnfsId();
+            return pnfsId == null || _pnfsIds.contains(pnfsId);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ";size=" + size();
+    }
+}
@@ -0,0 +1,54 @@
+package org.dcache.vehicles;
+
+import static java.util.Objects.requireNonNull;
+
+import diskCacheV111.vehicles.Message;
+
+/**
+ * Published by a namespace service after removing or renaming directory entries, such that
+ * other services sharing the same Chimera database can drop these entries from their dentry
+ * caches.
+ * <p>
+ * The i'th entry is the name {@code getNames()[i]} in the directory with inode number
+ * {@code getParents()[i]}.
+ */
+public class DentryInvalidationMessage extends Message {
+
+    private static final long serialVersionUID = 2791606217407395337L;
+
+    private final String _origin;
+    private final long _timestamp;
+    private final long[] _parents;
+    private final String[] _names;
+
+    public DentryInvalidationMessage(String origin, long timestamp, long[] parents,
+          String[] names) {
+        _origin = requireNonNull(origin);
+        _timestamp = timestamp;
+        _parents = requireNonNull(parents);
+        _names = requireNonNull(names);
+        setReplyRequired(false);
+    }
+
+    /**
+     * Identifies the file system instance that modified the entries.
+     */
+    public String getOrigin() {
+        return _origin;
+    }
+
+    /**
+     * Time in milliseconds since the epoch at which the modification was committed.
+     */
+    public long getTimestamp() {
+        return _timestamp;
+    }
+
+    public long[] getParents() {
+        return _parents;
+    }
+
+    public String[] getNames() {
+        return _names;
+    }
+}
@@ -0,0 +1,120 @@
+package org.dcache.vehicles;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.Message;
+import diskCacheV111.vehicles.PnfsMessage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import org.dcache.namespace.FileAttribute;
+
+/**
+ * Vehicle for getting the attributes of many files in a single request.
+ * <p>
+ * The files are identified either by PnfsId or by path. The result for the i'th file is
+ * available through {@link #getFileAttributes(int)} or, if the attributes of that file could not
+ * be retrieved, {@link #getError(int)}. A failure for an individual file does not fail the
+ * message as a whole.
+ */
+public class PnfsGetFileAttributesBatch extends PnfsMessage {
+
+    private static final long serialVersionUID = 4129075036483659162L;
+
+    private final List<PnfsId> _pnfsIds;
+    private final List<String> _paths;
+    private final Set<FileAttribute> _attributes;
+    private final FileAttributes[] _fileAttributes;
+    private final CacheException[] _errors;
+
+    private PnfsGetFileAttributesBatch(List<PnfsId> pnfsIds, List<String> paths,
+          Set<FileAttribute> attr) {
+        _pnfsIds = pnfsIds;
+        _paths = paths;
+        _attributes = requireNonNull(attr);
+        _fileAttributes = new FileAttributes[size()];
+        _errors = new CacheException[size()];
+        setReplyRequired(true);
+    }
+
+    /**
+     * Construct request by PnfsId.
+     */
+    public static PnfsGetFileAttributesBatch ofPnfsIds(Collection<PnfsId> pnfsIds,
+          Set<FileAttribute> attr) {
+        return new PnfsGetFileAttributesBatch(new ArrayList<>(pnfsIds), null, attr);
+    }
+
+    /**
+     * Construct request by path.
+     */
+    public static PnfsGetFileAttributesBatch ofPaths(Collection<String> paths,
+          Set<FileAttribute> attr) {
+        paths.forEach(path -> checkArgument(path.charAt(0) == '/'));
+        return new PnfsGetFileAttributesBatch(null, new ArrayList<>(paths), attr);
+    }
+
+    public int size() {
+        return _pnfsIds != null ? _pnfsIds.size() : _paths.size();
+    }
+
+    /**
+     * Returns the PnfsIds of the files, or null if the request is by path.
+     */
+    public List<PnfsId> getPnfsIds() {
+        return _pnfsIds;
+    }
+
+    /**
+     * Returns the paths of the files, or null if the request is by PnfsId.
+     */
+    public List<String> getPaths() {
+        return _paths;
+    }
+
+    /**
+     * Get set of requested {@link FileAttributes}. An empty set indicates that client interested in
+     * file existence only.
+     */
+    public Set<FileAttribute> getRequestedAttributes() {
+        return _attributes;
+    }
+
+    public void setFileAttributes(int i, FileAttributes attributes) {
+        _fileAttributes[i] = attributes;
+        _errors[i] = null;
+    }
+
+    public void setError(int i, CacheException error) {
+        _fileAttributes[i] = null;
+        _errors[i] = error;
+    }
+
+    /**
+     * Returns the attributes of the i'th file, or null if they could not be retrieved.
+     */
+    public FileAttributes getFileAttributes(int i) {
+        return _fileAttributes[i];
+    }
+
+    /**
+     * Returns the reason why the attributes of the i'th file could not be retrieved, or null.
+     */
+    public CacheException getError(int i) {
+        return _errors[i];
+    }
+
+    @Override
+    public boolean invalidates(Message message) {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ";size=" + size();
+    }
+}
@@ -36,6 +36,7 @@ public class PnfsListDirectoryMessage extends PnfsMessage {
     private final BoundType _upperBoundType;
     private final UUID _uuid = UUID.randomUUID();
     private final Set<FileAttribute> _requestedAttributes;
+    private String _resumeAfter;
     private Collection<DirectoryEntry> _entries = new ArrayList<>();
 
     /**
@@ -107,6 +108,23 @@ public class PnfsListDirectoryMessage extends PnfsMessage {
         }
     }
 
+    /**
+     * Limits the listing to entries with a name sorting after {@code name}. This allows a client
+     * to continue an interrupted listing from the last entry it received rather than counting
+     * entries from the start of the directory. The range is applied to the remaining entries.
+     */
+    public void setResumeAfter(String name) {
+        _resumeAfter = name;
+    }
+
+    /**
+     * Returns the name after which the listing continues, or null if the listing starts with the
+     * first entry of the directory.
+     */
+    public String getResumeAfter() {
+        return _resumeAfter;
+    }
+
     /**
      * True if and only if the reply should include file meta data.
      */
@@ -0,0 +1,72 @@
+package org.dcache.vehicles.codec;
+
+import static dmg.cells.nucleus.MsgSerializerSchema.readSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.readString;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeString;
+import static org.dcache.vehicles.codec.MessageCodecs.readFileAttributes;
+import static org.dcache.vehicles.codec.MessageCodecs.readMessage;
+import static org.dcache.vehicles.codec.MessageCodecs.readPnfsId;
+import static org.dcache.vehicles.codec.MessageCodecs.writeFileAttributes;
+import static org.dcache.vehicles.codec.MessageCodecs.writeMessage;
+import static org.dcache.vehicles.codec.MessageCodecs.writePnfsId;
+
+import diskCacheV111.vehicles.DoorTransferFinishedMessage;
+import dmg.cells.nucleus.MessageCodec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+
+/**
+ * Schema codec for {@link DoorTransferFinishedMessage}, sent by pools to doors at the end of every
+ * transfer.
+ * <p>
+ * Protocol info and the mover info are embedded using Java object serialization.
+ */
+public class DoorTransferFinishedMessageCodec implements
+      MessageCodec<DoorTransferFinishedMessage> {
+
+    static final short ID = 5;
+    private static final short VERSION = 1;
+
+    @Override
+    public Class<DoorTransferFinishedMessage> getType() {
+        return DoorTransferFinishedMessage.class;
+    }
+
+    @Override
+    public short getId() {
+        return ID;
+    }
+
+    @Override
+    public short getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void encode(DoorTransferFinishedMessage message, DataOutput out) throws IOException {
+        writePnfsId(out, message.getPnfsId());
+        writeSerializable(out, message.getProtocolInfo());
+        writeFileAttributes(out, message.getFileAttributes());
+        writeString(out, message.getPoolName());
+        writeString(out, message.getIoQueueName());
+        writeSerializable(out, message.getMoverInfo());
+        writeMessage(out, message);
+    }
+
+    @Override
+    public DoorTransferFinishedMessage decode(DataInput in, short version) throws IOException {
+        if (version != VERSION) {
+            throw new InvalidObjectException(
+                  "Unsupported DoorTransferFinishedMessage encoding " + version);
+        }
+        DoorTransferFinishedMessage message = new DoorTransferFinishedMessage(0,
+              readPnfsId(in), readSerializable(in), readFileAttributes(in), readString(in),
+              readString(in));
+        message.setMoverInfo(readSerializable(in));
+        readMessage(in, message);
+        return message;
+    }
+}
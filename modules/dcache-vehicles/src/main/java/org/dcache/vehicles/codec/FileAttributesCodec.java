@@ -0,0 +1,301 @@
+package org.dcache.vehicles.codec;
+
+import static com.google.common.base.Strings.emptyToNull;
+import static dmg.cells.nucleus.MsgSerializerSchema.readSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.readString;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeString;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import dmg.cells.nucleus.MessageCodec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.util.Checksum;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Schema codec for {@link FileAttributes}.
+ * <p>
+ * Only defined attributes are encoded. Enumerations are encoded by ordinal, which is safe as the
+ * compact serializer is only used between domains of the same release. ACLs and storage info are
+ * embedded using Java object serialization.
+ * <p>
+ * Decoding interns and normalizes the same fields as {@link FileAttributes}' own Java
+ * deserialization.
+ */
+public class FileAttributesCodec implements MessageCodec<FileAttributes> {
+
+    static final short ID = 2;
+    private static final short VERSION = 1;
+
+    private static final FileAttribute[] ATTRIBUTES = FileAttribute.values();
+    private static final FileType[] FILE_TYPES = FileType.values();
+
+    @Override
+    public Class<FileAttributes> getType() {
+        return FileAttributes.class;
+    }
+
+    @Override
+    public short getId() {
+        return ID;
+    }
+
+    @Override
+    public short getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void encode(FileAttributes attributes, DataOutput out) throws IOException {
+        write(attributes, out);
+    }
+
+    @Override
+    public FileAttributes decode(DataInput in, short version) throws IOException {
+        if (version != VERSION) {
+            throw new InvalidObjectException("Unsupported FileAttributes encoding " + version);
+        }
+        return read(in);
+    }
+
+    static void writeAttributeSet(Set<FileAttribute> attributes, DataOutput out)
+          throws IOException {
+        long bits = 0;
+        for (FileAttribute attribute : attributes) {
+            bits |= 1L << attribute.ordinal();
+        }
+        out.writeLong(bits);
+    }
+
+    static EnumSet<FileAttribute> readAttributeSet(DataInput in) throws IOException {
+        long bits = in.readLong();
+        EnumSet<FileAttribute> attributes = EnumSet.noneOf(FileAttribute.class);
+        for (FileAttribute attribute : ATTRIBUTES) {
+            if ((bits & (1L << attribute.ordinal())) != 0) {
+                attributes.add(attribute);
+            }
+        }
+        return attributes;
+    }
+
+    static void write(FileAttributes attributes, DataOutput out) throws IOException {
+        Set<FileAttribute> defined = attributes.getDefinedAttributes();
+        writeAttributeSet(defined, out);
+        for (FileAttribute attribute : defined) {
+            switch (attribute) {
+                case ACL:
+                    writeSerializable(out, attributes.getAcl());
+                    break;
+                case SIZE:
+                    out.writeLong(attributes.getSize());
+                    break;
+                case CHANGE_TIME:
+                    out.writeLong(attributes.getChangeTime());
+                    break;
+                case CREATION_TIME:
+                    out.writeLong(attributes.getCreationTime());
+                    break;
+                case ACCESS_TIME:
+                    out.writeLong(attributes.getAccessTime());
+                    break;
+                case MODIFICATION_TIME:
+                    out.writeLong(attributes.getModificationTime());
+                    break;
+                case CHECKSUM:
+                    writeStrings(out, attributes.getChecksums().stream()
+                          .map(Checksum::toString).collect(Collectors.toList()));
+                    break;
+                case OWNER:
+                    out.writeInt(attributes.getOwner());
+                    break;
+                case OWNER_GROUP:
+                    out.writeInt(attributes.getGroup());
+                    break;
+                case MODE:
+                    out.writeInt(attributes.getMode());
+                    break;
+                case NLINK:
+                    out.writeInt(attributes.getNlink());
+                    break;
+                case ACCESS_LATENCY:
+                    out.writeInt(attributes.getAccessLatency().getId());
+                    break;
+                case RETENTION_POLICY:
+                    out.writeInt(attributes.getRetentionPolicy().getId());
+                    break;
+                case TYPE:
+                    out.writeByte(attributes.getFileType().ordinal());
+                    break;
+                case LOCATIONS:
+                    writeStrings(out, attributes.getLocations());
+                    break;
+                case FLAGS:
+                    writeMap(out, attributes.getFlags());
+                    break;
+                case PNFSID:
+                    out.writeUTF(attributes.getPnfsId().toString());
+                    break;
+                case STORAGEINFO:
+                    writeSerializable(out, attributes.getStorageInfo());
+                    break;
+                case STORAGECLASS:
+                    writeString(out, attributes.getStorageClass());
+                    break;
+                case HSM:
+                    writeString(out, attributes.getHsm());
+                    break;
+                case CACHECLASS:
+                    writeString(out, attributes.getCacheClass());
+                    break;
+                case XATTR:
+                    writeMap(out, attributes.getXattrs());
+                    break;
+                case LABELS:
+                    writeStrings(out, attributes.getLabels());
+                    break;
+                default:
+                    throw new InvalidObjectException("Unsupported attribute " + attribute);
+            }
+        }
+    }
+
+    static FileAttributes read(DataInput in) throws IOException {
+        FileAttributes attributes = new FileAttributes();
+        for (FileAttribute attribute : readAttributeSet(in)) {
+            switch (attribute) {
+                case ACL:
+                    attributes.setAcl(readSerializable(in));
+                    break;
+                case SIZE:
+                    attributes.setSize(in.readLong());
+                    break;
+                case CHANGE_TIME:
+                    attributes.setChangeTime(in.readLong());
+                    break;
+                case CREATION_TIME:
+                    attributes.setCreationTime(in.readLong());
+                    break;
+                case ACCESS_TIME:
+                    attributes.setAccessTime(in.readLong());
+                    break;
+                case MODIFICATION_TIME:
+                    attributes.setModificationTime(in.readLong());
+                    break;
+                case CHECKSUM:
+                    Set<Checksum> checksums = new HashSet<>();
+                    for (String checksum : readStrings(in)) {
+                        checksums.add(Checksum.parseChecksum(checksum));
+                    }
+                    attributes.setChecksums(checksums);
+                    break;
+                case OWNER:
+                    attributes.setOwner(in.readInt());
+                    break;
+                case OWNER_GROUP:
+                    attributes.setGroup(in.readInt());
+                    break;
+                case MODE:
+                    attributes.setMode(in.readInt());
+                    break;
+                case NLINK:
+                    attributes.setNlink(in.readInt());
+                    break;
+                case ACCESS_LATENCY:
+                    attributes.setAccessLatency(AccessLatency.getAccessLatency(in.readInt()));
+                    break;
+                case RETENTION_POLICY:
+                    attributes.setRetentionPolicy(RetentionPolicy.getRetentionPolicy(in.readInt()));
+                    break;
+                case TYPE:
+                    attributes.setFileType(FILE_TYPES[in.readByte()]);
+                    break;
+                case LOCATIONS:
+                    attributes.setLocations(readStrings(in));
+                    break;
+                case FLAGS:
+                    attributes.setFlags(readMap(in, String::intern));
+                    break;
+                case PNFSID:
+                    attributes.setPnfsId(new PnfsId(in.readUTF()));
+                    break;
+                case STORAGEINFO:
+                    attributes.setStorageInfo(readSerializable(in));
+                    break;
+                case STORAGECLASS:
+                    attributes.setStorageClass(intern(readString(in)));
+                    break;
+                case HSM:
+                    attributes.setHsm(intern(readString(in)));
+                    break;
+                case CACHECLASS:
+                    attributes.setCacheClass(intern(emptyToNull(readString(in))));
+                    break;
+                case XATTR:
+                    attributes.setXattrs(readMap(in, UnaryOperator.identity()));
+                    break;
+                case LABELS:
+                    attributes.setLabels(new HashSet<>(readStrings(in)));
+                    break;
+                default:
+                    throw new InvalidObjectException("Unsupported attribute " + attribute);
+            }
+        }
+        return attributes;
+    }
+
+    private static void writeStrings(DataOutput out, Collection<String> values)
+          throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    private static void writeMap(DataOutput out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(DataInput in, UnaryOperator<String> keyMapper)
+          throws IOException {
+        int size = in.readInt();
+        Map<String, String> map = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            map.put(keyMapper.apply(in.readUTF()), in.readUTF());
+        }
+        return map;
+    }
+
+    private static String intern(String value) {
+        return value == null ? null : value.intern();
+    }
+}
@@ -0,0 +1,125 @@
+package org.dcache.vehicles.codec;
+
+import static dmg.cells.nucleus.MsgSerializerSchema.readSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.readString;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeString;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.Message;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import javax.security.auth.Subject;
+import org.dcache.auth.Subjects;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Helper methods shared by the schema codecs of dCache messages.
+ * <p>
+ * The fields of {@link Message} are written after the fields of the subclass, so that a codec can
+ * construct the message from the latter before applying the former.
+ */
+public final class MessageCodecs {
+
+    private static final byte NULL = 0;
+    private static final byte ROOT = 1;
+    private static final byte SERIALIZED = 2;
+
+    private MessageCodecs() {
+    }
+
+    public static void writeMessage(DataOutput out, Message message) throws IOException {
+        out.writeBoolean(message.getReplyRequired());
+        out.writeBoolean(message.isReply());
+        out.writeInt(message.getReturnCode());
+        writeSerializable(out, message.getErrorObject());
+        out.writeLong(message.getId());
+        writeSubject(out, message.getSubject());
+    }
+
+    public static void readMessage(DataInput in, Message message) throws IOException {
+        message.setReplyRequired(in.readBoolean());
+        boolean isReply = in.readBoolean();
+        int returnCode = in.readInt();
+        Serializable errorObject = readSerializable(in);
+        if (isReply) {
+            message.setReply(returnCode, errorObject);
+        }
+        message.setId(in.readLong());
+        message.setSubject(readSubject(in));
+    }
+
+    public static void writeSubject(DataOutput out, Subject subject) throws IOException {
+        if (subject == null) {
+            out.writeByte(NULL);
+        } else if (subject.isReadOnly() && Subjects.ROOT.equals(subject)) {
+            out.writeByte(ROOT);
+        } else {
+            out.writeByte(SERIALIZED);
+            writeSerializable(out, subject);
+        }
+    }
+
+    public static Subject readSubject(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case ROOT:
+                return Subjects.ROOT;
+            case SERIALIZED:
+                return readSerializable(in);
+            default:
+                throw new InvalidObjectException("Invalid subject encoding " + type);
+        }
+    }
+
+    public static void writePnfsId(DataOutput out, PnfsId pnfsId) throws IOException {
+        writeString(out, pnfsId == null ? null : pnfsId.toString());
+    }
+
+    public static PnfsId readPnfsId(DataInput in) throws IOException {
+        String pnfsId = readString(in);
+        return pnfsId == null ? null : new PnfsId(pnfsId);
+    }
+
+    public static void writeFileAttributes(DataOutput out, FileAttributes attributes)
+          throws IOException {
+        out.writeBoolean(attributes != null);
+        if (attributes != null) {
+            FileAttributesCodec.write(attributes, out);
+        }
+    }
+
+    public static FileAttributes readFileAttributes(DataInput in) throws IOException {
+        return in.readBoolean() ? FileAttributesCodec.read(in) : null;
+    }
+
+    public static void writeStrings(DataOutput out, Collection<String> values)
+          throws IOException {
+        out.writeInt(values == null ? -1 : values.size());
+        if (values != null) {
+            for (String value : values) {
+                out.writeUTF(value);
+            }
+        }
+    }
+
+    public static Set<String> readStringSet(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Set<String> values = new HashSet<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+}
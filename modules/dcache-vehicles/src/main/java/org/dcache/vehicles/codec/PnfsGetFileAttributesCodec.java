@@ -0,0 +1,166 @@
+package org.dcache.vehicles.codec;
+
+import static dmg.cells.nucleus.MsgSerializerSchema.readSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.readString;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeString;
+import static org.dcache.vehicles.codec.MessageCodecs.readSubject;
+import static org.dcache.vehicles.codec.MessageCodecs.writeSubject;
+
+import diskCacheV111.util.PnfsId;
+import dmg.cells.nucleus.MessageCodec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.EnumSet;
+import java.util.Set;
+import javax.security.auth.Subject;
+import org.dcache.acl.enums.AccessMask;
+import org.dcache.auth.attributes.Restriction;
+import org.dcache.auth.attributes.Restrictions;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.vehicles.PnfsGetFileAttributes;
+
+/**
+ * Schema codec for {@link PnfsGetFileAttributes}, the most frequent message in a dCache
+ * installation.
+ * <p>
+ * The root subject and the empty restriction are encoded as flags. Other subjects and
+ * restrictions, as well as error objects, are embedded using Java object serialization.
+ */
+public class PnfsGetFileAttributesCodec implements MessageCodec<PnfsGetFileAttributes> {
+
+    static final short ID = 1;
+    private static final short VERSION = 1;
+
+    private static final AccessMask[] ACCESS_MASKS = AccessMask.values();
+
+    private static final byte NONE = 1;
+    private static final byte SERIALIZED = 2;
+
+    @Override
+    public Class<PnfsGetFileAttributes> getType() {
+        return PnfsGetFileAttributes.class;
+    }
+
+    @Override
+    public short getId() {
+        return ID;
+    }
+
+    @Override
+    public short getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void encode(PnfsGetFileAttributes message, DataOutput out) throws IOException {
+        out.writeBoolean(message.getReplyRequired());
+        out.writeBoolean(message.isReply());
+        out.writeInt(message.getReturnCode());
+        writeSerializable(out, message.getErrorObject());
+        out.writeLong(message.getId());
+        writeSubject(out, message.getSubject());
+
+        PnfsId pnfsId = message.getPnfsId();
+        writeString(out, pnfsId == null ? null : pnfsId.toString());
+        writeString(out, message.getPnfsPath());
+        writeRestriction(out, message.getRestriction());
+        out.writeBoolean(message.isFollowSymlink());
+        writeAccessMask(out, message.getAccessMask());
+
+        Set<FileAttribute> requested = message.getRequestedAttributes();
+        out.writeBoolean(requested != null);
+        if (requested != null) {
+            FileAttributesCodec.writeAttributeSet(requested, out);
+        }
+        out.writeBoolean(message.getUpdateAtime());
+        out.writeBoolean(message.getFileAttributes() != null);
+        if (message.getFileAttributes() != null) {
+            FileAttributesCodec.write(message.getFileAttributes(), out);
+        }
+    }
+
+    @Override
+    public PnfsGetFileAttributes decode(DataInput in, short version) throws IOException {
+        if (version != VERSION) {
+            throw new InvalidObjectException(
+                  "Unsupported PnfsGetFileAttributes encoding " + version);
+        }
+        boolean isReplyRequired = in.readBoolean();
+        boolean isReply = in.readBoolean();
+        int returnCode = in.readInt();
+        Serializable errorObject = readSerializable(in);
+        long id = in.readLong();
+        Subject subject = readSubject(in);
+
+        String pnfsId = readString(in);
+        String path = readString(in);
+        Restriction restriction = readRestriction(in);
+        boolean isFollowSymlink = in.readBoolean();
+        Set<AccessMask> accessMask = readAccessMask(in);
+
+        PnfsGetFileAttributes message = new PnfsGetFileAttributes(
+              pnfsId == null ? null : new PnfsId(pnfsId),
+              in.readBoolean() ? FileAttributesCodec.readAttributeSet(in) : null);
+        message.setUpdateAtime(in.readBoolean());
+        if (in.readBoolean()) {
+            message.setFileAttributes(FileAttributesCodec.read(in));
+        }
+
+        message.setPnfsPath(path);
+        message.setRestriction(restriction);
+        message.setFollowSymlink(isFollowSymlink);
+        message.setAccessMask(accessMask);
+        message.setReplyRequired(isReplyRequired);
+        if (isReply) {
+            message.setReply(returnCode, errorObject);
+        }
+        message.setId(id);
+        message.setSubject(subject);
+        return message;
+    }
+
+    private static void writeRestriction(DataOutput out, Restriction restriction)
+          throws IOException {
+        if (Restrictions.none().equals(restriction)) {
+            out.writeByte(NONE);
+        } else {
+            out.writeByte(SERIALIZED);
+            writeSerializable(out, restriction);
+        }
+    }
+
+    private static Restriction readRestriction(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NONE:
+                return Restrictions.none();
+            case SERIALIZED:
+                return readSerializable(in);
+            default:
+                throw new InvalidObjectException("Invalid restriction encoding " + type);
+        }
+    }
+
+    private static void writeAccessMask(DataOutput out, Set<AccessMask> mask) throws IOException {
+        int bits = 0;
+        for (AccessMask access : mask) {
+            bits |= 1 << access.ordinal();
+        }
+        out.writeInt(bits);
+    }
+
+    private static Set<AccessMask> readAccessMask(DataInput in) throws IOException {
+        int bits = in.readInt();
+        Set<AccessMask> mask = EnumSet.noneOf(AccessMask.class);
+        for (AccessMask access : ACCESS_MASKS) {
+            if ((bits & (1 << access.ordinal())) != 0) {
+                mask.add(access);
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,45 @@
+package org.dcache.vehicles.codec;
+
+import diskCacheV111.vehicles.PoolAcceptFileMessage;
+import diskCacheV111.vehicles.ProtocolInfo;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.OptionalLong;
+import org.dcache.pool.assumption.Assumption;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Schema codec for {@link PoolAcceptFileMessage}, sent by doors to start a write mover.
+ */
+public class PoolAcceptFileMessageCodec extends PoolIoFileMessageCodec<PoolAcceptFileMessage> {
+
+    static final short ID = 4;
+
+    @Override
+    public Class<PoolAcceptFileMessage> getType() {
+        return PoolAcceptFileMessage.class;
+    }
+
+    @Override
+    public short getId() {
+        return ID;
+    }
+
+    @Override
+    protected void encodeFields(PoolAcceptFileMessage message, DataOutput out)
+          throws IOException {
+        out.writeLong(message.getMaximumSize().orElse(0));
+        out.writeLong(message.getPreallocated());
+    }
+
+    @Override
+    protected PoolAcceptFileMessage decodeFields(String pool, ProtocolInfo protocolInfo,
+          FileAttributes fileAttributes, Assumption assumption, DataInput in) throws IOException {
+        long maximumSize = in.readLong();
+        long preallocated = in.readLong();
+        return new PoolAcceptFileMessage(pool, protocolInfo, fileAttributes, assumption,
+              maximumSize == 0 ? OptionalLong.empty() : OptionalLong.of(maximumSize),
+              preallocated);
+    }
+}
@@ -0,0 +1,36 @@
+package org.dcache.vehicles.codec;
+
+import diskCacheV111.vehicles.PoolDeliverFileMessage;
+import diskCacheV111.vehicles.ProtocolInfo;
+import java.io.DataInput;
+import java.io.DataOutput;
+import org.dcache.pool.assumption.Assumption;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Schema codec for {@link PoolDeliverFileMessage}, sent by doors to start a read mover.
+ */
+public class PoolDeliverFileMessageCodec extends PoolIoFileMessageCodec<PoolDeliverFileMessage> {
+
+    static final short ID = 3;
+
+    @Override
+    public Class<PoolDeliverFileMessage> getType() {
+        return PoolDeliverFileMessage.class;
+    }
+
+    @Override
+    public short getId() {
+        return ID;
+    }
+
+    @Override
+    protected void encodeFields(PoolDeliverFileMessage message, DataOutput out) {
+    }
+
+    @Override
+    protected PoolDeliverFileMessage decodeFields(String pool, ProtocolInfo protocolInfo,
+          FileAttributes fileAttributes, Assumption assumption, DataInput in) {
+        return new PoolDeliverFileMessage(pool, protocolInfo, fileAttributes, assumption);
+    }
+}
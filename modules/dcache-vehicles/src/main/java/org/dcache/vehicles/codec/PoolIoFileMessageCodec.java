@@ -0,0 +1,96 @@
+package org.dcache.vehicles.codec;
+
+import static dmg.cells.nucleus.MsgSerializerSchema.readSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.readString;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeString;
+import static org.dcache.vehicles.codec.MessageCodecs.readFileAttributes;
+import static org.dcache.vehicles.codec.MessageCodecs.readMessage;
+import static org.dcache.vehicles.codec.MessageCodecs.writeFileAttributes;
+import static org.dcache.vehicles.codec.MessageCodecs.writeMessage;
+
+import diskCacheV111.vehicles.PoolIoFileMessage;
+import diskCacheV111.vehicles.ProtocolInfo;
+import dmg.cells.nucleus.MessageCodec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import org.dcache.pool.assumption.Assumption;
+import org.dcache.pool.assumption.Assumptions;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Base class for schema codecs of the {@link PoolIoFileMessage} subclasses sent by doors to
+ * start a mover.
+ * <p>
+ * The unrestricted assumption is encoded as a flag. Protocol info and other assumptions are
+ * embedded using Java object serialization.
+ */
+abstract class PoolIoFileMessageCodec<T extends PoolIoFileMessage> implements MessageCodec<T> {
+
+    private static final short VERSION = 1;
+
+    @Override
+    public short getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void encode(T message, DataOutput out) throws IOException {
+        writeString(out, message.getPoolName());
+        writeSerializable(out, message.getProtocolInfo());
+        writeFileAttributes(out, message.getFileAttributes());
+        Assumption assumption = message.getAssumption();
+        out.writeBoolean(assumption == Assumptions.none());
+        if (assumption != Assumptions.none()) {
+            writeSerializable(out, assumption);
+        }
+        encodeFields(message, out);
+
+        out.writeBoolean(message.isPool2Pool());
+        writeString(out, message.getIoQueueName());
+        out.writeInt(message.getMoverId());
+        writeString(out, message.getInitiator());
+        out.writeBoolean(message.isForceSourceMode());
+        writeString(out, message.getBillingPath());
+        writeString(out, message.getTransferPath());
+        writeMessage(out, message);
+    }
+
+    @Override
+    public T decode(DataInput in, short version) throws IOException {
+        if (version != VERSION) {
+            throw new InvalidObjectException(
+                  "Unsupported " + getType().getSimpleName() + " encoding " + version);
+        }
+        String pool = readString(in);
+        ProtocolInfo protocolInfo = readSerializable(in);
+        FileAttributes fileAttributes = readFileAttributes(in);
+        Assumption assumption = in.readBoolean() ? Assumptions.none() : readSerializable(in);
+        T message = decodeFields(pool, protocolInfo, fileAttributes, assumption, in);
+
+        if (in.readBoolean()) {
+            message.setPool2Pool();
+        }
+        message.setIoQueueName(readString(in));
+        message.setMoverId(in.readInt());
+        message.setInitiator(readString(in));
+        message.setForceSourceMode(in.readBoolean());
+        message.setBillingPath(readString(in));
+        message.setTransferPath(readString(in));
+        readMessage(in, message);
+        return message;
+    }
+
+    /**
+     * Writes the fields specific to the subclass.
+     */
+    protected abstract void encodeFields(T message, DataOutput out) throws IOException;
+
+    /**
+     * Reads the fields written by {@link #encodeFields} and creates the message.
+     */
+    protected abstract T decodeFields(String pool, ProtocolInfo protocolInfo,
+          FileAttributes fileAttributes, Assumption assumption, DataInput in) throws IOException;
+}
@@ -0,0 +1,68 @@
+package org.dcache.vehicles.codec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.DCapProtocolInfo;
+import diskCacheV111.vehicles.DoorTransferFinishedMessage;
+import diskCacheV111.vehicles.MoverInfoMessage;
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.MsgSerializerSchema;
+import java.net.InetSocketAddress;
+import org.dcache.vehicles.FileAttributes;
+import org.junit.Test;
+
+public class DoorTransferFinishedMessageCodecTest {
+
+    private static final PnfsId PNFSID = new PnfsId("0000D4F2A4E9BB8E4D8B8D4F6DBBBD8B1B0A");
+
+    private static DoorTransferFinishedMessage message() {
+        FileAttributes attributes = FileAttributes.ofPnfsId(PNFSID);
+        attributes.setSize(1234567);
+        return new DoorTransferFinishedMessage(42, PNFSID,
+              new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress("door.example.org", 22125)),
+              attributes, "pool1", "regular");
+    }
+
+    @Test
+    public void shouldRoundTripMessage() {
+        DoorTransferFinishedMessage message = message();
+        MoverInfoMessage moverInfo = new MoverInfoMessage(new CellAddressCore("pool1"), PNFSID);
+        moverInfo.setTransferAttributes(1234567, 1000, message.getProtocolInfo());
+        message.setMoverInfo(moverInfo);
+        message.setSucceeded();
+
+        byte[] encoded = MsgSerializerSchema.encode(message);
+        assertThat(MsgSerializerSchema.isSchemaEncoded(encoded), is(true));
+
+        DoorTransferFinishedMessage decoded =
+              (DoorTransferFinishedMessage) MsgSerializerSchema.decode(encoded);
+        assertThat(decoded.getId(), is(42L));
+        assertThat(decoded.getPnfsId(), equalTo(PNFSID));
+        assertThat(decoded.getProtocolInfo().getProtocol(), equalTo("DCap"));
+        assertThat(decoded.getFileAttributes().getSize(), is(1234567L));
+        assertThat(decoded.getPoolName(), equalTo("pool1"));
+        assertThat(decoded.getIoQueueName(), equalTo("regular"));
+        assertThat(decoded.getMoverInfo().getDataTransferred(), is(1234567L));
+        assertThat(decoded.getSubject(), equalTo(message.getSubject()));
+        assertThat(decoded.isReply(), is(true));
+        assertThat(decoded.getReturnCode(), is(0));
+    }
+
+    @Test
+    public void shouldRoundTripFailure() {
+        DoorTransferFinishedMessage message = message();
+        message.setFailed(CacheException.UNEXPECTED_SYSTEM_EXCEPTION, "Disk failure");
+
+        DoorTransferFinishedMessage decoded =
+              (DoorTransferFinishedMessage) MsgSerializerSchema.decode(
+                    MsgSerializerSchema.encode(message));
+        assertThat(decoded.getReturnCode(), is(CacheException.UNEXPECTED_SYSTEM_EXCEPTION));
+        assertThat(decoded.getErrorObject(), equalTo("Disk failure"));
+        assertThat(decoded.getMoverInfo(), is(nullValue()));
+    }
+}
@@ -0,0 +1,58 @@
+package org.dcache.vehicles.codec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import dmg.cells.nucleus.MsgSerializerJos;
+import dmg.cells.nucleus.MsgSerializerSchema;
+import java.util.Map;
+import org.dcache.vehicles.FileAttributes;
+import org.junit.Test;
+
+public class FileAttributesCodecTest {
+
+    private static FileAttributes roundTrip(FileAttributes attributes) {
+        byte[] encoded = MsgSerializerSchema.encode(attributes);
+        return MsgSerializerSchema.isSchemaEncoded(encoded)
+              ? (FileAttributes) MsgSerializerSchema.decode(encoded)
+              : (FileAttributes) MsgSerializerJos.decode(encoded);
+    }
+
+    @Test
+    public void shouldInternStrings() {
+        FileAttributes attributes = new FileAttributes();
+        attributes.setStorageClass(new String("test:disk@osm"));
+        attributes.setHsm(new String("osm"));
+        attributes.setCacheClass(new String("cache"));
+        attributes.setFlags(Map.of(new String("flag"), "value"));
+
+        FileAttributes decoded = roundTrip(attributes);
+
+        assertThat(decoded.getStorageClass(), sameInstance("test:disk@osm"));
+        assertThat(decoded.getHsm(), sameInstance("osm"));
+        assertThat(decoded.getCacheClass(), sameInstance("cache"));
+        assertThat(decoded.getFlags().keySet().iterator().next(), sameInstance("flag"));
+    }
+
+    @Test
+    public void shouldNormalizeEmptyCacheClass() {
+        FileAttributes attributes = FileAttributes.of().cacheClass("").build();
+
+        assertThat(roundTrip(attributes).getCacheClass(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldFallBackToJavaSerializationForLongStrings() {
+        String value = "x".repeat(70_000);
+        FileAttributes attributes = FileAttributes.of().xattr("key", value).build();
+
+        byte[] encoded = MsgSerializerSchema.encode(attributes);
+
+        assertThat(MsgSerializerSchema.isSchemaEncoded(encoded), is(false));
+        FileAttributes decoded = (FileAttributes) MsgSerializerJos.decode(encoded);
+        assertThat(decoded.getXattrs(), equalTo(Map.of("key", value)));
+    }
+}
@@ -0,0 +1,124 @@
+package org.dcache.vehicles.codec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import dmg.cells.nucleus.MsgSerializerJos;
+import dmg.cells.nucleus.MsgSerializerSchema;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.dcache.acl.enums.AccessMask;
+import org.dcache.auth.Subjects;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributes;
+import org.junit.Test;
+
+public class PnfsGetFileAttributesCodecTest {
+
+    private static final PnfsId PNFSID = new PnfsId("0000D4F2A4E9BB8E4D8B8D4F6DBBBD8B1B0A");
+
+    @Test
+    public void shouldRoundTripRequest() {
+        PnfsGetFileAttributes request = new PnfsGetFileAttributes(PNFSID,
+              EnumSet.of(FileAttribute.SIZE, FileAttribute.TYPE, FileAttribute.LOCATIONS));
+        request.setSubject(Subjects.ROOT);
+        request.setAccessMask(EnumSet.of(AccessMask.READ_DATA));
+        request.setId(42);
+
+        byte[] encoded = MsgSerializerSchema.encode(request);
+        assertThat(MsgSerializerSchema.isSchemaEncoded(encoded), is(true));
+
+        PnfsGetFileAttributes decoded = (PnfsGetFileAttributes) MsgSerializerSchema.decode(encoded);
+        assertThat(decoded.getPnfsId(), equalTo(PNFSID));
+        assertThat(decoded.getPnfsPath(), is(nullValue()));
+        assertThat(decoded.getRequestedAttributes(), equalTo(request.getRequestedAttributes()));
+        assertThat(decoded.getSubject(), sameInstance(Subjects.ROOT));
+        assertThat(decoded.getAccessMask(), equalTo(Set.of(AccessMask.READ_DATA)));
+        assertThat(decoded.getReplyRequired(), is(true));
+        assertThat(decoded.isReply(), is(false));
+        assertThat(decoded.getId(), is(42L));
+        assertThat(decoded.getFileAttributes(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldRoundTripReply() {
+        PnfsGetFileAttributes reply = new PnfsGetFileAttributes("/data/file",
+              EnumSet.allOf(FileAttribute.class));
+        reply.setSubject(Subjects.of(1000, 1000, new int[]{1000, 2000}));
+        FileAttributes attributes = new FileAttributes();
+        attributes.setPnfsId(PNFSID);
+        attributes.setSize(1234567);
+        attributes.setFileType(FileType.REGULAR);
+        attributes.setMode(0644);
+        attributes.setOwner(1000);
+        attributes.setGroup(2000);
+        attributes.setModificationTime(1000L);
+        attributes.setAccessLatency(AccessLatency.ONLINE);
+        attributes.setRetentionPolicy(RetentionPolicy.REPLICA);
+        attributes.setChecksums(Set.of(new Checksum(ChecksumType.ADLER32, "12345678")));
+        attributes.setLocations(List.of("pool1", "pool2"));
+        attributes.setXattrs(Map.of("key", "value"));
+        attributes.setHsm("osm");
+        reply.setFileAttributes(attributes);
+        reply.setSucceeded();
+
+        PnfsGetFileAttributes decoded = (PnfsGetFileAttributes) MsgSerializerSchema.decode(
+              MsgSerializerSchema.encode(reply));
+        assertThat(decoded.getPnfsPath(), equalTo("/data/file"));
+        assertThat(decoded.getSubject(), equalTo(reply.getSubject()));
+        assertThat(decoded.isReply(), is(true));
+        assertThat(decoded.getReturnCode(), is(0));
+
+        FileAttributes result = decoded.getFileAttributes();
+        assertThat(result.getDefinedAttributes(), equalTo(attributes.getDefinedAttributes()));
+        assertThat(result.getPnfsId(), equalTo(PNFSID));
+        assertThat(result.getSize(), is(1234567L));
+        assertThat(result.getFileType(), is(FileType.REGULAR));
+        assertThat(result.getMode(), is(0644));
+        assertThat(result.getOwner(), is(1000));
+        assertThat(result.getGroup(), is(2000));
+        assertThat(result.getModificationTime(), is(1000L));
+        assertThat(result.getAccessLatency(), is(AccessLatency.ONLINE));
+        assertThat(result.getRetentionPolicy(), is(RetentionPolicy.REPLICA));
+        assertThat(result.getChecksums(), equalTo(attributes.getChecksums()));
+        assertThat(List.copyOf(result.getLocations()), equalTo(List.of("pool1", "pool2")));
+        assertThat(result.getXattrs(), equalTo(Map.of("key", "value")));
+        assertThat(result.getHsm(), equalTo("osm"));
+    }
+
+    @Test
+    public void shouldRoundTripFailure() {
+        PnfsGetFileAttributes reply = new PnfsGetFileAttributes(PNFSID,
+              EnumSet.of(FileAttribute.SIZE));
+        reply.setFailed(CacheException.FILE_NOT_FOUND, "No such file");
+
+        PnfsGetFileAttributes decoded = (PnfsGetFileAttributes) MsgSerializerSchema.decode(
+              MsgSerializerSchema.encode(reply));
+        assertThat(decoded.getReturnCode(), is(CacheException.FILE_NOT_FOUND));
+        assertThat(decoded.getErrorObject(), equalTo("No such file"));
+    }
+
+    @Test
+    public void shouldBeSmallerThanJavaSerialization() {
+        PnfsGetFileAttributes request = new PnfsGetFileAttributes(PNFSID,
+              EnumSet.of(FileAttribute.SIZE, FileAttribute.STORAGEINFO));
+        request.setSubject(Subjects.ROOT);
+
+        assertThat(MsgSerializerSchema.encode(request).length,
+              lessThan(MsgSerializerJos.encode(request).length / 4));
+    }
+}
@@ -0,0 +1,107 @@
+package org.dcache.vehicles.codec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.DCapProtocolInfo;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.PoolAcceptFileMessage;
+import diskCacheV111.vehicles.PoolDeliverFileMessage;
+import dmg.cells.nucleus.MsgSerializerJos;
+import dmg.cells.nucleus.MsgSerializerSchema;
+import java.net.InetSocketAddress;
+import java.util.OptionalLong;
+import org.dcache.auth.Subjects;
+import org.dcache.pool.assumption.Assumptions;
+import org.dcache.vehicles.FileAttributes;
+import org.junit.Test;
+
+public class PoolIoFileMessageCodecTest {
+
+    private static final PnfsId PNFSID = new PnfsId("0000D4F2A4E9BB8E4D8B8D4F6DBBBD8B1B0A");
+
+    private static FileAttributes fileAttributes() {
+        FileAttributes attributes = FileAttributes.ofPnfsId(PNFSID);
+        attributes.setStorageInfo(new GenericStorageInfo("osm", "test:disk"));
+        attributes.setSize(1234567);
+        attributes.setAccessLatency(AccessLatency.ONLINE);
+        attributes.setRetentionPolicy(RetentionPolicy.REPLICA);
+        return attributes;
+    }
+
+    private static DCapProtocolInfo protocolInfo() {
+        return new DCapProtocolInfo("DCap", 3, 0,
+              new InetSocketAddress("door.example.org", 22125));
+    }
+
+    @Test
+    public void shouldRoundTripDeliverRequest() {
+        PoolDeliverFileMessage request = new PoolDeliverFileMessage("pool1", protocolInfo(),
+              fileAttributes(), Assumptions.none());
+        request.setIoQueueName("regular");
+        request.setInitiator("door:dcap@dCacheDomain:1");
+        request.setBillingPath("/data/file");
+        request.setSubject(Subjects.ROOT);
+        request.setId(42);
+
+        byte[] encoded = MsgSerializerSchema.encode(request);
+        assertThat(MsgSerializerSchema.isSchemaEncoded(encoded), is(true));
+
+        PoolDeliverFileMessage decoded = (PoolDeliverFileMessage) MsgSerializerSchema.decode(
+              encoded);
+        assertThat(decoded.getPoolName(), equalTo("pool1"));
+        assertThat(decoded.getPnfsId(), equalTo(PNFSID));
+        assertThat(decoded.getFileAttributes().getStorageInfo().getStorageClass(),
+              equalTo("test:disk"));
+        assertThat(decoded.getProtocolInfo().getProtocol(), equalTo("DCap"));
+        assertThat(decoded.getAssumption(), sameInstance(Assumptions.none()));
+        assertThat(decoded.getIoQueueName(), equalTo("regular"));
+        assertThat(decoded.getInitiator(), equalTo("door:dcap@dCacheDomain:1"));
+        assertThat(decoded.getBillingPath(), equalTo("/data/file"));
+        assertThat(decoded.getTransferPath(), equalTo("/data/file"));
+        assertThat(decoded.isPool2Pool(), is(false));
+        assertThat(decoded.getSubject(), sameInstance(Subjects.ROOT));
+        assertThat(decoded.getReplyRequired(), is(request.getReplyRequired()));
+        assertThat(decoded.getId(), is(42L));
+    }
+
+    @Test
+    public void shouldRoundTripAcceptReply() {
+        PoolAcceptFileMessage reply = new PoolAcceptFileMessage("pool1", protocolInfo(),
+              fileAttributes(), Assumptions.none(), OptionalLong.of(4096), 1024);
+        reply.setBillingPath("/data/file");
+        reply.setTransferPath("/upload/file");
+        reply.setForceSourceMode(true);
+        reply.setMoverId(17);
+        reply.setSubject(Subjects.of(1000, 1000, new int[]{1000}));
+        reply.setSucceeded();
+
+        PoolAcceptFileMessage decoded = (PoolAcceptFileMessage) MsgSerializerSchema.decode(
+              MsgSerializerSchema.encode(reply));
+        assertThat(decoded.getMaximumSize(), equalTo(OptionalLong.of(4096)));
+        assertThat(decoded.getPreallocated(), is(1024L));
+        assertThat(decoded.getBillingPath(), equalTo("/data/file"));
+        assertThat(decoded.getTransferPath(), equalTo("/upload/file"));
+        assertThat(decoded.isForceSourceMode(), is(true));
+        assertThat(decoded.getMoverId(), is(17));
+        assertThat(decoded.getFileAttributes().getAccessLatency(), is(AccessLatency.ONLINE));
+        assertThat(decoded.getSubject(), equalTo(reply.getSubject()));
+        assertThat(decoded.isReply(), is(true));
+        assertThat(decoded.getReturnCode(), is(0));
+    }
+
+    @Test
+    public void shouldBeSmallerThanJavaSerialization() {
+        PoolDeliverFileMessage request = new PoolDeliverFileMessage("pool1", protocolInfo(),
+              fileAttributes(), Assumptions.none());
+
+        assertThat(MsgSerializerSchema.encode(request).length,
+              lessThan(MsgSerializerJos.encode(request).length));
+    }
+}
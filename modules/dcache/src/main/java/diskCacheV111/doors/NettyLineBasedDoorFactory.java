@@ -25,6 +25,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import diskCacheV111.services.space.Space;
 import dmg.cells.nucleus.Cell;
 import dmg.cells.nucleus.CellEndpoint;
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.CellPath;
 import dmg.cells.services.login.LoginCellFactory;
 import io.netty.channel.ChannelPipeline;
@@ -129,6 +130,9 @@ public class NettyLineBasedDoorFactory extends AbstractService implements LoginC
     @Override
     public void getInfo(PrintWriter pw) {
         pw.println("  Interpreter    : " + factory.getClass());
+        if (factory instanceof CellInfoProvider) {
+            ((CellInfoProvider) factory).getInfo(pw);
+        }
     }
 
     @Override
@@ -30,6 +30,7 @@ import java.util.Set;
 import javax.security.auth.Subject;
 import org.dcache.namespace.CreateOption;
 import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileAttributesHandler;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
 import org.dcache.util.ChecksumType;
@@ -143,6 +144,13 @@ public abstract class ForwardingNameSpaceProvider implements NameSpaceProvider {
         return delegate().getFileAttributes(subject, pnfsId, attr);
     }
 
+    @Override
+    public void getFileAttributes(Subject subject, Collection<PnfsId> pnfsIds,
+          Set<FileAttribute> attr, FileAttributesHandler<PnfsId> handler)
+          throws CacheException {
+        delegate().getFileAttributes(subject, pnfsIds, attr, handler);
+    }
+
     @Override
     public FileAttributes setFileAttributes(Subject subject, PnfsId pnfsId,
           FileAttributes attr, Set<FileAttribute> fetch) throws CacheException {
@@ -155,6 +163,13 @@ public abstract class ForwardingNameSpaceProvider implements NameSpaceProvider {
         delegate().list(subject, path, glob, range, attrs, handler);
     }
 
+    @Override
+    public void list(Subject subject, String path, Glob glob, Range<Integer> range,
+          String resumeAfter, Set<FileAttribute> attrs, ListHandler handler)
+          throws CacheException {
+        delegate().list(subject, path, glob, range, resumeAfter, attrs, handler);
+    }
+
 
     @Override
     public void listVirtualDirectory(Subject subject, String path, Range<Integer> range,
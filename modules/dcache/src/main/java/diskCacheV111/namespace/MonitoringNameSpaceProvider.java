@@ -39,6 +39,7 @@ import org.apache.curator.shaded.com.google.common.hash.Hashing;
 import org.dcache.auth.Subjects;
 import org.dcache.namespace.CreateOption;
 import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileAttributesHandler;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
 import org.dcache.namespace.events.EventType;
@@ -179,7 +180,30 @@ public class MonitoringNameSpaceProvider extends ForwardingNameSpaceProvider {
     public FileAttributes getFileAttributes(Subject subject, PnfsId id,
           Set<FileAttribute> requestAttributes) throws CacheException {
         FileAttributes ret = super.getFileAttributes(subject, id, requestAttributes);
+        addLinks(id, ret);
+        return ret;
+    }
 
+    @Override
+    public void getFileAttributes(Subject subject, Collection<PnfsId> ids,
+          Set<FileAttribute> requestAttributes, FileAttributesHandler<PnfsId> handler)
+          throws CacheException {
+        super.getFileAttributes(subject, ids, requestAttributes,
+              new FileAttributesHandler<PnfsId>() {
+                  @Override
+                  public void addEntry(PnfsId id, FileAttributes attrs) {
+                      addLinks(id, attrs);
+                      handler.addEntry(id, attrs);
+                  }
+
+                  @Override
+                  public void addError(PnfsId id, CacheException cause) {
+                      handler.addError(id, cause);
+                  }
+              });
+    }
+
+    private void addLinks(PnfsId id, FileAttributes ret) {
         // REVISIT: we only need to do this if this getFileAttributes is for
         // a file open.  Can we somehow avoid doing this for other
         // getFileAttribute calls?
@@ -201,8 +225,6 @@ public class MonitoringNameSpaceProvider extends ForwardingNameSpaceProvider {
                 LOGGER.warn("Unable to find {}: {}", id, e.getMessage());
             }
         }
-
-        return ret;
     }
 
     @Override
@@ -268,6 +290,13 @@ public class MonitoringNameSpaceProvider extends ForwardingNameSpaceProvider {
     @Override
     public void list(Subject subject, String path, Glob glob, Range<Integer> range,
           Set<FileAttribute> attrs, ListHandler handler) throws CacheException {
+        list(subject, path, glob, range, null, attrs, handler);
+    }
+
+    @Override
+    public void list(Subject subject, String path, Glob glob, Range<Integer> range,
+          String resumeAfter, Set<FileAttribute> attrs, ListHandler handler)
+          throws CacheException {
         PnfsId target;
         Collection<Link> links;
         try {
@@ -279,7 +308,7 @@ public class MonitoringNameSpaceProvider extends ForwardingNameSpaceProvider {
         }
 
         MonitoringListHandler monitoringHandler = new MonitoringListHandler(handler, target, links);
-        super.list(subject, path, glob, range, attrs, monitoringHandler);
+        super.list(subject, path, glob, range, resumeAfter, attrs, monitoringHandler);
         monitoringHandler.sendClose();
     }
 
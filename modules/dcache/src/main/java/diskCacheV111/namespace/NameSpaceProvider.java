@@ -17,6 +17,7 @@ import javax.annotation.Nullable;
 import javax.security.auth.Subject;
 import org.dcache.namespace.CreateOption;
 import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileAttributesHandler;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
 import org.dcache.util.ChecksumType;
@@ -260,6 +261,29 @@ public interface NameSpaceProvider {
           Set<FileAttribute> attr)
           throws CacheException;
 
+    /**
+     * Get the attributes defined by <code>attr</code> of many files. For each file, the handler is
+     * called either with the attributes or with the reason why they could not be retrieved. The
+     * default implementation queries one file at a time.
+     *
+     * @param subject Subject of user who invoked this method.
+     * @param pnfsIds of the files
+     * @param attr    array of requested attributes
+     * @param handler Handler called for each file
+     * @throws CacheException if the request failed as a whole
+     */
+    default void getFileAttributes(Subject subject, Collection<PnfsId> pnfsIds,
+          Set<FileAttribute> attr, FileAttributesHandler<PnfsId> handler)
+          throws CacheException {
+        for (PnfsId pnfsId : pnfsIds) {
+            try {
+                handler.addEntry(pnfsId, getFileAttributes(subject, pnfsId, attr));
+            } catch (CacheException e) {
+                handler.addError(pnfsId, e);
+            }
+        }
+    }
+
     /**
      * Set files attributes defined by <code>attr</code>.
      * <p>
@@ -300,6 +324,45 @@ public interface NameSpaceProvider {
           Set<FileAttribute> attrs, ListHandler handler)
           throws CacheException;
 
+    /**
+     * Lists the content of a directory, limited to entries with a name sorting after {@code
+     * resumeAfter} in the order in which the provider lists entries. The range applies to the
+     * remaining entries. Providers may reject {@code resumeAfter} if they do not list entries in
+     * a stable order. This allows a listing to be
+     * continued from the last entry received rather than from an offset, which is stable under
+     * concurrent modification of the directory and does not require the provider to skip over the
+     * entries already returned.
+     * <p>
+     * The default implementation filters the result of a complete listing.
+     *
+     * @param subject     Subject of user who invoked this method
+     * @param path        Path to directory to list
+     * @param glob        Pattern to limit the result set; may be null
+     * @param range       The range of entries to return; may be null
+     * @param resumeAfter Name after which to continue the listing; may be null
+     * @param attrs       The file attributes to query for each entry
+     * @param handler     Handler called for each entry
+     */
+    default void list(Subject subject, String path, Glob glob, Range<Integer> range,
+          @Nullable String resumeAfter, Set<FileAttribute> attrs, ListHandler handler)
+          throws CacheException {
+        if (resumeAfter == null) {
+            list(subject, path, glob, range, attrs, handler);
+            return;
+        }
+        Range<Integer> r = (range == null) ? Range.all() : range;
+        list(subject, path, glob, Range.all(), attrs, new ListHandler() {
+            private int counter;
+
+            @Override
+            public void addEntry(String name, FileAttributes attr) throws CacheException {
+                if (name.compareTo(resumeAfter) > 0 && r.contains(counter++)) {
+                    handler.addEntry(name, attr);
+                }
+            }
+        });
+    }
+
     /**
      * Set up a temporary upload location for a file.
      * <p>
@@ -0,0 +1,279 @@
+package diskCacheV111.namespace;
+
+import static java.util.Objects.requireNonNull;
+
+import dmg.cells.nucleus.CellMessage;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.dcache.util.ColumnWriter;
+import org.dcache.util.TimeUtils;
+
+/**
+ * Dispatches messages to a shared pool of worker threads while preserving the order of messages
+ * with the same key.
+ * <p>
+ * Messages are hashed by key onto a large number of lanes. Each lane is processed by at most one
+ * worker at a time, thus messages for the same key are processed in arrival order. Lanes with
+ * pending messages are scheduled on a work-stealing pool, so a slow request only delays the
+ * messages that share its lane while idle workers pick up any other lane with pending work.
+ */
+class OrderedMessageDispatcher {
+
+    /**
+     * Processes a single message. The queue of the lane holding the message is provided such that
+     * identical messages may be folded into the reply.
+     */
+    interface Processor {
+
+        void process(CellMessage envelope, BlockingQueue<CellMessage> lane);
+    }
+
+    /**
+     * Upper bound of the latency buckets in milliseconds. The last bucket is unbounded.
+     */
+    private static final long[] BUCKET_LIMITS = {1, 10, 100, 1_000, 10_000};
+
+    private static final String[] BUCKET_LABELS = {"<1ms", "<10ms", "<100ms", "<1s", "<10s",
+          ">=10s"};
+
+    /**
+     * Maximum number of messages a worker processes from a lane before yielding to other lanes.
+     */
+    private static final int BATCH_SIZE = 32;
+
+    private final Lane[] _lanes;
+    private final ExecutorService _workers;
+    private final Processor _processor;
+
+    /**
+     * Logarithmic histogram of latencies.
+     */
+    private static class LatencyHistogram {
+
+        private final AtomicLongArray _buckets = new AtomicLongArray(BUCKET_LIMITS.length + 1);
+
+        void record(long millis) {
+            int i = 0;
+            while (i < BUCKET_LIMITS.length && millis >= BUCKET_LIMITS[i]) {
+                i++;
+            }
+            _buckets.incrementAndGet(i);
+        }
+
+        long get(int bucket) {
+            return _buckets.get(bucket);
+        }
+
+        long total() {
+            long total = 0;
+            for (int i = 0; i < _buckets.length(); i++) {
+                total += _buckets.get(i);
+            }
+            return total;
+        }
+
+        void reset() {
+            for (int i = 0; i < _buckets.length(); i++) {
+                _buckets.set(i, 0);
+            }
+        }
+    }
+
+    private class Lane implements Runnable {
+
+        private final BlockingQueue<CellMessage> _queue;
+        private final AtomicBoolean _isScheduled = new AtomicBoolean();
+        private final LatencyHistogram _waitTimes = new LatencyHistogram();
+        private final LatencyHistogram _processingTimes = new LatencyHistogram();
+
+        private volatile CellMessage _activeMessage;
+        private volatile Instant _whenStarted;
+
+        Lane(int maxSize) {
+            _queue = maxSize > 0 ? new LinkedBlockingQueue<>(maxSize) : new LinkedBlockingQueue<>();
+        }
+
+        boolean offer(CellMessage envelope) {
+            if (!_queue.offer(envelope)) {
+                return false;
+            }
+            schedule();
+            return true;
+        }
+
+        private void schedule() {
+            if (_isScheduled.compareAndSet(false, true)) {
+                _workers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    CellMessage envelope = _queue.poll();
+                    if (envelope == null) {
+                        break;
+                    }
+                    _waitTimes.record(envelope.getLocalAge());
+                    _whenStarted = Instant.now();
+                    _activeMessage = envelope;
+                    long start = System.nanoTime();
+                    try {
+                        _processor.process(envelope, _queue);
+                    } finally {
+                        _processingTimes.record(
+                              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        _activeMessage = null;
+                        _whenStarted = null;
+                    }
+                }
+            } finally {
+                _isScheduled.set(false);
+                if (!_queue.isEmpty() && !_workers.isShutdown()) {
+                    schedule();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a dispatcher processing lanes on a work-stealing pool with the given number of
+     * threads.
+     */
+    OrderedMessageDispatcher(int threads, int lanes, int maxQueueSize, Processor processor) {
+        this(new ForkJoinPool(threads,
+              pool -> {
+                  ForkJoinWorkerThread thread =
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                  thread.setName("proc-" + thread.getPoolIndex());
+                  return thread;
+              }, null, true), lanes, maxQueueSize, processor);
+    }
+
+    /**
+     * Creates a dispatcher processing lanes on the given executor. The dispatcher takes ownership
+     * of the executor and shuts it down on {@link #shutdown}.
+     */
+    OrderedMessageDispatcher(ExecutorService workers, int lanes, int maxQueueSize,
+          Processor processor) {
+        _workers = requireNonNull(workers);
+        _processor = requireNonNull(processor);
+        _lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            _lanes[i] = new Lane(maxQueueSize);
+        }
+    }
+
+    /**
+     * Enqueues a message on the lane of the given key.
+     *
+     * @return false if the lane is full
+     */
+    boolean offer(Object key, CellMessage envelope) {
+        return _lanes[Math.floorMod(key.hashCode(), _lanes.length)].offer(envelope);
+    }
+
+    int getLaneCount() {
+        return _lanes.length;
+    }
+
+    int getQueueSize(int lane) {
+        return _lanes[lane]._queue.size();
+    }
+
+    Object[] getQueueContent(int lane) {
+        return _lanes[lane]._queue.toArray();
+    }
+
+    int getQueueSize() {
+        int size = 0;
+        for (Lane lane : _lanes) {
+            size += lane._queue.size();
+        }
+        return size;
+    }
+
+    int getActiveCount() {
+        int active = 0;
+        for (Lane lane : _lanes) {
+            if (lane._activeMessage != null) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    void resetStatistics() {
+        for (Lane lane : _lanes) {
+            lane._waitTimes.reset();
+            lane._processingTimes.reset();
+        }
+    }
+
+    /**
+     * Stops processing and returns all messages that were still queued.
+     */
+    List<CellMessage> shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        _workers.shutdown();
+        List<CellMessage> drained = new ArrayList<>();
+        for (Lane lane : _lanes) {
+            lane._queue.drainTo(drained);
+        }
+        _workers.awaitTermination(timeout, unit);
+        return drained;
+    }
+
+    /**
+     * Returns a table describing the lanes. Lanes that have neither processed nor queued any
+     * messages are omitted unless {@code includeIdle} is true.
+     */
+    String describeLanes(boolean includeIdle, boolean showProcessingTimes) {
+        ColumnWriter writer = new ColumnWriter()
+              .header("LANE").right("lane").space()
+              .header("QUEUED").right("queued").space()
+              .header("PROCESSED").right("processed").space()
+              .header("ACTIVE").left("active").space()
+              .header("STARTED").left("started");
+        for (String label : BUCKET_LABELS) {
+            writer.space().header(label).right(label);
+        }
+
+        for (int i = 0; i < _lanes.length; i++) {
+            Lane lane = _lanes[i];
+            LatencyHistogram histogram =
+                  showProcessingTimes ? lane._processingTimes : lane._waitTimes;
+            long processed = lane._processingTimes.total();
+            int queued = lane._queue.size();
+            CellMessage active = lane._activeMessage;
+            Instant started = lane._whenStarted;
+            if (!includeIdle && processed == 0 && queued == 0 && active == null) {
+                continue;
+            }
+            ColumnWriter.TabulatedRow row = writer.row()
+                  .value("lane", i)
+                  .value("queued", queued)
+                  .value("processed", processed);
+            if (active != null) {
+                Object message = active.getMessageObject();
+                row.value("active", message == null ? "" : message.getClass().getSimpleName());
+            }
+            if (started != null) {
+                row.value("started", TimeUtils.relativeTimestamp(started));
+            }
+            for (int bucket = 0; bucket < BUCKET_LABELS.length; bucket++) {
+                row.value(BUCKET_LABELS[bucket], histogram.get(bucket));
+            }
+        }
+        return writer.toString();
+    }
+}
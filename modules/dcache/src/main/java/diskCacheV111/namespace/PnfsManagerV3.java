@@ -29,6 +29,8 @@ import static org.dcache.namespace.FileAttribute.XATTR;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -65,6 +67,7 @@ import diskCacheV111.vehicles.PnfsRemoveLabelsMessage;
 import diskCacheV111.vehicles.PnfsRenameMessage;
 import diskCacheV111.vehicles.PnfsWriteExtendedAttributesMessage;
 import diskCacheV111.vehicles.PoolFileFlushedMessage;
+import diskCacheV111.vehicles.PoolFilesFlushedMessage;
 import diskCacheV111.vehicles.StorageInfo;
 import diskCacheV111.vehicles.StorageInfos;
 import dmg.cells.nucleus.AbstractCellComponent;
@@ -103,11 +106,14 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import javax.security.auth.Subject;
@@ -125,6 +131,7 @@ import org.dcache.chimera.quota.QuotaHandler;
 import org.dcache.commons.stats.RequestCounters;
 import org.dcache.commons.stats.RequestExecutionTimeGauges;
 import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileAttributesHandler;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
 import org.dcache.namespace.PermissionHandler;
@@ -139,9 +146,11 @@ import org.dcache.util.ColumnWriter;
 import org.dcache.util.ColumnWriter.TabulatedRow;
 import org.dcache.util.FireAndForgetTask;
 import org.dcache.util.TimeUtils;
+import org.dcache.util.VirtualThreads;
 import org.dcache.vehicles.FileAttributes;
 import org.dcache.vehicles.PnfsCreateSymLinkMessage;
 import org.dcache.vehicles.PnfsGetFileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributesBatch;
 import org.dcache.vehicles.PnfsListDirectoryMessage;
 import org.dcache.vehicles.PnfsRemoveChecksumMessage;
 import org.dcache.vehicles.PnfsSetFileAttributes;
@@ -174,6 +183,9 @@ public class PnfsManagerV3
           new RequestExecutionTimeGauges<>("PnfsManagerV3");
     private final RequestCounters<Class<?>> _foldedCounters =
           new RequestCounters<>("PnfsManagerV3.Folded");
+    private final RequestCounters<Class<?>> _coalescedCounters =
+          new RequestCounters<>("PnfsManagerV3.Coalesced");
+    private final RequestCoalescer _coalescer = new RequestCoalescer();
 
     /**
      * These messages are subject to being discarded if their time to live has been exceeded (or is
@@ -186,6 +198,7 @@ public class PnfsManagerV3
           PnfsCreateEntryMessage.class,
           PnfsCreateUploadPath.class,
           PnfsGetFileAttributes.class,
+          PnfsGetFileAttributesBatch.class,
           PnfsListDirectoryMessage.class
     };
 
@@ -212,6 +225,12 @@ public class PnfsManagerV3
      */
     private boolean _canFold;
 
+    /**
+     * Whether identical lookups in flight at the same time are answered from a single name
+     * space call.
+     */
+    private boolean _canCoalesce;
+
     /**
      * Queues for list operations. There is one queue per thread group.
      */
@@ -222,6 +241,49 @@ public class PnfsManagerV3
      */
     private BlockingQueue<CellMessage>[] _fifos;
 
+    /**
+     * Whether messages are dispatched through work-stealing lanes rather than the fixed
+     * thread queues.
+     */
+    private boolean _workStealing;
+
+    /**
+     * Number of lanes used by the work-stealing dispatcher.
+     */
+    private int _lanes = 1024;
+
+    /**
+     * Dispatcher replacing the fixed thread queues when work stealing or virtual threads are
+     * enabled; null otherwise. It receives every PnfsMessage that is neither a directory listing,
+     * which goes to the list queue, nor coalesced with an outstanding request. Messages are
+     * ordered per PnfsId, or per path if they have no PnfsId; other messages are assigned a random
+     * lane.
+     */
+    private OrderedMessageDispatcher _dispatcher;
+
+    /**
+     * Whether to process requests on virtual threads if the JVM supports them.
+     */
+    private boolean _useVirtualThreads;
+
+    /**
+     * Executor starting a virtual thread for each list request. Null unless virtual threads are
+     * used.
+     */
+    private ExecutorService _listExecutor;
+
+    /**
+     * Bounds the number of requests concurrently processed on virtual threads. Null unless
+     * virtual threads are used.
+     */
+    private Semaphore _callPermits;
+
+    /**
+     * Bounds the number of list requests concurrently processed on virtual threads. Null unless
+     * virtual threads are used.
+     */
+    private Semaphore _listPermits;
+
     /**
      * Executor for ProcessThread instances.
      */
@@ -249,7 +311,7 @@ public class PnfsManagerV3
     private List<String> _flushNotificationTargets;
     private List<String> _cancelUploadNotificationTargets = Collections.emptyList();
 
-    private List<ProcessThread> _listProcessThreads = new ArrayList<>();
+    private final Set<ProcessThread> _listProcessThreads = ConcurrentHashMap.newKeySet();
 
     private JdbcQuota quotaSystem;
 
@@ -263,9 +325,11 @@ public class PnfsManagerV3
         _gauges.addGauge(PnfsRenameMessage.class);
         _gauges.addGauge(PnfsFlagMessage.class);
         _gauges.addGauge(PoolFileFlushedMessage.class);
+        _gauges.addGauge(PoolFilesFlushedMessage.class);
         _gauges.addGauge(PnfsGetParentMessage.class);
         _gauges.addGauge(PnfsSetFileAttributes.class);
         _gauges.addGauge(PnfsGetFileAttributes.class);
+        _gauges.addGauge(PnfsGetFileAttributesBatch.class);
         _gauges.addGauge(PnfsListDirectoryMessage.class);
         _gauges.addGauge(PnfsRemoveChecksumMessage.class);
         _gauges.addGauge(PnfsCreateSymLinkMessage.class);
@@ -366,6 +430,23 @@ public class PnfsManagerV3
         _queueMaxSize = maxSize;
     }
 
+    public void setCoalescing(boolean coalescing) {
+        _canCoalesce = coalescing;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        _useVirtualThreads = virtualThreads;
+    }
+
+    public void setWorkStealing(boolean workStealing) {
+        _workStealing = workStealing;
+    }
+
+    public void setLanes(int lanes) {
+        checkArgument(lanes > 0, "Number of lanes must be positive");
+        _lanes = lanes;
+    }
+
     @Required
     public void setFolding(boolean folding) {
         _canFold = folding;
@@ -408,15 +489,36 @@ public class PnfsManagerV3
     public void init() {
         _stub = new CellStub(getCellEndpoint());
 
-        _fifos = new BlockingQueue[_threads];
-        LOGGER.info("Starting {} threads", _fifos.length);
-        for (int i = 0; i < _fifos.length; i++) {
-            if (_queueMaxSize > 0) {
-                _fifos[i] = new LinkedBlockingQueue<>(_queueMaxSize);
-            } else {
-                _fifos[i] = new LinkedBlockingQueue<>();
+        Optional<ExecutorService> virtualExecutor = _useVirtualThreads
+              ? VirtualThreads.newThreadPerTaskExecutor("proc-")
+              : Optional.empty();
+        if (_useVirtualThreads && !virtualExecutor.isPresent()) {
+            LOGGER.warn("Virtual threads are not supported by this JVM; using platform threads.");
+        }
+
+        if (virtualExecutor.isPresent()) {
+            LOGGER.info("Using virtual threads on {} lanes with at most {} concurrent requests",
+                  _lanes, _threads);
+            _fifos = new BlockingQueue[0];
+            _callPermits = new Semaphore(_threads);
+            _dispatcher = new OrderedMessageDispatcher(virtualExecutor.get(), _lanes,
+                  _queueMaxSize, this::processQueuedMessageWithPermit);
+        } else if (_workStealing) {
+            LOGGER.info("Starting {} threads on {} lanes", _threads, _lanes);
+            _fifos = new BlockingQueue[0];
+            _dispatcher = new OrderedMessageDispatcher(_threads, _lanes, _queueMaxSize,
+                  this::processQueuedMessage);
+        } else {
+            _fifos = new BlockingQueue[_threads];
+            LOGGER.info("Starting {} threads", _fifos.length);
+            for (int i = 0; i < _fifos.length; i++) {
+                if (_queueMaxSize > 0) {
+                    _fifos[i] = new LinkedBlockingQueue<>(_queueMaxSize);
+                } else {
+                    _fifos[i] = new LinkedBlockingQueue<>();
+                }
+                executor.execute(new ProcessThread(_fifos[i]));
             }
-            executor.execute(new ProcessThread(_fifos[i]));
         }
 
         /* Start a seperate queue for list operations.  We use a shared queue,
@@ -424,17 +526,30 @@ public class PnfsManagerV3
          * to serialize the operations.
          */
         _listQueue = new LinkedBlockingQueue<>();
-        for (int j = 0; j < _listThreads; j++) {
-            ProcessThread t = new ProcessThread(_listQueue);
-            _listProcessThreads.add(t);
-            executor.execute(t);
+        if (virtualExecutor.isPresent()) {
+            _listPermits = new Semaphore(_listThreads);
+            _listExecutor = VirtualThreads.newThreadPerTaskExecutor("list-").get();
+        } else {
+            for (int j = 0; j < _listThreads; j++) {
+                ProcessThread t = new ProcessThread(_listQueue);
+                _listProcessThreads.add(t);
+                executor.execute(t);
+            }
         }
     }
 
     public void shutdown() throws InterruptedException {
         drainQueues(_fifos);
         drainQueue(_listQueue);
+        if (_dispatcher != null) {
+            _dispatcher.shutdown(1, TimeUnit.SECONDS).forEach(this::rejectOnShutdown);
+        }
+        if (_listExecutor != null) {
+            MoreExecutors.shutdownAndAwaitTermination(_listExecutor, 1, TimeUnit.SECONDS);
+        }
         MoreExecutors.shutdownAndAwaitTermination(executor, 1, TimeUnit.SECONDS);
+        /* Requests coalesced with a leader that will never complete. */
+        _coalescer.drain().forEach(this::rejectOnShutdown);
     }
 
     private void drainQueues(BlockingQueue<CellMessage>[] queues) {
@@ -442,20 +557,25 @@ public class PnfsManagerV3
     }
 
     private void drainQueue(BlockingQueue<CellMessage> queue) {
-        String error = "Name space is shutting down.";
         ArrayList<CellMessage> drained = new ArrayList<>();
         queue.drainTo(drained);
-        for (CellMessage envelope : drained) {
-            Message msg = (Message) envelope.getMessageObject();
-            if (msg.getReplyRequired()) {
-                envelope.setMessageObject(new NoRouteToCellException(envelope, error));
-                envelope.revertDirection();
-                sendMessage(envelope);
-            }
-        }
+        drained.forEach(this::rejectOnShutdown);
         queue.offer(SHUTDOWN_SENTINEL);
     }
 
+    private void rejectOnShutdown(CellMessage envelope) {
+        if (_canCoalesce) {
+            _coalescer.complete(envelope).forEach(this::rejectOnShutdown);
+        }
+        Message msg = (Message) envelope.getMessageObject();
+        if (msg.getReplyRequired()) {
+            envelope.setMessageObject(
+                  new NoRouteToCellException(envelope, "Name space is shutting down."));
+            envelope.revertDirection();
+            sendMessage(envelope);
+        }
+    }
+
     @Override
     public void isLeader() {
         updateFsFuture = scheduledExecutor.
@@ -521,18 +641,32 @@ public class PnfsManagerV3
         pw.println();
         pw.println("List queue: " + _listQueue.size());
         pw.println();
-        pw.println("Threads (" + _fifos.length + ") Queue");
-        for (int i = 0; i < _fifos.length; i++) {
-            pw.println("    [" + i + "] " + _fifos[i].size());
+        if (_callPermits != null) {
+            pw.println("Virtual threads (" + _dispatcher.getLaneCount() + " lanes)");
+            pw.println("    Active : " + (_threads - _callPermits.availablePermits())
+                  + " of " + _threads);
+            pw.println("    Waiting: " + _callPermits.getQueueLength());
+            pw.println("    Queued : " + _dispatcher.getQueueSize());
+        } else if (_dispatcher != null) {
+            pw.println("Work stealing (" + _threads + " threads, "
+                  + _dispatcher.getLaneCount() + " lanes)");
+            pw.println("    Active : " + _dispatcher.getActiveCount());
+            pw.println("    Queued : " + _dispatcher.getQueueSize());
+        } else {
+            pw.println("Threads (" + _fifos.length + ") Queue");
+            for (int i = 0; i < _fifos.length; i++) {
+                pw.println("    [" + i + "] " + _fifos[i].size());
+            }
+            pw.println();
+            pw.println("Threads: "
+                  + Arrays.stream(_fifos).mapToInt(BlockingQueue::size).sum());
         }
         pw.println();
-        pw.println("Threads: "
-              + Arrays.stream(_fifos).mapToInt(BlockingQueue::size).sum());
-        pw.println();
 
         pw.println("Statistics:");
         pw.println(_gauges.toString());
         pw.println(_foldedCounters.toString());
+        pw.println(_coalescedCounters.toString());
     }
 
     @Command(name = "reset stats", hint="reset statistics",
@@ -546,10 +680,13 @@ public class PnfsManagerV3
                 + "\n"
                 + "\"folds\" is the message folding counts, labelled 'PnfsManagerV3.Folded'.\n"
                 + "\n"
+                + "\"coalesced\" is the request coalescing counts, labelled"
+                + " 'PnfsManagerV3.Coalesced'.\n"
+                + "\n"
                 + "\"all\" resets everything.\n"
                 + "\n"
                 + "If this option is not specified then \"all\" is assumed.",
-                values={"calls", "folds", "all"})
+                values={"calls", "folds", "coalesced", "all"})
         private String target;
 
         @Override
@@ -561,6 +698,7 @@ public class PnfsManagerV3
             case "all":
                 _gauges.reset();
                 _foldedCounters.reset();
+                _coalescedCounters.reset();
                 break;
             case "calls":
                 _gauges.reset();
@@ -568,6 +706,9 @@ public class PnfsManagerV3
             case "folds":
                 _foldedCounters.reset();
                 break;
+            case "coalesced":
+                _coalescedCounters.reset();
+                break;
             default:
                 throw new CommandException("Unknown target \"" + target + "\".");
             }
@@ -914,12 +1055,48 @@ public class PnfsManagerV3
             dumpThreadQueue(threadId);
             return "dumped";
         }
-        for (int threadId = 0; threadId < _fifos.length; ++threadId) {
+        int queues = _dispatcher == null ? _fifos.length : _dispatcher.getLaneCount();
+        for (int threadId = 0; threadId < queues; ++threadId) {
             dumpThreadQueue(threadId);
         }
         return "dumped";
     }
 
+    @Command(name = "show queues",
+          hint = "show message queues",
+          description = "Shows the state of the lanes of the work-stealing dispatcher. "
+                + "Messages for the same file are always placed in the same lane and are "
+                + "processed in order, while idle threads pick up messages from any other "
+                + "lane.\n"
+                + "\n"
+                + "For each lane, the number of queued and processed messages, the currently "
+                + "active message and a histogram of the time messages spent waiting in the "
+                + "lane is shown. Lanes that have not seen any messages are omitted.")
+    public class ShowQueuesCommand implements Callable<String> {
+
+        @Option(name = "all", usage = "Include idle lanes.")
+        private boolean includeIdle;
+
+        @Option(name = "processing", usage = "Show a histogram of processing time rather "
+              + "than waiting time.")
+        private boolean showProcessingTimes;
+
+        @Option(name = "reset", usage = "Reset the histograms after showing them.")
+        private boolean reset;
+
+        @Override
+        public String call() {
+            if (_dispatcher == null) {
+                return "Work stealing is disabled.";
+            }
+            String report = _dispatcher.describeLanes(includeIdle, showProcessingTimes);
+            if (reset) {
+                _dispatcher.resetStatistics();
+            }
+            return report.isEmpty() ? "No lane activity" : report;
+        }
+    }
+
     @Command(name = "set file size",
           hint = "changes registered file size",
           description = "Updates the file's size in the namespace. This command has no effect on\n"
@@ -1594,11 +1771,13 @@ public class PnfsManagerV3
     }
 
     private void dumpThreadQueue(int queueId) {
-        if (queueId < 0 || queueId >= _fifos.length) {
+        int queues = _dispatcher == null ? _fifos.length : _dispatcher.getLaneCount();
+        if (queueId < 0 || queueId >= queues) {
             throw new IllegalArgumentException(" illegal queue #" + queueId);
         }
-        BlockingQueue<CellMessage> fifo = _fifos[queueId];
-        Object[] fifoContent = fifo.toArray();
+        Object[] fifoContent = _dispatcher == null
+              ? _fifos[queueId].toArray()
+              : _dispatcher.getQueueContent(queueId);
 
         LOGGER.warn("PnfsManager thread #{} queue dump ({}):", queueId, fifoContent.length);
 
@@ -2223,6 +2402,7 @@ public class PnfsManagerV3
                 _nameSpaceProvider.list(msg.getSubject(), path,
                       msg.getPattern(),
                       msg.getRange(),
+                      msg.getResumeAfter(),
                       msg.getRequestedAttributes(),
                       handler);
             }
@@ -2285,58 +2465,148 @@ public class PnfsManagerV3
             try {
                 for (CellMessage message = _fifo.take(); message != SHUTDOWN_SENTINEL;
                       message = _fifo.take()) {
-                    CDC.setMessageContext(message);
-                    try {
-                        recordActivity(message);
-
-                        /* Discard messages if we are close to their
-                         * timeout (within 10% of the TTL or 10 seconds,
-                         * whatever is smaller)
-                         */
-                        PnfsMessage pnfs = (PnfsMessage) message.getMessageObject();
-                        if (message.getLocalAge() > message.getAdjustedTtl() && useEarlyDiscard(
-                              pnfs)) {
-                            LOGGER.warn("Discarding {} because its time to live has been exceeded.",
-                                  pnfs.getClass().getSimpleName());
-                            sendTimeout(message, "TTL exceeded");
-                            continue;
-                        }
-
-                        processPnfsMessage(message, pnfs);
-                        fold(pnfs);
-                    } catch (Throwable e) {
-                        LOGGER.warn("processPnfsMessage: {} : {}", Thread.currentThread().getName(),
-                              e);
-                    } finally {
-                        clearActivity();
-                        CDC.clearMessageContext();
-                    }
+                    process(message);
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         }
 
-        protected void fold(PnfsMessage message) {
-            if (_canFold && message.getReturnCode() == 0) {
-                Iterator<CellMessage> i = _fifo.iterator();
-                while (i.hasNext()) {
-                    CellMessage envelope = i.next();
-                    PnfsMessage other =
-                          (PnfsMessage) envelope.getMessageObject();
+        /**
+         * Processes the next message of the queue, if any.
+         */
+        private void processNext() {
+            CellMessage message = _fifo.poll();
+            if (message != null && message != SHUTDOWN_SENTINEL) {
+                process(message);
+            }
+        }
 
-                    if (other.invalidates(message)) {
-                        break;
-                    }
+        private void process(CellMessage message) {
+            recordActivity(message);
+            try {
+                processQueuedMessage(message, _fifo);
+            } finally {
+                clearActivity();
+            }
+        }
+    }
+
+    private void processQueuedMessageWithPermit(CellMessage message,
+          BlockingQueue<CellMessage> fifo) {
+        _callPermits.acquireUninterruptibly();
+        try {
+            processQueuedMessage(message, fifo);
+        } finally {
+            _callPermits.release();
+        }
+    }
+
+    /**
+     * Processes one message of the list queue on the current thread. Used with virtual threads,
+     * where a task is submitted for every list request.
+     */
+    private void processListRequest() {
+        ProcessThread worker = new ProcessThread(_listQueue);
+        _listPermits.acquireUninterruptibly();
+        _listProcessThreads.add(worker);
+        try {
+            worker.processNext();
+        } finally {
+            _listProcessThreads.remove(worker);
+            _listPermits.release();
+        }
+    }
+
+    /**
+     * Processes a message taken from {@code fifo}. Identical messages still waiting in
+     * {@code fifo} are folded into the result.
+     */
+    private void processQueuedMessage(CellMessage message, BlockingQueue<CellMessage> fifo) {
+        CDC.setMessageContext(message);
+        PnfsMessage pnfs = (PnfsMessage) message.getMessageObject();
+        boolean isProcessed = false;
+        try {
+            /* Discard messages if we are close to their
+             * timeout (within 10% of the TTL or 10 seconds,
+             * whatever is smaller)
+             */
+            if (message.getLocalAge() > message.getAdjustedTtl() && useEarlyDiscard(pnfs)) {
+                LOGGER.warn("Discarding {} because its time to live has been exceeded.",
+                      pnfs.getClass().getSimpleName());
+                sendTimeout(message, "TTL exceeded");
+                return;
+            }
+
+            processPnfsMessage(message, pnfs);
+            isProcessed = true;
+            fold(fifo, pnfs);
+        } catch (Throwable e) {
+            LOGGER.warn("processPnfsMessage: {} : {}", Thread.currentThread().getName(), e);
+        } finally {
+            if (_canCoalesce) {
+                answerCoalesced(message, pnfs, isProcessed);
+            }
+            CDC.clearMessageContext();
+        }
+    }
 
-                    if (other.fold(message)) {
-                        LOGGER.info("Folded {}", other.getClass().getSimpleName());
-                        _foldedCounters.incrementRequests(message.getClass());
+    /**
+     * Answers the requests that were coalesced with {@code envelope}. If {@code envelope} could
+     * not be processed, the coalesced requests are dispatched individually.
+     */
+    private void answerCoalesced(CellMessage envelope, PnfsMessage message,
+          boolean isProcessed) {
+        for (CellMessage waiter : _coalescer.complete(envelope)) {
+            PnfsMessage other = (PnfsMessage) waiter.getMessageObject();
+            if (isProcessed && message.getReturnCode() != 0) {
+                other.setFailed(message.getReturnCode(), message.getErrorObject());
+            } else if (isProcessed && other.fold(message)) {
+                other.setSucceeded();
+            } else {
+                redispatch(waiter, other);
+                continue;
+            }
+            _coalescedCounters.incrementRequests(other.getClass());
+            waiter.revertDirection();
+            sendMessage(waiter);
+        }
+    }
+
+    private void redispatch(CellMessage envelope, PnfsMessage message) {
+        try {
+            dispatch(envelope, message);
+        } catch (CacheException e) {
+            message.setFailed(e.getRc(), e.getMessage());
+            envelope.revertDirection();
+            sendMessage(envelope);
+        }
+    }
+
+    private void fold(BlockingQueue<CellMessage> fifo, PnfsMessage message) {
+        if (_canFold && message.getReturnCode() == 0) {
+            Iterator<CellMessage> i = fifo.iterator();
+            while (i.hasNext()) {
+                CellMessage envelope = i.next();
+                PnfsMessage other =
+                      (PnfsMessage) envelope.getMessageObject();
+
+                if (other.invalidates(message)) {
+                    break;
+                }
+
+                if (other.fold(message)) {
+                    LOGGER.info("Folded {}", other.getClass().getSimpleName());
+                    _foldedCounters.incrementRequests(message.getClass());
+
+                    i.remove();
+                    envelope.revertDirection();
 
-                        i.remove();
-                        envelope.revertDirection();
+                    sendMessage(envelope);
 
-                        sendMessage(envelope);
+                    /* A folded message may lead a batch of coalesced requests. */
+                    if (_canCoalesce) {
+                        answerCoalesced(envelope, other, true);
                     }
                 }
             }
@@ -2550,13 +2820,45 @@ public class PnfsManagerV3
         if (!_listQueue.offer(envelope)) {
             throw new MissingResourceCacheException("PnfsManager queue limit exceeded");
         }
+        if (_listExecutor != null) {
+            _listExecutor.execute(this::processListRequest);
+        }
     }
 
     public void messageArrived(CellMessage envelope, PnfsMessage message)
           throws CacheException {
+        if (_canCoalesce && _coalescer.join(envelope, message)) {
+            LOGGER.info("Coalesced {}", message.getClass().getSimpleName());
+            return;
+        }
+
+        try {
+            dispatch(envelope, message);
+        } catch (CacheException e) {
+            if (_canCoalesce) {
+                for (CellMessage waiter : _coalescer.complete(envelope)) {
+                    PnfsMessage other = (PnfsMessage) waiter.getMessageObject();
+                    other.setFailed(e.getRc(), e.getMessage());
+                    waiter.revertDirection();
+                    sendMessage(waiter);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void dispatch(CellMessage envelope, PnfsMessage message) throws CacheException {
         PnfsId pnfsId = message.getPnfsId();
         String path = message.getPnfsPath();
 
+        if (_dispatcher != null) {
+            Object key = pnfsId != null ? pnfsId : path != null ? path : _random.nextInt();
+            if (!_dispatcher.offer(key, envelope)) {
+                throw new MissingResourceCacheException("PnfsManager queue limit exceeded");
+            }
+            return;
+        }
+
         int index;
         if (pnfsId != null) {
             index = (int) (Math.abs((long) pnfsId.hashCode()) % _threads);
@@ -2635,12 +2937,16 @@ public class PnfsManagerV3
             updateFlag((PnfsFlagMessage) pnfsMessage);
         } else if (pnfsMessage instanceof PoolFileFlushedMessage) {
             processFlushMessage((PoolFileFlushedMessage) pnfsMessage);
+        } else if (pnfsMessage instanceof PoolFilesFlushedMessage) {
+            processFlushMessage((PoolFilesFlushedMessage) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsGetParentMessage) {
             getParent((PnfsGetParentMessage) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsListDirectoryMessage) {
             listDirectory(message, (PnfsListDirectoryMessage) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsGetFileAttributes) {
             getFileAttributes((PnfsGetFileAttributes) pnfsMessage);
+        } else if (pnfsMessage instanceof PnfsGetFileAttributesBatch) {
+            getFileAttributes((PnfsGetFileAttributesBatch) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsSetFileAttributes) {
             setFileAttributes((PnfsSetFileAttributes) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsRemoveChecksumMessage) {
@@ -2673,6 +2979,8 @@ public class PnfsManagerV3
 
         if (message instanceof PoolFileFlushedMessage && message.getReturnCode() == 0) {
             postProcessFlush(envelope, (PoolFileFlushedMessage) message);
+        } else if (message instanceof PoolFilesFlushedMessage && message.getReturnCode() == 0) {
+            postProcessFlush(envelope, (PoolFilesFlushedMessage) message);
         } else if (_cacheModificationRelay != null && message.getReturnCode() == 0) {
             postProcessLocationModificationMessage(envelope, message);
         } else if (message.getReplyRequired()) {
@@ -2734,6 +3042,46 @@ public class PnfsManagerV3
               });
     }
 
+    /**
+     * Notifies flush notification targets about every file of the batch that was updated in the
+     * name space. Files for which a notification fails are reported as failed; the reply is sent
+     * once all notifications completed.
+     */
+    private void postProcessFlush(CellMessage envelope, PoolFilesFlushedMessage pnfsMessage) {
+        long timeout = envelope.getAdjustedTtl() - envelope.getLocalAge();
+
+        List<ListenableFuture<List<PoolFileFlushedMessage>>> futures = new ArrayList<>();
+        for (int i = 0; i < pnfsMessage.size(); i++) {
+            if (pnfsMessage.getError(i) != null) {
+                futures.add(Futures.immediateFuture(Collections.emptyList()));
+                continue;
+            }
+            PoolFileFlushedMessage notification =
+                  new PoolFileFlushedMessage(pnfsMessage.getPoolName(), pnfsMessage.getPnfsId(i),
+                        pnfsMessage.getFileAttributes(i));
+            List<ListenableFuture<PoolFileFlushedMessage>> notifications = new ArrayList<>();
+            for (String address : _flushNotificationTargets) {
+                notifications.add(_stub.send(new CellPath(address), notification, timeout));
+            }
+            futures.add(Futures.allAsList(notifications));
+        }
+
+        Futures.whenAllComplete(futures).run(() -> {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    Futures.getDone(futures.get(i));
+                } catch (ExecutionException e) {
+                    pnfsMessage.setError(i, new CacheException(
+                          "PNFS manager failed while notifying other "
+                                + "components about the flush: " + e.getCause().getMessage()));
+                }
+            }
+            pnfsMessage.setSucceeded();
+            envelope.revertDirection();
+            sendMessage(envelope);
+        }, MoreExecutors.directExecutor());
+    }
+
     public void processFlushMessage(PoolFileFlushedMessage pnfsMessage) {
         try {
             StorageInfo info = pnfsMessage.getFileAttributes().getStorageInfo();
@@ -2750,6 +3098,30 @@ public class PnfsManagerV3
         }
     }
 
+    /**
+     * Updates the name space for every file of the batch. Failures of individual files are
+     * reported per file; a failure of the underlying name space fails the whole batch, as the
+     * transaction cannot be committed.
+     */
+    public void processFlushMessage(PoolFilesFlushedMessage pnfsMessage) {
+        try {
+            for (int i = 0; i < pnfsMessage.size(); i++) {
+                try {
+                    StorageInfo info = pnfsMessage.getFileAttributes(i).getStorageInfo();
+                    // Note: no Restriction check as message sent autonomously by pool.
+                    _nameSpaceProvider.setFileAttributes(pnfsMessage.getSubject(),
+                          pnfsMessage.getPnfsId(i), FileAttributes.ofStorageInfo(info),
+                          EnumSet.noneOf(FileAttribute.class));
+                } catch (CacheException e) {
+                    pnfsMessage.setError(i, e);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to process flush notification", e);
+            pnfsMessage.setFailed(CacheException.UNEXPECTED_SYSTEM_EXCEPTION, e);
+        }
+    }
+
     private void postProcessLocationModificationMessage(CellMessage envelope,
           PnfsMessage message) {
         if (message.getReplyRequired()) {
@@ -2826,44 +3198,11 @@ public class PnfsManagerV3
             if (message.getUpdateAtime() && _atimeGap >= 0) {
                 requested.add(ACCESS_TIME);
             }
-            if (requested.contains(FileAttribute.STORAGEINFO)) {
-                /*
-                 * TODO: The 'classic' result of getFileAttributes was a
-                 * cobination of fileMetadata + storageInfo. This was
-                 * used to add the owner and group information into
-                 * storageInfo's internal Map. Uid and Gid are used by the
-                 * HSM flush scripts.
-                 *
-                 * This atavism will have to be cut out when HSM
-                 * interface will undestand Subject or FileAttributes
-                 * will be passed to HSM interface.
-                 */
-                requested = EnumSet.copyOf(requested);
-                requested.add(FileAttribute.OWNER);
-                requested.add(FileAttribute.OWNER_GROUP);
-                requested.add(FileAttribute.XATTR);
-            }
             FileAttributes attrs =
                   _nameSpaceProvider.getFileAttributes(subject,
                         pnfsId,
-                        requested);
-
-            if (attrs.isDefined(FileAttribute.STORAGEINFO)) {
-                StorageInfo storageInfo = attrs.getStorageInfo();
-                if (storageInfo.getKey("path") == null) {
-                    String path = message.getPnfsPath() != null ?
-                          message.getPnfsPath() : _nameSpaceProvider.pnfsidToPath(subject, pnfsId);
-                    storageInfo.setKey("path", path);
-                }
-                storageInfo.setKey("uid", Integer.toString(attrs.getOwner()));
-                storageInfo.setKey("gid", Integer.toString(attrs.getGroup()));
-
-                // REVISIT: consider removing xattr injection once pools can accept FileAttribute.XATTR
-                if (attrs.isDefined(XATTR)) {
-                    attrs.getXattrs()
-                          .forEach((k, v) -> storageInfo.setKey(STORAGE_INFO_XATTR_PREFIX + k, v));
-                }
-            }
+                        withStorageInfoKeyAttributes(requested));
+            addStorageInfoKeys(subject, pnfsId, message.getPnfsPath(), attrs);
 
             message.setFileAttributes(attrs);
             message.setSucceeded();
@@ -2886,6 +3225,144 @@ public class PnfsManagerV3
         }
     }
 
+    /**
+     * Adds the attributes needed by {@link #addStorageInfoKeys} if storage info is requested.
+     */
+    private static Set<FileAttribute> withStorageInfoKeyAttributes(Set<FileAttribute> requested) {
+        if (requested.contains(FileAttribute.STORAGEINFO)) {
+            /*
+             * TODO: The 'classic' result of getFileAttributes was a
+             * cobination of fileMetadata + storageInfo. This was
+             * used to add the owner and group information into
+             * storageInfo's internal Map. Uid and Gid are used by the
+             * HSM flush scripts.
+             *
+             * This atavism will have to be cut out when HSM
+             * interface will undestand Subject or FileAttributes
+             * will be passed to HSM interface.
+             */
+            requested = EnumSet.copyOf(requested);
+            requested.add(FileAttribute.OWNER);
+            requested.add(FileAttribute.OWNER_GROUP);
+            requested.add(FileAttribute.XATTR);
+        }
+        return requested;
+    }
+
+    private void addStorageInfoKeys(Subject subject, PnfsId pnfsId, String path,
+          FileAttributes attrs) throws CacheException {
+        if (attrs.isDefined(FileAttribute.STORAGEINFO)) {
+            StorageInfo storageInfo = attrs.getStorageInfo();
+            if (storageInfo.getKey("path") == null) {
+                storageInfo.setKey("path",
+                      path != null ? path : _nameSpaceProvider.pnfsidToPath(subject, pnfsId));
+            }
+            storageInfo.setKey("uid", Integer.toString(attrs.getOwner()));
+            storageInfo.setKey("gid", Integer.toString(attrs.getGroup()));
+
+            // REVISIT: consider removing xattr injection once pools can accept FileAttribute.XATTR
+            if (attrs.isDefined(XATTR)) {
+                attrs.getXattrs()
+                      .forEach((k, v) -> storageInfo.setKey(STORAGE_INFO_XATTR_PREFIX + k, v));
+            }
+        }
+    }
+
+    /**
+     * Looks up the attributes of a batch of files.
+     * <p>
+     * The attributes of all files, including those needed to check the access mask, are
+     * fetched with a single call to the name space provider. Paths are still resolved one at a
+     * time, and so is the path stored in the storage info of files requested by PnfsId. A batch
+     * requesting {@link FileAttribute#STORAGEINFO} by PnfsId thus costs one path lookup per
+     * file.
+     */
+    public void getFileAttributes(PnfsGetFileAttributesBatch message) {
+        try {
+            Subject subject = message.getSubject();
+            Set<AccessMask> mask = message.getAccessMask();
+            boolean isMaskChecked = !Subjects.isExemptFromNamespaceChecks(subject)
+                  && !mask.isEmpty();
+            List<String> paths = message.getPaths();
+            boolean isRestricted = !Subjects.isRoot(subject);
+            if (isRestricted && paths == null) {
+                LOGGER.warn(
+                      "Restriction check by-passed due to missing path; please report this to <support@dCache.org>");
+            }
+
+            /* Resolve paths and check restrictions. Entries failing these checks are
+             * completed right away; the remaining entries are grouped by PnfsId, as the
+             * same file may be requested more than once.
+             */
+            ListMultimap<PnfsId, Integer> pending = MultimapBuilder.linkedHashKeys()
+                  .arrayListValues().build();
+            for (int i = 0; i < message.size(); i++) {
+                try {
+                    PnfsId pnfsId;
+                    if (paths == null) {
+                        pnfsId = message.getPnfsIds().get(i);
+                    } else {
+                        FsPath path = FsPath.create(paths.get(i));
+                        if (isRestricted) {
+                            checkRestriction(message.getRestriction(), message.getAccessMask(),
+                                  READ_METADATA, path);
+                        }
+                        pnfsId = _nameSpaceProvider.pathToPnfsid(subject, path.toString(),
+                              message.isFollowSymlink());
+                    }
+                    pending.put(pnfsId, i);
+                } catch (CacheException e) {
+                    message.setError(i, e);
+                }
+            }
+
+            Set<FileAttribute> requested = EnumSet.noneOf(FileAttribute.class);
+            requested.addAll(withStorageInfoKeyAttributes(message.getRequestedAttributes()));
+            if (isMaskChecked) {
+                requested.addAll(_permissionHandler.getRequiredAttributes());
+            }
+            _nameSpaceProvider.getFileAttributes(subject, pending.keySet(), requested,
+                  new FileAttributesHandler<PnfsId>() {
+                      @Override
+                      public void addEntry(PnfsId pnfsId, FileAttributes attrs) {
+                          if (isMaskChecked && !checkMask(subject, mask, attrs)) {
+                              addError(pnfsId,
+                                    new PermissionDeniedCacheException("Access denied"));
+                              return;
+                          }
+                          for (int i : pending.get(pnfsId)) {
+                              try {
+                                  /* Each entry needs its own copy, as the storage info
+                                   * carries the path by which the file was requested.
+                                   */
+                                  FileAttributes copy = pending.get(pnfsId).size() == 1
+                                        ? attrs : attrs.clone();
+                                  addStorageInfoKeys(subject, pnfsId,
+                                        paths == null ? null : paths.get(i), copy);
+                                  message.setFileAttributes(i, copy);
+                              } catch (CacheException e) {
+                                  message.setError(i, e);
+                              }
+                          }
+                      }
+
+                      @Override
+                      public void addError(PnfsId pnfsId, CacheException cause) {
+                          for (int i : pending.get(pnfsId)) {
+                              message.setError(i, cause);
+                          }
+                      }
+                  });
+            message.setSucceeded();
+        } catch (CacheException e) {
+            LOGGER.warn("Error while retrieving file attributes: {}", e.getMessage());
+            message.setFailed(e.getRc(), e);
+        } catch (RuntimeException e) {
+            LOGGER.error("Error while retrieving file attributes: " + e.getMessage(), e);
+            message.setFailed(CacheException.UNEXPECTED_SYSTEM_EXCEPTION, e);
+        }
+    }
+
     public void setFileAttributes(PnfsSetFileAttributes message) {
         try {
             checkRestriction(message, UPDATE_METADATA);
@@ -0,0 +1,209 @@
+package diskCacheV111.namespace;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.PnfsMapPathMessage;
+import diskCacheV111.vehicles.PnfsMessage;
+import dmg.cells.nucleus.CellMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.security.auth.Subject;
+import org.dcache.acl.enums.AccessMask;
+import org.dcache.auth.attributes.Restriction;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.vehicles.PnfsGetFileAttributes;
+
+/**
+ * Coalesces identical read-only name space requests that are in flight at the same time.
+ * <p>
+ * The first of several identical requests becomes the leader and is processed as usual. Requests
+ * arriving while the leader is queued or being processed are attached to the leader instead of
+ * being queued, and are answered from the result of the leader once it has been processed.
+ * <p>
+ * A request that may modify the name space closes all batches it {@link
+ * PnfsMessage#invalidates invalidates}, such that lookups arriving after the modification are not
+ * answered with the result of a lookup that was queued before it.
+ */
+class RequestCoalescer {
+
+    private final ConcurrentMap<Key, Batch> _batches = new ConcurrentHashMap<>();
+
+    /**
+     * Batches indexed by their leader. Keyed by identity, as replying to a message changes its
+     * UOID and thus its hash code.
+     */
+    private final Map<CellMessage, Batch> _leaders =
+          Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * The request parameters that determine the result of a lookup.
+     */
+    private static final class Key {
+
+        private final Class<?> _type;
+        private final PnfsId _pnfsId;
+        private final String _path;
+        private final Set<FileAttribute> _attributes;
+        private final Subject _subject;
+        private final Restriction _restriction;
+        private final Set<AccessMask> _accessMask;
+        private final boolean _followSymlink;
+        private final boolean _updateAtime;
+
+        private Key(PnfsMessage message) {
+            _type = message.getClass();
+            _pnfsId = message.getPnfsId();
+            _path = message.getPnfsPath();
+            _subject = message.getSubject();
+            _restriction = message.getRestriction();
+            _accessMask = message.getAccessMask();
+            _followSymlink = message.isFollowSymlink();
+            if (message instanceof PnfsGetFileAttributes) {
+                PnfsGetFileAttributes request = (PnfsGetFileAttributes) message;
+                Set<FileAttribute> attributes = request.getRequestedAttributes();
+                _attributes = attributes.isEmpty()
+                      ? Collections.emptySet()
+                      : Collections.unmodifiableSet(EnumSet.copyOf(attributes));
+                _updateAtime = request.getUpdateAtime();
+            } else {
+                _attributes = Collections.emptySet();
+                _updateAtime = false;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return _type == other._type
+                  && _followSymlink == other._followSymlink
+                  && _updateAtime == other._updateAtime
+                  && Objects.equals(_pnfsId, other._pnfsId)
+                  && Objects.equals(_path, other._path)
+                  && _attributes.equals(other._attributes)
+                  && Objects.equals(_subject, other._subject)
+                  && Objects.equals(_restriction, other._restriction)
+                  && Objects.equals(_accessMask, other._accessMask);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_type, _pnfsId, _path, _attributes, _subject);
+        }
+    }
+
+    private static final class Batch {
+
+        private final Key _key;
+        private final CellMessage _leader;
+        private final PnfsMessage _message;
+        private final List<CellMessage> _waiters = new ArrayList<>();
+        private boolean _isClosed;
+
+        private Batch(Key key, CellMessage leader) {
+            _key = key;
+            _leader = leader;
+            _message = (PnfsMessage) leader.getMessageObject();
+        }
+
+        private synchronized boolean add(CellMessage envelope) {
+            if (_isClosed) {
+                return false;
+            }
+            _waiters.add(envelope);
+            return true;
+        }
+
+        private synchronized List<CellMessage> close() {
+            _isClosed = true;
+            return _waiters;
+        }
+    }
+
+    /**
+     * Returns whether a message is a lookup that may be coalesced with identical lookups.
+     */
+    static boolean isCoalescable(PnfsMessage message) {
+        Class<?> type = message.getClass();
+        return (type == PnfsGetFileAttributes.class || type == PnfsMapPathMessage.class)
+              && message.getReplyRequired()
+              && (message.getPnfsId() != null || message.getPnfsPath() != null);
+    }
+
+    /**
+     * Attaches a message to an identical in-flight request.
+     * <p>
+     * If there is no such request, the message becomes the leader of a new batch and must be
+     * processed by the caller, who is then responsible for calling {@link #complete} once the
+     * message has been processed. Messages that cannot be coalesced close all batches they
+     * invalidate.
+     *
+     * @return true if the message was attached to an in-flight request and must not be
+     * processed, false otherwise
+     */
+    boolean join(CellMessage envelope, PnfsMessage message) {
+        if (!isCoalescable(message)) {
+            if (!_batches.isEmpty()) {
+                _batches.values().removeIf(batch -> message.invalidates(batch._message));
+            }
+            return false;
+        }
+
+        Batch batch = _batches.compute(new Key(message),
+              (key, existing) -> existing != null && existing.add(envelope)
+                    ? existing : new Batch(key, envelope));
+        if (batch._leader != envelope) {
+            return true;
+        }
+        _leaders.put(envelope, batch);
+        return false;
+    }
+
+    /**
+     * Closes the batch led by the given message and returns the messages that were attached to
+     * it. Returns an empty list if the message is not the leader of a batch.
+     */
+    List<CellMessage> complete(CellMessage envelope) {
+        Batch batch = _leaders.remove(envelope);
+        if (batch == null) {
+            return Collections.emptyList();
+        }
+        _batches.remove(batch._key, batch);
+        return batch.close();
+    }
+
+    /**
+     * Closes all batches and returns the messages that were attached to them. Used on shutdown,
+     * when the leaders may never complete.
+     */
+    List<CellMessage> drain() {
+        List<CellMessage> waiters = new ArrayList<>();
+        List<CellMessage> leaders;
+        synchronized (_leaders) {
+            leaders = List.copyOf(_leaders.keySet());
+        }
+        for (CellMessage leader : leaders) {
+            waiters.addAll(complete(leader));
+        }
+        return waiters;
+    }
+
+    /**
+     * Returns the number of batches currently in flight.
+     */
+    int size() {
+        return _leaders.size();
+    }
+}
@@ -45,6 +45,24 @@ class NetHandler implements Serializable {
         }
     }
 
+    /**
+     * Creates a copy of another NetHandler. The copy does not share any mutable state with the
+     * original.
+     */
+    NetHandler(NetHandler other) {
+        this();
+        for (int i = 0; i < _netList.length; i++) {
+            if (other._netList[i] != null) {
+                _netList[i] = new HashMap<>(other._netList[i]);
+            }
+        }
+        for (int i = 0; i < _netListV6.length; i++) {
+            if (other._netListV6[i] != null) {
+                _netListV6[i] = new HashMap<>(other._netListV6[i]);
+            }
+        }
+    }
+
     void clear() {
         for (Map<Long, NetUnit> netMap : _netList) {
             if (netMap != null) {
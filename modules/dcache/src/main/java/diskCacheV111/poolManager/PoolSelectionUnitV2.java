@@ -19,6 +19,7 @@ import diskCacheV111.vehicles.GenericStorageInfo;
 import diskCacheV111.vehicles.StorageInfo;
 import dmg.cells.nucleus.CellAddressCore;
 import dmg.cells.nucleus.CellCommandListener;
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.CellLifeCycleAware;
 import dmg.cells.nucleus.CellSetupProvider;
 import dmg.util.CommandException;
@@ -45,6 +46,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
@@ -59,7 +61,7 @@ import org.slf4j.LoggerFactory;
 
 public class PoolSelectionUnitV2
       implements Serializable, PoolSelectionUnit, PoolSelectionUnitAccess, CellSetupProvider,
-      CellCommandListener, CellLifeCycleAware {
+      CellCommandListener, CellLifeCycleAware, CellInfoProvider {
 
     private static final String __version = "$Id: PoolSelectionUnitV2.java,v 1.42 2007-10-25 14:03:54 tigran Exp $";
     private static final Logger LOGGER = LoggerFactory.getLogger(PoolSelectionUnitV2.class);
@@ -94,6 +96,27 @@ public class PoolSelectionUnitV2
 
     private final NetHandler _netHandler = new NetHandler();
 
+    /**
+     * Whether selection is answered from a precompiled {@link SelectionSnapshot} rather than by
+     * walking the setup under the read lock.
+     */
+    private volatile boolean _isSelectionPrecompiled;
+
+    /**
+     * The current snapshot of the setup, or null if none is compiled. Only replaced while holding
+     * the lock.
+     */
+    private transient volatile SelectionSnapshot _snapshot;
+
+    private long _selectionCacheSize;
+    private long _selectionCacheLifetime = 30;
+    private TimeUnit _selectionCacheLifetimeUnit = TimeUnit.SECONDS;
+
+    /**
+     * Cache of selection results, or null if caching is disabled.
+     */
+    private transient volatile SelectionCache _selectionCache;
+
     @Override
     public Map<String, SelectionLink> getLinks() {
         rlock();
@@ -582,6 +605,111 @@ public class PoolSelectionUnitV2
               variableMap, storageInfo.locations(), linkGroupName);
 
         PoolPreferenceLevel[] result = null;
+
+        /* Staging depends on the tape locations of the file, thus those results are not cached.
+         */
+        SelectionCache cache = _selectionCache;
+        if (cache != null && type != DirectionType.CACHE) {
+            result = matchCached(cache, type, storeUnitName, dCacheUnitName, netUnitName,
+                  protocolUnitName, fileAttributes, linkGroupName, exclude);
+        }
+        if (result == null) {
+            result = matchUncached(type, storeUnitName, dCacheUnitName, netUnitName,
+                  protocolUnitName, fileAttributes, linkGroupName, exclude);
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+
+            StringBuilder sb = new StringBuilder("match done: ");
+
+            for (int i = 0; i < result.length; i++) {
+                sb.append("[").append(i).append("] :");
+                for (String poolName : result[i].getPoolList()) {
+                    sb.append(" ").append(poolName);
+                }
+            }
+            LOGGER.debug(sb.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the selection result from the cache, computing and caching it if necessary, or null
+     * if the request cannot be answered from the cache.
+     * <p>
+     * The selection only depends on the net unit matching the client address, not on the address
+     * itself. Results are therefore keyed by the net unit, so all clients of a net unit share a
+     * cache entry.
+     */
+    private PoolPreferenceLevel[] matchCached(SelectionCache cache, DirectionType type,
+          String storeUnitName, String dCacheUnitName, String netUnitName,
+          String protocolUnitName, FileAttributes fileAttributes, String linkGroupName,
+          Predicate<String> exclude) {
+        long generation = cache.getGeneration();
+        String netUnit = null;
+        if (netUnitName != null) {
+            netUnit = matchNetUnit(netUnitName);
+            if (netUnit == null) {
+                /* Let the uncached selection report the error. */
+                return null;
+            }
+        }
+        SelectionCache.Key key = new SelectionCache.Key(type, storeUnitName, dCacheUnitName,
+              netUnit, protocolUnitName, linkGroupName);
+        PoolPreferenceLevel[] result = cache.get(key, exclude);
+        if (result == null) {
+            result = cache.put(key, generation,
+                  matchUncached(type, storeUnitName, dCacheUnitName, netUnitName,
+                        protocolUnitName, fileAttributes, linkGroupName, p -> false),
+                  exclude);
+        } else if (cache.getGeneration() != generation) {
+            /* The net unit may have been resolved against an outdated setup. */
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name of the net unit matching the given client address, or null if no net unit
+     * matches or the address cannot be resolved.
+     */
+    private String matchNetUnit(String address) {
+        try {
+            NetUnit unit;
+            SelectionSnapshot snapshot = getSelectionSnapshot();
+            if (snapshot != null) {
+                unit = snapshot.matchNetUnit(address);
+            } else {
+                rlock();
+                try {
+                    unit = _netHandler.match(address);
+                } finally {
+                    runlock();
+                }
+            }
+            return unit == null ? null : unit.getName();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private PoolPreferenceLevel[] matchUncached(DirectionType type, String storeUnitName,
+          String dCacheUnitName, String netUnitName, String protocolUnitName,
+          FileAttributes fileAttributes, String linkGroupName, Predicate<String> exclude) {
+        SelectionSnapshot snapshot = getSelectionSnapshot();
+        if (snapshot != null) {
+            return snapshot.match(type, storeUnitName, dCacheUnitName, netUnitName,
+                  protocolUnitName, fileAttributes, linkGroupName, exclude);
+        } else {
+            return matchLocked(type, storeUnitName, dCacheUnitName, netUnitName,
+                  protocolUnitName, fileAttributes, linkGroupName, exclude);
+        }
+    }
+
+    private PoolPreferenceLevel[] matchLocked(DirectionType type, String storeUnitName,
+          String dCacheUnitName, String netUnitName, String protocolUnitName,
+          FileAttributes fileAttributes, String linkGroupName, Predicate<String> exclude) {
+        PoolPreferenceLevel[] result = null;
         rlock();
         try {
             //
@@ -861,20 +989,90 @@ public class PoolSelectionUnitV2
         } finally {
             runlock();
         }
+        return result;
+    }
 
-        if (LOGGER.isDebugEnabled()) {
-
-            StringBuilder sb = new StringBuilder("match done: ");
-
-            for (int i = 0; i < result.length; i++) {
-                sb.append("[").append(i).append("] :");
-                for (String poolName : result[i].getPoolList()) {
-                    sb.append(" ").append(poolName);
+    /**
+     * Returns the current selection snapshot, compiling one if necessary, or null if selection is
+     * not precompiled.
+     */
+    private SelectionSnapshot getSelectionSnapshot() {
+        if (!_isSelectionPrecompiled) {
+            return null;
+        }
+        SelectionSnapshot snapshot = _snapshot;
+        if (snapshot == null) {
+            /* Only happens for a deserialized copy or if the mode was just enabled; writers
+             * compile the snapshot when releasing the lock.
+             */
+            rlock();
+            try {
+                snapshot = _snapshot;
+                if (snapshot == null) {
+                    snapshot = compileSnapshot();
+                    _snapshot = snapshot;
                 }
+            } finally {
+                runlock();
             }
-            LOGGER.debug(sb.toString());
         }
-        return result;
+        return snapshot;
+    }
+
+    private SelectionSnapshot compileSnapshot() {
+        return new SelectionSnapshot(_useRegex, _allPoolsActive, _units, _links, _linkGroups,
+              _netHandler);
+    }
+
+    public void setSelectionPrecompiled(boolean isSelectionPrecompiled) {
+        wlock();
+        try {
+            _isSelectionPrecompiled = isSelectionPrecompiled;
+        } finally {
+            wunlock();
+        }
+    }
+
+    public boolean isSelectionPrecompiled() {
+        return _isSelectionPrecompiled;
+    }
+
+    /**
+     * Sets the maximum number of cached selection results. Zero disables the cache.
+     */
+    public void setSelectionCacheSize(long size) {
+        Preconditions.checkArgument(size >= 0, "Cache size must not be negative.");
+        _selectionCacheSize = size;
+        updateSelectionCache();
+    }
+
+    public void setSelectionCacheLifetime(long lifetime) {
+        _selectionCacheLifetime = lifetime;
+        updateSelectionCache();
+    }
+
+    public void setSelectionCacheLifetimeUnit(TimeUnit unit) {
+        _selectionCacheLifetimeUnit = requireNonNull(unit);
+        updateSelectionCache();
+    }
+
+    private void updateSelectionCache() {
+        _selectionCache = _selectionCacheSize > 0
+              ? new SelectionCache(_selectionCacheSize, _selectionCacheLifetime,
+              _selectionCacheLifetimeUnit)
+              : null;
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw) {
+        pw.println("Precompiled selection : " + (_isSelectionPrecompiled ? "on" : "off"));
+        SelectionCache cache = _selectionCache;
+        if (cache == null) {
+            pw.println("Selection cache       : off");
+        } else {
+            pw.println("Selection cache       :");
+            cache.getInfo(pw);
+        }
     }
 
     @Override
@@ -1161,18 +1359,23 @@ public class PoolSelectionUnitV2
 
     public String setRegex(String onOff) {
         String retVal;
-        switch (onOff) {
-            case "on":
-                _useRegex = true;
-                retVal = "regex turned on";
-                break;
-            case "off":
-                _useRegex = false;
-                retVal = "regex turned off";
-                break;
-            default:
-                throw new IllegalArgumentException(
-                      "please set regex either on or off");
+        wlock();
+        try {
+            switch (onOff) {
+                case "on":
+                    _useRegex = true;
+                    retVal = "regex turned on";
+                    break;
+                case "off":
+                    _useRegex = false;
+                    retVal = "regex turned off";
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                          "please set regex either on or off");
+            }
+        } finally {
+            wunlock();
         }
         return retVal;
     }
@@ -2433,7 +2636,7 @@ public class PoolSelectionUnitV2
      * Returns true if and only if the pool can stage the given file. That is the only case if the
      * file is located on an HSM connected to the pool.
      */
-    private boolean poolCanStageFile(Pool pool, FileAttributes file) {
+    static boolean poolCanStageFile(Pool pool, FileAttributes file) {
         boolean rc = false;
         if (file.getStorageInfo().locations().isEmpty()
               && pool.getHsmInstances().contains(file.getHsm())) {
@@ -2503,7 +2706,27 @@ public class PoolSelectionUnitV2
     }
 
     protected void wunlock() {
-        _psuWriteLock.unlock();
+        /* Every setup change is published as a new snapshot when the outermost write lock is
+         * released.
+         */
+        try {
+            if (_psuReadWriteLock.getWriteHoldCount() == 1) {
+                /* If compiling fails, readers compile the snapshot lazily instead of using a
+                 * stale one.
+                 */
+                _snapshot = null;
+                try {
+                    _snapshot = _isSelectionPrecompiled ? compileSnapshot() : null;
+                } finally {
+                    SelectionCache cache = _selectionCache;
+                    if (cache != null) {
+                        cache.invalidate();
+                    }
+                }
+            }
+        } finally {
+            _psuWriteLock.unlock();
+        }
     }
 
     protected void rlock() {
@@ -2979,6 +3202,25 @@ public class PoolSelectionUnitV2
         }
     }
 
+    @Command(name = "psu show selection cache",
+          hint = "show pool selection cache statistics",
+          description = "Shows the number of cached pool selection results together with "
+                + "hit, miss and eviction counters. The cache is invalidated as a whole "
+                + "whenever the setup or the state of a pool changes.")
+    class ShowSelectionCacheCommand implements Callable<String> {
+
+        @Override
+        public String call() {
+            StringWriter sw = new StringWriter();
+            SelectionCache cache = _selectionCache;
+            if (cache == null) {
+                return "Selection cache is disabled.";
+            }
+            cache.getInfo(new PrintWriter(sw));
+            return sw.toString();
+        }
+    }
+
     public static final String hh_psu_unlink = "<link> <pool>|<pool group> # deprecated, use 'psu removefrom link'";
 
     @AffectsSetup
@@ -0,0 +1,167 @@
+package diskCacheV111.poolManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import diskCacheV111.poolManager.PoolSelectionUnit.DirectionType;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache of pool selection results.
+ * <p>
+ * Results are keyed by the selection request without the exclusion predicate, which is applied
+ * to the cached result on every lookup. The whole cache is invalidated by bumping a generation
+ * counter whenever the setup or the state of a pool changes. A result computed while the
+ * generation changed is never returned. Since a pool may time out without any setup change,
+ * entries also expire after a fixed lifetime.
+ */
+class SelectionCache {
+
+    private final Cache<Key, Entry> _cache;
+    private final AtomicLong _generation = new AtomicLong();
+    private final AtomicLong _invalidations = new AtomicLong();
+    private final long _maximumSize;
+    private final long _lifetime;
+    private final TimeUnit _lifetimeUnit;
+
+    /**
+     * The request parameters that determine the result of a selection. The client address is
+     * represented by the net unit it matches.
+     */
+    static final class Key {
+
+        private final DirectionType _type;
+        private final String _storeUnit;
+        private final String _dCacheUnit;
+        private final String _net;
+        private final String _protocol;
+        private final String _linkGroup;
+
+        Key(DirectionType type, String storeUnit, String dCacheUnit, String net,
+              String protocol, String linkGroup) {
+            _type = type;
+            _storeUnit = storeUnit;
+            _dCacheUnit = dCacheUnit;
+            _net = net;
+            _protocol = protocol;
+            _linkGroup = linkGroup;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return _type == other._type
+                  && _storeUnit.equals(other._storeUnit)
+                  && Objects.equals(_dCacheUnit, other._dCacheUnit)
+                  && Objects.equals(_net, other._net)
+                  && Objects.equals(_protocol, other._protocol)
+                  && Objects.equals(_linkGroup, other._linkGroup);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_type, _storeUnit, _dCacheUnit, _net, _protocol, _linkGroup);
+        }
+    }
+
+    private static final class Entry {
+
+        private final long _generation;
+        private final PoolPreferenceLevel[] _levels;
+
+        private Entry(long generation, PoolPreferenceLevel[] levels) {
+            _generation = generation;
+            _levels = levels;
+        }
+    }
+
+    SelectionCache(long maximumSize, long lifetime, TimeUnit lifetimeUnit) {
+        _maximumSize = maximumSize;
+        _lifetime = lifetime;
+        _lifetimeUnit = lifetimeUnit;
+        _cache = CacheBuilder.newBuilder()
+              .maximumSize(maximumSize)
+              .expireAfterWrite(lifetime, lifetimeUnit)
+              .recordStats()
+              .build();
+    }
+
+    /**
+     * Returns the current generation. Must be read before computing a result to be stored with
+     * {@link #put}.
+     */
+    long getGeneration() {
+        return _generation.get();
+    }
+
+    /**
+     * Returns a copy of the cached result with excluded pools removed, or null if no result of
+     * the current generation is cached.
+     */
+    PoolPreferenceLevel[] get(Key key, Predicate<String> exclude) {
+        Entry entry = _cache.getIfPresent(key);
+        if (entry == null || entry._generation != _generation.get()) {
+            return null;
+        }
+        return filter(entry._levels, exclude);
+    }
+
+    /**
+     * Caches a result computed without exclusions and returns a copy with excluded pools
+     * removed.
+     */
+    PoolPreferenceLevel[] put(Key key, long generation, PoolPreferenceLevel[] levels,
+          Predicate<String> exclude) {
+        if (generation == _generation.get()) {
+            _cache.put(key, new Entry(generation, levels));
+        }
+        return filter(levels, exclude);
+    }
+
+    /**
+     * Invalidates all cached results.
+     */
+    void invalidate() {
+        _generation.incrementAndGet();
+        _invalidations.incrementAndGet();
+        _cache.invalidateAll();
+    }
+
+    void getInfo(PrintWriter pw) {
+        CacheStats stats = _cache.stats();
+        pw.println("    Size         : " + _cache.size() + " of " + _maximumSize);
+        pw.println("    Lifetime     : " + _lifetime + " " + _lifetimeUnit);
+        pw.println("    Hits         : " + stats.hitCount());
+        pw.println("    Misses       : " + stats.missCount());
+        pw.println("    Hit rate     : " + String.format("%.1f%%", stats.hitRate() * 100));
+        pw.println("    Evictions    : " + stats.evictionCount());
+        pw.println("    Invalidations: " + _invalidations.get());
+    }
+
+    private static PoolPreferenceLevel[] filter(PoolPreferenceLevel[] levels,
+          Predicate<String> exclude) {
+        PoolPreferenceLevel[] result = new PoolPreferenceLevel[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            List<String> pools = new ArrayList<>(levels[i].getPoolList().size());
+            for (String pool : levels[i].getPoolList()) {
+                if (!exclude.test(pool)) {
+                    pools.add(pool);
+                }
+            }
+            result[i] = new PoolPreferenceLevel(pools, levels[i].getTag());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,433 @@
+package diskCacheV111.poolManager;
+
+import static diskCacheV111.poolManager.PoolSelectionUnit.UnitType.STORE;
+import static java.util.Comparator.comparingInt;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import diskCacheV111.poolManager.PoolSelectionUnit.DirectionType;
+import diskCacheV111.poolManager.PoolSelectionUnit.SelectionLink;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.dcache.vehicles.FileAttributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable, pre-indexed view of the pool selection setup.
+ * <p>
+ * A snapshot is compiled from the state of a {@link PoolSelectionUnitV2} while the setup is
+ * write-locked and is never modified afterwards, so it may be used to answer selection requests
+ * without any locking. Units are mapped to the links they reach, links are resolved to the pools
+ * they point to and ranked by preference for every direction at compile time.
+ * <p>
+ * Only the state that changes without a setup change, namely the pool mode and the heartbeat of
+ * a pool, is evaluated at selection time.
+ */
+final class SelectionSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectionSnapshot.class);
+
+    private static final DirectionType[] RANKED_DIRECTIONS = {
+          DirectionType.READ, DirectionType.WRITE, DirectionType.CACHE, DirectionType.P2P
+    };
+
+    private final boolean _useRegex;
+    private final boolean _allPoolsActive;
+    private final ImmutableMap<String, Unit> _units;
+    private final ImmutableList<StorePattern> _storePatterns;
+    private final NetHandler _netHandler;
+    private final ImmutableMap<String, LinkGroup> _linkGroups;
+    private final ImmutableMap<Unit, UnitLinks> _linksByUnit;
+    private final Comparator<CompiledLink>[] _comparators;
+
+    private static final UnitLinks NO_LINKS = new UnitLinks(ImmutableList.of());
+
+    /**
+     * A link with everything needed for selection resolved at compile time.
+     */
+    private static final class CompiledLink {
+
+        private final Link _link;
+        private final LinkGroup _memberOf;
+        private final boolean _hasLinkGroup;
+        private final int _requiredUnits;
+        private final String _tag;
+        private final Pool[] _pools;
+        private final int[] _preference = new int[DirectionType.values().length];
+        private final int[] _rank = new int[DirectionType.values().length];
+
+        private CompiledLink(Link link, LinkGroup memberOf) {
+            _link = link;
+            _memberOf = memberOf;
+            _hasLinkGroup = link.getLinkGroup() != null;
+            _requiredUnits = link._uGroupList.size();
+            _tag = link.getTag();
+
+            List<Pool> pools = new ArrayList<>();
+            for (PoolCore poolCore : link._poolList.values()) {
+                if (poolCore instanceof Pool) {
+                    pools.add((Pool) poolCore);
+                } else {
+                    pools.addAll(((PGroup) poolCore)._poolList.values());
+                }
+            }
+            _pools = pools.toArray(Pool[]::new);
+
+            _preference[DirectionType.READ.ordinal()] = link.getReadPref();
+            _preference[DirectionType.WRITE.ordinal()] = link.getWritePref();
+            _preference[DirectionType.CACHE.ordinal()] = link.getCachePref();
+            _preference[DirectionType.P2P.ordinal()] =
+                  link.getP2pPref() < 0 ? link.getReadPref() : link.getP2pPref();
+        }
+
+        private int getPreference(DirectionType type) {
+            return _preference[type.ordinal()];
+        }
+
+        private String getName() {
+            return _link.getName();
+        }
+    }
+
+    /**
+     * The links reachable from a unit through its unit groups.
+     */
+    private static final class UnitLinks {
+
+        private final CompiledLink[] _links;
+        private final Set<CompiledLink> _set;
+
+        private UnitLinks(Collection<CompiledLink> links) {
+            _links = links.toArray(CompiledLink[]::new);
+            _set = ImmutableSet.copyOf(links);
+        }
+    }
+
+    /**
+     * A storage unit with its name compiled as a regular expression.
+     */
+    private static final class StorePattern {
+
+        private final Unit _unit;
+        private final Pattern _pattern;
+
+        private StorePattern(Unit unit) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(unit.getName());
+            } catch (PatternSyntaxException e) {
+                /* Reported when the unit is matched, like without a snapshot. */
+                pattern = null;
+            }
+            _unit = unit;
+            _pattern = pattern;
+        }
+
+        private boolean matches(String storeUnitName) {
+            return _pattern == null
+                  ? Pattern.matches(_unit.getName(), storeUnitName)
+                  : _pattern.matcher(storeUnitName).matches();
+        }
+    }
+
+    SelectionSnapshot(boolean useRegex, boolean allPoolsActive, Map<String, Unit> units,
+          Map<String, Link> links, Map<String, LinkGroup> linkGroups, NetHandler netHandler) {
+        _useRegex = useRegex;
+        _allPoolsActive = allPoolsActive;
+        _units = ImmutableMap.copyOf(units);
+        _storePatterns = _units.values().stream()
+              .filter(unit -> unit.getType() == STORE)
+              .map(StorePattern::new)
+              .collect(ImmutableList.toImmutableList());
+        _netHandler = new NetHandler(netHandler);
+        _linkGroups = ImmutableMap.copyOf(linkGroups);
+
+        Map<Link, LinkGroup> memberOf = new HashMap<>();
+        for (LinkGroup linkGroup : linkGroups.values()) {
+            for (SelectionLink link : linkGroup.getAllLinks()) {
+                if (link instanceof Link) {
+                    memberOf.put((Link) link, linkGroup);
+                }
+            }
+        }
+
+        Map<Link, CompiledLink> compiled = new HashMap<>();
+        for (Link link : links.values()) {
+            compiled.put(link, new CompiledLink(link, memberOf.get(link)));
+        }
+
+        List<CompiledLink> ranked = new ArrayList<>(compiled.values());
+        for (DirectionType type : RANKED_DIRECTIONS) {
+            ranked.sort(comparingInt((CompiledLink l) -> l.getPreference(type)).reversed()
+                  .thenComparing(CompiledLink::getName));
+            for (int i = 0; i < ranked.size(); i++) {
+                ranked.get(i)._rank[type.ordinal()] = i;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        Comparator<CompiledLink>[] comparators = new Comparator[DirectionType.values().length];
+        for (DirectionType type : RANKED_DIRECTIONS) {
+            comparators[type.ordinal()] = comparingInt(l -> l._rank[type.ordinal()]);
+        }
+        _comparators = comparators;
+
+        ImmutableMap.Builder<Unit, UnitLinks> linksByUnit = ImmutableMap.builder();
+        for (Unit unit : _units.values()) {
+            Set<CompiledLink> reachable = new LinkedHashSet<>();
+            for (UGroup uGroup : unit._uGroupList.values()) {
+                for (Link link : uGroup._linkList.values()) {
+                    CompiledLink compiledLink = compiled.get(link);
+                    if (compiledLink != null) {
+                        reachable.add(compiledLink);
+                    }
+                }
+            }
+            linksByUnit.put(unit, new UnitLinks(reachable));
+        }
+        _linksByUnit = linksByUnit.build();
+    }
+
+    /**
+     * Returns the net unit matching the given address, or null if none matches.
+     */
+    NetUnit matchNetUnit(String inetAddress) throws UnknownHostException {
+        return _netHandler.match(inetAddress);
+    }
+
+    /**
+     * Returns the pools matching the given request, grouped by link preference.
+     * <p>
+     * The semantics are identical to the lock-based selection in {@link PoolSelectionUnitV2}.
+     */
+    PoolPreferenceLevel[] match(DirectionType type, String storeUnitName, String dCacheUnitName,
+          String netUnitName, String protocolUnitName, FileAttributes fileAttributes,
+          String linkGroupName, Predicate<String> exclude) {
+        Unit[] units = new Unit[4];
+        int fitCount = 0;
+
+        units[fitCount++] = findStoreUnit(storeUnitName);
+        if (protocolUnitName != null) {
+            Unit unit = findProtocolUnit(protocolUnitName);
+            if (unit == null) {
+                throw new IllegalArgumentException("Unit not found : " + protocolUnitName);
+            }
+            units[fitCount++] = unit;
+        }
+        if (dCacheUnitName != null) {
+            Unit unit = _units.get(dCacheUnitName);
+            if (unit == null) {
+                throw new IllegalArgumentException("Unit not found : " + dCacheUnitName);
+            }
+            units[fitCount++] = unit;
+        }
+        if (netUnitName != null) {
+            try {
+                Unit unit = _netHandler.match(netUnitName);
+                if (unit == null) {
+                    throw new IllegalArgumentException("Unit not matched : " + netUnitName);
+                }
+                units[fitCount++] = unit;
+            } catch (UnknownHostException uhe) {
+                throw new IllegalArgumentException("NetUnit not resolved : " + netUnitName);
+            }
+        }
+
+        LinkGroup linkGroup = null;
+        if (linkGroupName != null) {
+            linkGroup = _linkGroups.get(linkGroupName);
+            if (linkGroup == null) {
+                throw new IllegalArgumentException("LinkGroup not found : " + linkGroupName);
+            }
+        }
+
+        /* A link matches if at least as many of the units reach it as it has unit groups.
+         * Every link is counted once, when seen through the first unit that reaches it.
+         */
+        List<CompiledLink> matchingLinks = new ArrayList<>();
+        for (int i = 0; i < fitCount; i++) {
+            for (CompiledLink link : linksOf(units[i])._links) {
+                if (!isEligible(link, linkGroup, type) || isReachedByAny(link, units, 0, i)) {
+                    continue;
+                }
+                int count = 1;
+                for (int j = i + 1; j < fitCount; j++) {
+                    if (linksOf(units[j])._set.contains(link)) {
+                        count++;
+                    }
+                }
+                if (count >= link._requiredUnits) {
+                    matchingLinks.add(link);
+                }
+            }
+        }
+
+        if (matchingLinks.isEmpty()) {
+            return new PoolPreferenceLevel[0];
+        }
+
+        Comparator<CompiledLink> comparator = _comparators[type.ordinal()];
+        if (comparator == null) {
+            throw new IllegalArgumentException("Wrong comparator mode");
+        }
+        matchingLinks.sort(comparator);
+
+        List<PoolPreferenceLevel> levels = new ArrayList<>();
+        List<String> pools = null;
+        String tag = null;
+        int pref = -1;
+        for (CompiledLink link : matchingLinks) {
+            int linkPref = link.getPreference(type);
+            if (linkPref < 1) {
+                continue;
+            }
+            if (linkPref != pref) {
+                if (pools != null) {
+                    levels.add(new PoolPreferenceLevel(pools, tag));
+                }
+                pools = new ArrayList<>();
+                tag = null;
+                pref = linkPref;
+            }
+            if (tag == null) {
+                tag = link._tag;
+            }
+            for (Pool pool : link._pools) {
+                if (isSelectable(pool, type, fileAttributes)) {
+                    if (exclude.test(pool.getName())) {
+                        LOGGER.debug("Qualifying pool {} is on excluded host {}; skipping.",
+                              pool.getName(), pool.getCanonicalHostName());
+                    } else {
+                        pools.add(pool.getName());
+                    }
+                }
+            }
+        }
+        if (pools != null) {
+            levels.add(new PoolPreferenceLevel(pools, tag));
+        }
+        return levels.toArray(PoolPreferenceLevel[]::new);
+    }
+
+    /**
+     * Returns the protocol unit for a protocol of the form {@literal <protocol>/<version>}.
+     */
+    Unit findProtocolUnit(String protocolUnitName) {
+        if (protocolUnitName == null || protocolUnitName.isEmpty()) {
+            return null;
+        }
+        int position = protocolUnitName.indexOf('/');
+        if (position <= 0 || position == protocolUnitName.length() - 1) {
+            throw new IllegalArgumentException(
+                  "Not a valid protocol specification : " + protocolUnitName);
+        }
+        Unit unit = _units.get(protocolUnitName);
+        if (unit == null) {
+            unit = _units.get(protocolUnitName.substring(0, position) + "/*");
+            if (unit == null) {
+                unit = _units.get("*/*");
+            }
+        }
+        return unit;
+    }
+
+    private Unit findStoreUnit(String storeUnitName) {
+        if (_useRegex) {
+            Unit universalCoverage = null;
+            Unit classCoverage = null;
+            for (StorePattern storePattern : _storePatterns) {
+                String name = storePattern._unit.getName();
+                if (name.equals("*@*")) {
+                    universalCoverage = storePattern._unit;
+                } else if (name.equals("*@" + storeUnitName)) {
+                    classCoverage = storePattern._unit;
+                } else if (storePattern.matches(storeUnitName)) {
+                    return storePattern._unit;
+                }
+            }
+            if (classCoverage != null) {
+                return classCoverage;
+            }
+            if (universalCoverage != null) {
+                return universalCoverage;
+            }
+            throw new IllegalArgumentException("Unit not found : " + storeUnitName);
+        }
+
+        Unit unit = _units.get(storeUnitName);
+        if (unit == null) {
+            int ind = storeUnitName.lastIndexOf('@');
+            if (ind <= 0 || ind == storeUnitName.length() - 1) {
+                throw new IllegalArgumentException("IllegalUnitFormat : " + storeUnitName);
+            }
+            unit = _units.get("*@" + storeUnitName.substring(ind + 1));
+            if (unit == null) {
+                unit = _units.get("*@*");
+                if (unit == null) {
+                    throw new IllegalArgumentException("Unit not found : " + storeUnitName);
+                }
+            }
+        }
+        return unit;
+    }
+
+    private UnitLinks linksOf(Unit unit) {
+        UnitLinks links = _linksByUnit.get(unit);
+        return links == null ? NO_LINKS : links;
+    }
+
+    private boolean isReachedByAny(CompiledLink link, Unit[] units, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (linksOf(units[i])._set.contains(link)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Without a link group, only links outside of any link group are considered, except for
+     * reads. With a link group, only the links of that group are considered.
+     */
+    private static boolean isEligible(CompiledLink link, LinkGroup linkGroup,
+          DirectionType type) {
+        if (linkGroup == null) {
+            return type == DirectionType.READ || !link._hasLinkGroup;
+        }
+        return link._memberOf == linkGroup;
+    }
+
+    private boolean isSelectable(Pool pool, DirectionType type, FileAttributes fileAttributes) {
+        boolean canServe;
+        switch (type) {
+            case READ:
+                canServe = pool.canRead();
+                break;
+            case CACHE:
+                canServe = pool.canReadFromTape()
+                      && PoolSelectionUnitV2.poolCanStageFile(pool, fileAttributes);
+                break;
+            case WRITE:
+                canServe = pool.canWrite();
+                break;
+            case P2P:
+                canServe = pool.canWriteForP2P();
+                break;
+            default:
+                canServe = false;
+        }
+        return canServe && (_allPoolsActive || pool.isActive());
+    }
+}
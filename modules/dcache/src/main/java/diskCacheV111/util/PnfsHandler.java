@@ -5,6 +5,7 @@ import static org.dcache.namespace.FileAttribute.PNFSID;
 import static org.dcache.namespace.FileType.DIR;
 import static org.dcache.namespace.FileType.LINK;
 
+import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ListenableFuture;
 import diskCacheV111.namespace.NameSpaceProvider.Link;
 import diskCacheV111.vehicles.PnfsAddCacheLocationMessage;
@@ -24,6 +25,7 @@ import diskCacheV111.vehicles.PnfsRenameMessage;
 import diskCacheV111.vehicles.PnfsWriteExtendedAttributesMessage;
 import diskCacheV111.vehicles.PnfsWriteExtendedAttributesMessage.Mode;
 import diskCacheV111.vehicles.PoolFileFlushedMessage;
+import diskCacheV111.vehicles.PoolFilesFlushedMessage;
 import dmg.cells.nucleus.CellEndpoint;
 import dmg.cells.nucleus.CellMessageSender;
 import dmg.cells.nucleus.CellPath;
@@ -32,20 +34,24 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import javax.security.auth.Subject;
 import org.dcache.acl.enums.AccessMask;
 import org.dcache.auth.attributes.Restriction;
 import org.dcache.cells.CellStub;
 import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileAttributesHandler;
 import org.dcache.namespace.FileType;
 import org.dcache.util.ChecksumType;
 import org.dcache.vehicles.FileAttributes;
 import org.dcache.vehicles.PnfsCreateSymLinkMessage;
 import org.dcache.vehicles.PnfsGetFileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributesBatch;
 import org.dcache.vehicles.PnfsRemoveChecksumMessage;
 import org.dcache.vehicles.PnfsSetFileAttributes;
 import org.slf4j.Logger;
@@ -57,6 +63,11 @@ public class PnfsHandler implements CellMessageSender {
     private static final long DEFAULT_PNFS_TIMEOUT = TimeUnit.MINUTES.toMillis(
           30);
 
+    /**
+     * Maximum number of files queried in a single request.
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+
     private final CellStub _cellStub;
 
     private Subject _subject;
@@ -426,6 +437,44 @@ public class PnfsHandler implements CellMessageSender {
 
     }
 
+    /**
+     * Notifies the name space that many files were flushed. The files are sent in batches of at
+     * most {@value #MAX_BATCH_SIZE} files, with all batches being submitted concurrently.
+     *
+     * @param files the attributes describing the flush, indexed by PnfsId
+     * @return the reason why the name space could not be updated, indexed by PnfsId; files that
+     * were updated are absent
+     * @throws CacheException if a batch failed as a whole
+     */
+    public Map<PnfsId, CacheException> fileFlushed(Map<PnfsId, FileAttributes> files)
+          throws CacheException {
+        List<ListenableFuture<PoolFilesFlushedMessage>> futures = new ArrayList<>();
+        for (List<PnfsId> batch : Iterables.partition(files.keySet(), MAX_BATCH_SIZE)) {
+            List<FileAttributes> attributes = new ArrayList<>(batch.size());
+            batch.forEach(pnfsId -> attributes.add(files.get(pnfsId)));
+            futures.add(requestAsync(new PoolFilesFlushedMessage(_poolName, batch, attributes)));
+        }
+        Map<PnfsId, CacheException> errors = new HashMap<>();
+        for (ListenableFuture<PoolFilesFlushedMessage> future : futures) {
+            PoolFilesFlushedMessage reply;
+            try {
+                reply = CellStub.getMessage(future);
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new CacheException(CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
+                      "Sending message to " + _cellStub.getDestinationPath() + " interrupted");
+            } catch (NoRouteToCellException e) {
+                throw new TimeoutCacheException(e.getMessage(), e);
+            }
+            for (int i = 0; i < reply.size(); i++) {
+                if (reply.getError(i) != null) {
+                    errors.put(reply.getPnfsId(i), reply.getError(i));
+                }
+            }
+        }
+        return errors;
+    }
+
     /**
      * Get path corresponding to given pnfsid.
      *
@@ -546,6 +595,69 @@ public class PnfsHandler implements CellMessageSender {
         return request(msg).getFileAttributes();
     }
 
+    /**
+     * Get the attributes of many files. The files are queried in batches of at most {@value
+     * #MAX_BATCH_SIZE} files, with all batches being submitted concurrently. For each file, the
+     * handler is called either with the attributes or with the reason why they could not be
+     * retrieved.
+     *
+     * @param pnfsIds of the files
+     * @param attr    array of requested attributes.
+     * @param handler Handler called for each file
+     * @throws CacheException if a batch failed as a whole
+     */
+    public void getFileAttributes(Collection<PnfsId> pnfsIds, Set<FileAttribute> attr,
+          FileAttributesHandler<PnfsId> handler) throws CacheException {
+        List<PnfsGetFileAttributesBatch> batches = new ArrayList<>();
+        for (List<PnfsId> batch : Iterables.partition(pnfsIds, MAX_BATCH_SIZE)) {
+            batches.add(PnfsGetFileAttributesBatch.ofPnfsIds(batch, attr));
+        }
+        request(batches, PnfsGetFileAttributesBatch::getPnfsIds, handler);
+    }
+
+    /**
+     * Like {@link #getFileAttributes(Collection, Set, FileAttributesHandler)}, but with files
+     * identified by path.
+     */
+    public void getFileAttributesByPath(Collection<String> paths, Set<FileAttribute> attr,
+          FileAttributesHandler<String> handler) throws CacheException {
+        List<PnfsGetFileAttributesBatch> batches = new ArrayList<>();
+        for (List<String> batch : Iterables.partition(paths, MAX_BATCH_SIZE)) {
+            batches.add(PnfsGetFileAttributesBatch.ofPaths(batch, attr));
+        }
+        request(batches, PnfsGetFileAttributesBatch::getPaths, handler);
+    }
+
+    private <T> void request(List<PnfsGetFileAttributesBatch> batches,
+          Function<PnfsGetFileAttributesBatch, List<T>> files, FileAttributesHandler<T> handler)
+          throws CacheException {
+        List<ListenableFuture<PnfsGetFileAttributesBatch>> futures = new ArrayList<>();
+        for (PnfsGetFileAttributesBatch batch : batches) {
+            futures.add(requestAsync(batch));
+        }
+        for (ListenableFuture<PnfsGetFileAttributesBatch> future : futures) {
+            PnfsGetFileAttributesBatch reply;
+            try {
+                reply = CellStub.getMessage(future);
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new CacheException(CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
+                      "Sending message to " + _cellStub.getDestinationPath() + " interrupted");
+            } catch (NoRouteToCellException e) {
+                throw new TimeoutCacheException(e.getMessage(), e);
+            }
+            List<T> keys = files.apply(reply);
+            for (int i = 0; i < reply.size(); i++) {
+                FileAttributes attributes = reply.getFileAttributes(i);
+                if (attributes != null) {
+                    handler.addEntry(keys.get(i), attributes);
+                } else {
+                    handler.addError(keys.get(i), reply.getError(i));
+                }
+            }
+        }
+    }
+
     /**
      * Set file attributes. If <code>attr</code> is an empty array, file existence if checked.  The
      * updated FileAttribute values in acquire are returned.
@@ -31,6 +31,7 @@ import javax.security.auth.Subject;
 import org.dcache.auth.attributes.Restrictions;
 import org.dcache.namespace.CreateOption;
 import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileAttributesHandler;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
 import org.dcache.util.ChecksumType;
@@ -179,6 +180,14 @@ public class RemoteNameSpaceProvider implements NameSpaceProvider {
         return pnfs.getFileAttributes(id, attr);
     }
 
+    @Override
+    public void getFileAttributes(Subject subject, Collection<PnfsId> ids,
+          Set<FileAttribute> attr, FileAttributesHandler<PnfsId> handler)
+          throws CacheException {
+        PnfsHandler pnfs = new PnfsHandler(_pnfs, subject, Restrictions.none());
+        pnfs.getFileAttributes(ids, attr, handler);
+    }
+
     @Override
     public FileAttributes setFileAttributes(Subject subject, PnfsId id,
           FileAttributes attr, Set<FileAttribute> acquire) throws CacheException {
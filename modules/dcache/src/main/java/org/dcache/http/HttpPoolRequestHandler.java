@@ -39,10 +39,12 @@ import diskCacheV111.vehicles.HttpProtocolInfo;
 import dmg.util.HttpException;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.DecoderResult;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.DefaultHttpResponse;
@@ -54,6 +56,7 @@ import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.stream.ChunkedInput;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
@@ -72,6 +75,7 @@ import java.util.OptionalLong;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import org.dcache.namespace.FileAttribute;
+import org.dcache.pool.movers.ChecksumChannel;
 import org.dcache.pool.movers.NettyTransferService;
 import org.dcache.pool.repository.OutOfDiskException;
 import org.dcache.util.Checksum;
@@ -94,6 +98,12 @@ public class HttpPoolRequestHandler extends HttpRequestHandler {
     public static final String REFERRER_QUERY_PARAM = "dcache-http-ref";
     private static final String DIGEST = "Digest";
 
+    /**
+     * How the data of a GET request was sent, as reported in the mover info.
+     */
+    private static final String ZERO_COPY = "zero-copy";
+    private static final String CHUNKED = "chunked";
+
     private static final String RANGE_SEPARATOR = "-";
     private static final String RANGE_PRE_TOTAL = "/";
     private static final String RANGE_SP = " ";
@@ -120,6 +130,11 @@ public class HttpPoolRequestHandler extends HttpRequestHandler {
 
     private final int _chunkSize;
 
+    /**
+     * Whether single range GET requests may be served with a FileRegion.
+     */
+    private final boolean _zeroCopy;
+
     /**
      * The file being uploaded. Even though we only keep the file open for the processing of a
      * single HTTP message, that one message may have been split into several chunks. Hence we have
@@ -150,8 +165,14 @@ public class HttpPoolRequestHandler extends HttpRequestHandler {
     }
 
     public HttpPoolRequestHandler(NettyTransferService<HttpProtocolInfo> server, int chunkSize) {
+        this(server, chunkSize, false);
+    }
+
+    public HttpPoolRequestHandler(NettyTransferService<HttpProtocolInfo> server, int chunkSize,
+          boolean zeroCopy) {
         _server = server;
         _chunkSize = chunkSize;
+        _zeroCopy = zeroCopy;
     }
 
     private static Optional<String> wantDigest(HttpRequest request) {
@@ -426,7 +447,7 @@ public class HttpPoolRequestHandler extends HttpRequestHandler {
              */
             context.write(new HttpGetResponse(fileSize, file, digest))
                   .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-            context.write(read(file, 0, fileSize - 1))
+            context.write(readSingleRange(context, file, 0, fileSize - 1))
                   .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
             ChannelFuture writeAndFlush = context.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
 
@@ -444,7 +465,7 @@ public class HttpPoolRequestHandler extends HttpRequestHandler {
             context.write(new HttpPartialContentResponse(range.getLower(), range.getUpper(),
                         fileSize, digest))
                   .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-            context.write(read(file, range.getLower(), range.getUpper()))
+            context.write(readSingleRange(context, file, range.getLower(), range.getUpper()))
                   .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
 
             // File is released when the client disconnects.  We're assuming that, after this, the
@@ -472,6 +493,7 @@ public class HttpPoolRequestHandler extends HttpRequestHandler {
 
             context.write(new HttpMultipartResponse(digest, totalLen))
                   .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            file.servedBy(CHUNKED);
             for (int i = 0; i < ranges.size(); i++) {
                 HttpByteRange range = ranges.get(i);
                 context.write(fragmentMarkers[i])
@@ -791,6 +813,42 @@ public class HttpPoolRequestHandler extends HttpRequestHandler {
         return new ReusableChunkedNioFile(file, lowerRange, length, _chunkSize);
     }
 
+    /**
+     * Like {@link #read}, but sends the data with a FileRegion if possible, which avoids copying
+     * the data through user space.
+     * <p>
+     * This requires a channel that {@link #canSendFileRegion can send a FileRegion} and that no
+     * checksum is calculated on the fly while reading the file. Otherwise a ChunkedInput is
+     * returned.
+     */
+    private Object readSingleRange(ChannelHandlerContext context,
+          NettyTransferService<HttpProtocolInfo>.NettyMoverChannel file,
+          long lowerRange, long upperRange) {
+        if (_zeroCopy
+              && canSendFileRegion(context.channel())
+              && !file.optionallyAs(ChecksumChannel.class).isPresent()) {
+            file.servedBy(ZERO_COPY);
+            return new ReusableFileRegion(file, lowerRange, (upperRange - lowerRange) + 1);
+        }
+        file.servedBy(CHUNKED);
+        return read(file, lowerRange, upperRange);
+    }
+
+    /**
+     * Returns true if a {@link ReusableFileRegion} written to the channel is sent without copying
+     * the data through user space.
+     * <p>
+     * Only plain (non-TLS) NIO socket channels qualify: they pass the region the socket's
+     * FileChannel, allowing {@link java.nio.channels.FileChannel#transferTo} to use sendfile. The
+     * epoll transport only uses sendfile for a DefaultFileRegion, which closes its file when
+     * released; any other FileRegion is copied through user space in small steps, which is
+     * slower than sending chunks.
+     */
+    static boolean canSendFileRegion(Channel channel) {
+        return channel instanceof NioSocketChannel
+              && channel.pipeline().get(SslHandler.class) == null;
+    }
+
     private static String buildDigest(
           NettyTransferService<HttpProtocolInfo>.NettyMoverChannel file) {
         FileAttributes attributes = file.getFileAttributes();
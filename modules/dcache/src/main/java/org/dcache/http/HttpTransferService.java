@@ -73,6 +73,7 @@ public class HttpTransferService extends NettyTransferService<HttpProtocolInfo>
     private static final String PROTOCOL_HTTP = "http";
 
     private int chunkSize;
+    private boolean zeroCopy;
     private ImmutableMap<String, String> customHeaders;
 
     public HttpTransferService() {
@@ -96,6 +97,18 @@ public class HttpTransferService extends NettyTransferService<HttpProtocolInfo>
         this.chunkSize = chunkSize;
     }
 
+    public boolean isZeroCopy() {
+        return zeroCopy;
+    }
+
+    /**
+     * Whether single range GET requests over plain HTTP are sent without copying the data through
+     * user space.
+     */
+    public void setZeroCopy(boolean zeroCopy) {
+        this.zeroCopy = zeroCopy;
+    }
+
     @Required
     public void setCustomHeaders(ImmutableMap<String, String> headers) {
         customHeaders = headers;
@@ -175,6 +188,6 @@ public class HttpTransferService extends NettyTransferService<HttpProtocolInfo>
 
         pipeline.addLast("cors", new CorsHandler(corsConfigBuilder().build()));
 
-        pipeline.addLast("transfer", new HttpPoolRequestHandler(this, chunkSize));
+        pipeline.addLast("transfer", new HttpPoolRequestHandler(this, chunkSize, zeroCopy));
     }
 }
@@ -0,0 +1,112 @@
+package org.dcache.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import org.dcache.pool.repository.RepositoryChannel;
+
+/**
+ * A FileRegion backed by a RepositoryChannel.
+ * <p>
+ * Allows Netty to send part of a file with {@link RepositoryChannel#transferTo}, i.e., without
+ * copying the data through user space if the repository supports it. Like {@link
+ * ReusableChunkedNioFile}, releasing the region does not close the channel, as the mover may serve
+ * further requests on the same channel.
+ */
+public class ReusableFileRegion extends AbstractReferenceCounted implements FileRegion {
+
+    private final RepositoryChannel _channel;
+    private final long _position;
+    private final long _count;
+
+    private long _transferred;
+
+    public ReusableFileRegion(RepositoryChannel channel, long position, long count) {
+        checkArgument(position >= 0, "position: %s (expected: 0 or greater)", position);
+        checkArgument(count >= 0, "count: %s (expected: 0 or greater)", count);
+        _channel = requireNonNull(channel);
+        _position = position;
+        _count = count;
+    }
+
+    @Override
+    public long position() {
+        return _position;
+    }
+
+    @Override
+    @Deprecated
+    public long transfered() {
+        return _transferred;
+    }
+
+    @Override
+    public long transferred() {
+        return _transferred;
+    }
+
+    @Override
+    public long count() {
+        return _count;
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target, long position) throws IOException {
+        long count = _count - position;
+        if (count < 0 || position < 0) {
+            throw new IllegalArgumentException("position out of range: " + position
+                  + " (expected: 0 - " + (_count - 1) + ')');
+        }
+        if (count == 0) {
+            return 0L;
+        }
+
+        long written = _channel.transferTo(_position + position, count, target);
+        if (written > 0) {
+            _transferred += written;
+        } else if (written == 0 && _position + position >= _channel.size()) {
+            /* Netty would retry forever if the file was truncated. */
+            throw new IOException("Underlying file size " + _channel.size()
+                  + " smaller then requested count " + (_position + _count));
+        }
+        return written;
+    }
+
+    /**
+     * Returns the repository channel. Used for unit testing.
+     */
+    RepositoryChannel getChannel() {
+        return _channel;
+    }
+
+    @Override
+    protected void deallocate() {
+        /* make sure to close the backing channel yourself */
+    }
+
+    @Override
+    public FileRegion retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public FileRegion retain(int increment) {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public FileRegion touch() {
+        return this;
+    }
+
+    @Override
+    public FileRegion touch(Object hint) {
+        return this;
+    }
+}
@@ -0,0 +1,108 @@
+package org.dcache.namespace;
+
+import dmg.cells.nucleus.CellInfoProvider;
+import dmg.cells.nucleus.CellMessageReceiver;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.dcache.cells.CellStub;
+import org.dcache.chimera.DentryCache;
+import org.dcache.chimera.JdbcFs;
+import org.dcache.chimera.Link;
+import org.dcache.vehicles.DentryInvalidationMessage;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * Keeps the dentry caches of all services sharing a Chimera database coherent.
+ * <p>
+ * Installs a dentry cache in the local file system if configured, publishes directory entries
+ * removed or renamed by the local file system on a topic, and invalidates entries removed or
+ * renamed by other services in the local cache.
+ * <p>
+ * Every service that modifies the namespace should publish its invalidations while any service
+ * caches directory entries. Entries modified by services that do not publish remain stale until
+ * they expire from the cache.
+ */
+public class DentryCacheCoordinator implements CellMessageReceiver, CellInfoProvider {
+
+    private final String _origin = UUID.randomUUID().toString();
+
+    private JdbcFs _fs;
+    private CellStub _topic;
+    private boolean _publish;
+    private long _size;
+    private long _lifetime;
+    private TimeUnit _lifetimeUnit;
+
+    @Required
+    public void setFileSystem(JdbcFs fs) {
+        _fs = fs;
+    }
+
+    @Required
+    public void setTopic(CellStub topic) {
+        _topic = topic;
+    }
+
+    @Required
+    public void setPublish(boolean publish) {
+        _publish = publish;
+    }
+
+    @Required
+    public void setSize(long size) {
+        _size = size;
+    }
+
+    @Required
+    public void setLifetime(long lifetime) {
+        _lifetime = lifetime;
+    }
+
+    @Required
+    public void setLifetimeUnit(TimeUnit unit) {
+        _lifetimeUnit = unit;
+    }
+
+    public void init() {
+        if (_size > 0) {
+            _fs.setDentryCache(new DentryCache(_size, _lifetime, _lifetimeUnit));
+        }
+        if (_publish) {
+            _fs.setDentryInvalidationListener(this::publish);
+        }
+    }
+
+    private void publish(Collection<Link> links) {
+        long[] parents = new long[links.size()];
+        String[] names = new String[links.size()];
+        int i = 0;
+        for (Link link : links) {
+            parents[i] = link.getParent().ino();
+            names[i] = link.getName();
+            i++;
+        }
+        _topic.notify(new DentryInvalidationMessage(_origin, System.currentTimeMillis(),
+              parents, names));
+    }
+
+    public void messageArrived(DentryInvalidationMessage message) {
+        DentryCache cache = _fs.getDentryCache();
+        if (cache != null && !message.getOrigin().equals(_origin)) {
+            long[] parents = message.getParents();
+            String[] names = message.getNames();
+            for (int i = 0; i < parents.length; i++) {
+                cache.invalidateRemote(parents[i], names[i], message.getTimestamp());
+            }
+        }
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw) {
+        DentryCache cache = _fs.getDentryCache();
+        if (cache != null) {
+            cache.getInfo(pw);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.dcache.namespace;
+
+import diskCacheV111.util.CacheException;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Callback interface used when querying the attributes of many files at once.
+ *
+ * @param <T> the type identifying a file
+ */
+public interface FileAttributesHandler<T> {
+
+    /**
+     * Called with the attributes of a file.
+     */
+    void addEntry(T file, FileAttributes attrs);
+
+    /**
+     * Called if the attributes of a file could not be retrieved.
+     */
+    void addError(T file, CacheException cause);
+}
@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.joining;
 
+import com.google.common.collect.Lists;
 import diskCacheV111.util.PnfsId;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -53,6 +54,12 @@ public class JdbcDao extends JdbcDaoSupport implements PinDao {
 
     private static final int NO_QUERY_LIMIT = -1;
 
+    /**
+     * Maximum number of rows inserted by a single statement. Keeps the number of bind
+     * parameters well below the limit of the database driver.
+     */
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+
     @Override
     public PinCriterion where() {
         return new JdbcPinCriterion();
@@ -184,6 +191,15 @@ public class JdbcDao extends JdbcDaoSupport implements PinDao {
             this.arguments.addAll(asList(arguments));
         }
 
+        protected void addInClause(String field, Object[] values) {
+            if (values.length == 0) {
+                addClause("false");
+            } else {
+                addClause(Stream.generate(() -> "?").limit(values.length)
+                      .collect(joining(",", field + " IN (", ")")), values);
+            }
+        }
+
         protected void whereFieldMatches(String field, SqlGlob pattern) {
             if (pattern.isGlob()) {
                 addClause(field + "LIKE ?", pattern.toSql());
@@ -225,6 +241,18 @@ public class JdbcDao extends JdbcDaoSupport implements PinDao {
             return this;
         }
 
+        @Override
+        public JdbcPinCriterion ids(Collection<Long> ids) {
+            addInClause("id", ids.toArray());
+            return this;
+        }
+
+        @Override
+        public JdbcPinCriterion pnfsIds(Collection<PnfsId> ids) {
+            addInClause("pnfsid", ids.stream().map(PnfsId::toString).toArray());
+            return this;
+        }
+
         @Override
         public JdbcPinCriterion requestId(String requestId) {
             addClause("request_id = ?", requestId);
@@ -370,6 +398,55 @@ public class JdbcDao extends JdbcDaoSupport implements PinDao {
         return toPin(u);
     }
 
+    /**
+     * Inserts the pins with multi-row INSERT statements of at most {@link #MAX_ROWS_PER_INSERT}
+     * rows. The pins are built from the rows returned by the database.
+     */
+    @Override
+    public List<Pin> create(List<PinUpdate> updates) {
+        List<Pin> pins = new ArrayList<>(updates.size());
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (List<PinUpdate> chunk : Lists.partition(updates, MAX_ROWS_PER_INSERT)) {
+            List<JdbcUpdate> rows = new ArrayList<>(chunk.size());
+            for (PinUpdate update : chunk) {
+                JdbcUpdate u = (JdbcUpdate) update;
+                u.set("created_at", now);
+                checkArgument(rows.isEmpty()
+                            || u.updates().keySet().equals(rows.get(0).updates().keySet()),
+                      "All pins must define the same fields.");
+                rows.add(u);
+            }
+            if (rows.isEmpty()) {
+                continue;
+            }
+            String values = rows.get(0).updates().keySet().stream().map(a -> "?")
+                  .collect(joining(",", "(", ")"));
+            String sql = "INSERT INTO pins "
+                  + rows.get(0).updates().keySet().stream().collect(joining(",", "(", ")"))
+                  + " VALUES " + Stream.generate(() -> values).limit(rows.size())
+                  .collect(joining(","));
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            getJdbcTemplate().update(
+                  con -> {
+                      PreparedStatement ps = con.prepareStatement(sql,
+                            Statement.RETURN_GENERATED_KEYS);
+                      int i = 1;
+                      for (JdbcUpdate row : rows) {
+                          for (Object argument : row.getArguments()) {
+                              ps.setObject(i++, argument);
+                          }
+                      }
+                      return ps;
+                  }, keyHolder);
+            for (Map<String, Object> keys : keyHolder.getKeyList()) {
+                JdbcUpdate row = new JdbcUpdate();
+                keys.forEach((column, value) -> row.set(column.toLowerCase(), value));
+                pins.add(toPin(row));
+            }
+        }
+        return pins;
+    }
+
     private Pin toPin(JdbcUpdate update) {
         Timestamp createdAt = (Timestamp) update.get("created_at");
         Timestamp expiresAt = (Timestamp) update.get("expires_at");
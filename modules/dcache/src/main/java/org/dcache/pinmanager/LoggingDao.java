@@ -1,10 +1,12 @@
 package org.dcache.pinmanager;
 
 import diskCacheV111.util.PnfsId;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
+import java.util.stream.Collectors;
 import javax.security.auth.Subject;
 import org.dcache.auth.Subjects;
 import org.dcache.pinmanager.model.Pin;
@@ -132,6 +134,18 @@ public class LoggingDao implements PinDao {
             return wrap(inner.pnfsId(id));
         }
 
+        @Override
+        public UniquePinCriterion ids(Collection<Long> ids) {
+            description().append("with one of ").append(ids.size()).append(" ids");
+            return wrap(inner.ids(ids));
+        }
+
+        @Override
+        public UniquePinCriterion pnfsIds(Collection<PnfsId> ids) {
+            description().append("with one of ").append(ids.size()).append(" PNFS-IDs");
+            return wrap(inner.pnfsIds(ids));
+        }
+
         @Override
         public UniquePinCriterion requestId(String requestId) {
             hasRequestId = true;
@@ -280,6 +294,16 @@ public class LoggingDao implements PinDao {
         return inner.create(u.inner);
     }
 
+    @Override
+    public List<Pin> create(List<PinUpdate> updates) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Creating {} pins in database.", updates.size());
+        }
+        return inner.create(updates.stream()
+              .map(u -> ((LoggingPinUpdate) u).inner)
+              .collect(Collectors.toList()));
+    }
+
     @Override
     public List<Pin> get(PinCriterion criterion) {
         LoggingPinCriterion c = (LoggingPinCriterion) criterion;
@@ -1,6 +1,9 @@
 package org.dcache.pinmanager;
 
+import static java.util.stream.Collectors.toList;
+
 import diskCacheV111.util.PnfsId;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import javax.annotation.Nullable;
@@ -33,6 +36,16 @@ public interface PinDao {
      */
     Pin create(PinUpdate update);
 
+    /**
+     * Creates new pins with the given field values. All updates must define the same fields.
+     * <p>
+     * Implementations may insert all pins with a single statement. The pins are not necessarily
+     * returned in the order of the updates.
+     */
+    default List<Pin> create(List<PinUpdate> updates) {
+        return updates.stream().map(this::create).collect(toList());
+    }
+
     /**
      * Returns the pins matching a selection criterion.
      */
@@ -117,6 +130,16 @@ public interface PinDao {
 
         PnfsIdPinCriterion pnfsId(PnfsId id);
 
+        /**
+         * Matches pins with any of the given ids.
+         */
+        PinCriterion ids(Collection<Long> ids);
+
+        /**
+         * Matches pins of any of the given files.
+         */
+        PinCriterion pnfsIds(Collection<PnfsId> ids);
+
         RequestIdPinCriterion requestId(String requestId);
 
         PinCriterion expirationTimeBefore(Date date);
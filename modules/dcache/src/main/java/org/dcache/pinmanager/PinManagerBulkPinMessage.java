@@ -0,0 +1,145 @@
+package org.dcache.pinmanager;
+
+import static java.util.Objects.requireNonNull;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.Message;
+import diskCacheV111.vehicles.ProtocolInfo;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Pins many files with a single request.
+ * <p>
+ * Every file is pinned as if by a {@link PinManagerPinMessage} with the same protocol info,
+ * request ID and lifetime, but the pins are created and resubmissions detected with a few
+ * database statements for all files. The message as a whole only fails if the request could not
+ * be processed at all; the outcome for the i'th file is available through {@link
+ * #getReturnCode(int)} and the accessors taking an index.
+ * <p>
+ * Unless the message is to be replied to when started, the reply is sent once all files have
+ * either been pinned or failed.
+ */
+public class PinManagerBulkPinMessage extends Message {
+
+    private static final long serialVersionUID = 2617140457532394118L;
+
+    private final List<FileAttributes> _fileAttributes;
+    private final ProtocolInfo _protocolInfo;
+    private final String _requestId;
+    private final long _lifetime;
+    private boolean _replyWhenStarted;
+    private boolean _denyStaging;
+
+    private final long[] _pinIds;
+    private final String[] _pools;
+    private final Date[] _expirationTimes;
+    private final int[] _returnCodes;
+    private final Serializable[] _errors;
+
+    public PinManagerBulkPinMessage(Collection<FileAttributes> fileAttributes,
+          ProtocolInfo protocolInfo,
+          String requestId,
+          long lifetime) {
+        _fileAttributes = new ArrayList<>(requireNonNull(fileAttributes));
+        _protocolInfo = requireNonNull(protocolInfo);
+        _requestId = requestId;
+        _lifetime = lifetime;
+        int size = _fileAttributes.size();
+        _pinIds = new long[size];
+        _pools = new String[size];
+        _expirationTimes = new Date[size];
+        _returnCodes = new int[size];
+        _errors = new Serializable[size];
+    }
+
+    /**
+     * Choose whether to reply once the pin tasks have been started rather than when all files
+     * have been pinned. The per-file results are then not available.
+     */
+    public void setReplyWhenStarted(boolean value) {
+        _replyWhenStarted = value;
+    }
+
+    public boolean isReplyWhenStarted() {
+        return _replyWhenStarted;
+    }
+
+    public void setDenyStaging(boolean value) {
+        _denyStaging = value;
+    }
+
+    public boolean isStagingDenied() {
+        return _denyStaging;
+    }
+
+    public String getRequestId() {
+        return _requestId;
+    }
+
+    public long getLifetime() {
+        return _lifetime;
+    }
+
+    public ProtocolInfo getProtocolInfo() {
+        return _protocolInfo;
+    }
+
+    public int size() {
+        return _fileAttributes.size();
+    }
+
+    public List<FileAttributes> getFileAttributes() {
+        return _fileAttributes;
+    }
+
+    public PnfsId getPnfsId(int i) {
+        return _fileAttributes.get(i).getPnfsId();
+    }
+
+    public void setPinned(int i, long pinId, String pool, Date expirationTime) {
+        _pinIds[i] = pinId;
+        _pools[i] = pool;
+        _expirationTimes[i] = expirationTime;
+        _returnCodes[i] = 0;
+        _errors[i] = null;
+    }
+
+    public void setFailed(int i, int rc, Serializable error) {
+        _returnCodes[i] = rc;
+        _errors[i] = error;
+    }
+
+    public long getPinId(int i) {
+        return _pinIds[i];
+    }
+
+    public String getPool(int i) {
+        return _pools[i];
+    }
+
+    public Date getExpirationTime(int i) {
+        return _expirationTimes[i];
+    }
+
+    /**
+     * Returns zero if the i'th file was pinned, or the error code of the failure.
+     */
+    public int getReturnCode(int i) {
+        return _returnCodes[i];
+    }
+
+    public Serializable getError(int i) {
+        return _errors[i];
+    }
+
+    @Override
+    public String toString() {
+        return "PinManagerBulkPinMessage[" + _requestId + "," + size() + " files,"
+              + _protocolInfo + "," + _lifetime + "]";
+    }
+}
@@ -0,0 +1,71 @@
+package org.dcache.pinmanager;
+
+import static java.util.Objects.requireNonNull;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.Message;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Unpins many files with a single request.
+ * <p>
+ * If a request ID is given, only the pins with that request ID are released. Otherwise all pins
+ * of the files the subject is authorized to unpin are released. Pins the subject is not
+ * authorized to unpin are reported through {@link #getDenied()}.
+ */
+public class PinManagerBulkUnpinMessage extends Message {
+
+    private static final long serialVersionUID = -3027402880574436913L;
+
+    private final List<PnfsId> _pnfsIds;
+    private final String _requestId;
+
+    private int _unpinned;
+    private final List<PnfsId> _denied = new ArrayList<>();
+
+    public PinManagerBulkUnpinMessage(Collection<PnfsId> pnfsIds) {
+        this(pnfsIds, null);
+    }
+
+    public PinManagerBulkUnpinMessage(Collection<PnfsId> pnfsIds, String requestId) {
+        _pnfsIds = new ArrayList<>(requireNonNull(pnfsIds));
+        _requestId = requestId;
+    }
+
+    public List<PnfsId> getPnfsIds() {
+        return _pnfsIds;
+    }
+
+    public String getRequestId() {
+        return _requestId;
+    }
+
+    /**
+     * Returns the number of pins released.
+     */
+    public int getUnpinned() {
+        return _unpinned;
+    }
+
+    public void setUnpinned(int unpinned) {
+        _unpinned = unpinned;
+    }
+
+    /**
+     * Returns the files with pins the subject was not authorized to unpin.
+     */
+    public List<PnfsId> getDenied() {
+        return _denied;
+    }
+
+    public void addDenied(PnfsId pnfsId) {
+        _denied.add(pnfsId);
+    }
+
+    @Override
+    public String toString() {
+        return "PinManagerBulkUnpinMessage[" + _requestId + "," + _pnfsIds.size() + " files]";
+    }
+}
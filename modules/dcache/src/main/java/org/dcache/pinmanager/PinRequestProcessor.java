@@ -9,6 +9,7 @@ import static org.dcache.pinmanager.model.Pin.State.PINNING;
 import static org.dcache.pinmanager.model.Pin.State.READY_TO_UNPIN;
 import static org.springframework.transaction.annotation.Isolation.REPEATABLE_READ;
 
+import com.google.common.collect.Lists;
 import diskCacheV111.poolManager.RequestContainerV5;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.CheckStagePermission;
@@ -21,15 +22,22 @@ import dmg.cells.nucleus.CellAddressCore;
 import dmg.cells.nucleus.CellMessageReceiver;
 import dmg.cells.nucleus.CellPath;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
 import javax.security.auth.Subject;
 import org.dcache.cells.AbstractMessageCallback;
 import org.dcache.cells.CellStub;
@@ -84,6 +92,12 @@ public class PinRequestProcessor
      */
     private static final long CLOCK_DRIFT_MARGIN = MINUTES.toMillis(30);
 
+    /**
+     * Maximum number of files of a bulk request for which pins are created by a single
+     * statement.
+     */
+    private static final int BATCH_SIZE = 1000;
+
     private ScheduledExecutorService _scheduledExecutor;
     private Executor _executor;
     private PinDao _dao;
@@ -176,12 +190,7 @@ public class PinRequestProcessor
 
         PinTask task = createTask(message, reply);
         if (task != null) {
-            if (!task.getFileAttributes()
-                  .isDefined(PoolMgrSelectReadPoolMsg.getRequiredAttributes())) {
-                rereadNameSpaceEntry(task);
-            } else {
-                selectReadPool(task);
-            }
+            start(task);
             if (message.isReplyWhenStarted()) {
                 reply.reply(message);
             }
@@ -190,6 +199,71 @@ public class PinRequestProcessor
         return reply;
     }
 
+    /**
+     * Pins many files.
+     * <p>
+     * Every file is pinned by its own task, but resubmissions are detected and the pins created
+     * with a few database statements per batch of files.
+     */
+    public MessageReply<PinManagerBulkPinMessage>
+    messageArrived(PinManagerBulkPinMessage message) {
+        MessageReply<PinManagerBulkPinMessage> reply = new MessageReply<>();
+        AtomicInteger remaining = new AtomicInteger(message.size());
+
+        List<BulkPinRequest> requests = new ArrayList<>(message.size());
+        Set<PnfsId> pnfsIds = new HashSet<>();
+        for (int i = 0; i < message.size(); i++) {
+            PinManagerPinMessage request =
+                  new PinManagerPinMessage(message.getFileAttributes().get(i),
+                        message.getProtocolInfo(), message.getRequestId(), message.getLifetime());
+            request.setSubject(message.getSubject());
+            request.setDenyStaging(message.isStagingDenied());
+            enforceLifetimeLimit(request);
+            BulkPinReply fileReply = new BulkPinReply(message, i, remaining, reply);
+            if (pnfsIds.add(request.getPnfsId())) {
+                requests.add(new BulkPinRequest(request, fileReply));
+            } else {
+                fileReply.fail(request, CacheException.INVALID_ARGS,
+                      "File is included more than once in request");
+            }
+        }
+
+        for (List<BulkPinRequest> batch : Lists.partition(requests, BATCH_SIZE)) {
+            List<PinTask> tasks;
+            try {
+                tasks = createTasks(batch);
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to create pins: {}", e.toString());
+                batch.forEach(r -> r.reply.fail(r.message, CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
+                      "Failed to create pin: " + e));
+                continue;
+            }
+            for (PinTask task : tasks) {
+                try {
+                    start(task);
+                } catch (CacheException e) {
+                    fail(task, e.getRc(), e.getMessage());
+                } catch (RuntimeException e) {
+                    fail(task, CacheException.UNEXPECTED_SYSTEM_EXCEPTION, e.toString());
+                }
+            }
+        }
+
+        if (message.isReplyWhenStarted() || message.size() == 0) {
+            reply.reply(message);
+        }
+        return reply;
+    }
+
+    private void start(PinTask task) throws CacheException {
+        if (!task.getFileAttributes()
+              .isDefined(PoolMgrSelectReadPoolMsg.getRequiredAttributes())) {
+            rereadNameSpaceEntry(task);
+        } else {
+            selectReadPool(task);
+        }
+    }
+
     protected EnumSet<RequestContainerV5.RequestState>
     checkStaging(PinTask task) {
         if (task.isStagingDenied()) {
@@ -528,6 +602,56 @@ public class PinRequestProcessor
         return new PinTask(message, reply, pin);
     }
 
+    /**
+     * Creates the pins of a batch of files of a bulk pin request. Files that are already pinned
+     * by an earlier submission of the request are replied to right away and no task is created
+     * for them.
+     */
+    @Transactional(isolation = REPEATABLE_READ)
+    protected List<PinTask> createTasks(List<BulkPinRequest> requests) {
+        Map<PnfsId, BulkPinRequest> byPnfsId = new HashMap<>();
+        requests.forEach(r -> byPnfsId.put(r.message.getPnfsId(), r));
+        PinManagerPinMessage first = requests.get(0).message;
+        String requestId = first.getRequestId();
+
+        if (requestId != null) {
+            List<Long> aborted = new ArrayList<>();
+            for (Pin pin : _dao.get(_dao.where().pnfsIds(byPnfsId.keySet()).requestId(requestId))) {
+                if (pin.getState() == PINNED) {
+                    BulkPinRequest request = byPnfsId.remove(pin.getPnfsId());
+                    if (request != null) {
+                        request.message.setPin(pin);
+                        request.reply.reply(request.message);
+                    }
+                } else {
+                    aborted.add(pin.getPinId());
+                }
+            }
+            if (!aborted.isEmpty()) {
+                _dao.update(_dao.where().ids(aborted),
+                      _dao.set().state(READY_TO_UNPIN).requestId(null));
+            }
+        }
+
+        Date expirationTime = getExpirationTimeForPoolSelection();
+        List<PinDao.PinUpdate> updates = byPnfsId.keySet().stream()
+              .map(pnfsId -> _dao.set()
+                    .subject(first.getSubject())
+                    .state(PINNING)
+                    .pnfsId(pnfsId)
+                    .requestId(requestId)
+                    .sticky("PinManager-" + UUID.randomUUID().toString())
+                    .expirationTime(expirationTime))
+              .collect(Collectors.toList());
+
+        List<PinTask> tasks = new ArrayList<>(updates.size());
+        for (Pin pin : _dao.create(updates)) {
+            BulkPinRequest request = byPnfsId.get(pin.getPnfsId());
+            tasks.add(new PinTask(request.message, request.reply, pin));
+        }
+        return tasks;
+    }
+
     private void updateTask(PinTask task, PinDao.PinUpdate update) throws CacheException {
         Pin pin = _dao.update(
               _dao.where().id(task.getPinId()).sticky(task.getSticky()).state(PINNING), update);
@@ -583,4 +707,56 @@ public class PinRequestProcessor
             _dao.delete(task.getPin());
         }
     }
+
+    /**
+     * A file of a bulk pin request.
+     */
+    protected static class BulkPinRequest {
+
+        private final PinManagerPinMessage message;
+        private final MessageReply<PinManagerPinMessage> reply;
+
+        BulkPinRequest(PinManagerPinMessage message, MessageReply<PinManagerPinMessage> reply) {
+            this.message = message;
+            this.reply = reply;
+        }
+    }
+
+    /**
+     * Records the outcome for a file of a bulk pin request and replies to the bulk request once
+     * all files are done.
+     */
+    private static class BulkPinReply extends MessageReply<PinManagerPinMessage> {
+
+        private final PinManagerBulkPinMessage bulk;
+        private final int index;
+        private final AtomicInteger remaining;
+        private final MessageReply<PinManagerBulkPinMessage> reply;
+        private boolean isDone;
+
+        BulkPinReply(PinManagerBulkPinMessage bulk, int index, AtomicInteger remaining,
+              MessageReply<PinManagerBulkPinMessage> reply) {
+            this.bulk = bulk;
+            this.index = index;
+            this.remaining = remaining;
+            this.reply = reply;
+        }
+
+        @Override
+        public synchronized void reply(PinManagerPinMessage msg) {
+            super.reply(msg);
+            if (isDone) {
+                return;
+            }
+            isDone = true;
+            if (msg.getReturnCode() == 0) {
+                bulk.setPinned(index, msg.getPinId(), msg.getPool(), msg.getExpirationTime());
+            } else {
+                bulk.setFailed(index, msg.getReturnCode(), msg.getErrorObject());
+            }
+            if (remaining.decrementAndGet() == 0 && !bulk.isReplyWhenStarted()) {
+                reply.reply(bulk);
+            }
+        }
+    }
 }
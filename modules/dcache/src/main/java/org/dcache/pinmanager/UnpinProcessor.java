@@ -4,13 +4,20 @@ import static org.dcache.pinmanager.model.Pin.State.FAILED_TO_UNPIN;
 import static org.dcache.pinmanager.model.Pin.State.READY_TO_UNPIN;
 import static org.dcache.pinmanager.model.Pin.State.UNPINNING;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import diskCacheV111.poolManager.PoolSelectionUnit;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.vehicles.PoolSetStickyMessage;
+import dmg.cells.nucleus.CellAddressCore;
 import dmg.cells.nucleus.CellPath;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.jdo.JDOException;
@@ -18,13 +25,11 @@ import org.dcache.cells.AbstractMessageCallback;
 import org.dcache.cells.CellStub;
 import org.dcache.pinmanager.model.Pin;
 import org.dcache.poolmanager.PoolMonitor;
-import org.dcache.util.CDCExecutorServiceDecorator;
 import org.dcache.util.NDC;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
 import org.springframework.remoting.RemoteConnectFailureException;
-import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Performs the work of unpinning files.
@@ -33,7 +38,10 @@ import org.springframework.transaction.annotation.Transactional;
  * unpinning a file is performed independently of the unpin request.
  * <p>
  * This class attempts to unpin a limited number of files per run which are in state
- * READY_TO_UNPIN.
+ * READY_TO_UNPIN. Pins are processed in batches: the state changes of a batch are written with a
+ * few statements, and the sticky flags are cleared by messages to the pools that are interleaved
+ * across pools, such that a single slow pool does not delay unpinning on all other pools. The
+ * outcome of clearing the sticky flags is collected and written in batches too.
  */
 public class UnpinProcessor implements Runnable {
 
@@ -42,6 +50,11 @@ public class UnpinProcessor implements Runnable {
     private static final int MAX_RUNNING = 1000;
     private static final int NO_UNPIN_LIMIT_PER_RUN = -1;
 
+    /**
+     * Maximum number of pins fetched and updated by a single statement.
+     */
+    private static final int BATCH_SIZE = 1000;
+
     private final PinDao _dao;
     private final CellStub _poolStub;
     private final PoolMonitor _poolMonitor;
@@ -59,12 +72,11 @@ public class UnpinProcessor implements Runnable {
 
     @Override
     public void run() {
-        final ExecutorService executor = new CDCExecutorServiceDecorator(
-              Executors.newSingleThreadExecutor());
         NDC.push("BackgroundUnpinner-" + _count.incrementAndGet());
+        Outcome outcome = new Outcome();
         try {
             Semaphore idle = new Semaphore(MAX_RUNNING);
-            unpin(idle, executor);
+            unpin(idle, outcome);
             idle.acquire(MAX_RUNNING);
         } catch (InterruptedException e) {
             LOGGER.debug(e.toString());
@@ -76,51 +88,89 @@ public class UnpinProcessor implements Runnable {
         } catch (RuntimeException e) {
             LOGGER.error("Unexpected failure while unpinning", e);
         } finally {
-            executor.shutdown();
+            try {
+                outcome.write();
+            } catch (JDOException | DataAccessException e) {
+                LOGGER.error("Database failure while unpinning: {}", e.getMessage());
+            }
             NDC.pop();
         }
     }
 
-    @Transactional
-    protected void unpin(final Semaphore idle, final Executor executor)
-          throws InterruptedException {
-        if (_maxUnpinsPerRun == NO_UNPIN_LIMIT_PER_RUN) {
-            _dao.foreach(_dao.where().state(READY_TO_UNPIN), pin -> upin(idle, executor, pin));
-        } else {
-            _dao.foreach(_dao.where().state(READY_TO_UNPIN), pin -> upin(idle, executor, pin),
-                  _maxUnpinsPerRun);
+    private void unpin(Semaphore idle, Outcome outcome) throws InterruptedException {
+        int remaining = (_maxUnpinsPerRun == NO_UNPIN_LIMIT_PER_RUN)
+              ? Integer.MAX_VALUE : _maxUnpinsPerRun;
+        while (remaining > 0) {
+            List<Pin> pins = _dao.get(_dao.where().state(READY_TO_UNPIN),
+                  Math.min(BATCH_SIZE, remaining));
+            if (pins.isEmpty()) {
+                break;
+            }
+            remaining -= pins.size();
+            unpin(idle, outcome, pins);
+            outcome.write();
         }
     }
 
-    private void upin(Semaphore idle, Executor executor, Pin pin) throws InterruptedException {
-        if (pin.getPool() == null) {
-            LOGGER.debug("No pool found for pin {}, pnfsid {}; no sticky flags to clear",
-                  pin.getPinId(), pin.getPnfsId());
-            _dao.delete(pin);
-        } else {
-            LOGGER.debug("Clearing sticky flag for pin {}, pnfsid {} on pool {}", pin.getPinId(),
-                  pin.getPnfsId(), pin.getPool());
-            _dao.update(pin, _dao.set().state(UNPINNING));
-            clearStickyFlag(idle, pin, executor);
+    private void unpin(Semaphore idle, Outcome outcome, List<Pin> pins)
+          throws InterruptedException {
+        List<Long> withoutPool = new ArrayList<>();
+        Map<String, List<Pin>> byPool = new HashMap<>();
+        for (Pin pin : pins) {
+            if (pin.getPool() == null) {
+                LOGGER.debug("No pool found for pin {}, pnfsid {}; no sticky flags to clear",
+                      pin.getPinId(), pin.getPnfsId());
+                withoutPool.add(pin.getPinId());
+            } else {
+                byPool.computeIfAbsent(pin.getPool(), p -> new ArrayList<>()).add(pin);
+            }
+        }
+        if (!withoutPool.isEmpty()) {
+            _dao.delete(_dao.where().ids(withoutPool));
         }
-    }
 
-    private void failedToUnpin(Pin pin) {
-        _dao.update(pin, _dao.set().state(FAILED_TO_UNPIN));
-    }
+        List<Long> unavailable = new ArrayList<>();
+        List<Long> unpinning = new ArrayList<>();
+        List<PoolQueue> queues = new ArrayList<>();
+        for (Map.Entry<String, List<Pin>> entry : byPool.entrySet()) {
+            PoolSelectionUnit.SelectionPool pool = _poolMonitor.getPoolSelectionUnit()
+                  .getPool(entry.getKey());
+            List<Pin> pinsOnPool = entry.getValue();
+            if (pool == null || !pool.isActive()) {
+                LOGGER.warn("Unable to clear sticky flags of {} pins because pool {} is unavailable",
+                      pinsOnPool.size(), entry.getKey());
+                pinsOnPool.forEach(pin -> unavailable.add(pin.getPinId()));
+            } else {
+                pinsOnPool.forEach(pin -> unpinning.add(pin.getPinId()));
+                queues.add(new PoolQueue(pool.getAddress(), pinsOnPool));
+            }
+        }
+        if (!unavailable.isEmpty()) {
+            _dao.update(_dao.where().ids(unavailable), _dao.set().state(FAILED_TO_UNPIN));
+        }
+        if (!unpinning.isEmpty()) {
+            _dao.update(_dao.where().ids(unpinning), _dao.set().state(UNPINNING));
+        }
 
-    private void clearStickyFlag(final Semaphore idle, final Pin pin, Executor executor)
-          throws InterruptedException {
-        PoolSelectionUnit.SelectionPool pool = _poolMonitor.getPoolSelectionUnit()
-              .getPool(pin.getPool());
-        if (pool == null || !pool.isActive()) {
-            LOGGER.warn(
-                  "Unable to clear sticky flag for pin {} on pnfsid {} because pool {} is unavailable",
-                  pin.getPinId(), pin.getPnfsId(), pin.getPool());
-            failedToUnpin(pin);
-            return;
+        /* Take one pin from each pool in turn. */
+        while (!queues.isEmpty()) {
+            Iterator<PoolQueue> iterator = queues.iterator();
+            while (iterator.hasNext()) {
+                PoolQueue queue = iterator.next();
+                Pin pin = queue.pins.poll();
+                if (pin == null) {
+                    iterator.remove();
+                } else {
+                    clearStickyFlag(idle, outcome, queue.address, pin);
+                }
+            }
         }
+    }
 
+    private void clearStickyFlag(Semaphore idle, Outcome outcome, CellAddressCore address,
+          Pin pin) throws InterruptedException {
+        LOGGER.debug("Clearing sticky flag for pin {}, pnfsid {} on pool {}", pin.getPinId(),
+              pin.getPnfsId(), pin.getPool());
         idle.acquire();
         PoolSetStickyMessage msg =
               new PoolSetStickyMessage(pin.getPool(),
@@ -128,27 +178,70 @@ public class UnpinProcessor implements Runnable {
                     false,
                     pin.getSticky(),
                     0);
-        CellStub.addCallback(_poolStub.send(new CellPath(pool.getAddress()), msg),
+        CellStub.addCallback(_poolStub.send(new CellPath(address), msg),
               new AbstractMessageCallback<PoolSetStickyMessage>() {
                   @Override
                   public void success(PoolSetStickyMessage msg) {
+                      outcome.cleared.add(pin.getPinId());
                       idle.release();
-                      _dao.delete(pin);
                   }
 
                   @Override
                   public void failure(int rc, Object error) {
-                      idle.release();
                       switch (rc) {
                           case CacheException.FILE_NOT_IN_REPOSITORY:
-                              _dao.delete(pin);
+                              outcome.cleared.add(pin.getPinId());
                               break;
                           default:
                               LOGGER.warn("Failed to clear sticky flag: {} [{}]", error, rc);
-                              failedToUnpin(pin);
+                              outcome.failed.add(pin.getPinId());
                               break;
                       }
+                      idle.release();
                   }
-              }, executor);
+              }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Pins of a pool that still have to be unpinned.
+     */
+    private static class PoolQueue {
+
+        private final CellAddressCore address;
+        private final Queue<Pin> pins;
+
+        PoolQueue(CellAddressCore address, List<Pin> pins) {
+            this.address = address;
+            this.pins = new ArrayDeque<>(pins);
+        }
+    }
+
+    /**
+     * The outcome of clearing sticky flags, collected by the message callbacks and written to
+     * the database in batches.
+     */
+    private class Outcome {
+
+        private final Queue<Long> cleared = new ConcurrentLinkedQueue<>();
+        private final Queue<Long> failed = new ConcurrentLinkedQueue<>();
+
+        void write() {
+            List<Long> ids;
+            while (!(ids = drain(cleared)).isEmpty()) {
+                _dao.delete(_dao.where().ids(ids));
+            }
+            while (!(ids = drain(failed)).isEmpty()) {
+                _dao.update(_dao.where().ids(ids), _dao.set().state(FAILED_TO_UNPIN));
+            }
+        }
+
+        private List<Long> drain(Queue<Long> queue) {
+            List<Long> ids = new ArrayList<>();
+            Long id;
+            while (ids.size() < BATCH_SIZE && (id = queue.poll()) != null) {
+                ids.add(id);
+            }
+            return ids;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,12 @@
 package org.dcache.pinmanager;
 
+import com.google.common.collect.Lists;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.PermissionDeniedCacheException;
 import diskCacheV111.util.PnfsId;
 import dmg.cells.nucleus.CellMessageReceiver;
+import java.util.ArrayList;
+import java.util.List;
 import org.dcache.pinmanager.model.Pin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +25,11 @@ public class UnpinRequestProcessor
     private static final Logger LOGGER =
           LoggerFactory.getLogger(UnpinRequestProcessor.class);
 
+    /**
+     * Maximum number of files looked up by a single statement.
+     */
+    private static final int BATCH_SIZE = 1000;
+
     private PinDao _dao;
     private AuthorizationPolicy _pdp;
 
@@ -53,6 +61,35 @@ public class UnpinRequestProcessor
         return message;
     }
 
+    /**
+     * Unpins many files. Pins are looked up and released with one statement per batch of files.
+     */
+    @Transactional
+    public PinManagerBulkUnpinMessage messageArrived(PinManagerBulkUnpinMessage message) {
+        int unpinned = 0;
+        for (List<PnfsId> pnfsIds : Lists.partition(message.getPnfsIds(), BATCH_SIZE)) {
+            PinDao.PinCriterion criterion = _dao.where().pnfsIds(pnfsIds);
+            if (message.getRequestId() != null) {
+                criterion = criterion.requestId(message.getRequestId());
+            }
+            List<Long> ids = new ArrayList<>();
+            for (Pin pin : _dao.get(criterion)) {
+                if (_pdp.canUnpin(message.getSubject(), pin)) {
+                    ids.add(pin.getPinId());
+                } else {
+                    message.addDenied(pin.getPnfsId());
+                }
+            }
+            if (!ids.isEmpty()) {
+                unpinned += _dao.update(_dao.where().ids(ids),
+                      _dao.set().state(Pin.State.READY_TO_UNPIN));
+            }
+        }
+        message.setUnpinned(unpinned);
+        LOGGER.info("Unpinned {} pins of {} files", unpinned, message.getPnfsIds().size());
+        return message;
+    }
+
     private void unpin(PinManagerUnpinMessage message, Pin pin)
           throws CacheException {
         if (pin != null) {
@@ -0,0 +1,315 @@
+package org.dcache.pool.classic;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.dcache.pool.classic.MoverRequestScheduler.FairShare;
+import org.dcache.pool.classic.MoverRequestScheduler.Order;
+import org.dcache.pool.classic.MoverRequestScheduler.PrioritizedRequest;
+import org.dcache.util.IoPrioritizable;
+
+/**
+ * Queue of movers waiting for a job slot of a {@link MoverRequestScheduler}.
+ * <p>
+ * Movers are grouped into tenants according to the fair share policy of the queue. When a job
+ * slot becomes free, the next mover is taken from the tenant with the fewest running movers
+ * relative to its weight, so that a single tenant submitting many requests cannot starve other
+ * tenants. Within a tenant, movers are ordered by priority and then by the order of the queue.
+ * Without fair sharing, all movers belong to the same tenant.
+ */
+class FairShareQueue {
+
+    private static final int DEFAULT_WEIGHT = 1;
+
+    /**
+     * Movers of a single tenant.
+     */
+    private class Tenant {
+
+        private final String _name;
+        private final PriorityQueue<PrioritizedRequest> _queue;
+        private int _running;
+        private long _started;
+        private long _totalWaitTime;
+
+        private Tenant(String name) {
+            _name = name;
+            _queue = new PriorityQueue<>(_comparator);
+        }
+
+        private int getWeight() {
+            return _weights.getOrDefault(_name, DEFAULT_WEIGHT);
+        }
+
+        /**
+         * Returns the share of job slots used by this tenant if one more mover was started.
+         */
+        private double getLoad() {
+            return (_running + 1) / (double) getWeight();
+        }
+
+        private boolean isIdle() {
+            return _queue.isEmpty() && _running == 0;
+        }
+
+        private TenantInfo toTenantInfo(long now) {
+            long maxWaitTime = _queue.stream()
+                  .mapToLong(r -> now - r.getCreateTime()).max().orElse(0);
+            long averageWaitTime = (_started == 0) ? 0 : _totalWaitTime / _started;
+            return new TenantInfo(_name, getWeight(), _running, _queue.size(),
+                  TimeUnit.NANOSECONDS.toMillis(maxWaitTime),
+                  TimeUnit.NANOSECONDS.toMillis(averageWaitTime));
+        }
+    }
+
+    /**
+     * Snapshot of the state of a tenant.
+     */
+    static class TenantInfo {
+
+        private final String _name;
+        private final int _weight;
+        private final int _running;
+        private final int _queued;
+        private final long _maxWaitTime;
+        private final long _averageWaitTime;
+
+        TenantInfo(String name, int weight, int running, int queued, long maxWaitTime,
+              long averageWaitTime) {
+            _name = name;
+            _weight = weight;
+            _running = running;
+            _queued = queued;
+            _maxWaitTime = maxWaitTime;
+            _averageWaitTime = averageWaitTime;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public int getWeight() {
+            return _weight;
+        }
+
+        public int getRunning() {
+            return _running;
+        }
+
+        public int getQueued() {
+            return _queued;
+        }
+
+        /**
+         * Returns the time in milliseconds the oldest queued mover of the tenant has been waiting.
+         */
+        public long getMaxWaitTime() {
+            return _maxWaitTime;
+        }
+
+        /**
+         * Returns the average time in milliseconds movers of the tenant waited before being
+         * started.
+         */
+        public long getAverageWaitTime() {
+            return _averageWaitTime;
+        }
+    }
+
+    /**
+     * Tenants with queued or running movers.
+     */
+    private final Map<String, Tenant> _tenants = new HashMap<>();
+
+    /**
+     * Running movers taken from this queue and the tenant they are accounted to.
+     */
+    private final Map<PrioritizedRequest, Tenant> _running = new HashMap<>();
+
+    /**
+     * Weights of tenants. Tenants without an explicit weight have a weight of one.
+     */
+    private final Map<String, Integer> _weights = new HashMap<>();
+
+    private Comparator<IoPrioritizable> _comparator;
+
+    private FairShare _fairShare;
+
+    private int _size;
+
+    FairShareQueue(Order order, FairShare fairShare) {
+        _comparator = comparatorFor(order);
+        _fairShare = fairShare;
+    }
+
+    private static Comparator<IoPrioritizable> comparatorFor(Order order) {
+        /* PriorityQueue returns the least elements first, that is, the
+         * the highest priority requests have to be first in the ordering.
+         */
+        return order == Order.FIFO
+              ? Comparator
+              .comparing(IoPrioritizable::getPriority)
+              .reversed()
+              .thenComparingLong(IoPrioritizable::getCreateTime)
+              : Comparator
+                    .comparing(IoPrioritizable::getPriority)
+                    .thenComparingLong(IoPrioritizable::getCreateTime)
+                    .reversed();
+    }
+
+    private Tenant tenantOf(PrioritizedRequest request) {
+        return _tenants.computeIfAbsent(_fairShare.tenantOf(request.getMover()), Tenant::new);
+    }
+
+    private void removeIfIdle(Tenant tenant) {
+        if (tenant.isIdle()) {
+            _tenants.remove(tenant._name, tenant);
+        }
+    }
+
+    public synchronized void add(PrioritizedRequest request) {
+        tenantOf(request)._queue.add(request);
+        _size++;
+    }
+
+    /**
+     * Removes the next mover to start from the queue. The mover is accounted as running until
+     * {@link #finished} is called.
+     *
+     * @return the next mover or null if the queue is empty
+     */
+    public synchronized PrioritizedRequest poll() {
+        Tenant next = null;
+        for (Tenant tenant : _tenants.values()) {
+            if (!tenant._queue.isEmpty() && (next == null || isBefore(tenant, next))) {
+                next = tenant;
+            }
+        }
+        if (next == null) {
+            return null;
+        }
+        PrioritizedRequest request = next._queue.poll();
+        _size--;
+        next._running++;
+        next._started++;
+        next._totalWaitTime += System.nanoTime() - request.getCreateTime();
+        _running.put(request, next);
+        return request;
+    }
+
+    private boolean isBefore(Tenant tenant, Tenant other) {
+        int order = Double.compare(tenant.getLoad(), other.getLoad());
+        if (order == 0) {
+            order = _comparator.compare(tenant._queue.peek(), other._queue.peek());
+        }
+        return order < 0;
+    }
+
+    /**
+     * Releases the job slot accounted to the tenant of a mover returned by {@link #poll}.
+     */
+    public synchronized void finished(PrioritizedRequest request) {
+        Tenant tenant = _running.remove(request);
+        if (tenant != null) {
+            tenant._running--;
+            removeIfIdle(tenant);
+        }
+    }
+
+    public synchronized boolean remove(PrioritizedRequest request) {
+        for (Tenant tenant : _tenants.values()) {
+            if (tenant._queue.remove(request)) {
+                _size--;
+                removeIfIdle(tenant);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized boolean isEmpty() {
+        return _size == 0;
+    }
+
+    public synchronized int size() {
+        return _size;
+    }
+
+    /**
+     * Removes all queued movers.
+     */
+    public synchronized List<PrioritizedRequest> drain() {
+        List<PrioritizedRequest> requests = new ArrayList<>(_size);
+        for (Tenant tenant : _tenants.values()) {
+            requests.addAll(tenant._queue);
+            tenant._queue.clear();
+        }
+        _tenants.values().removeIf(Tenant::isIdle);
+        _size = 0;
+        return requests;
+    }
+
+    public synchronized void setOrder(Order order) {
+        _comparator = comparatorFor(order);
+        regroup();
+    }
+
+    public synchronized FairShare getFairShare() {
+        return _fairShare;
+    }
+
+    public synchronized void setFairShare(FairShare fairShare) {
+        _fairShare = fairShare;
+        regroup();
+    }
+
+    /**
+     * Rebuilds the tenants after the order or the fair share policy changed.
+     */
+    private void regroup() {
+        List<PrioritizedRequest> queued = new ArrayList<>(_size);
+        _tenants.values().forEach(t -> queued.addAll(t._queue));
+        Set<PrioritizedRequest> running = new HashSet<>(_running.keySet());
+
+        _tenants.clear();
+        _running.clear();
+        for (PrioritizedRequest request : queued) {
+            tenantOf(request)._queue.add(request);
+        }
+        for (PrioritizedRequest request : running) {
+            Tenant tenant = tenantOf(request);
+            tenant._running++;
+            _running.put(request, tenant);
+        }
+    }
+
+    public synchronized void setWeight(String tenant, int weight) {
+        checkArgument(weight > 0, "Weight must be positive.");
+        if (weight == DEFAULT_WEIGHT) {
+            _weights.remove(tenant);
+        } else {
+            _weights.put(tenant, weight);
+        }
+    }
+
+    public synchronized Map<String, Integer> getWeights() {
+        return new HashMap<>(_weights);
+    }
+
+    public synchronized List<TenantInfo> getTenantInfos() {
+        long now = System.nanoTime();
+        List<TenantInfo> infos = new ArrayList<>(_tenants.size());
+        for (Tenant tenant : _tenants.values()) {
+            infos.add(tenant.toTenantInfo(now));
+        }
+        return infos;
+    }
+}
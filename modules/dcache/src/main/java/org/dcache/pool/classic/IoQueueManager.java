@@ -24,13 +24,18 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import javax.annotation.Nonnull;
 import org.dcache.pool.FaultEvent;
 import org.dcache.pool.FaultListener;
+import org.dcache.pool.classic.MoverRequestScheduler.FairShare;
 import org.dcache.pool.classic.MoverRequestScheduler.Order;
+import org.dcache.util.ColumnWriter;
 import org.dcache.util.IoPriority;
+import org.dcache.util.TimeUtils;
+import org.dcache.util.TimeUtils.TimeUnitFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -151,7 +156,10 @@ public class IoQueueManager
     @Override
     public void printSetup(PrintWriter pw) {
         queues().forEach(
-              q -> pw.println("mover queue create " + q.getName() + " -order=" + q.getOrder()));
+              q -> pw.println("mover queue create " + q.getName() + " -order=" + q.getOrder()
+                    + (q.getFairShare() == FairShare.NONE ? "" : " -share=" + q.getFairShare())));
+        queues().forEach(q -> q.getWeights().forEach((tenant, weight) -> pw.println(
+              "mover queue set weight -queue=" + q.getName() + " " + tenant + " " + weight)));
         queues().forEach(q -> pw.println(
               "mover set max active -queue=" + q.getName() + " " + q.getMaxActiveJobs()));
         queues().stream()
@@ -282,13 +290,103 @@ public class IoQueueManager
                     "unfair, it tends to be more robust in overload situations.")
         Order order = Order.LIFO;
 
+        @Option(name = "share",
+              usage = "Share job slots fairly among the clients, VOs or storage classes of " +
+                    "the queued movers. If unspecified, the current policy of an existing " +
+                    "queue is kept and new queues do not share job slots.")
+        FairShare share;
+
         @Override
         public String execute() throws InterruptedException {
-            createQueue(name, order);
+            MoverRequestScheduler queue = createQueue(name, order);
+            if (share != null) {
+                queue.setFairShare(share);
+            }
             return "";
         }
     }
 
+    @AffectsSetup
+    @Command(name = "mover queue set weight", hint = "set weight of a tenant",
+          description = "Sets the weight of a tenant of a mover queue that shares job slots " +
+                "among tenants. A tenant is a client host, VO or storage class depending on " +
+                "the sharing policy of the queue. When a job slot becomes free, the next " +
+                "mover is taken from the tenant with the fewest running movers relative to " +
+                "its weight. Tenants have a weight of 1 unless configured otherwise.")
+    public class MoverQueueSetWeightCommand implements Callable<String> {
+
+        @Argument(index = 0, usage = "Name of the tenant.")
+        String tenant;
+
+        @Argument(index = 1, usage = "Weight of the tenant.")
+        int weight;
+
+        @Option(name = "queue", metaVar = "queueName",
+              usage = "Specify the mover queue name to operate on. If unspecified, " +
+                    "the default mover queue is assumed.")
+        String queueName;
+
+        @Override
+        public String call() throws CommandException {
+            checkCommand(weight > 0, "<weight> must be > 0");
+            MoverRequestScheduler queue =
+                  (queueName == null) ? defaultQueue : queuesByName.get(queueName);
+            checkCommand(queue != null, "Not found : %s", queueName);
+            queue.setWeight(tenant, weight);
+            return "";
+        }
+    }
+
+    @Command(name = "mover queue show tenants", hint = "show tenants of mover queues",
+          description = "Shows the tenants with queued or running movers along with " +
+                "their weight and the time their movers have been waiting for a job slot. " +
+                "The maximum wait time is that of the oldest queued mover of the tenant, " +
+                "while the average wait time covers the movers started since the tenant " +
+                "became active.")
+    public class MoverQueueShowTenantsCommand implements Callable<String> {
+
+        @Option(name = "queue", metaVar = "queueName",
+              usage = "Limit output to this queue.")
+        String queueName;
+
+        @Override
+        public String call() throws CommandException {
+            ColumnWriter writer = new ColumnWriter()
+                  .header("QUEUE").left("queue").space()
+                  .header("SHARE").left("share").space()
+                  .header("TENANT").left("tenant").space()
+                  .header("WEIGHT").right("weight").space()
+                  .header("RUNNING").right("running").space()
+                  .header("QUEUED").right("queued").space()
+                  .header("MAX WAIT").right("max").space()
+                  .header("AVG WAIT").right("avg");
+            Collection<MoverRequestScheduler> selected;
+            if (queueName == null) {
+                selected = queues();
+            } else {
+                MoverRequestScheduler queue = queuesByName.get(queueName);
+                checkCommand(queue != null, "Not found : %s", queueName);
+                selected = Collections.singleton(queue);
+            }
+            for (MoverRequestScheduler queue : selected) {
+                for (FairShareQueue.TenantInfo tenant : queue.getTenantInfos()) {
+                    writer.row()
+                          .value("queue", queue.getName())
+                          .value("share", queue.getFairShare())
+                          .value("tenant", tenant.getName())
+                          .value("weight", tenant.getWeight())
+                          .value("running", tenant.getRunning())
+                          .value("queued", tenant.getQueued())
+                          .value("max", TimeUtils.duration(tenant.getMaxWaitTime(),
+                                TimeUnit.MILLISECONDS, TimeUnitFormat.SHORT))
+                          .value("avg", TimeUtils.duration(tenant.getAverageWaitTime(),
+                                TimeUnit.MILLISECONDS, TimeUnitFormat.SHORT));
+                }
+            }
+            return writer.toString();
+        }
+    }
+
     @AffectsSetup
     @Command(name = "mover queue delete", hint = "delete mover queue",
           description = "Deletes a mover queue. The 'regular' and 'p2p' queues cannot be deleted.")
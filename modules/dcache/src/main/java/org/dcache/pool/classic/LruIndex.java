@@ -0,0 +1,483 @@
+package org.dcache.pool.classic;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.io.BaseEncoding;
+import diskCacheV111.util.PnfsId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Index of replicas ordered by last access time.
+ * <p>
+ * The index is intended for pools with tens of millions of replicas. Rather than using several
+ * objects per replica, the binary PNFS ID, last access time and size of each replica are stored
+ * in primitive arrays indexed by slot. Slots are located through an open addressing hash table
+ * of slot numbers. An entry takes about 50 bytes.
+ * <p>
+ * Access times are updated under a shared lock, thus concurrent updates do not block each other.
+ * Adding and removing entries requires an exclusive lock. The index is not kept sorted; instead
+ * {@link #iterator} selects the least recently used entries in batches of increasing size. The
+ * slot of the least recently used entry is tracked incrementally and only searched for again once
+ * that entry is touched or removed.
+ */
+class LruIndex implements Iterable<PnfsId> {
+
+    private static final int MAX_ID_LENGTH = 18;
+    private static final int STRIDE = MAX_ID_LENGTH + 1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int FIRST_BATCH_SIZE = 256;
+
+    private final StampedLock _lock = new StampedLock();
+
+    /**
+     * Binary PNFS ID of each slot. The first byte of a slot holds the length of the ID, or zero
+     * if the slot is free.
+     */
+    private byte[] _ids;
+
+    private int[] _hashes;
+
+    private AtomicLongArray _times;
+
+    private long[] _sizes;
+
+    /**
+     * Free slots below {@code _used}.
+     */
+    private int[] _free;
+
+    private int _freeCount;
+
+    /**
+     * Number of slots that have ever been used.
+     */
+    private int _used;
+
+    /**
+     * Hash table of slot numbers plus one. Zero marks an empty bucket.
+     */
+    private int[] _table;
+
+    private int _count;
+
+    private long _totalSize;
+
+    /**
+     * Slot of the least recently used entry, or -1 if unknown. Only set to a slot while holding
+     * the exclusive lock; may be reset to -1 under the shared lock.
+     */
+    private volatile int _minSlot = -1;
+
+    LruIndex() {
+        _ids = new byte[INITIAL_CAPACITY * STRIDE];
+        _hashes = new int[INITIAL_CAPACITY];
+        _times = new AtomicLongArray(INITIAL_CAPACITY);
+        _sizes = new long[INITIAL_CAPACITY];
+        _free = new int[INITIAL_CAPACITY];
+        _table = new int[INITIAL_CAPACITY * 2];
+    }
+
+    private static int hash(byte[] id) {
+        int h = Arrays.hashCode(id) * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private boolean matches(int slot, byte[] id) {
+        int offset = slot * STRIDE;
+        if (_ids[offset] != id.length) {
+            return false;
+        }
+        return Arrays.equals(_ids, offset + 1, offset + 1 + id.length, id, 0, id.length);
+    }
+
+    /**
+     * Returns the bucket holding {@code id}, or the negated bucket plus one of the empty bucket
+     * at which the search ended.
+     */
+    private int find(byte[] id, int hash) {
+        int mask = _table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = _table[i];
+            if (entry == 0) {
+                return -i - 1;
+            }
+            int slot = entry - 1;
+            if (_hashes[slot] == hash && matches(slot, id)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Adds an entry unless an entry for the same ID already exists.
+     *
+     * @return true if the entry was added
+     */
+    public boolean add(PnfsId pnfsId, long time, long size) {
+        byte[] id = pnfsId.toByteArray();
+        checkArgument(id.length > 0 && id.length <= MAX_ID_LENGTH, "Unsupported ID: %s", pnfsId);
+        int hash = hash(id);
+        long stamp = _lock.writeLock();
+        try {
+            if (find(id, hash) >= 0) {
+                return false;
+            }
+            if ((_count + 1) * 2 > _table.length) {
+                rehash(_table.length * 2);
+            }
+            int slot = allocateSlot();
+            int offset = slot * STRIDE;
+            _ids[offset] = (byte) id.length;
+            System.arraycopy(id, 0, _ids, offset + 1, id.length);
+            _hashes[slot] = hash;
+            _times.set(slot, time);
+            _sizes[slot] = size;
+            _table[-find(id, hash) - 1] = slot + 1;
+            _count++;
+            _totalSize += size;
+            int min = _minSlot;
+            if (_count == 1 || min >= 0 && time < _times.get(min)) {
+                _minSlot = slot;
+            }
+            return true;
+        } finally {
+            _lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the entry of {@code pnfsId}.
+     *
+     * @return true if the entry was found
+     */
+    public boolean remove(PnfsId pnfsId) {
+        byte[] id = pnfsId.toByteArray();
+        int hash = hash(id);
+        long stamp = _lock.writeLock();
+        try {
+            int bucket = find(id, hash);
+            if (bucket < 0) {
+                return false;
+            }
+            int slot = _table[bucket] - 1;
+            _ids[slot * STRIDE] = 0;
+            _free[_freeCount++] = slot;
+            _totalSize -= _sizes[slot];
+            _count--;
+            deleteBucket(bucket);
+            if (slot == _minSlot) {
+                _minSlot = -1;
+            }
+            return true;
+        } finally {
+            _lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Updates the access time of the entry of {@code pnfsId}.
+     *
+     * @return true if the entry was found
+     */
+    public boolean touch(PnfsId pnfsId, long time) {
+        byte[] id = pnfsId.toByteArray();
+        int hash = hash(id);
+        long stamp = _lock.readLock();
+        try {
+            int bucket = find(id, hash);
+            if (bucket < 0) {
+                return false;
+            }
+            int slot = _table[bucket] - 1;
+            _times.set(slot, time);
+            int min = _minSlot;
+            if (slot == min || min >= 0 && time < _times.get(min)) {
+                _minSlot = -1;
+            }
+            return true;
+        } finally {
+            _lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = _lock.readLock();
+        try {
+            return _count;
+        } finally {
+            _lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the sum of the sizes of all entries.
+     */
+    public long getTotalSize() {
+        long stamp = _lock.readLock();
+        try {
+            return _totalSize;
+        } finally {
+            _lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the access time of the least recently used entry, or zero if the index is empty.
+     */
+    public long getTimeOfLeastRecentlyUsed() {
+        long stamp = _lock.readLock();
+        try {
+            if (_count == 0) {
+                return 0;
+            }
+            int min = _minSlot;
+            if (min >= 0) {
+                return _times.get(min);
+            }
+        } finally {
+            _lock.unlockRead(stamp);
+        }
+
+        /* Search under the exclusive lock so that no concurrent touch is missed.
+         */
+        stamp = _lock.writeLock();
+        try {
+            if (_count == 0) {
+                return 0;
+            }
+            int min = _minSlot;
+            if (min < 0) {
+                for (int slot = 0; slot < _used; slot++) {
+                    if (_ids[slot * STRIDE] != 0
+                          && (min < 0 || _times.get(slot) < _times.get(min))) {
+                        min = slot;
+                    }
+                }
+                _minSlot = min;
+            }
+            return _times.get(min);
+        } finally {
+            _lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the access times of all entries in no particular order.
+     */
+    public long[] getAccessTimes() {
+        long stamp = _lock.readLock();
+        try {
+            long[] times = new long[_count];
+            int i = 0;
+            for (int slot = 0; slot < _used; slot++) {
+                if (_ids[slot * STRIDE] != 0) {
+                    times[i++] = _times.get(slot);
+                }
+            }
+            return times;
+        } finally {
+            _lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the IDs of all entries, least recently used first.
+     */
+    public List<PnfsId> values() {
+        List<PnfsId> list = new ArrayList<>();
+        forEach(list::add);
+        return list;
+    }
+
+    /**
+     * Returns an iterator over the IDs of the entries, least recently used first. The iterator
+     * does not fail on concurrent modification. Entries added or touched while iterating may or
+     * may not be returned; an entry touched while iterating may be returned twice.
+     */
+    @Override
+    public Iterator<PnfsId> iterator() {
+        return new LruIterator();
+    }
+
+    private int allocateSlot() {
+        if (_freeCount > 0) {
+            return _free[--_freeCount];
+        }
+        if (_used == _sizes.length) {
+            int capacity = _sizes.length * 2;
+            _ids = Arrays.copyOf(_ids, capacity * STRIDE);
+            _hashes = Arrays.copyOf(_hashes, capacity);
+            AtomicLongArray times = new AtomicLongArray(capacity);
+            for (int i = 0; i < _used; i++) {
+                times.set(i, _times.get(i));
+            }
+            _times = times;
+            _sizes = Arrays.copyOf(_sizes, capacity);
+            _free = Arrays.copyOf(_free, capacity);
+        }
+        return _used++;
+    }
+
+    private void rehash(int length) {
+        int[] table = new int[length];
+        int mask = length - 1;
+        for (int entry : _table) {
+            if (entry != 0) {
+                int i = _hashes[entry - 1] & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = entry;
+            }
+        }
+        _table = table;
+    }
+
+    /**
+     * Empties a bucket, moving subsequent entries of the same probe sequence back so that linear
+     * probing finds them without tombstones.
+     */
+    private void deleteBucket(int bucket) {
+        int mask = _table.length - 1;
+        int i = bucket;
+        for (int j = (i + 1) & mask; _table[j] != 0; j = (j + 1) & mask) {
+            int home = _hashes[_table[j] - 1] & mask;
+            boolean canMove = (i <= j) ? (home <= i || home > j) : (home <= i && home > j);
+            if (canMove) {
+                _table[i] = _table[j];
+                i = j;
+            }
+        }
+        _table[i] = 0;
+    }
+
+    private PnfsId idOf(int slot) {
+        int offset = slot * STRIDE;
+        return new PnfsId(BaseEncoding.base16().encode(_ids, offset + 1, _ids[offset]));
+    }
+
+    private static boolean isBefore(long time, int slot, long otherTime, int otherSlot) {
+        return time < otherTime || time == otherTime && slot < otherSlot;
+    }
+
+    /**
+     * Iterates over the entries in batches. Each batch holds the least recently used entries
+     * ordered after the last entry of the previous batch.
+     */
+    private class LruIterator implements Iterator<PnfsId> {
+
+        private long _afterTime = Long.MIN_VALUE;
+        private int _afterSlot = -1;
+        private int _batchSize = FIRST_BATCH_SIZE;
+        private boolean _isExhausted;
+        private Iterator<PnfsId> _batch = Collections.emptyIterator();
+
+        @Override
+        public boolean hasNext() {
+            while (!_batch.hasNext() && !_isExhausted) {
+                _batch = nextBatch().iterator();
+            }
+            return _batch.hasNext();
+        }
+
+        @Override
+        public PnfsId next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return _batch.next();
+        }
+
+        private List<PnfsId> nextBatch() {
+            long stamp = _lock.readLock();
+            try {
+                /* Max-heap of the least recently used entries after the cursor.
+                 */
+                int limit = _batchSize;
+                int[] slots = new int[Math.min(limit, _count)];
+                long[] times = new long[slots.length];
+                int size = 0;
+                for (int slot = 0; slot < _used && slots.length > 0; slot++) {
+                    if (_ids[slot * STRIDE] == 0) {
+                        continue;
+                    }
+                    long time = _times.get(slot);
+                    if (!isBefore(_afterTime, _afterSlot, time, slot)) {
+                        continue;
+                    }
+                    if (size < slots.length) {
+                        slots[size] = slot;
+                        times[size] = time;
+                        siftUp(slots, times, size++);
+                    } else if (isBefore(time, slot, times[0], slots[0])) {
+                        slots[0] = slot;
+                        times[0] = time;
+                        siftDown(slots, times, size);
+                    }
+                }
+
+                PnfsId[] ids = new PnfsId[size];
+                for (int n = size; n > 0; n--) {
+                    ids[n - 1] = idOf(slots[0]);
+                    if (n == size) {
+                        _afterTime = times[0];
+                        _afterSlot = slots[0];
+                    }
+                    slots[0] = slots[n - 1];
+                    times[0] = times[n - 1];
+                    siftDown(slots, times, n - 1);
+                }
+
+                _isExhausted = size < limit;
+                _batchSize = (int) Math.min(Integer.MAX_VALUE, 2L * limit);
+                return Arrays.asList(ids);
+            } finally {
+                _lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private static void siftUp(int[] slots, long[] times, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!isBefore(times[parent], slots[parent], times[i], slots[i])) {
+                break;
+            }
+            swap(slots, times, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] slots, long[] times, int size) {
+        int i = 0;
+        while (true) {
+            int largest = i;
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                if (isBefore(times[largest], slots[largest], times[child], slots[child])) {
+                    largest = child;
+                }
+            }
+            if (largest == i) {
+                break;
+            }
+            swap(slots, times, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(int[] slots, long[] times, int i, int j) {
+        int slot = slots[i];
+        slots[i] = slots[j];
+        slots[j] = slot;
+        long time = times[i];
+        times[i] = times[j];
+        times[j] = time;
+    }
+}
@@ -13,12 +13,13 @@ import diskCacheV111.pools.PoolCostInfo.NamedPoolQueueInfo;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.DiskErrorCacheException;
 import diskCacheV111.vehicles.IoJobInfo;
+import diskCacheV111.vehicles.IpProtocolInfo;
 import diskCacheV111.vehicles.JobInfo;
 import diskCacheV111.vehicles.ProtocolInfo;
 import dmg.cells.nucleus.CDC;
 import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
 import java.nio.channels.CompletionHandler;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -26,15 +27,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
+import javax.security.auth.Subject;
+import org.dcache.auth.FQAN;
+import org.dcache.auth.Subjects;
+import org.dcache.namespace.FileAttribute;
 import org.dcache.pool.FaultAction;
 import org.dcache.pool.FaultEvent;
 import org.dcache.pool.FaultListener;
@@ -44,6 +49,7 @@ import org.dcache.pool.repository.FileStore;
 import org.dcache.util.AdjustableSemaphore;
 import org.dcache.util.IoPrioritizable;
 import org.dcache.util.IoPriority;
+import org.dcache.vehicles.FileAttributes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -99,6 +105,11 @@ public class MoverRequestScheduler {
      */
     private final AdjustableSemaphore _semaphore = new AdjustableSemaphore();
 
+    /**
+     * Number of running jobs.
+     */
+    private final AtomicInteger _activeJobs = new AtomicInteger();
+
     /**
      * JTM timeout since last activity.
      */
@@ -117,7 +128,7 @@ public class MoverRequestScheduler {
     /**
      * Queued movers.
      */
-    private BlockingQueue<PrioritizedRequest> _queue;
+    private final FairShareQueue _queue;
 
     /**
      * Job id generator
@@ -129,17 +140,79 @@ public class MoverRequestScheduler {
      */
     private volatile boolean _isShutdown;
 
-    private boolean _loggedQueuingMovers;
+    private volatile boolean _loggedQueuingMovers;
 
     public enum Order {
         FIFO, LIFO
     }
 
+    /**
+     * Policy for sharing job slots among the tenants of a queue. Tenants are served such that
+     * the number of running movers of each tenant is proportional to its weight.
+     */
+    public enum FairShare {
+        /**
+         * All movers belong to the same tenant.
+         */
+        NONE(mover -> ""),
+
+        /**
+         * Movers are grouped by client host.
+         */
+        CLIENT(mover -> {
+            ProtocolInfo protocolInfo = mover.getProtocolInfo();
+            if (protocolInfo instanceof IpProtocolInfo) {
+                InetSocketAddress address = ((IpProtocolInfo) protocolInfo).getSocketAddress();
+                if (address != null) {
+                    return address.getHostString();
+                }
+            }
+            return "unknown";
+        }),
+
+        /**
+         * Movers are grouped by the primary FQAN group, or if absent, the primary gid of the
+         * user.
+         */
+        VO(mover -> {
+            Subject subject = mover.getSubject();
+            try {
+                FQAN fqan = Subjects.getPrimaryFqan(subject);
+                if (fqan != null) {
+                    return fqan.getGroup();
+                }
+            } catch (IllegalArgumentException ignored) {
+                // Multiple primary FQANs, fall back to gid
+            }
+            long[] gids = Subjects.getGids(subject);
+            return gids.length > 0 ? "gid:" + gids[0] : "nobody";
+        }),
+
+        /**
+         * Movers are grouped by the storage class of the file.
+         */
+        STORAGE_CLASS(mover -> {
+            FileAttributes attributes = mover.getFileAttributes();
+            return attributes.isDefined(FileAttribute.STORAGECLASS)
+                  ? String.valueOf(attributes.getStorageClass()) : "unknown";
+        });
+
+        private final Function<Mover<?>, String> _tenant;
+
+        FairShare(Function<Mover<?>, String> tenant) {
+            _tenant = tenant;
+        }
+
+        String tenantOf(Mover<?> mover) {
+            return _tenant.apply(mover);
+        }
+    }
+
     public MoverRequestScheduler(String name, int queueId, Order order) {
         _name = name;
         _queueId = queueId;
         _order = order;
-        _queue = createQueue(order);
+        _queue = new FairShareQueue(order, FairShare.NONE);
         _semaphore.setMaxPermits(2);
     }
 
@@ -151,37 +224,37 @@ public class MoverRequestScheduler {
         _faultListeners.remove(listener);
     }
 
-    private PriorityBlockingQueue<PrioritizedRequest> createQueue(Order order) {
-        /* PriorityBlockingQueue returns the least elements first, that is, the
-         * the highest priority requests have to be first in the ordering.
-         */
-        Comparator<IoPrioritizable> comparator =
-              order == Order.FIFO
-                    ? Comparator
-                    .comparing(IoPrioritizable::getPriority)
-                    .reversed()
-                    .thenComparingLong(IoPrioritizable::getCreateTime)
-                    : Comparator
-                          .comparing(IoPrioritizable::getPriority)
-                          .thenComparingLong(IoPrioritizable::getCreateTime)
-                          .reversed();
-
-        return new PriorityBlockingQueue<>(16, comparator);
-    }
-
     public Order getOrder() {
         return _order;
     }
 
     public synchronized void setOrder(Order order) {
         if (order != _order) {
-            PriorityBlockingQueue<PrioritizedRequest> queue = createQueue(order);
-            _queue.drainTo(queue);
-            _queue = queue;
+            _queue.setOrder(order);
             _order = order;
         }
     }
 
+    public FairShare getFairShare() {
+        return _queue.getFairShare();
+    }
+
+    public void setFairShare(FairShare fairShare) {
+        _queue.setFairShare(fairShare);
+    }
+
+    /**
+     * Sets the weight of a tenant of this queue. Tenants without an explicit weight have a weight
+     * of one.
+     */
+    public void setWeight(String tenant, int weight) {
+        _queue.setWeight(tenant, weight);
+    }
+
+    public Map<String, Integer> getWeights() {
+        return _queue.getWeights();
+    }
+
     /**
      * Get mover id for given door request. If there is no mover associated with {@code
      * doorUniqueueRequest} a new mover will be created by using provided {@code moverSupplier}.
@@ -213,11 +286,8 @@ public class MoverRequestScheduler {
             /* If not already queued, submit it.
              */
             if (request.queue()) {
-                if (submit(request)) {
-                    /* There was a free slot in the queue so we submit directly to execution.
-                     */
-                    sendToExecution(request);
-                } else if (_semaphore.getMaxPermits() <= 0) {
+                submit(request);
+                if (_semaphore.getMaxPermits() <= 0) {
                     LOGGER.warn("A task was added to queue '{}', however the queue is not " +
                           "configured to execute any tasks.", _name);
                 }
@@ -239,52 +309,62 @@ public class MoverRequestScheduler {
     }
 
     /**
-     * Add a request to the scheduler.
-     * <p>
-     * Returns true if the caller acquired a job slot and must send the job to execution.
+     * Add a request to the scheduler. The request is queued and then the queue is scheduled, thus
+     * if a job slot is free, the request is sent to execution right away.
      *
      * @param request
-     * @return
      */
-    private synchronized boolean submit(PrioritizedRequest request) {
+    private void submit(PrioritizedRequest request) {
         if (_jobs.put(request.getId(), request) != null) {
             throw new RuntimeException(
                   "Duplicate mover id detected. Please report to support@dcache.org.");
         }
-
-        if (_semaphore.tryAcquire()) {
-            return true;
-        } else {
-            _queue.add(request);
-            if (!_loggedQueuingMovers) {
-                LOGGER.warn("Mover queue \"{}\" is now queuing movers", _name);
-                _loggedQueuingMovers = true;
-            }
-            return false;
-        }
+        _queue.add(request);
+        schedule();
     }
 
     /**
-     * Returns the next job or releases a job slot. If a non-null value is returned, the caller must
-     * submit the job to execution. Should only be caller by a caller than currently holds a job
-     * slot.
-     *
-     * @return
+     * Sends queued jobs to execution while job slots are free.
+     * <p>
+     * Job slots are acquired from a semaphore rather than under a lock. Every thread adding a job
+     * to the queue or releasing a job slot calls this method afterwards. Since the queue is
+     * checked after the slot has been released, a queued job is never left behind while a slot
+     * is free.
      */
-    private synchronized PrioritizedRequest nextOrRelease() {
-        PrioritizedRequest request = _queue.poll();
-        if (request == null) {
-            _semaphore.release();
-
+    private void schedule() {
+        while (!_queue.isEmpty()) {
+            if (!_semaphore.tryAcquire()) {
+                if (!_loggedQueuingMovers) {
+                    LOGGER.warn("Mover queue \"{}\" is now queuing movers", _name);
+                    _loggedQueuingMovers = true;
+                }
+                return;
+            }
+            PrioritizedRequest request = _queue.poll();
+            if (request == null) {
+                _semaphore.release();
+            } else {
+                _activeJobs.incrementAndGet();
+                sendToExecution(request);
+            }
+        }
+        if (_loggedQueuingMovers) {
             /* We now have (at least) one "mover slot" free.  Therefore, the
              * pool will accept the next mover (for this queue) without queuing.
              */
-            if (_loggedQueuingMovers) {
-                LOGGER.warn("Next mover on mover queue \"{}\" will not be queued", _name);
-                _loggedQueuingMovers = false;
-            }
+            LOGGER.warn("Next mover on mover queue \"{}\" will not be queued", _name);
+            _loggedQueuingMovers = false;
         }
-        return request;
+    }
+
+    /**
+     * Releases the job slot of a job that completed and schedules the next job.
+     */
+    private void release(PrioritizedRequest request) {
+        _queue.finished(request);
+        _activeJobs.decrementAndGet();
+        _semaphore.release();
+        schedule();
     }
 
     private synchronized int nextId() {
@@ -301,8 +381,8 @@ public class MoverRequestScheduler {
      *
      * @return number of running jobs.
      */
-    public synchronized int getActiveJobs() {
-        return _jobs.size() - _queue.size();
+    public int getActiveJobs() {
+        return _activeJobs.get();
     }
 
     /**
@@ -365,13 +445,8 @@ public class MoverRequestScheduler {
      * @param maxJobs
      */
     public void setMaxActiveJobs(int maxJobs) {
-        synchronized (this) {
-            _semaphore.setMaxPermits(maxJobs);
-        }
-        PrioritizedRequest request;
-        while (_semaphore.tryAcquire() && (request = nextOrRelease()) != null) {
-            sendToExecution(request);
-        }
+        _semaphore.setMaxPermits(maxJobs);
+        schedule();
     }
 
     /**
@@ -379,7 +454,7 @@ public class MoverRequestScheduler {
      *
      * @return number of pending requests.
      */
-    public synchronized int getQueueSize() {
+    public int getQueueSize() {
         return _queue.size();
     }
 
@@ -387,21 +462,22 @@ public class MoverRequestScheduler {
      * @return object containing queue name and statistics.
      */
     public NamedPoolQueueInfo getQueueInfo() {
-        int jobs;
-        int queued;
-        int writes;
-        int max_active;
-        synchronized (this) {
-            jobs = _jobs.size();
-            writes = (int) _jobs.values().stream().filter(PrioritizedRequest::isWrite).count();
-            queued = _queue.size();
-            max_active = _semaphore.getMaxPermits();
-        }
-        int active = jobs - queued;
+        int jobs = _jobs.size();
+        int writes = (int) _jobs.values().stream().filter(PrioritizedRequest::isWrite).count();
+        int queued = _queue.size();
+        int active = _activeJobs.get();
+        int max_active = _semaphore.getMaxPermits();
         int reads = jobs - writes;
         return new NamedPoolQueueInfo(_name, active, max_active, queued, reads, writes);
     }
 
+    /**
+     * @return statistics about the tenants with queued or running movers.
+     */
+    public List<FairShareQueue.TenantInfo> getTenantInfos() {
+        return _queue.getTenantInfos();
+    }
+
     /**
      * Get the name of this scheduler.
      *
@@ -471,8 +547,7 @@ public class MoverRequestScheduler {
          * before killing jobs as otherwise the queued jobs will immediatley fill
          * the freed job slot.
          */
-        Collection<PrioritizedRequest> toBeCancelled = new ArrayList<>();
-        _queue.drainTo(toBeCancelled);
+        Collection<PrioritizedRequest> toBeCancelled = _queue.drain();
 
         /* Kill both the jobs that were queued and which are running. */
         _jobs.values().forEach(j -> j.kill("shutdown"));
@@ -546,10 +621,7 @@ public class MoverRequestScheduler {
                                             request.done();
                                             _jobs.remove(request.getId());
                                             _moverByRequests.remove(request.getDoorUniqueId());
-                                            PrioritizedRequest nextRequest = nextOrRelease();
-                                            if (nextRequest != null) {
-                                                sendToExecution(nextRequest);
-                                            }
+                                            MoverRequestScheduler.this.release(request);
                                         }
                                     });
                           }
@@ -1,7 +1,5 @@
 package org.dcache.pool.classic;
 
-import static java.util.Comparator.naturalOrder;
-
 import com.google.common.base.Preconditions;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FileNotInCacheException;
@@ -19,12 +17,7 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import org.dcache.namespace.FileAttribute;
 import org.dcache.pool.PoolDataBeanProvider;
@@ -54,7 +47,7 @@ public class SpaceSweeper2
     private static final DateTimeFormatter ISO8601_FORMAT =
           DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.systemDefault());
 
-    private final LruQueue<PnfsId> _queue = new LruQueue<>();
+    private final LruIndex _queue = new LruIndex();
 
     private Repository _repository;
 
@@ -113,19 +106,12 @@ public class SpaceSweeper2
         return _margin;
     }
 
-    /**
-     * Returns the pnfsid of the eldest removable entry.
-     */
-    private synchronized PnfsId getEldest() {
-        return _queue.getLeastRecentlyUsedElement();
-    }
-
     /**
      * Returns the last access time of the eldest removable entry.
      */
     @Override
     public long getLru() {
-        return _queue.getTimeOfLeastRecentlyUsedElement();
+        return _queue.getTimeOfLeastRecentlyUsed();
     }
 
     /**
@@ -133,26 +119,28 @@ public class SpaceSweeper2
      *
      * @throws IllegalArgumentException if entry is precious or not cached
      */
-    private synchronized void add(CacheEntry entry) {
+    private void add(CacheEntry entry) {
         if (!isRemovable(entry)) {
             throw new IllegalArgumentException(
                   "Cannot add a precious or un-cached file to the sweeper queue.");
         }
 
         PnfsId id = entry.getPnfsId();
-        if (_queue.add(id, entry.getLastAccessTime())) {
+        if (_queue.add(id, entry.getLastAccessTime(), entry.getReplicaSize())) {
             LOGGER.debug("Added {} to sweeper", id);
             /* The sweeper thread may be waiting for more files to
              * delete.
              */
-            notifyAll();
+            synchronized (this) {
+                notifyAll();
+            }
         }
     }
 
     /**
      * Remove entry from the queue.
      */
-    private synchronized boolean remove(CacheEntry entry) {
+    private boolean remove(CacheEntry entry) {
         PnfsId id = entry.getPnfsId();
         if (_queue.remove(id)) {
             LOGGER.debug("Removed {} from sweeper", id);
@@ -161,8 +149,12 @@ public class SpaceSweeper2
         return false;
     }
 
+    /* Events of an entry are delivered one at a time with the entry locked, and the queue
+     * is thread safe, thus the listener methods need not synchronize.
+     */
+
     @Override
-    public synchronized void stateChanged(StateChangeEvent event) {
+    public void stateChanged(StateChangeEvent event) {
         CacheEntry entry = event.getNewEntry();
         switch (event.getNewState()) {
             case REMOVED:
@@ -181,7 +173,7 @@ public class SpaceSweeper2
     }
 
     @Override
-    public synchronized void stickyChanged(StickyChangeEvent event) {
+    public void stickyChanged(StickyChangeEvent event) {
         CacheEntry entry = event.getNewEntry();
         if (isRemovable(entry)) {
             add(entry);
@@ -191,11 +183,9 @@ public class SpaceSweeper2
     }
 
     @Override
-    public synchronized void accessTimeChanged(EntryChangeEvent event) {
+    public void accessTimeChanged(EntryChangeEvent event) {
         CacheEntry entry = event.getNewEntry();
-        if (remove(entry)) {
-            add(entry);
-        }
+        _queue.touch(entry.getPnfsId(), entry.getLastAccessTime());
     }
 
     @AffectsSetup
@@ -278,10 +268,7 @@ public class SpaceSweeper2
         protected String execute()
               throws CacheException, InterruptedException {
             StringBuilder sb = new StringBuilder();
-            List<PnfsId> list;
-            synchronized (SpaceSweeper2.this) {
-                list = _queue.values();
-            }
+            List<PnfsId> list = _queue.values();
             int i = 0;
             for (PnfsId id : list) {
                 try {
@@ -326,32 +313,23 @@ public class SpaceSweeper2
         info.setLabel("Space Sweeper v2");
         info.setMargin(_margin);
 
-        List<PnfsId> list;
+        long[] accessTimes = _queue.getAccessTimes();
+        info.setLruQueueSize(accessTimes.length);
+        info.setLruQueueBytes(_queue.getTotalSize());
+        info.setLruTimestamp(System.currentTimeMillis() - getLru());
 
-        synchronized (this) {
-            list = _queue.values();
-            info.setLruQueueSize(_queue.values().size());
-            info.setLruTimestamp(System.currentTimeMillis() - getLru());
-        }
-
-        List<Double> fileLifetime = new ArrayList<>();
+        List<Double> fileLifetime = new ArrayList<>(accessTimes.length);
         long now = System.currentTimeMillis();
 
-        for (PnfsId id : list) {
-            Long lastAccess = _queue.timeStamps.get(id);
-            if (lastAccess == null) {
-                continue;
-            }
+        for (long lastAccess : accessTimes) {
             long lvalue = now - lastAccess;
             if (lvalue < 0L) {
                 now = System.currentTimeMillis();
                 lvalue = now - lastAccess;
                 if (lvalue < 0L) {
-                    LOGGER.warn("repository last access time for {}"
-                                + " is later than current "
-                                + "system time - now {}, "
-                                + "last access {}",
-                          id, now, lastAccess);
+                    LOGGER.warn("repository last access time is later than current "
+                                + "system time - now {}, last access {}",
+                          now, lastAccess);
                 }
             }
             fileLifetime.add((double) lvalue);
@@ -406,15 +384,11 @@ public class SpaceSweeper2
           throws InterruptedException {
         LOGGER.debug("Sweeper tries to reclaim {} bytes.", amount);
 
-        /* We copy the entries into a tmp list to avoid
-         * ConcurrentModificationException.
-         */
-        List<PnfsId> tmpList = _queue.values();
-
-        /* Delete the files.
+        /* The queue is iterated in batches of increasing size, so only
+         * as many entries are ordered as are needed to reclaim the space.
          */
         long deleted = 0;
-        for (PnfsId id : tmpList) {
+        for (PnfsId id : _queue) {
             try {
                 CacheEntry entry = _repository.getEntry(id);
 
@@ -499,64 +473,4 @@ public class SpaceSweeper2
             _repository.removeListener(this);
         }
     }
-
-    /**
-     * Queue of keys ordered by a timestamp.
-     */
-    private static class LruQueue<T extends Comparable<T>> {
-
-        /**
-         * Tracks the time stamp of each element in the queue.
-         */
-        private final Map<T, Long> timeStamps = new HashMap<>();
-
-        /**
-         * Elements sorted by access time and value.
-         * <p>
-         * The comparator uses {@code timeStamps} to look up the time of keys. A compound comparator
-         * is used to ensure consistency with equals (otherwise two keys with the same time would be
-         * collapsed to a single element in the set).
-         * <p>
-         * Any element inserted into this set must have its access time recorded in {@code
-         * timeStamps} before being inserted into the set. The time must not change while the key is
-         * in the set.
-         */
-        private final SortedSet<T> queue =
-              new TreeSet<>(Comparator.<T, Long>comparing(k -> timeStamps.getOrDefault(k, 0L))
-                    .thenComparing(naturalOrder()));
-
-        public synchronized boolean add(T key, long time) {
-            if (timeStamps.putIfAbsent(key, time) == null) {
-                queue.add(key);
-                return true;
-            }
-            return false;
-        }
-
-        public synchronized boolean remove(T key) {
-            if (queue.remove(key)) {
-                timeStamps.remove(key);
-                return true;
-            }
-            return false;
-        }
-
-        public synchronized T getLeastRecentlyUsedElement() {
-            if (queue.isEmpty()) {
-                return null;
-            }
-            return queue.first();
-        }
-
-        public synchronized long getTimeOfLeastRecentlyUsedElement() {
-            if (queue.isEmpty()) {
-                return 0;
-            }
-            return timeStamps.get(queue.first());
-        }
-
-        public synchronized List<T> values() {
-            return new ArrayList<>(queue);
-        }
-    }
 }
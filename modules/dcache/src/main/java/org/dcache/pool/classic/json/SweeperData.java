@@ -102,6 +102,7 @@ public class SweeperData implements Serializable {
     private CountingHistogram lastAccess;
     private String label;
     private Integer lruQueueSize;
+    private Long lruQueueBytes;
     private Long lruTimestamp;
     private Double margin;
 
@@ -121,6 +122,10 @@ public class SweeperData implements Serializable {
         return lruQueueSize;
     }
 
+    public Long getLruQueueBytes() {
+        return lruQueueBytes;
+    }
+
     public Long getLruTimestamp() {
         return lruTimestamp;
     }
@@ -141,6 +146,10 @@ public class SweeperData implements Serializable {
         this.lruQueueSize = lruQueueSize;
     }
 
+    public void setLruQueueBytes(Long lruQueueBytes) {
+        this.lruQueueBytes = lruQueueBytes;
+    }
+
     public void setLruTimestamp(Long lruTimestamp) {
         this.lruTimestamp = lruTimestamp;
     }
@@ -6,10 +6,13 @@ import static org.dcache.util.ByteUnit.KiB;
 import static org.dcache.util.Exceptions.messageOrClassName;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.Range;
 import com.google.common.collect.RangeSet;
 import com.google.common.collect.TreeRangeSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
@@ -20,6 +23,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
@@ -34,12 +41,29 @@ import org.slf4j.LoggerFactory;
 /**
  * A wrapper for RepositoryChannel that computes a digest on the fly during write as long as all
  * writes are sequential.
+ * <p>
+ * Data written out of order is read back once the preceding data has been written. The ADLER32
+ * checksum is an exception, as the checksums of individual ranges can be combined; it is thus
+ * computed as data is written, no matter in which order. If several checksums are computed, large
+ * buffers are fed to the digests in parallel.
  */
 public class ChecksumChannel extends ForwardingRepositoryChannel {
 
     private static final Logger LOGGER =
           LoggerFactory.getLogger(ChecksumChannel.class);
 
+    /**
+     * Buffers smaller than this are fed to the digests sequentially.
+     */
+    private static final int MIN_PARALLEL_UPDATE = KiB.toBytes(64);
+
+    /**
+     * Threads feeding data to digests in parallel with the thread writing the data.
+     */
+    private static final ExecutorService DIGEST_EXECUTOR =
+          Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new ThreadFactoryBuilder().setNameFormat("checksum-%d").setDaemon(true).build());
+
     /**
      * Inner channel to which all operations are delegated.
      */
@@ -51,6 +75,12 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
      */
     private final List<MessageDigest> _digests;
 
+    /**
+     * ADLER32 checksum computed independently of the order of writes, or null if not requested
+     * when the channel was created.
+     */
+    private final UnorderedAdler32 _adler32;
+
     /**
      * Cached checksum after getChecksums is called the first time.
      */
@@ -108,7 +138,9 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
 
     public ChecksumChannel(RepositoryChannel inner, Set<ChecksumType> types) {
         _channel = inner;
+        _adler32 = types.contains(ChecksumType.ADLER32) ? new UnorderedAdler32() : null;
         _digests = types.stream()
+              .filter(t -> t != ChecksumType.ADLER32)
               .map(t -> t.createMessageDigest())
               .collect(Collectors.toList());
     }
@@ -125,7 +157,7 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
      */
     public void addType(ChecksumType type) throws IOException {
         synchronized (_digests) {
-            if (_digests.stream()
+            if ((type != ChecksumType.ADLER32 || _adler32 == null) && _digests.stream()
                   .map(MessageDigest::getAlgorithm)
                   .noneMatch(t -> t.equals(type.getName()))) {
                 MessageDigest digest = type.createMessageDigest();
@@ -259,9 +291,19 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
                         feedZerosToDigesterForRangeGaps();
                     }
 
-                    return _digests.stream()
+                    Set<Checksum> checksums = _digests.stream()
                           .map(Checksum::new)
                           .collect(Collectors.toSet());
+                    if (_adler32 != null) {
+                        if (_adler32.getLength() == size()) {
+                            checksums.add(new Checksum(ChecksumType.ADLER32,
+                                  _adler32.getValue()));
+                        } else {
+                            LOGGER.warn("Unable to generate ADLER32 checksum: {} of {} bytes " +
+                                  "received.", _adler32.getLength(), size());
+                        }
+                    }
+                    return checksums;
                 } catch (IOException e) {
                     LOGGER.info("Unable to generate checksum of sparse file: {}", e.toString());
                     return Collections.emptySet();
@@ -323,6 +365,9 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
         Range<Long> writeRange = Range.closed(position, position + buffer.remaining() - 1)
               .canonical(DiscreteDomain.longs());
         Range<Long> fileStartRange;
+        boolean canCalculateChecksum;
+        Runnable adler32Update = (_adler32 == null)
+              ? null : () -> _adler32.update(buffer.duplicate(), position);
 
         synchronized (_dataRangeSet) {
 
@@ -334,18 +379,23 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
             }
 
             fileStartRange = _dataRangeSet.rangeContaining(0L);
-            boolean canCalculateChecksum = position == 0 || (fileStartRange != null
+            canCalculateChecksum = position == 0 || (fileStartRange != null
                   && fileStartRange.upperEndpoint() == position);
 
             _dataRangeSet.add(writeRange);
-            if (!canCalculateChecksum) {
-                return;
-            }
 
             // get it again as we may have merged two segments
             fileStartRange = _dataRangeSet.rangeContaining(0L);
         }
 
+        if (!canCalculateChecksum) {
+            // the Adler-32 state is thread safe; don't block other writers while updating it
+            if (adler32Update != null) {
+                adler32Update.run();
+            }
+            return;
+        }
+
         synchronized (_digests) {
             /*
              * we are one of the threads which got the merge into continues block.
@@ -367,11 +417,13 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
             // update offset prior digest calculation as digests#update will update position in the buffer
             _nextChecksumOffset += buffer.remaining();
 
-            _digests.forEach(d -> d.update(buffer.duplicate()));
+            updateDigests(_digests, buffer, adler32Update);
 
             long expectedOffsetAfterRead = _nextChecksumOffset + bytesToRead;
             try {
-                updateFromChannel(_digests, _nextChecksumOffset, bytesToRead);
+                if (!_digests.isEmpty()) {
+                    updateFromChannel(_digests, _nextChecksumOffset, bytesToRead);
+                }
             } finally {
                 _nextChecksumOffset = expectedOffsetAfterRead;
                 _digests.notifyAll();
@@ -395,7 +447,7 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
 
                 _readBackBuffer.flip();
 
-                digests.forEach(d -> d.update(_readBackBuffer.asReadOnlyBuffer()));
+                updateDigests(digests, _readBackBuffer, null);
 
                 bytesToRead -= bytesRead;
                 offset += bytesRead;
@@ -405,4 +457,58 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
             throw e;
         }
     }
+
+    /**
+     * Feeds the remaining bytes of {@code buffer} to each digest without modifying the buffer.
+     * <p>
+     * If the buffer is large and there are several digests to update, all but one digest are
+     * updated by the digest executor while the calling thread updates the remaining one. Digests
+     * not yet picked up by the executor when the calling thread is done are updated by the
+     * calling thread, so a busy executor never delays the caller.
+     *
+     * @param extra an additional update to perform along with the digests, or null
+     */
+    private static void updateDigests(Collection<MessageDigest> digests, ByteBuffer buffer,
+          Runnable extra) throws IOException {
+        List<Runnable> updates = new ArrayList<>(digests.size() + 1);
+        for (MessageDigest digest : digests) {
+            updates.add(() -> digest.update(buffer.duplicate()));
+        }
+        if (extra != null) {
+            updates.add(extra);
+        }
+
+        if (updates.size() < 2 || buffer.remaining() < MIN_PARALLEL_UPDATE) {
+            updates.forEach(Runnable::run);
+            return;
+        }
+
+        List<FutureTask<Void>> forked = new ArrayList<>(updates.size() - 1);
+        for (Runnable update : updates.subList(1, updates.size())) {
+            FutureTask<Void> task = new FutureTask<>(update, null);
+            DIGEST_EXECUTOR.execute(task);
+            forked.add(task);
+        }
+        updates.get(0).run();
+
+        /* The forked updates read from the caller's buffer, so they must all have completed
+         * before we return, even if an update failed. Waiting is bounded by a single digest
+         * update, so interrupts are deferred rather than leaving the digests half updated.
+         */
+        Throwable failure = null;
+        for (FutureTask<Void> task : forked) {
+            task.run();
+            try {
+                Uninterruptibles.getUninterruptibly(task);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure != null) {
+            Throwables.throwIfUnchecked(failure);
+            throw new IOException(failure);
+        }
+    }
 }
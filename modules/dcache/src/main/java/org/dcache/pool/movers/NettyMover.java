@@ -17,6 +17,8 @@
  */
 package org.dcache.pool.movers;
 
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
 import diskCacheV111.vehicles.PoolIoFileMessage;
 import diskCacheV111.vehicles.ProtocolInfo;
 import dmg.cells.nucleus.CellPath;
@@ -30,7 +32,7 @@ import org.dcache.pool.repository.ReplicaDescriptor;
 public class NettyMover<P extends ProtocolInfo> extends MoverChannelMover<P, NettyMover<P>> {
 
     private final UUID uuid;
-
+    private final Multiset<String> servedBy = ConcurrentHashMultiset.create();
 
     public NettyMover(ReplicaDescriptor handle,
           PoolIoFileMessage message,
@@ -44,4 +46,20 @@ public class NettyMover<P extends ProtocolInfo> extends MoverChannelMover<P, Net
     public UUID getUuid() {
         return uuid;
     }
+
+    /**
+     * Records how the data of a request was sent by this mover.
+     */
+    public void servedBy(String path) {
+        servedBy.add(path);
+    }
+
+    @Override
+    protected String getStatus() {
+        StringBuilder s = new StringBuilder(super.getStatus());
+        for (Multiset.Entry<String> entry : servedBy.entrySet()) {
+            s.append(':').append(entry.getElement()).append('=').append(entry.getCount());
+        }
+        return s.toString();
+    }
 }
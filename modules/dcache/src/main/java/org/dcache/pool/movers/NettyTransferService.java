@@ -40,8 +40,7 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoopGroup;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -68,6 +67,7 @@ import org.dcache.util.Checksum;
 import org.dcache.util.ChecksumType;
 import org.dcache.util.FireAndForgetTask;
 import org.dcache.util.NettyPortRange;
+import org.dcache.util.NettyTransport;
 import org.dcache.util.TryCatchTemplate;
 import org.dcache.vehicles.FileAttributes;
 import org.slf4j.Logger;
@@ -97,12 +97,12 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
     /**
      * Event loop for the server channel.
      */
-    private NioEventLoopGroup acceptGroup;
+    private EventLoopGroup acceptGroup;
 
     /**
      * Event loop for the child channels.
      */
-    private NioEventLoopGroup socketGroup;
+    private EventLoopGroup socketGroup;
 
     /**
      * Shared Netty server channel.
@@ -139,6 +139,11 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
      */
     private int threads;
 
+    /**
+     * Netty transport of the event loops and channels.
+     */
+    private NettyTransport transport = NettyTransport.NIO;
+
     /**
      * Service to post process movers.
      */
@@ -174,6 +179,18 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
         this.threads = threads;
     }
 
+    /**
+     * Sets the Netty transport by name, e.g., "nio", "epoll" or "auto" for the best transport
+     * available on this host. Unavailable transports fall back to NIO.
+     */
+    public void setTransport(String transport) {
+        this.transport = NettyTransport.forName(transport);
+    }
+
+    public NettyTransport getTransport() {
+        return transport;
+    }
+
     @Override
     public void setCellAddress(CellAddressCore address) {
         this.address = address;
@@ -261,7 +278,7 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
         if (serverChannel == null) {
             ServerBootstrap bootstrap = new ServerBootstrap()
                   .group(acceptGroup, socketGroup)
-                  .channel(NioServerSocketChannel.class)
+                  .channel(transport.getServerChannelClass())
                   .childOption(ChannelOption.TCP_NODELAY, false)
                   .childOption(ChannelOption.SO_KEEPALIVE, true)
                   .childHandler(new ChannelInitializer<Channel>() {
@@ -275,7 +292,8 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
 
             serverChannel = portRange.bind(bootstrap);
             lastServerAddress = (InetSocketAddress) serverChannel.localAddress();
-            LOGGER.debug("Started {} on {}", getClass().getSimpleName(), lastServerAddress);
+            LOGGER.debug("Started {} on {} using {} transport", getClass().getSimpleName(),
+                  lastServerAddress, transport);
         }
     }
 
@@ -298,9 +316,9 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
         timeoutScheduler =
               Executors.newSingleThreadScheduledExecutor(
                     new ThreadFactoryBuilder().setNameFormat(name + "-connect-timeout").build());
-        acceptGroup = new NioEventLoopGroup(0, new CDCThreadFactory(
+        acceptGroup = transport.newEventLoopGroup(0, new CDCThreadFactory(
               new ThreadFactoryBuilder().setNameFormat(name + "-listen-%d").build()));
-        socketGroup = new NioEventLoopGroup(threads,
+        socketGroup = transport.newEventLoopGroup(threads,
               new CDCThreadFactory(new ThreadFactoryBuilder().setNameFormat(
                     name + "-net-%d").build()));
     }
@@ -353,7 +371,7 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
         shutdownGracefully(socketGroup);
     }
 
-    protected void shutdownGracefully(NioEventLoopGroup group) {
+    protected void shutdownGracefully(EventLoopGroup group) {
         io.netty.util.concurrent.Future<?> terminationFuture = group.shutdownGracefully(1, 3,
               TimeUnit.SECONDS);
         shutdownFutures.add(terminationFuture);
@@ -417,7 +435,8 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
                             mover.open(),
                             connectTimeoutUnit.toMillis(connectTimeout), this,
                             mover::addChecksumType,
-                            mover::addExpectedChecksum));
+                            mover::addExpectedChecksum,
+                            mover::servedBy));
                 if (uuids.putIfAbsent(uuid, channel) != null) {
                     throw new IllegalStateException("UUID conflict");
                 }
@@ -480,6 +499,7 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
         private final SettableFuture<Void> closeFuture = SettableFuture.create();
         private final Consumer<ChecksumType> checksumCalculation;
         private final Consumer<Checksum> integrityChecker;
+        private final Consumer<String> servedBy;
         private final UUID moverUuid;
 
         public NettyMoverChannel(UUID moverUuid,
@@ -487,12 +507,14 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
               long connectTimeout,
               CompletionHandler<Void, Void> completionHandler,
               Consumer<ChecksumType> checksumCalculation,
-              Consumer<Checksum> integrityChecker) {
+              Consumer<Checksum> integrityChecker,
+              Consumer<String> servedBy) {
             super(file);
             this.moverUuid = moverUuid;
             this.completionHandler = completionHandler;
             this.checksumCalculation = checksumCalculation;
             this.integrityChecker = integrityChecker;
+            this.servedBy = servedBy;
             timeout = timeoutScheduler.schedule(() -> {
                 try (CDC ignored = cdc.restore()) {
                     if (sync.onTimeout()) {
@@ -514,6 +536,13 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
             integrityChecker.accept(value);
         }
 
+        /**
+         * Records how the data of a request was sent, e.g., "zero-copy" or "chunked".
+         */
+        public void servedBy(String path) {
+            servedBy.accept(path);
+        }
+
         public UUID getMoverUuid() {
             return moverUuid;
         }
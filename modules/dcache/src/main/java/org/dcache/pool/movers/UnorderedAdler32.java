@@ -0,0 +1,109 @@
+package org.dcache.pool.movers;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.Adler32;
+
+/**
+ * Computes the ADLER32 checksum of data that may be received in any order.
+ * <p>
+ * The checksum of every range is computed when the range is received. Once all data preceding a
+ * range has been received, the checksum of the range is combined with the checksum of the
+ * preceding data in the same way as zlib's {@code adler32_combine}. Thus, unlike a message digest,
+ * data received out of order never has to be read back.
+ */
+class UnorderedAdler32 {
+
+    private static final long BASE = 65521;
+
+    /**
+     * Checksums of ranges not yet combined, by offset. Each value holds the length of the range
+     * and its checksum.
+     */
+    private final NavigableMap<Long, long[]> _pending = new TreeMap<>();
+
+    /**
+     * Length of the combined data starting at offset zero.
+     */
+    private long _length;
+
+    /**
+     * Checksum of the combined data.
+     */
+    private long _value = 1L;
+
+    /**
+     * Adds the remaining bytes of {@code data}, which are located at {@code position}, to the
+     * checksum. The position of the buffer is advanced to its limit.
+     */
+    public void update(ByteBuffer data, long position) {
+        long length = data.remaining();
+        Adler32 adler = new Adler32();
+        adler.update(data);
+        add(position, length, adler.getValue());
+    }
+
+    private synchronized void add(long position, long length, long value) {
+        if (position != _length) {
+            _pending.put(position, new long[]{length, value});
+            return;
+        }
+        _value = combine(_value, value, length);
+        _length += length;
+
+        Map.Entry<Long, long[]> next;
+        while ((next = _pending.firstEntry()) != null && next.getKey() == _length) {
+            _pending.pollFirstEntry();
+            _value = combine(_value, next.getValue()[1], next.getValue()[0]);
+            _length += next.getValue()[0];
+        }
+    }
+
+    /**
+     * Returns the length of the data starting at offset zero that has been received without
+     * gaps.
+     */
+    public synchronized long getLength() {
+        return _length;
+    }
+
+    /**
+     * Returns the checksum of the data starting at offset zero that has been received without
+     * gaps.
+     */
+    public synchronized byte[] getValue() {
+        return new byte[]{
+              (byte) (_value >> 24),
+              (byte) (_value >> 16),
+              (byte) (_value >> 8),
+              (byte) _value
+        };
+    }
+
+    /**
+     * Returns the ADLER32 checksum of two consecutive blocks of data given the checksums of each
+     * block and the length of the second block.
+     */
+    static long combine(long adler1, long adler2, long length2) {
+        long rem = length2 % BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % BASE;
+        sum1 += (adler2 & 0xffff) + BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + BASE - rem;
+        if (sum1 >= BASE) {
+            sum1 -= BASE;
+        }
+        if (sum1 >= BASE) {
+            sum1 -= BASE;
+        }
+        if (sum2 >= (BASE << 1)) {
+            sum2 -= (BASE << 1);
+        }
+        if (sum2 >= BASE) {
+            sum2 -= BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+}
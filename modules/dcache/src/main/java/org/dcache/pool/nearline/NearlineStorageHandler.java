@@ -33,6 +33,8 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.Monitor;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.DiskErrorCacheException;
 import diskCacheV111.util.FileNotFoundCacheException;
@@ -66,7 +68,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.OptionalLong;
 import java.util.Set;
@@ -76,10 +81,13 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -91,6 +99,7 @@ import javax.annotation.concurrent.Immutable;
 import org.dcache.auth.Subjects;
 import org.dcache.cells.CellStub;
 import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileAttributesHandler;
 import org.dcache.pool.PoolDataBeanProvider;
 import org.dcache.pool.classic.ChecksumModule;
 import org.dcache.pool.classic.NopCompletionHandler;
@@ -173,6 +182,8 @@ public class NearlineStorageHandler
     private final FlushRequestContainer flushRequests = new FlushRequestContainer();
     private final StageRequestContainer stageRequests = new StageRequestContainer();
     private final RemoveRequestContainer removeRequests = new RemoveRequestContainer();
+    private final PreFlushChecks preFlushChecks = new PreFlushChecks();
+    private final FlushNotifications flushNotifications = new FlushNotifications();
 
     private ScheduledExecutorService scheduledExecutor;
     private ListeningExecutorService executor;
@@ -187,6 +198,10 @@ public class NearlineStorageHandler
     private long removeTimeout = TimeUnit.HOURS.toMillis(4);
     private ScheduledFuture<?> timeoutFuture;
     private boolean _addFromNearlineStorage;
+    private long recallWindow;
+    private TimeUnit recallWindowUnit = TimeUnit.SECONDS;
+    private TapeLocationExtractor tapeLocationExtractor = new UriQueryTapeLocationExtractor();
+    private RecallScheduler<StageRequestImpl> recallScheduler;
 
     /**
      * Allocator used to use when space allocation is required.
@@ -257,8 +272,29 @@ public class NearlineStorageHandler
         this.fileStore = fileStore;
     }
 
+    /**
+     * Time for which stage requests are collected before being submitted to the nearline storage
+     * ordered by tape location. Zero disables recall scheduling.
+     */
+    public void setRecallWindow(long recallWindow) {
+        checkArgument(recallWindow >= 0, "Recall window must not be negative");
+        this.recallWindow = recallWindow;
+    }
+
+    public void setRecallWindowUnit(TimeUnit unit) {
+        this.recallWindowUnit = requireNonNull(unit);
+    }
+
+    public void setTapeLocationExtractor(TapeLocationExtractor extractor) {
+        this.tapeLocationExtractor = requireNonNull(extractor);
+    }
+
     @PostConstruct
     public void init() {
+        if (recallWindow > 0) {
+            recallScheduler = new RecallScheduler<>(scheduledExecutor, tapeLocationExtractor,
+                  recallWindow, recallWindowUnit, this::submitStages);
+        }
         timeoutFuture = scheduledExecutor.scheduleWithFixedDelay(new TimeoutTask(), 30, 30,
               TimeUnit.SECONDS);
         repository.addListener(this);
@@ -272,6 +308,7 @@ public class NearlineStorageHandler
         flushRequests.shutdown();
         stageRequests.shutdown();
         removeRequests.shutdown();
+        releaseRecalls();
     }
 
     @PreDestroy
@@ -279,6 +316,7 @@ public class NearlineStorageHandler
         flushRequests.shutdown();
         stageRequests.shutdown();
         removeRequests.shutdown();
+        releaseRecalls();
 
         if (timeoutFuture != null) {
             timeoutFuture.cancel(false);
@@ -302,6 +340,39 @@ public class NearlineStorageHandler
     @Override
     public void getInfo(PrintWriter pw) {
         getDataObject().print(pw);
+        preFlushChecks.getInfo(pw);
+        flushNotifications.getInfo(pw);
+        if (recallScheduler != null) {
+            recallScheduler.getInfo(pw);
+        }
+    }
+
+    /**
+     * Submits requests held back by the recall scheduler without waiting for the end of the
+     * collection window.
+     */
+    private void releaseRecalls() {
+        if (recallScheduler != null) {
+            recallScheduler.releaseAll();
+        }
+    }
+
+    /**
+     * Submits stage requests released by the recall scheduler. Requests cancelled while held back
+     * are failed here as the nearline storage never learned about them.
+     */
+    private void submitStages(NearlineStorage storage, List<StageRequestImpl> requests) {
+        List<StageRequestImpl> queued = new ArrayList<>(requests.size());
+        for (StageRequestImpl request : requests) {
+            if (request.state.get() == AbstractRequest.State.CANCELED) {
+                request.failed(new CancellationException("Stage was cancelled before submission."));
+            } else {
+                queued.add(request);
+            }
+        }
+        if (!queued.isEmpty()) {
+            storage.stage(transform(queued, Functions.<StageRequest>identity()));
+        }
     }
 
     @Override
@@ -925,7 +996,11 @@ public class NearlineStorageHandler
 
         @Override
         protected void submit(NearlineStorage storage, Iterable<StageRequestImpl> requests) {
-            storage.stage(transform(requests, Functions.<StageRequest>identity()));
+            if (recallScheduler != null) {
+                recallScheduler.submit(storage, requests);
+            } else {
+                storage.stage(transform(requests, Functions.<StageRequest>identity()));
+            }
         }
     }
 
@@ -948,6 +1023,268 @@ public class NearlineStorageHandler
         }
     }
 
+    /**
+     * Name space requests that are submitted in batches.
+     * <p>
+     * Rather than sending one message to PnfsManager per file, requests submitted while a batch
+     * is in progress are queued and submitted together once that batch completes. Under load the
+     * number of round trips to PnfsManager is thus bounded by its latency rather than by the
+     * number of flush requests.
+     */
+    private abstract class NameSpaceBatcher<R extends BatchedRequest<?>> {
+
+        private final String name;
+
+        /* Queued requests, guarded by this. */
+        private List<R> queue = new ArrayList<>();
+
+        /* Whether a task draining the queue is submitted, guarded by this. */
+        private boolean isRunning;
+
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder files = new LongAdder();
+        private final LongAdder waitTime = new LongAdder();
+        private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+
+        NameSpaceBatcher(String name) {
+            this.name = name;
+        }
+
+        protected void submit(R request) {
+            boolean mustStart;
+            synchronized (this) {
+                queue.add(request);
+                mustStart = !isRunning;
+                isRunning = true;
+            }
+            if (mustStart) {
+                try {
+                    executor.execute(this::run);
+                } catch (RejectedExecutionException e) {
+                    List<R> rejected;
+                    synchronized (this) {
+                        rejected = queue;
+                        queue = new ArrayList<>();
+                        isRunning = false;
+                    }
+                    CacheException cause = new CacheException(name + " rejected: "
+                          + e.getMessage());
+                    rejected.forEach(r -> r.future.setException(cause));
+                }
+            }
+        }
+
+        private void run() {
+            while (true) {
+                List<R> batch;
+                synchronized (this) {
+                    if (queue.isEmpty()) {
+                        isRunning = false;
+                        return;
+                    }
+                    batch = queue;
+                    queue = new ArrayList<>();
+                }
+                batch.removeIf(r -> r.future.isDone());
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                /* Must not escape, as no further batches would be sent. */
+                try {
+                    process(batch);
+                } catch (RuntimeException e) {
+                    LOGGER.error("{} failed, please report this to <support@dCache.org>", name,
+                          e);
+                    batch.forEach(r -> r.future.setException(e));
+                }
+            }
+        }
+
+        private void process(List<R> batch) {
+            int size = batch.size();
+            LOGGER.debug("{} for {} files.", name, size);
+            long start = System.nanoTime();
+            try {
+                send(batch);
+            } catch (CacheException e) {
+                batch.forEach(r -> r.fail(e));
+            } finally {
+                batches.increment();
+                files.add(size);
+                maxBatchSize.accumulate(size);
+                waitTime.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+
+            CacheException missing = new CacheException("No reply from name space: " + name);
+            batch.forEach(r -> r.future.setException(missing));
+        }
+
+        /**
+         * Sends the batch to the name space and completes the requests from the reply.
+         */
+        protected abstract void send(List<R> batch) throws CacheException;
+
+        void getInfo(PrintWriter pw) {
+            long batches = this.batches.sum();
+            long files = this.files.sum();
+            pw.println(name + ":");
+            pw.println("   Files                 : " + files);
+            pw.println("   Batches               : " + batches);
+            pw.println("   Batch size (mean/max) : " + (batches == 0 ? 0 : files / batches) + "/"
+                  + maxBatchSize.get());
+            pw.println("   Mean wait             : " + (batches == 0 ? 0 : waitTime.sum() / batches)
+                  + " ms");
+        }
+    }
+
+    private static class BatchedRequest<V> {
+
+        protected final SettableFuture<V> future = SettableFuture.create();
+
+        void fail(CacheException cause) {
+            future.setException(cause);
+        }
+    }
+
+    /**
+     * Checks that files about to be flushed still exist in the name space and, if requested,
+     * looks up their path.
+     */
+    private class PreFlushChecks extends NameSpaceBatcher<PreFlushCheck> {
+
+        PreFlushChecks() {
+            super("Pre-flush name space checks");
+        }
+
+        /**
+         * Returns a future completed with the path of the file if {@code withPath} is true, or
+         * null otherwise.
+         */
+        ListenableFuture<String> check(FlushRequestImpl request, boolean withPath) {
+            PreFlushCheck check = new PreFlushCheck(request, withPath);
+            submit(check);
+            return check.future;
+        }
+
+        @Override
+        protected void send(List<PreFlushCheck> batch) throws CacheException {
+            /* Flush requests are unique per file, hence so are the checks. */
+            Map<PnfsId, PreFlushCheck> checks = new HashMap<>();
+            Map<PnfsId, PreFlushCheck> checksWithPath = new HashMap<>();
+            for (PreFlushCheck check : batch) {
+                (check.withPath ? checksWithPath : checks).put(check.pnfsId, check);
+            }
+            if (!checks.isEmpty()) {
+                lookup(checks, EnumSet.noneOf(FileAttribute.class));
+            }
+            if (!checksWithPath.isEmpty()) {
+                /* PnfsManager adds the path to the storage info. */
+                lookup(checksWithPath, EnumSet.of(STORAGEINFO));
+            }
+        }
+
+        private void lookup(Map<PnfsId, PreFlushCheck> checks, Set<FileAttribute> attributes)
+              throws CacheException {
+            pnfs.getFileAttributes(new ArrayList<>(checks.keySet()), attributes,
+                  new FileAttributesHandler<PnfsId>() {
+                      @Override
+                      public void addEntry(PnfsId pnfsId, FileAttributes attrs) {
+                          PreFlushCheck check = checks.get(pnfsId);
+                          if (check == null) {
+                              return;
+                          }
+                          if (!check.withPath) {
+                              check.future.set(null);
+                          } else if (attrs.isDefined(STORAGEINFO)
+                                && attrs.getStorageInfo().getKey("path") != null) {
+                              check.future.set(attrs.getStorageInfo().getKey("path"));
+                          } else {
+                              check.future.setException(new CacheException(
+                                    "No path in reply from name space during pre-flush check."));
+                          }
+                      }
+
+                      @Override
+                      public void addError(PnfsId pnfsId, CacheException cause) {
+                          PreFlushCheck check = checks.get(pnfsId);
+                          if (check != null) {
+                              check.fail(cause);
+                          }
+                      }
+                  });
+        }
+    }
+
+    private static class PreFlushCheck extends BatchedRequest<String> {
+
+        private final FlushRequestImpl request;
+        private final PnfsId pnfsId;
+        private final boolean withPath;
+
+        PreFlushCheck(FlushRequestImpl request, boolean withPath) {
+            this.request = request;
+            this.pnfsId = request.getFileAttributes().getPnfsId();
+            this.withPath = withPath;
+        }
+
+        @Override
+        void fail(CacheException cause) {
+            if (cause.getRc() == CacheException.FILE_NOT_FOUND) {
+                request.fileNotFound(pnfsId);
+                future.setException(new FileNotFoundCacheException(
+                      "File not found in name space during pre-flush check.", cause));
+            } else {
+                future.setException(cause);
+            }
+        }
+    }
+
+    /**
+     * Informs the name space about files that were flushed.
+     */
+    private class FlushNotifications extends NameSpaceBatcher<FlushNotification> {
+
+        FlushNotifications() {
+            super("Post-flush name space updates");
+        }
+
+        ListenableFuture<Void> fileFlushed(PnfsId pnfsId, FileAttributes fileAttributes) {
+            FlushNotification notification = new FlushNotification(pnfsId, fileAttributes);
+            submit(notification);
+            return notification.future;
+        }
+
+        @Override
+        protected void send(List<FlushNotification> batch) throws CacheException {
+            Map<PnfsId, FlushNotification> notifications = new HashMap<>();
+            Map<PnfsId, FileAttributes> files = new LinkedHashMap<>();
+            for (FlushNotification notification : batch) {
+                notifications.put(notification.pnfsId, notification);
+                files.put(notification.pnfsId, notification.fileAttributes);
+            }
+            Map<PnfsId, CacheException> errors = pnfs.fileFlushed(files);
+            notifications.forEach((pnfsId, notification) -> {
+                CacheException error = errors.get(pnfsId);
+                if (error == null) {
+                    notification.future.set(null);
+                } else {
+                    notification.fail(error);
+                }
+            });
+        }
+    }
+
+    private static class FlushNotification extends BatchedRequest<Void> {
+
+        private final PnfsId pnfsId;
+        private final FileAttributes fileAttributes;
+
+        FlushNotification(PnfsId pnfsId, FileAttributes fileAttributes) {
+            this.pnfsId = pnfsId;
+            this.fileAttributes = fileAttributes;
+        }
+    }
+
     private class FlushRequestImpl extends AbstractRequest<PnfsId> implements FlushRequest {
 
         private final ReplicaDescriptor descriptor;
@@ -994,14 +1331,17 @@ public class NearlineStorageHandler
         @Override
         public ListenableFuture<Void> activate() {
             LOGGER.debug("Activating flush of {}.", getFileAttributes().getPnfsId());
-            return register(transformAsync(super.activate(), new PreFlushFunction(), executor));
+            ListenableFuture<String> exists = transformAsync(super.activate(),
+                  ignored -> preFlushChecks.check(this, false), MoreExecutors.directExecutor());
+            return register(transformAsync(exists, new PreFlushFunction(), executor));
         }
 
         @Override
         public ListenableFuture<String> activateWithPath() {
             LOGGER.debug("Activating flush of {}.", getFileAttributes().getPnfsId());
-            return register(
-                  transformAsync(super.activate(), new PreFlushWithPathFunction(), executor));
+            ListenableFuture<String> path = transformAsync(super.activate(),
+                  ignored -> preFlushChecks.check(this, true), MoreExecutors.directExecutor());
+            return register(transformAsync(path, new PreFlushWithPathFunction(), executor));
         }
 
         @Override
@@ -1091,7 +1431,7 @@ public class NearlineStorageHandler
             retrying:
             while (true) {
                 try {
-                    pnfs.fileFlushed(pnfsid, fileAttributes);
+                    fileFlushed(pnfsid, fileAttributes);
                     break;
                 } catch (CacheException e) {
                     switch (e.getRc()) {
@@ -1150,6 +1490,21 @@ public class NearlineStorageHandler
             }
         }
 
+        /**
+         * Informs the name space about the flush. The notification is sent together with those
+         * of other files flushed at the same time.
+         */
+        private void fileFlushed(PnfsId pnfsId, FileAttributes fileAttributes)
+              throws InterruptedException, CacheException {
+            try {
+                flushNotifications.fileFlushed(pnfsId, fileAttributes).get();
+            } catch (ExecutionException e) {
+                Throwables.throwIfInstanceOf(e.getCause(), CacheException.class);
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
         private void done(@Nullable Throwable cause) {
             PnfsId pnfsId = getFileAttributes().getPnfsId();
             if (cause != null) {
@@ -1183,6 +1538,12 @@ public class NearlineStorageHandler
             flushRequests.removeAndCallback(pnfsId, cause);
         }
 
+        private void fileNotFound(PnfsId pnfsId) {
+            // Remove file asynchronously to prevent request cancellation from
+            // interrupting the state update.
+            executor.execute(() -> removeFile(pnfsId));
+        }
+
         private void removeFile(PnfsId pnfsId) {
             try {
                 repository.setState(pnfsId, ReplicaState.REMOVED,
@@ -1199,46 +1560,23 @@ public class NearlineStorageHandler
             }
         }
 
-        private class PreFlushFunction implements AsyncFunction<Void, Void> {
+        private class PreFlushFunction implements AsyncFunction<String, Void> {
 
             @Override
-            public ListenableFuture<Void> apply(Void ignored)
+            public ListenableFuture<Void> apply(String ignored)
                   throws CacheException, InterruptedException, NoSuchAlgorithmException, IOException {
-                final PnfsId pnfsId = descriptor.getFileAttributes().getPnfsId();
-                LOGGER.debug("Checking if {} still exists.", pnfsId);
-                try {
-                    pnfs.getFileAttributes(pnfsId, EnumSet.noneOf(FileAttribute.class));
-                } catch (FileNotFoundCacheException e) {
-                    // Remove file asynchronously to prevent request cancellation from
-                    // interrupting the state update.
-                    executor.execute(() -> removeFile(pnfsId));
-                    throw new FileNotFoundCacheException(
-                          "File not found in name space during pre-flush check.", e);
-                }
                 checksumModule.enforcePreFlushPolicy(descriptor);
                 return Futures.immediateFuture(null);
             }
         }
 
-        private class PreFlushWithPathFunction implements AsyncFunction<Void, String> {
+        private class PreFlushWithPathFunction implements AsyncFunction<String, String> {
 
             @Override
-            public ListenableFuture<String> apply(Void ignored)
+            public ListenableFuture<String> apply(String path)
                   throws CacheException, InterruptedException, NoSuchAlgorithmException, IOException {
-                final PnfsId pnfsId = descriptor.getFileAttributes().getPnfsId();
-                LOGGER.debug("Checking if {} still exists.", pnfsId);
-                FsPath path;
-                try {
-                    path = pnfs.getPathByPnfsId(pnfsId);
-                } catch (FileNotFoundCacheException e) {
-                    // Remove file asynchronously to prevent request cancellation from
-                    // interrupting the state update.
-                    executor.execute(() -> removeFile(pnfsId));
-                    throw new FileNotFoundCacheException(
-                          "File not found in name space during pre-flush check.", e);
-                }
                 checksumModule.enforcePreFlushPolicy(descriptor);
-                return Futures.immediateFuture(path.toString());
+                return Futures.immediateFuture(path);
             }
         }
     }
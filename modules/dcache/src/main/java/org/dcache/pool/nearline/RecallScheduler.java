@@ -0,0 +1,205 @@
+package org.dcache.pool.nearline;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.PrintWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.pool.nearline.spi.NearlineStorage;
+import org.dcache.pool.nearline.spi.StageRequest;
+import org.dcache.vehicles.FileAttributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects stage requests for a short window and releases them to the nearline storage grouped
+ * by tape and ordered by position on tape.
+ * <p>
+ * The tape location of a request is taken from the first HSM location of the file understood by
+ * the {@link TapeLocationExtractor}. Tapes are released in the order in which the first request
+ * for each tape arrived, and the requests for each tape in order of their position. Requests
+ * without a known tape location are released last, in arrival order.
+ * <p>
+ * Every window is counted as having required one mount per run of consecutive requests for the
+ * same tape in arrival order, and one mount per tape after ordering. The difference is reported as
+ * the number of mounts avoided.
+ *
+ * @param <R> type of request
+ */
+class RecallScheduler<R extends StageRequest> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecallScheduler.class);
+
+    private final ScheduledExecutorService executor;
+    private final TapeLocationExtractor extractor;
+    private final long window;
+    private final BiConsumer<NearlineStorage, List<R>> release;
+
+    /* Requests collected per nearline storage, guarded by this. */
+    private final Map<NearlineStorage, List<R>> pending = new HashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder located = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder mountsAvoided = new LongAdder();
+
+    /**
+     * @param executor  executor used to release the requests at the end of a window
+     * @param extractor extracts the tape location of a file from its HSM locations
+     * @param window    time for which requests are collected
+     * @param unit      unit of {@code window}
+     * @param release   called with the ordered requests of a nearline storage
+     */
+    RecallScheduler(ScheduledExecutorService executor, TapeLocationExtractor extractor,
+          long window, TimeUnit unit, BiConsumer<NearlineStorage, List<R>> release) {
+        this.executor = requireNonNull(executor);
+        this.extractor = requireNonNull(extractor);
+        this.window = unit.toMillis(window);
+        this.release = requireNonNull(release);
+    }
+
+    /**
+     * Adds requests for {@code storage}. The first request of a window schedules the release of
+     * all requests added for the same storage during the window.
+     */
+    void submit(NearlineStorage storage, Iterable<R> newRequests) {
+        boolean mustSchedule;
+        synchronized (this) {
+            List<R> queue = pending.get(storage);
+            mustSchedule = queue == null;
+            if (mustSchedule) {
+                queue = new ArrayList<>();
+                pending.put(storage, queue);
+            }
+            newRequests.forEach(queue::add);
+            if (queue.isEmpty()) {
+                pending.remove(storage);
+                return;
+            }
+        }
+        if (mustSchedule) {
+            try {
+                executor.schedule(() -> release(storage), window, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                release(storage);
+            }
+        }
+    }
+
+    /**
+     * Releases all collected requests without waiting for their window to end.
+     */
+    void releaseAll() {
+        List<NearlineStorage> storages;
+        synchronized (this) {
+            storages = new ArrayList<>(pending.keySet());
+        }
+        storages.forEach(this::release);
+    }
+
+    private void release(NearlineStorage storage) {
+        List<R> queue;
+        synchronized (this) {
+            queue = pending.remove(storage);
+        }
+        if (queue != null) {
+            try {
+                release.accept(storage, order(queue));
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to submit stage requests to nearline storage: {}",
+                      e.toString());
+            }
+        }
+    }
+
+    /**
+     * Returns {@code queue} grouped by tape and ordered by position on tape.
+     */
+    List<R> order(List<R> queue) {
+        Map<String, List<Located<R>>> byTape = new LinkedHashMap<>();
+        List<R> unknown = new ArrayList<>();
+        String previousTape = null;
+        int mountsInArrivalOrder = 0;
+        for (R request : queue) {
+            Optional<TapeLocation> location = locate(request);
+            if (location.isPresent()) {
+                String tape = location.get().getTape();
+                if (!tape.equals(previousTape)) {
+                    mountsInArrivalOrder++;
+                    previousTape = tape;
+                }
+                byTape.computeIfAbsent(tape, t -> new ArrayList<>())
+                      .add(new Located<>(request, location.get().getPosition()));
+            } else {
+                unknown.add(request);
+            }
+        }
+
+        List<R> ordered = new ArrayList<>(queue.size());
+        for (List<Located<R>> requestsOnTape : byTape.values()) {
+            requestsOnTape.sort(Comparator.comparingLong(l -> l.position));
+            requestsOnTape.forEach(l -> ordered.add(l.request));
+        }
+        ordered.addAll(unknown);
+
+        requests.add(queue.size());
+        located.add(queue.size() - unknown.size());
+        batches.increment();
+        mountsAvoided.add(mountsInArrivalOrder - byTape.size());
+        return ordered;
+    }
+
+    private Optional<TapeLocation> locate(R request) {
+        FileAttributes attributes = request.getFileAttributes();
+        if (!attributes.isDefined(FileAttribute.STORAGEINFO)) {
+            return Optional.empty();
+        }
+        for (URI uri : attributes.getStorageInfo().locations()) {
+            try {
+                Optional<TapeLocation> location = extractor.extract(uri);
+                if (location.isPresent()) {
+                    return location;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to extract tape location from {}: {}", uri, e.toString());
+            }
+        }
+        return Optional.empty();
+    }
+
+    long getMountsAvoided() {
+        return mountsAvoided.sum();
+    }
+
+    void getInfo(PrintWriter pw) {
+        pw.println("Recall scheduler:");
+        pw.println("   Collection window     : " + window + " ms");
+        pw.println("   Requests              : " + requests.sum());
+        pw.println("   Requests on known tape: " + located.sum());
+        pw.println("   Batches               : " + batches.sum());
+        pw.println("   Mounts avoided        : " + mountsAvoided.sum());
+    }
+
+    private static class Located<R> {
+
+        private final R request;
+        private final long position;
+
+        Located(R request, long position) {
+            this.request = request;
+            this.position = position;
+        }
+    }
+}
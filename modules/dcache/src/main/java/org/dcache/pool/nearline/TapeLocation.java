@@ -0,0 +1,58 @@
+package org.dcache.pool.nearline;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Objects;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The location of a file on tape: the tape holding the file and the position of the file on that
+ * tape.
+ */
+@Immutable
+public final class TapeLocation {
+
+    /**
+     * Position used for files whose position on tape is not known. Such files are recalled after
+     * all other files on the same tape.
+     */
+    public static final long UNKNOWN_POSITION = Long.MAX_VALUE;
+
+    private final String tape;
+    private final long position;
+
+    public TapeLocation(String tape, long position) {
+        this.tape = requireNonNull(tape);
+        this.position = position;
+    }
+
+    public String getTape() {
+        return tape;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TapeLocation)) {
+            return false;
+        }
+        TapeLocation other = (TapeLocation) o;
+        return position == other.position && tape.equals(other.tape);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tape, position);
+    }
+
+    @Override
+    public String toString() {
+        return position == UNKNOWN_POSITION ? tape : tape + ":" + position;
+    }
+}
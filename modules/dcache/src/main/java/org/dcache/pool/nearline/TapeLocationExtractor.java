@@ -0,0 +1,22 @@
+package org.dcache.pool.nearline;
+
+import java.net.URI;
+import java.util.Optional;
+
+/**
+ * Extracts the location on tape of a file from one of its HSM locations.
+ * <p>
+ * The format of HSM location URIs is defined by the nearline storage that wrote the file. Sites
+ * using a nearline storage that encodes the tape and position differently than understood by
+ * {@link UriQueryTapeLocationExtractor} may provide their own implementation.
+ * <p>
+ * Implementations must be thread safe.
+ */
+public interface TapeLocationExtractor {
+
+    /**
+     * Returns the location on tape identified by {@code location}, or an empty Optional if the URI
+     * does not identify a tape.
+     */
+    Optional<TapeLocation> extract(URI location);
+}
@@ -0,0 +1,71 @@
+package org.dcache.pool.nearline;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Extracts the tape location of a file from the query parameters of its HSM location.
+ * <p>
+ * The tape is taken from the first of the {@code volume}, {@code tape} or {@code vid} parameters
+ * present, and the position from the first of the {@code location_cookie}, {@code position} or
+ * {@code fseq} parameters. The digits of the position are interpreted as a number, which orders
+ * zero-padded cookies such as {@code 0000_000000000_0001234} by position.
+ */
+public class UriQueryTapeLocationExtractor implements TapeLocationExtractor {
+
+    private static final List<String> TAPE_PARAMETERS = List.of("volume", "tape", "vid");
+
+    private static final List<String> POSITION_PARAMETERS =
+          List.of("location_cookie", "position", "fseq");
+
+    private static final int MAX_DIGITS = 18;
+
+    @Override
+    public Optional<TapeLocation> extract(URI location) {
+        String query = location.getRawQuery();
+        if (query == null) {
+            return Optional.empty();
+        }
+
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : Splitter.on('&').omitEmptyStrings().split(query)) {
+            int i = parameter.indexOf('=');
+            if (i > 0) {
+                parameters.putIfAbsent(URLDecoder.decode(parameter.substring(0, i), UTF_8),
+                      URLDecoder.decode(parameter.substring(i + 1), UTF_8));
+            }
+        }
+
+        return first(parameters, TAPE_PARAMETERS)
+              .map(tape -> new TapeLocation(tape,
+                    first(parameters, POSITION_PARAMETERS)
+                          .map(UriQueryTapeLocationExtractor::toPosition)
+                          .orElse(TapeLocation.UNKNOWN_POSITION)));
+    }
+
+    private static Optional<String> first(Map<String, String> parameters, List<String> names) {
+        return names.stream()
+              .map(parameters::get)
+              .filter(value -> value != null && !value.isEmpty())
+              .findFirst();
+    }
+
+    private static long toPosition(String value) {
+        String digits = CharMatcher.inRange('0', '9').retainFrom(value);
+        digits = CharMatcher.is('0').trimLeadingFrom(digits);
+        if (digits.isEmpty()) {
+            return value.isEmpty() || CharMatcher.inRange('0', '9').matchesNoneOf(value)
+                  ? TapeLocation.UNKNOWN_POSITION : 0;
+        }
+        return digits.length() > MAX_DIGITS
+              ? TapeLocation.UNKNOWN_POSITION : Long.parseLong(digits);
+    }
+}
@@ -111,6 +111,10 @@ public class ReplicaStoreCache
             return this;
         }
 
+        private synchronized ReplicaRecord getIfLoaded() {
+            return (_entries.get(_id) == this && _record != null) ? this : null;
+        }
+
         private synchronized ReplicaRecord create(Set<? extends OpenOption> flags)
               throws CacheException {
             if (_entries.get(_id) != this || _record != null) {
@@ -411,6 +415,15 @@ public class ReplicaStoreCache
         }
     }
 
+    /**
+     * Returns the record of {@code id} if it has already been read from the inner store. Unlike
+     * {@link #get}, the record is not read if it is not cached.
+     */
+    public ReplicaRecord getIfLoaded(PnfsId id) {
+        Monitor monitor = _entries.get(id);
+        return (monitor == null) ? null : monitor.getIfLoaded();
+    }
+
     @Override
     public ReplicaRecord create(PnfsId id, Set<? extends OpenOption> flags) throws CacheException {
         try {
@@ -20,6 +20,7 @@ package org.dcache.pool.repository.meta.db;
 
 import static org.dcache.util.Exceptions.messageOrClassName;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sleepycat.collections.StoredMap;
 import com.sleepycat.collections.TransactionWorker;
 import com.sleepycat.je.DatabaseException;
@@ -28,9 +29,11 @@ import com.sleepycat.je.EnvironmentFailureException;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.PnfsId;
 import diskCacheV111.vehicles.StorageInfo;
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.EnvironmentAware;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
@@ -38,6 +41,9 @@ import java.nio.file.Path;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.dcache.pool.repository.ReplicaStore;
 import org.dcache.pool.repository.RepositoryChannel;
 import org.dcache.util.configuration.ConfigurationMapFactoryBean;
@@ -52,12 +58,18 @@ import org.slf4j.LoggerFactory;
  * The cache repository entries generated by this store fetch storage info from the database on
  * demand.
  */
-public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, EnvironmentAware {
+public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, EnvironmentAware,
+      CellInfoProvider {
 
     protected static final Logger LOGGER =
           LoggerFactory.getLogger(AbstractBerkeleyDBReplicaStore.class);
     protected static final String DIRECTORY_NAME = "meta";
 
+    private static final String ACCESS_TIME_FLUSH_PERIOD =
+          "pool.plugins.meta.db.access-time.flush-period";
+    private static final String ACCESS_TIME_FLUSH_PERIOD_UNIT =
+          "pool.plugins.meta.db.access-time.flush-period.unit";
+
     protected final boolean readOnly;
 
     /**
@@ -80,6 +92,19 @@ public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, En
      */
     protected ReplicaStoreView views;
 
+    /**
+     * Interval at which buffered access time updates are written to the database. Zero disables
+     * buffering.
+     */
+    private long accessTimeFlushPeriod;
+    private TimeUnit accessTimeFlushPeriodUnit = TimeUnit.SECONDS;
+
+    /**
+     * Write-behind buffer for access time updates, or null if updates are written through.
+     */
+    protected AccessTimeWriter accessTimes;
+
+    private ScheduledExecutorService accessTimeFlusher;
 
     public AbstractBerkeleyDBReplicaStore(Path directory, boolean readOnly) throws IOException {
         this.readOnly = readOnly;
@@ -100,6 +125,15 @@ public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, En
         factory.buildMap();
         properties.clear();
         properties.putAll(factory.getObject());
+
+        Object period = environment.get(ACCESS_TIME_FLUSH_PERIOD);
+        if (period != null) {
+            accessTimeFlushPeriod = Long.parseLong(period.toString().trim());
+        }
+        Object unit = environment.get(ACCESS_TIME_FLUSH_PERIOD_UNIT);
+        if (unit != null) {
+            accessTimeFlushPeriodUnit = TimeUnit.valueOf(unit.toString().trim());
+        }
     }
 
     @Override
@@ -111,6 +145,29 @@ public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, En
             throw new CacheException(CacheException.PANIC,
                   "Failed to open Berkeley DB database: " + e.getMessage(), e);
         }
+
+        if (accessTimeFlushPeriod > 0 && !readOnly) {
+            accessTimes = new AccessTimeWriter(this);
+            accessTimeFlusher = Executors.newSingleThreadScheduledExecutor(
+                  new ThreadFactoryBuilder().setNameFormat("access-time-flush").build());
+            accessTimeFlusher.scheduleWithFixedDelay(this::flushAccessTimes,
+                  accessTimeFlushPeriod, accessTimeFlushPeriod, accessTimeFlushPeriodUnit);
+        }
+    }
+
+    private void flushAccessTimes() {
+        try {
+            accessTimes.flush();
+        } catch (EnvironmentFailureException e) {
+            if (!isValid()) {
+                LOGGER.error("Failed to persist access times and a pool restart is required: {}",
+                      e.getMessage());
+            } else {
+                LOGGER.warn("Failed to persist access times: {}", e.getMessage());
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to persist access times: {}", messageOrClassName(e));
+        }
     }
 
     /**
@@ -139,6 +196,16 @@ public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, En
      */
     @Override
     public void close() {
+        if (accessTimeFlusher != null) {
+            accessTimeFlusher.shutdown();
+            try {
+                accessTimeFlusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushAccessTimes();
+            LOGGER.info("Access time updates: {}", accessTimes);
+        }
         try {
             database.close();
         } catch (DatabaseException e) {
@@ -164,6 +231,43 @@ public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, En
         }
     }
 
+    @Override
+    public void getInfo(PrintWriter pw) {
+        AccessTimeWriter writer = accessTimes;
+        if (writer != null) {
+            pw.println("Access time updates");
+            pw.println("    flush period : " + accessTimeFlushPeriod + " "
+                  + accessTimeFlushPeriodUnit);
+            pw.println("    requested    : " + writer.getRequested());
+            pw.println("    coalesced    : " + writer.getCoalesced());
+            pw.println("    persisted    : " + writer.getPersisted());
+            pw.println("    discarded    : " + writer.getDiscarded());
+            pw.println("    pending      : " + writer.getPending());
+            pw.println("    transactions : " + writer.getTransactions());
+        }
+    }
+
+    /**
+     * Drops any buffered access time update of a replica. Must be called before the access time
+     * record of the replica is written or deleted directly.
+     */
+    void discardAccessTime(String id) {
+        AccessTimeWriter writer = accessTimes;
+        if (writer != null) {
+            writer.discard(id);
+        }
+    }
+
+    /**
+     * Writes any buffered access time update of a replica to the database.
+     */
+    void flushAccessTime(String id) {
+        AccessTimeWriter writer = accessTimes;
+        if (writer != null) {
+            writer.flush(id);
+        }
+    }
+
     public boolean isValid() {
         return database.getEnvironment().isValid();
     }
@@ -0,0 +1,187 @@
+package org.dcache.pool.repository.meta.db;
+
+import com.google.common.base.Stopwatch;
+import com.sleepycat.collections.StoredMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind buffer for last access time updates.
+ * <p>
+ * Access time updates are kept in memory, with repeated updates of the same replica being
+ * coalesced into one, and are written to the database in batches. Each batch is written in a
+ * single transaction in key order, which keeps the number of log writes and B-tree traversals
+ * low even on pools serving many reads.
+ * <p>
+ * Updates not yet written are lost if the pool crashes; the only consequence is that the
+ * garbage collector sees a slightly older last access time after restart.
+ * <p>
+ * Only existing access time records are updated. An update racing with the removal of a replica
+ * may be recorded after its pending update was discarded; such an update is dropped when written
+ * rather than recreating a record for a replica that no longer exists.
+ */
+class AccessTimeWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccessTimeWriter.class);
+
+    /**
+     * Maximum number of updates written in a single transaction.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    private final AbstractBerkeleyDBReplicaStore _store;
+
+    private final ConcurrentMap<String, Long> _pending = new ConcurrentHashMap<>();
+
+    private final LongAdder _requested = new LongAdder();
+    private final LongAdder _persisted = new LongAdder();
+    private final LongAdder _discarded = new LongAdder();
+    private final LongAdder _transactions = new LongAdder();
+
+    AccessTimeWriter(AbstractBerkeleyDBReplicaStore store) {
+        _store = store;
+    }
+
+    /**
+     * Records a new last access time for a replica. Only the most recent time is retained.
+     */
+    void update(String id, long time) {
+        _requested.increment();
+        _pending.merge(id, time, Math::max);
+    }
+
+    /**
+     * Drops any pending update for a replica. Must be called before the access time record of a
+     * replica is deleted or replaced.
+     */
+    synchronized void discard(String id) {
+        if (_pending.remove(id) != null) {
+            _discarded.increment();
+        }
+    }
+
+    /**
+     * Writes any pending update for a single replica.
+     */
+    synchronized void flush(String id) {
+        Long time = _pending.get(id);
+        if (time != null) {
+            if (write(_store.getAccessTimeInfo(), id, time)) {
+                _persisted.increment();
+            } else {
+                _discarded.increment();
+            }
+            _pending.remove(id, time);
+        }
+    }
+
+    /**
+     * Writes all pending updates in sorted batches.
+     *
+     * @return the number of persisted updates
+     * @throws Exception if a transaction failed; updates of the failed batch remain pending
+     */
+    long flush() throws Exception {
+        List<String> ids = new ArrayList<>(_pending.keySet());
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(ids);
+
+        Stopwatch watch = Stopwatch.createStarted();
+        long count = 0;
+        for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+            count += flush(ids.subList(i, Math.min(i + BATCH_SIZE, ids.size())));
+        }
+        LOGGER.debug("Persisted {} access time updates in {}.", count, watch);
+        return count;
+    }
+
+    private synchronized long flush(List<String> ids) throws Exception {
+        Map<String, Long> batch = new HashMap<>();
+        int[] written = new int[1];
+        _store.run(() -> {
+            /* The transaction runner retries the worker on deadlock, hence the batch is
+             * rebuilt on every invocation and pending updates are only removed once the
+             * transaction has committed.
+             */
+            batch.clear();
+            written[0] = 0;
+            StoredMap<String, AccessTimeInfo> map = _store.getAccessTimeInfo();
+            for (String id : ids) {
+                Long time = _pending.get(id);
+                if (time != null) {
+                    if (write(map, id, time)) {
+                        written[0]++;
+                    }
+                    batch.put(id, time);
+                }
+            }
+        });
+        batch.forEach(_pending::remove);
+        _transactions.increment();
+        _persisted.add(written[0]);
+        _discarded.add(batch.size() - written[0]);
+        return written[0];
+    }
+
+    /**
+     * Updates the access time record of a replica.
+     *
+     * @return false if the replica has no access time record
+     */
+    private static boolean write(StoredMap<String, AccessTimeInfo> map, String id, long time) {
+        AccessTimeInfo accessTime = map.get(id);
+        if (accessTime == null) {
+            return false;
+        }
+        accessTime.setLastAccessTime(time);
+        map.put(id, accessTime);
+        return true;
+    }
+
+    int getPending() {
+        return _pending.size();
+    }
+
+    long getRequested() {
+        return _requested.sum();
+    }
+
+    long getPersisted() {
+        return _persisted.sum();
+    }
+
+    long getDiscarded() {
+        return _discarded.sum();
+    }
+
+    long getTransactions() {
+        return _transactions.sum();
+    }
+
+    /**
+     * Returns the number of updates that were superseded by a later update of the same replica
+     * before being written.
+     */
+    long getCoalesced() {
+        long persisted = getPersisted();
+        long discarded = getDiscarded();
+        long pending = getPending();
+        return Math.max(0, getRequested() - persisted - discarded - pending);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pending=%d;requested=%d;coalesced=%d;persisted=%d;discarded=%d",
+              getPending(), getRequested(), getCoalesced(), getPersisted(), getDiscarded());
+    }
+}
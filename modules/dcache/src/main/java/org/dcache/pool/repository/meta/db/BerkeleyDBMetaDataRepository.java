@@ -104,7 +104,7 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
     @Override
     public ReplicaRecord get(PnfsId id) throws CacheException {
         try {
-
+            flushAccessTime(id.toString());
             return CacheRepositoryEntryImpl.load(this, id, _fileStore);
         } catch (EnvironmentFailureException e) {
             if (!isValid()) {
@@ -134,6 +134,7 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
             }
             views.getStorageInfoMap().remove(id.toString());
             views.getStateMap().remove(id.toString());
+            discardAccessTime(id.toString());
             views.getAccessTimeInfo().remove(id.toString());
             if (flags.contains(StandardOpenOption.CREATE)) {
                 _fileStore.create(id);
@@ -158,6 +159,7 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
         try {
             views.getStorageInfoMap().remove(id.toString());
             views.getStateMap().remove(id.toString());
+            discardAccessTime(id.toString());
             views.getAccessTimeInfo().remove(id.toString());
 
 
@@ -216,6 +218,10 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
 
     @Override
     public void setLastModifiedTime(PnfsId pnfsId, long time) throws IOException {
+        if (accessTimes != null) {
+            accessTimes.update(pnfsId.toString(), time);
+            return;
+        }
 
         AccessTimeInfo accessTime = views.getAccessTimeInfo()
               .computeIfAbsent(pnfsId.toString(), k -> new AccessTimeInfo(time));
@@ -273,6 +273,7 @@ public class CacheRepositoryEntryImpl implements ReplicaRecord {
             }
 
             //TODO check should there be separate methods
+            _repository.discardAccessTime(id);
             if (attributes.isDefined(FileAttribute.ACCESS_TIME) && attributes.isDefined(
                   FileAttribute.CREATION_TIME)) {
                 AccessTimeInfo accessTimeInfo = new AccessTimeInfo();
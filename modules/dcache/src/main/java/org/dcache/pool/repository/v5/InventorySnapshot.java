@@ -0,0 +1,217 @@
+package org.dcache.pool.repository.v5;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.io.BaseEncoding;
+import diskCacheV111.util.PnfsId;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.StickyRecord;
+
+/**
+ * Compact binary index of the replicas of a repository.
+ * <p>
+ * The snapshot is written when the repository is shut down cleanly and holds the PNFS ID, state,
+ * size, last access time and sticky records of every replica. The snapshot ends with a trailer
+ * holding the number of entries, a checksum of the entries and a marker. A snapshot without a
+ * valid trailer, e.g. because the pool crashed while writing it, is rejected when read.
+ */
+class InventorySnapshot {
+
+    private static final int MAGIC = 0x44434953;      // DCIS
+    private static final int VERSION = 1;
+    private static final int CLEAN = 0x434c4e21;      // CLN!
+
+    private static final int HEADER_SIZE = 16;
+    private static final int TRAILER_SIZE = 20;
+
+    private static final ReplicaState[] STATES = ReplicaState.values();
+
+    /**
+     * Snapshot of a single replica.
+     */
+    static class Entry {
+
+        private final PnfsId _id;
+        private final ReplicaState _state;
+        private final long _size;
+        private final long _accessTime;
+        private final Collection<StickyRecord> _stickyRecords;
+
+        Entry(PnfsId id, ReplicaState state, long size, long accessTime,
+              Collection<StickyRecord> stickyRecords) {
+            _id = id;
+            _state = state;
+            _size = size;
+            _accessTime = accessTime;
+            _stickyRecords = stickyRecords;
+        }
+
+        public PnfsId getPnfsId() {
+            return _id;
+        }
+
+        public ReplicaState getState() {
+            return _state;
+        }
+
+        public long getReplicaSize() {
+            return _size;
+        }
+
+        public long getLastAccessTime() {
+            return _accessTime;
+        }
+
+        public Collection<StickyRecord> getStickyRecords() {
+            return _stickyRecords;
+        }
+
+        public boolean isSticky(long now) {
+            return _stickyRecords.stream().anyMatch(r -> r.isValidAt(now));
+        }
+    }
+
+    private InventorySnapshot() {
+    }
+
+    /**
+     * Writes a snapshot. The snapshot is written to a temporary file that is moved into place once
+     * complete, thus {@code file} either holds a complete snapshot or none at all.
+     *
+     * @return the number of entries written
+     */
+    static long write(Path file, Iterable<Entry> entries) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                  new CheckedOutputStream(Channels.newOutputStream(channel), crc)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            for (Entry entry : entries) {
+                byte[] id = BaseEncoding.base16().decode(entry.getPnfsId().toString());
+                out.writeByte(id.length);
+                out.write(id);
+                out.writeByte(entry.getState().ordinal());
+                out.writeLong(entry.getReplicaSize());
+                out.writeLong(entry.getLastAccessTime());
+                out.writeShort(entry.getStickyRecords().size());
+                for (StickyRecord record : entry.getStickyRecords()) {
+                    byte[] owner = record.owner().getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(owner.length);
+                    out.write(owner);
+                    out.writeLong(record.expire());
+                }
+                count++;
+            }
+            out.flush();
+            long checksum = crc.getValue();
+            out.writeLong(count);
+            out.writeLong(checksum);
+            out.writeInt(CLEAN);
+            out.flush();
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        return count;
+    }
+
+    /**
+     * Reads a snapshot by memory mapping it.
+     *
+     * @throws IOException if the snapshot cannot be read or is incomplete
+     */
+    static List<Entry> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Snapshot is truncated");
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to be mapped");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int end = (int) size - TRAILER_SIZE;
+            if (buffer.getInt(end + 16) != CLEAN) {
+                throw new IOException("Snapshot lacks clean shutdown marker");
+            }
+            long count = buffer.getLong(end);
+            long checksum = buffer.getLong(end + 8);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Snapshot has unsupported format");
+            }
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot has too many entries");
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit(end));
+            if (crc.getValue() != checksum) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+
+            ByteBuffer entries = buffer.duplicate().position(HEADER_SIZE).limit(end);
+            List<Entry> list = new ArrayList<>((int) count);
+            try {
+                while (entries.hasRemaining()) {
+                    list.add(readEntry(entries));
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Snapshot is corrupted: " + e, e);
+            }
+            if (list.size() != count) {
+                throw new IOException("Snapshot has " + list.size() + " entries, expected "
+                      + count);
+            }
+            return list;
+        }
+    }
+
+    private static Entry readEntry(ByteBuffer buffer) {
+        byte[] id = new byte[buffer.get()];
+        buffer.get(id);
+        int state = buffer.get();
+        if (state < 0 || state >= STATES.length) {
+            throw new IllegalArgumentException("Invalid replica state " + state);
+        }
+        long size = buffer.getLong();
+        long accessTime = buffer.getLong();
+        int stickyCount = Short.toUnsignedInt(buffer.getShort());
+        List<StickyRecord> stickyRecords = new ArrayList<>(stickyCount);
+        for (int i = 0; i < stickyCount; i++) {
+            byte[] owner = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(owner);
+            stickyRecords.add(new StickyRecord(new String(owner, StandardCharsets.UTF_8),
+                  buffer.getLong()));
+        }
+        return new Entry(new PnfsId(BaseEncoding.base16().encode(id)), STATES[state], size,
+              accessTime, stickyRecords);
+    }
+}
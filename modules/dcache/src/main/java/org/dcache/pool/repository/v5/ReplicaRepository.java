@@ -5,12 +5,15 @@ import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 import static org.dcache.namespace.FileAttribute.PNFSID;
 import static org.dcache.namespace.FileAttribute.STORAGEINFO;
+import static org.dcache.pool.repository.ReplicaState.CACHED;
 import static org.dcache.pool.repository.ReplicaState.NEW;
 import static org.dcache.pool.repository.ReplicaState.PRECIOUS;
 import static org.dcache.pool.repository.ReplicaState.REMOVED;
 import static org.dcache.util.ByteUnit.GiB;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.RateLimiter;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.DiskErrorCacheException;
 import diskCacheV111.util.DiskSpace;
@@ -28,16 +31,21 @@ import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.CellSetupProvider;
 import dmg.util.command.Argument;
 import dmg.util.command.Command;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.OptionalLong;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -153,6 +161,27 @@ public class ReplicaRepository
     private long _workQueuekeepAliveTime = 60;
     private TimeUnit _workQueueTimeUnit = TimeUnit.SECONDS;
 
+    /**
+     * Inventory snapshot written on clean shutdown, or null if disabled.
+     */
+    private File _snapshotFile;
+
+    /**
+     * Replicas per second to verify after the inventory was loaded from a snapshot.
+     */
+    private double _verificationRate = 1000;
+
+    /**
+     * CACHED replicas accounted for from the inventory snapshot whose meta data has not been
+     * read yet.
+     */
+    private final Map<PnfsId, InventorySnapshot.Entry> _preloaded = new ConcurrentHashMap<>();
+
+    /**
+     * Thread reading the meta data of preloaded replicas.
+     */
+    private Thread _verifier;
+
     /**
      * Executor for periodic tasks.
      */
@@ -288,6 +317,30 @@ public class ReplicaRepository
         this.scanThreads = scanThreads;
     }
 
+    /**
+     * Sets the file to which an inventory snapshot is written on clean shutdown. If the file
+     * holds a valid snapshot during load, CACHED replicas are accounted for from the snapshot
+     * and their meta data is read in the background once the repository is open.
+     */
+    public void setSnapshotFile(File file) {
+        _stateLock.readLock().lock();
+        try {
+            checkUninitialized();
+            _snapshotFile = file;
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the number of replicas per second for which meta data is read in the background
+     * after loading the inventory from a snapshot.
+     */
+    public void setVerificationRate(double rate) {
+        checkArgument(rate > 0, "Rate must be positive");
+        _verificationRate = rate;
+    }
+
 
     /**
      * Get pool name to which repository belongs.
@@ -373,16 +426,24 @@ public class ReplicaRepository
                 @Override
                 public void stateChanged(StateChangeEvent event) {
                     PnfsId id = event.getPnfsId();
+                    InventorySnapshot.Entry preloaded =
+                          (event.getOldState() == NEW) ? _preloaded.remove(id) : null;
                     if (event.getOldState() != NEW || event.getNewState() != REMOVED) {
                         if (event.getOldState() == NEW) {
                             long size = event.getNewEntry().getReplicaSize();
                             /* Usually space has to be allocated before writing the
                              * data to disk, however during pool startup we are notified
                              * about "new" files that already consume space, so we
-                             * adjust the allocation here.
+                             * adjust the allocation here. Replicas loaded from the
+                             * inventory snapshot have already been accounted for.
                              */
+                            if (preloaded != null) {
+                                size -= preloaded.getReplicaSize();
+                            }
                             if (size > 0) {
                                 _account.growTotalAndUsed(id, size);
+                            } else if (size < 0) {
+                                _account.free(id, -size);
                             }
                             scheduleExpirationTask(event.getNewEntry());
                         }
@@ -540,6 +601,10 @@ public class ReplicaRepository
             _store.init();
 
             Collection<PnfsId> ids = _store.index();
+            List<InventorySnapshot.Entry> snapshot = readSnapshot();
+            if (!snapshot.isEmpty()) {
+                ids = preload(ids, snapshot);
+            }
             int fileCount = ids.size();
 
             LOGGER.info("Checking meta data for {} files with {} threads.", fileCount, scanThreads);
@@ -613,6 +678,161 @@ public class ReplicaRepository
 
         loadComplete.complete(null);
         LOGGER.info("Done generating inventory in {}", watch);
+
+        if (!_preloaded.isEmpty()) {
+            startVerifier();
+        }
+    }
+
+    /**
+     * Reads and removes the inventory snapshot. The snapshot is removed before the repository is
+     * modified, thus it is only ever used if it was written after the last modification.
+     */
+    private List<InventorySnapshot.Entry> readSnapshot() {
+        if (_snapshotFile == null || !_snapshotFile.exists()) {
+            return Collections.emptyList();
+        }
+        try {
+            Stopwatch watch = Stopwatch.createStarted();
+            List<InventorySnapshot.Entry> entries = InventorySnapshot.read(_snapshotFile.toPath());
+            LOGGER.info("Read {} entries from inventory snapshot {} in {}.", entries.size(),
+                  _snapshotFile, watch);
+            return entries;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring inventory snapshot {}: {}", _snapshotFile, e.getMessage());
+            return Collections.emptyList();
+        } finally {
+            try {
+                Files.deleteIfExists(_snapshotFile.toPath());
+            } catch (IOException e) {
+                LOGGER.error("Failed to delete inventory snapshot {}: {}", _snapshotFile,
+                      e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Accounts for the CACHED replicas of the snapshot without reading their meta data. Replicas
+     * in any other state are loaded as usual, as are replicas not in the snapshot: Precious
+     * replicas have to be added to the flush queue and incomplete or broken replicas have to be
+     * recovered before the repository is opened.
+     *
+     * @return the replicas which have to be loaded
+     */
+    private Collection<PnfsId> preload(Collection<PnfsId> ids,
+          List<InventorySnapshot.Entry> snapshot) {
+        Set<PnfsId> remaining = new HashSet<>(ids);
+
+        /* The write lock blocks any concurrent attempt to read meta data, thus no replica can be
+         * both preloaded and loaded.
+         */
+        _stateLock.writeLock().lock();
+        try {
+            for (InventorySnapshot.Entry entry : snapshot) {
+                PnfsId id = entry.getPnfsId();
+                if (entry.getState() == CACHED && getIfLoaded(id) == null
+                      && remaining.remove(id)) {
+                    _preloaded.put(id, entry);
+                    if (entry.getReplicaSize() > 0) {
+                        _account.growTotalAndUsed(id, entry.getReplicaSize());
+                    }
+                }
+            }
+        } finally {
+            _stateLock.writeLock().unlock();
+        }
+        LOGGER.info("Accounted for {} replicas from inventory snapshot.", _preloaded.size());
+        return remaining;
+    }
+
+    /**
+     * Starts reading the meta data of preloaded replicas. Replicas become eligible for garbage
+     * collection once their meta data is read, thus non-sticky replicas are read first and in
+     * order of their last access time.
+     */
+    private synchronized void startVerifier() {
+        long now = System.currentTimeMillis();
+        List<InventorySnapshot.Entry> entries = new ArrayList<>(_preloaded.values());
+        entries.sort(Comparator.comparing((InventorySnapshot.Entry e) -> e.isSticky(now))
+              .thenComparingLong(InventorySnapshot.Entry::getLastAccessTime));
+        _verifier = new Thread(() -> verify(entries), "inventory-verifier");
+        _verifier.setDaemon(true);
+        _verifier.start();
+    }
+
+    private void verify(List<InventorySnapshot.Entry> entries) {
+        LOGGER.info("Checking meta data for {} files at {} files per second.", entries.size(),
+              _verificationRate);
+        Stopwatch watch = Stopwatch.createStarted();
+        RateLimiter limiter = RateLimiter.create(_verificationRate);
+        try {
+            for (InventorySnapshot.Entry entry : entries) {
+                PnfsId id = entry.getPnfsId();
+                if (!_preloaded.containsKey(id)) {
+                    continue;
+                }
+                limiter.acquire();
+                if (_state != State.OPEN) {
+                    return;
+                }
+                try {
+                    if (readReplicaRecord(id) == null && _preloaded.remove(id, entry)
+                          && entry.getReplicaSize() > 0) {
+                        _account.free(id, entry.getReplicaSize());
+                    }
+                } catch (CacheException e) {
+                    LOGGER.warn("Failed to check meta data for {}: {}", id, e.getMessage());
+                }
+            }
+            LOGGER.info("Done checking meta data of inventory snapshot in {}", watch);
+        } catch (InterruptedException e) {
+            LOGGER.debug("Meta data check interrupted after {}", watch);
+        }
+    }
+
+    /**
+     * Returns the record of a replica if its meta data has already been read.
+     */
+    private ReplicaRecord getIfLoaded(PnfsId id) {
+        return ((ReplicaStoreCache) _store).getIfLoaded(id);
+    }
+
+    /**
+     * Returns a snapshot entry of a replica without reading its meta data, or null if the meta
+     * data has not been read or the replica is neither CACHED nor PRECIOUS.
+     */
+    private InventorySnapshot.Entry toSnapshotEntry(PnfsId id) {
+        InventorySnapshot.Entry entry = _preloaded.get(id);
+        if (entry != null) {
+            return entry;
+        }
+        ReplicaRecord record = getIfLoaded(id);
+        if (record == null) {
+            return null;
+        }
+        synchronized (record) {
+            ReplicaState state = record.getState();
+            if (state != CACHED && state != PRECIOUS) {
+                return null;
+            }
+            return new InventorySnapshot.Entry(id, state, record.getReplicaSize(),
+                  record.getLastAccessTime(), new ArrayList<>(record.stickyRecords()));
+        }
+    }
+
+    @GuardedBy("_stateLock")
+    private void writeSnapshot() {
+        Stopwatch watch = Stopwatch.createStarted();
+        try {
+            long count = InventorySnapshot.write(_snapshotFile.toPath(),
+                  Iterables.filter(Iterables.transform(_store.index(), this::toSnapshotEntry),
+                        Objects::nonNull));
+            LOGGER.info("Wrote {} entries to inventory snapshot {} in {}.", count, _snapshotFile,
+                  watch);
+        } catch (CacheException | IOException | RuntimeException e) {
+            LOGGER.error("Failed to write inventory snapshot {}: {}", _snapshotFile,
+                  e.toString());
+        }
     }
 
     @Override
@@ -1016,9 +1236,17 @@ public class ReplicaRepository
     }
 
     public void shutdown() {
+        synchronized (this) {
+            if (_verifier != null) {
+                _verifier.interrupt();
+            }
+        }
         _stateLock.writeLock().lock();
         try {
             _stateChangeListeners.stop();
+            if (_state == State.OPEN && _snapshotFile != null) {
+                writeSnapshot();
+            }
             _state = State.CLOSED;
             _store.close();
         } finally {
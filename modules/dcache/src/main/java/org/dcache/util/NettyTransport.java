@@ -0,0 +1,121 @@
+package org.dcache.util;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Netty transport used for event loops and channels.
+ * <p>
+ * The native epoll transport avoids the selector and buffer copies of the JDK NIO transport, but is
+ * only available on Linux and only if the native library could be loaded. Use {@link #forName} to
+ * select a transport with fallback to NIO.
+ */
+public enum NettyTransport {
+    NIO {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> getServerChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> getSocketChannelClass() {
+            return NioSocketChannel.class;
+        }
+    },
+
+    EPOLL {
+        @Override
+        public boolean isAvailable() {
+            return Epoll.isAvailable();
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> getServerChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> getSocketChannelClass() {
+            return EpollSocketChannel.class;
+        }
+    };
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NettyTransport.class);
+
+    /**
+     * Value of {@link #forName} selecting the best transport available on this host.
+     */
+    public static final String AUTO = "auto";
+
+    /**
+     * Returns true if this transport can be used on this host.
+     */
+    public abstract boolean isAvailable();
+
+    /**
+     * Creates an event loop group of this transport.
+     *
+     * @param threads number of threads, or zero for Netty's default.
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory);
+
+    public abstract Class<? extends ServerChannel> getServerChannelClass();
+
+    public abstract Class<? extends SocketChannel> getSocketChannelClass();
+
+    /**
+     * Returns the transport with the given name, or the best available transport if the name is
+     * {@literal auto}. Falls back to NIO if the requested transport is not available on this
+     * host.
+     *
+     * @throws IllegalArgumentException if the name is not a known transport.
+     */
+    public static NettyTransport forName(String name) {
+        if (name.equalsIgnoreCase(AUTO)) {
+            return EPOLL.isAvailable() ? EPOLL : NIO;
+        }
+        NettyTransport transport = valueOf(name.toUpperCase(Locale.ROOT));
+        if (!transport.isAvailable()) {
+            LOGGER.warn("Netty {} transport is not available, falling back to NIO: {}",
+                  transport, transport.getUnavailabilityCause());
+            return NIO;
+        }
+        return transport;
+    }
+
+    private Throwable getUnavailabilityCause() {
+        return this == EPOLL ? Epoll.unavailabilityCause() : null;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
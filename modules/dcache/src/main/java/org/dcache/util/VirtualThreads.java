@@ -0,0 +1,71 @@
+package org.dcache.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads on JVMs that provide them.
+ * <p>
+ * dCache is compiled for a Java release that predates virtual threads. The methods of this class
+ * look up the virtual thread API by reflection, so that virtual threads can be used when dCache
+ * runs on a JVM that supports them.
+ */
+public class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns whether the JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return newThreadFactory("probe-").isPresent();
+    }
+
+    /**
+     * Returns a factory for virtual threads named by {@code prefix} followed by a counter, or an
+     * empty optional if virtual threads are not supported by the JVM.
+     */
+    public static Optional<ThreadFactory> newThreadFactory(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                  .invoke(builder, prefix, 0L);
+            return Optional.of((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            return Optional.empty();
+        } catch (InvocationTargetException e) {
+            /* Virtual threads are a preview feature on some releases and fail unless enabled.
+             */
+            if (e.getCause() instanceof UnsupportedOperationException) {
+                return Optional.empty();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread for each task, or an empty optional if
+     * virtual threads are not supported by the JVM.
+     */
+    public static Optional<ExecutorService> newThreadPerTaskExecutor(String prefix) {
+        Optional<ThreadFactory> factory = newThreadFactory(prefix);
+        if (!factory.isPresent()) {
+            return Optional.empty();
+        }
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor",
+                  ThreadFactory.class);
+            return Optional.of((ExecutorService) method.invoke(null, factory.get()));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return Optional.empty();
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
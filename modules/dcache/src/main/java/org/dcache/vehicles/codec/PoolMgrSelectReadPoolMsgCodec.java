@@ -0,0 +1,121 @@
+package org.dcache.vehicles.codec;
+
+import static dmg.cells.nucleus.MsgSerializerSchema.readSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.readString;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeSerializable;
+import static dmg.cells.nucleus.MsgSerializerSchema.writeString;
+import static org.dcache.vehicles.codec.MessageCodecs.readFileAttributes;
+import static org.dcache.vehicles.codec.MessageCodecs.readMessage;
+import static org.dcache.vehicles.codec.MessageCodecs.readStringSet;
+import static org.dcache.vehicles.codec.MessageCodecs.writeFileAttributes;
+import static org.dcache.vehicles.codec.MessageCodecs.writeMessage;
+import static org.dcache.vehicles.codec.MessageCodecs.writeStrings;
+
+import diskCacheV111.poolManager.RequestContainerV5.RequestState;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
+import diskCacheV111.vehicles.ProtocolInfo;
+import dmg.cells.nucleus.MessageCodec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.EnumSet;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Schema codec for {@link PoolMgrSelectReadPoolMsg}, sent by doors to pool manager for every read.
+ * <p>
+ * The selection context of the first attempt is encoded as a flag. Protocol info, the contexts of
+ * retries and the selected pool are embedded using Java object serialization.
+ */
+public class PoolMgrSelectReadPoolMsgCodec implements MessageCodec<PoolMgrSelectReadPoolMsg> {
+
+    static final short ID = 6;
+    private static final short VERSION = 1;
+
+    private static final RequestState[] STATES = RequestState.values();
+
+    @Override
+    public Class<PoolMgrSelectReadPoolMsg> getType() {
+        return PoolMgrSelectReadPoolMsg.class;
+    }
+
+    @Override
+    public short getId() {
+        return ID;
+    }
+
+    @Override
+    public short getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void encode(PoolMgrSelectReadPoolMsg message, DataOutput out) throws IOException {
+        writeFileAttributes(out, message.getFileAttributes());
+        writeSerializable(out, message.getProtocolInfo());
+        PoolMgrSelectReadPoolMsg.Context context = message.getContext();
+        boolean isInitial = context != null && context.getRetryCounter() == 0
+              && context.getPreviousStagePool() == null;
+        out.writeBoolean(isInitial);
+        if (!isInitial) {
+            writeSerializable(out, context);
+        }
+        writeStates(out, message.getAllowedStates());
+
+        writeString(out, message.getPoolGroup());
+        writeString(out, message.getIoQueueName());
+        writeString(out, message.getBillingPath());
+        writeString(out, message.getTransferPath());
+        writeString(out, message.getLinkGroup());
+        writeStrings(out, message.getExcludedHosts());
+        writeSerializable(out, message.getPool());
+        writeMessage(out, message);
+    }
+
+    @Override
+    public PoolMgrSelectReadPoolMsg decode(DataInput in, short version) throws IOException {
+        if (version != VERSION) {
+            throw new InvalidObjectException(
+                  "Unsupported PoolMgrSelectReadPoolMsg encoding " + version);
+        }
+        FileAttributes fileAttributes = readFileAttributes(in);
+        ProtocolInfo protocolInfo = readSerializable(in);
+        PoolMgrSelectReadPoolMsg.Context context = in.readBoolean()
+              ? new PoolMgrSelectReadPoolMsg.Context()
+              : readSerializable(in);
+        PoolMgrSelectReadPoolMsg message = new PoolMgrSelectReadPoolMsg(fileAttributes,
+              protocolInfo, null, readStates(in));
+        message.setContext(context);
+
+        message.setPoolGroup(readString(in));
+        message.setIoQueueName(readString(in));
+        message.setBillingPath(readString(in));
+        message.setTransferPath(readString(in));
+        message.setLinkGroup(readString(in));
+        message.setExcludedHosts(readStringSet(in));
+        message.setPool(readSerializable(in));
+        readMessage(in, message);
+        return message;
+    }
+
+    private static void writeStates(DataOutput out, EnumSet<RequestState> states)
+          throws IOException {
+        long bits = 0;
+        for (RequestState state : states) {
+            bits |= 1L << state.ordinal();
+        }
+        out.writeLong(bits);
+    }
+
+    private static EnumSet<RequestState> readStates(DataInput in) throws IOException {
+        long bits = in.readLong();
+        EnumSet<RequestState> states = EnumSet.noneOf(RequestState.class);
+        for (RequestState state : STATES) {
+            if ((bits & (1L << state.ordinal())) != 0) {
+                states.add(state);
+            }
+        }
+        return states;
+    }
+}
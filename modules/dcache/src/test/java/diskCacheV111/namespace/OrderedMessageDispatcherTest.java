@@ -0,0 +1,104 @@
+package diskCacheV111.namespace;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import dmg.cells.nucleus.CellMessage;
+import dmg.cells.nucleus.CellPath;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class OrderedMessageDispatcherTest {
+
+    private OrderedMessageDispatcher _dispatcher;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (_dispatcher != null) {
+            _dispatcher.shutdown(1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void shouldPreserveOrderPerKey() throws Exception {
+        int keys = 20;
+        int messagesPerKey = 200;
+        CountDownLatch done = new CountDownLatch(keys * messagesPerKey);
+        Map<String, List<Integer>> processed = new HashMap<>();
+        _dispatcher = new OrderedMessageDispatcher(4, 8, 0, (envelope, lane) -> {
+            String[] payload = ((String) envelope.getMessageObject()).split(":");
+            synchronized (processed) {
+                processed.computeIfAbsent(payload[0], k -> new ArrayList<>())
+                      .add(Integer.parseInt(payload[1]));
+            }
+            done.countDown();
+        });
+
+        for (int i = 0; i < messagesPerKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                String key = "key" + k;
+                _dispatcher.offer(key, new CellMessage(new CellPath("test"), key + ":" + i));
+            }
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+        for (List<Integer> sequence : processed.values()) {
+            List<Integer> sorted = new ArrayList<>(sequence);
+            Collections.sort(sorted);
+            assertThat(sequence, equalTo(sorted));
+        }
+    }
+
+    @Test
+    public void shouldNotBlockUnrelatedKeysBehindSlowMessage() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(10);
+        _dispatcher = new OrderedMessageDispatcher(2, 64, 0, (envelope, lane) -> {
+            if (envelope.getMessageObject().equals("slow")) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                fastDone.countDown();
+            }
+        });
+
+        _dispatcher.offer(0, new CellMessage(new CellPath("test"), "slow"));
+        for (int i = 1; i <= 10; i++) {
+            _dispatcher.offer(i, new CellMessage(new CellPath("test"), "fast"));
+        }
+
+        assertThat(fastDone.await(5, TimeUnit.SECONDS), is(true));
+        release.countDown();
+    }
+
+    @Test
+    public void shouldRejectWhenLaneIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        _dispatcher = new OrderedMessageDispatcher(1, 1, 1, (envelope, lane) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertThat(_dispatcher.offer("a", new CellMessage(new CellPath("test"), "1")), is(true));
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(_dispatcher.offer("a", new CellMessage(new CellPath("test"), "2")), is(true));
+        assertThat(_dispatcher.offer("a", new CellMessage(new CellPath("test"), "3")), is(false));
+        release.countDown();
+    }
+}
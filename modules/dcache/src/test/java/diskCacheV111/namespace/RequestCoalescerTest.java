@@ -0,0 +1,128 @@
+package diskCacheV111.namespace;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.PnfsMessage;
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.CellMessage;
+import dmg.cells.nucleus.CellPath;
+import java.util.EnumSet;
+import java.util.List;
+import org.dcache.auth.Subjects;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.vehicles.FileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributes;
+import org.dcache.vehicles.PnfsSetFileAttributes;
+import org.junit.Test;
+
+public class RequestCoalescerTest {
+
+    private static final PnfsId PNFSID = new PnfsId("000000000000000000000000000000000001");
+
+    private final RequestCoalescer _coalescer = new RequestCoalescer();
+
+    @Test
+    public void shouldCoalesceIdenticalLookups() {
+        CellMessage leader = envelope(lookup(EnumSet.of(FileAttribute.SIZE)));
+        CellMessage waiter = envelope(lookup(EnumSet.of(FileAttribute.SIZE)));
+
+        assertThat(join(leader), is(false));
+        assertThat(join(waiter), is(true));
+
+        List<CellMessage> waiters = _coalescer.complete(leader);
+        assertThat(waiters.size(), is(1));
+        assertThat(waiters.get(0), is(waiter));
+        assertThat(_coalescer.size(), is(0));
+    }
+
+    @Test
+    public void shouldNotCoalesceDifferentAttributes() {
+        assertThat(join(envelope(lookup(EnumSet.of(FileAttribute.SIZE)))), is(false));
+        assertThat(join(envelope(lookup(EnumSet.of(FileAttribute.MODE)))), is(false));
+        assertThat(_coalescer.size(), is(2));
+    }
+
+    @Test
+    public void shouldNotCoalesceDifferentSubjects() {
+        PnfsGetFileAttributes other = lookup(EnumSet.of(FileAttribute.SIZE));
+        other.setSubject(Subjects.of(1000, 1000, new int[]{1000}));
+
+        assertThat(join(envelope(lookup(EnumSet.of(FileAttribute.SIZE)))), is(false));
+        assertThat(join(envelope(other)), is(false));
+    }
+
+    @Test
+    public void shouldStartNewBatchAfterCompletion() {
+        CellMessage first = envelope(lookup(EnumSet.of(FileAttribute.SIZE)));
+        assertThat(join(first), is(false));
+        _coalescer.complete(first);
+
+        assertThat(join(envelope(lookup(EnumSet.of(FileAttribute.SIZE)))), is(false));
+    }
+
+    @Test
+    public void shouldStartNewBatchAfterModification() {
+        CellMessage leader = envelope(lookup(EnumSet.of(FileAttribute.SIZE)));
+        CellMessage before = envelope(lookup(EnumSet.of(FileAttribute.SIZE)));
+        CellMessage after = envelope(lookup(EnumSet.of(FileAttribute.SIZE)));
+
+        assertThat(join(leader), is(false));
+        assertThat(join(before), is(true));
+        assertThat(join(envelope(new PnfsSetFileAttributes(PNFSID,
+              FileAttributes.ofSize(1)))), is(false));
+        assertThat(join(after), is(false));
+
+        assertThat(_coalescer.complete(leader), equalTo(List.of(before)));
+        assertThat(_coalescer.complete(after).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldReturnAllWaitersWhenDrained() {
+        CellMessage leader = envelope(lookup(EnumSet.of(FileAttribute.SIZE)));
+        CellMessage waiter = envelope(lookup(EnumSet.of(FileAttribute.SIZE)));
+        CellMessage otherLeader = envelope(lookup(EnumSet.of(FileAttribute.MODE)));
+        CellMessage otherWaiter = envelope(lookup(EnumSet.of(FileAttribute.MODE)));
+        join(leader);
+        join(waiter);
+        join(otherLeader);
+        join(otherWaiter);
+
+        List<CellMessage> waiters = _coalescer.drain();
+
+        assertThat(waiters.size(), is(2));
+        assertThat(waiters.containsAll(List.of(waiter, otherWaiter)), is(true));
+        assertThat(_coalescer.size(), is(0));
+        assertThat(_coalescer.complete(leader).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldCompleteLeaderAfterReply() {
+        CellMessage leader = envelope(lookup(EnumSet.of(FileAttribute.SIZE)));
+        CellMessage waiter = envelope(lookup(EnumSet.of(FileAttribute.SIZE)));
+        leader.addSourceAddress(new CellAddressCore("door", "local"));
+        join(leader);
+        join(waiter);
+
+        leader.revertDirection();
+
+        assertThat(_coalescer.complete(leader), equalTo(List.of(waiter)));
+        assertThat(_coalescer.size(), is(0));
+    }
+
+    private boolean join(CellMessage envelope) {
+        return _coalescer.join(envelope, (PnfsMessage) envelope.getMessageObject());
+    }
+
+    private static PnfsGetFileAttributes lookup(EnumSet<FileAttribute> attributes) {
+        PnfsGetFileAttributes message = new PnfsGetFileAttributes(PNFSID, attributes);
+        message.setSubject(Subjects.ROOT);
+        return message;
+    }
+
+    private static CellMessage envelope(PnfsMessage message) {
+        return new CellMessage(new CellPath("PnfsManager"), message);
+    }
+}
@@ -0,0 +1,141 @@
+package org.dcache.http;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeTrue;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.FileStore;
+import org.dcache.pool.repository.RepositoryChannel;
+import org.dcache.util.NettyTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Serves a file over a loopback connection of each {@link NettyTransport}, choosing between a
+ * FileRegion and a ChunkedInput like {@link HttpPoolRequestHandler} does.
+ */
+public class HttpPoolRequestHandlerTransportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] data;
+    private RepositoryChannel file;
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[1_000_000];
+        new Random(42).nextBytes(data);
+        Path path = folder.newFile().toPath();
+        Files.write(path, data);
+        file = new FileRepositoryChannel(path, FileStore.O_READ);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        file.close();
+    }
+
+    @Test
+    public void shouldSendFileRegionOverNio() throws Exception {
+        assertThat(serve(NettyTransport.NIO), is(true));
+    }
+
+    @Test
+    public void shouldSendChunksOverEpoll() throws Exception {
+        assumeTrue(NettyTransport.EPOLL.isAvailable());
+        assertThat(serve(NettyTransport.EPOLL), is(false));
+    }
+
+    /**
+     * Sends the file from a server to a client of the given transport and checks that the data
+     * was received intact.
+     *
+     * @return whether the file was sent with a FileRegion.
+     */
+    private boolean serve(NettyTransport transport) throws Exception {
+        EventLoopGroup group = transport.newEventLoopGroup(1,
+              new DefaultThreadFactory("test-" + transport));
+        try {
+            CompletableFuture<Boolean> usedFileRegion = new CompletableFuture<>();
+            Channel server = new ServerBootstrap()
+                  .group(group)
+                  .channel(transport.getServerChannelClass())
+                  .childHandler(new ChannelInitializer<Channel>() {
+                      @Override
+                      protected void initChannel(Channel ch) {
+                          ch.pipeline().addLast(new ChunkedWriteHandler());
+                          ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                              @Override
+                              public void channelActive(ChannelHandlerContext ctx) {
+                                  boolean zeroCopy =
+                                        HttpPoolRequestHandler.canSendFileRegion(ctx.channel());
+                                  usedFileRegion.complete(zeroCopy);
+                                  Object message = zeroCopy
+                                        ? new ReusableFileRegion(file, 0, data.length)
+                                        : new ReusableChunkedNioFile(file, 0, data.length,
+                                              64 * 1024);
+                                  ctx.writeAndFlush(message)
+                                        .addListener(ChannelFutureListener.CLOSE);
+                              }
+                          });
+                      }
+                  })
+                  .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                  .sync().channel();
+            try {
+                ByteArrayOutputStream received = new ByteArrayOutputStream();
+                Channel client = new Bootstrap()
+                      .group(group)
+                      .channel(transport.getSocketChannelClass())
+                      .handler(new ChannelInboundHandlerAdapter() {
+                          @Override
+                          public void channelRead(ChannelHandlerContext ctx, Object msg)
+                                throws IOException {
+                              ByteBuf buf = (ByteBuf) msg;
+                              try {
+                                  buf.readBytes(received, buf.readableBytes());
+                              } finally {
+                                  buf.release();
+                              }
+                          }
+                      })
+                      .connect(server.localAddress())
+                      .sync().channel();
+                client.closeFuture().await(10, TimeUnit.SECONDS);
+
+                assertArrayEquals(data, received.toByteArray());
+                return usedFileRegion.get(10, TimeUnit.SECONDS);
+            } finally {
+                server.close().sync();
+            }
+        } finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.dcache.http;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.FileStore;
+import org.dcache.pool.repository.RepositoryChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReusableFileRegionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] data;
+    private RepositoryChannel channel;
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        Path file = folder.newFile().toPath();
+        Files.write(file, data);
+        channel = new FileRepositoryChannel(file, FileStore.O_READ);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        channel.close();
+    }
+
+    @Test
+    public void shouldTransferRange() throws IOException {
+        ReusableFileRegion region = new ReusableFileRegion(channel, 1000, 50_000);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        while (region.transferred() < region.count()) {
+            region.transferTo(target, region.transferred());
+        }
+
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, 51_000), out.toByteArray());
+    }
+
+    @Test
+    public void shouldNotCloseChannelWhenReleased() {
+        ReusableFileRegion region = new ReusableFileRegion(channel, 0, data.length);
+
+        assertThat(region.release(), is(true));
+        assertThat(region.getChannel().isOpen(), is(true));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailIfFileIsTooShort() throws IOException {
+        ReusableFileRegion region = new ReusableFileRegion(channel, 0, data.length + 1);
+
+        WritableByteChannel target = Channels.newChannel(new ByteArrayOutputStream());
+        while (region.transferred() < region.count()) {
+            region.transferTo(target, region.transferred());
+        }
+    }
+}
@@ -40,6 +40,7 @@ import dmg.cells.nucleus.SerializationException;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -86,6 +87,7 @@ public class PinManagerTests {
           new GenericStorageInfo("osm", "default");
 
     final static PnfsId PNFS_ID1 = new PnfsId("0000D4CF1C3302B44095969C8216CE1E9175");
+    final static PnfsId PNFS_ID2 = new PnfsId("0000D4CF1C3302B44095969C8216CE1E9176");
 
     final static String REQUEST_ID1 = "request1";
 
@@ -174,6 +176,65 @@ public class PinManagerTests {
         assertValidSticky(pin.getSticky());
     }
 
+    @Test
+    public void testBulkPinning() throws Exception {
+        TestDao dao = new TestDao();
+
+        PinRequestProcessor processor = new PinRequestProcessor();
+        processor.setScheduledExecutor(new TestExecutor());
+        processor.setExecutor(MoreExecutors.directExecutor());
+        processor.setDao(dao);
+        processor.setPoolStub(new TestStub(new CellAddressCore("PinManager")) {
+            public PoolSetStickyMessage messageArrived(PoolSetStickyMessage msg) {
+                return msg;
+            }
+        });
+        processor.setPoolManagerStub(new TestPoolManagerStub(new CellAddressCore("PinManager")) {
+            public PoolMgrSelectReadPoolMsg messageArrived(PoolMgrSelectReadPoolMsg msg) {
+                msg.setPool(POOL1);
+                return msg;
+            }
+        });
+        processor.setMaxLifetime(-1);
+        processor.setStagePermission(new CheckStagePermission(null));
+        processor.setPoolMonitor(new PoolMonitorV5() {
+            @Override
+            public PoolSelector getPoolSelector(FileAttributes fileAttributes,
+                  ProtocolInfo protocolInfo,
+                  String linkGroup,
+                  Set<String> excludes) {
+                return new PoolMonitorV5.PnfsFileLocation(fileAttributes, protocolInfo, linkGroup,
+                      excludes) {
+                    @Override
+                    public SelectedPool selectPinPool() {
+                        return new SelectedPool(new PoolInfo(POOL1.getAddress(),
+                              new PoolCostInfo(POOL1.getName(), IoQueueManager.DEFAULT_QUEUE),
+                              ImmutableMap.of()));
+                    }
+                };
+            }
+        });
+
+        PinManagerBulkPinMessage message =
+              new PinManagerBulkPinMessage(
+                    asList(getAttributes(PNFS_ID1), getAttributes(PNFS_ID2)),
+                    PROTOCOL_INFO, REQUEST_ID1, 30);
+        message = processor.messageArrived(message).get();
+
+        assertEquals(0, message.getReturnCode());
+        assertEquals(2, dao.count(dao.where()));
+        for (int i = 0; i < message.size(); i++) {
+            assertEquals(0, message.getReturnCode(i));
+            assertEquals(POOL1.getName(), message.getPool(i));
+
+            Pin pin = dao.get(dao.where().id(message.getPinId(i)));
+            assertEquals(message.getPnfsId(i), pin.getPnfsId());
+            assertEquals(REQUEST_ID1, pin.getRequestId());
+            assertEquals(PINNED, pin.getState());
+            assertValidSticky(pin.getSticky());
+        }
+    }
+
     @Test
     public void testExtendLifetime() throws Exception {
         TestDao dao = new TestDao();
@@ -288,6 +349,68 @@ public class PinManagerTests {
         assertEquals(pin.getSticky(), newPin.getSticky());
     }
 
+    @Test
+    public void testBulkUnpinning() throws Exception {
+        TestDao dao = new TestDao();
+        for (PnfsId pnfsId : asList(PNFS_ID1, PNFS_ID2)) {
+            dao.create(dao.set()
+                  .subject(Subjects.ROOT)
+                  .requestId(REQUEST_ID1)
+                  .expirationTime(new Date(now() + 30))
+                  .pnfsId(pnfsId)
+                  .pool(POOL1.getName())
+                  .sticky(STICKY1)
+                  .state(PINNED));
+        }
+
+        UnpinRequestProcessor processor = new UnpinRequestProcessor();
+        processor.setDao(dao);
+        processor.setAuthorizationPolicy(new DefaultAuthorizationPolicy());
+
+        PinManagerBulkUnpinMessage message =
+              new PinManagerBulkUnpinMessage(asList(PNFS_ID1, PNFS_ID2), REQUEST_ID1);
+        message = processor.messageArrived(message);
+
+        assertEquals(0, message.getReturnCode());
+        assertEquals(2, message.getUnpinned());
+        assertTrue(message.getDenied().isEmpty());
+        assertEquals(2, dao.count(dao.where().state(READY_TO_UNPIN)));
+    }
+
+    @Test
+    public void testUnpinProcessorClearsStickyFlagsAndDeletesPins() throws Exception {
+        TestDao dao = new TestDao();
+        for (PnfsId pnfsId : asList(PNFS_ID1, PNFS_ID2)) {
+            dao.create(dao.set()
+                  .subject(Subjects.ROOT)
+                  .expirationTime(new Date(now() + 30))
+                  .pnfsId(pnfsId)
+                  .pool(POOL1.getName())
+                  .sticky(STICKY1)
+                  .state(READY_TO_UNPIN));
+        }
+
+        Pool pool = new Pool(POOL1.getName());
+        pool.setActive(true);
+        pool.setAddress(POOL1.getAddress());
+        PoolMonitor poolMonitor = mock(PoolMonitor.class, RETURNS_DEEP_STUBS);
+        when(poolMonitor.getPoolSelectionUnit().getPool(POOL1.getName())).thenReturn(pool);
+
+        List<PnfsId> cleared = new ArrayList<>();
+        UnpinProcessor processor = new UnpinProcessor(dao,
+              new TestStub(new CellAddressCore("PinManager")) {
+                  public PoolSetStickyMessage messageArrived(PoolSetStickyMessage msg) {
+                      assertFalse(msg.isSticky());
+                      cleared.add(msg.getPnfsId());
+                      return msg;
+                  }
+              }, poolMonitor, -1);
+        processor.run();
+
+        assertEquals(2, cleared.size());
+        assertEquals(0, dao.count(dao.where()));
+    }
+
     <T extends Comparable<T>> void assertBetween(T lower, T upper, T actual) {
         String message =
               String.format("Expected between <%s> and <%s> but was <%s>",
@@ -448,6 +571,16 @@ class TestDao implements PinDao {
             return add(p -> Objects.equals(p.getPnfsId(), id));
         }
 
+        @Override
+        public TestCriterion ids(Collection<Long> ids) {
+            return add(p -> ids.contains(p.getPinId()));
+        }
+
+        @Override
+        public TestCriterion pnfsIds(Collection<PnfsId> ids) {
+            return add(p -> ids.contains(p.getPnfsId()));
+        }
+
         @Override
         public TestCriterion requestId(String requestId) {
             this.requestId = requestId;
@@ -0,0 +1,115 @@
+package org.dcache.pool.classic;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.dcache.pool.classic.MoverRequestScheduler.FairShare;
+import org.dcache.pool.classic.MoverRequestScheduler.Order;
+import org.dcache.pool.classic.MoverRequestScheduler.PrioritizedRequest;
+import org.dcache.pool.movers.Mover;
+import org.dcache.util.IoPriority;
+import org.dcache.vehicles.FileAttributes;
+import org.junit.Test;
+
+public class FairShareQueueTest {
+
+    private int _nextId;
+
+    @Test
+    public void shouldServeInOrderWithoutFairShare() {
+        FairShareQueue queue = new FairShareQueue(Order.FIFO, FairShare.NONE);
+        PrioritizedRequest first = request("a:b@osm", IoPriority.REGULAR);
+        PrioritizedRequest second = request("c:d@osm", IoPriority.REGULAR);
+        queue.add(first);
+        queue.add(second);
+
+        assertThat(queue.poll(), is(first));
+        assertThat(queue.poll(), is(second));
+        assertThat(queue.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldServeHighPriorityFirst() {
+        FairShareQueue queue = new FairShareQueue(Order.FIFO, FairShare.NONE);
+        PrioritizedRequest regular = request("a:b@osm", IoPriority.REGULAR);
+        PrioritizedRequest high = request("a:b@osm", IoPriority.HIGH);
+        queue.add(regular);
+        queue.add(high);
+
+        assertThat(queue.poll(), is(high));
+    }
+
+    @Test
+    public void shouldNotStarveOtherTenants() {
+        FairShareQueue queue = new FairShareQueue(Order.FIFO, FairShare.STORAGE_CLASS);
+        for (int i = 0; i < 100; i++) {
+            queue.add(request("a:b@osm", IoPriority.REGULAR));
+        }
+        PrioritizedRequest other = request("c:d@osm", IoPriority.REGULAR);
+        queue.add(other);
+
+        queue.poll();
+        assertThat(queue.poll(), is(other));
+    }
+
+    @Test
+    public void shouldShareByWeight() {
+        FairShareQueue queue = new FairShareQueue(Order.FIFO, FairShare.STORAGE_CLASS);
+        queue.setWeight("a:b@osm", 3);
+        for (int i = 0; i < 100; i++) {
+            queue.add(request("a:b@osm", IoPriority.REGULAR));
+            queue.add(request("c:d@osm", IoPriority.REGULAR));
+        }
+
+        int heavy = 0;
+        for (int i = 0; i < 8; i++) {
+            if (storageClassOf(queue.poll()).equals("a:b@osm")) {
+                heavy++;
+            }
+        }
+        assertThat(heavy, is(6));
+    }
+
+    @Test
+    public void shouldReleaseSlotOfFinishedMover() {
+        FairShareQueue queue = new FairShareQueue(Order.FIFO, FairShare.STORAGE_CLASS);
+        PrioritizedRequest first = request("a:b@osm", IoPriority.REGULAR);
+        PrioritizedRequest second = request("a:b@osm", IoPriority.REGULAR);
+        PrioritizedRequest other = request("c:d@osm", IoPriority.REGULAR);
+        queue.add(first);
+        queue.add(second);
+
+        assertThat(queue.poll(), is(first));
+        queue.finished(first);
+        queue.add(other);
+
+        assertThat(queue.poll(), is(second));
+        assertThat(queue.getTenantInfos().size(), is(2));
+    }
+
+    @Test
+    public void shouldRemoveQueuedMover() {
+        FairShareQueue queue = new FairShareQueue(Order.LIFO, FairShare.STORAGE_CLASS);
+        PrioritizedRequest request = request("a:b@osm", IoPriority.REGULAR);
+        queue.add(request);
+
+        assertThat(queue.remove(request), is(true));
+        assertThat(queue.isEmpty(), is(true));
+        assertThat(queue.getTenantInfos().isEmpty(), is(true));
+    }
+
+    private PrioritizedRequest request(String storageClass, IoPriority priority) {
+        FileAttributes attributes = new FileAttributes();
+        attributes.setStorageClass(storageClass);
+        Mover<?> mover = mock(Mover.class);
+        when(mover.getFileAttributes()).thenReturn(attributes);
+        return new PrioritizedRequest(++_nextId, "door-" + _nextId, mover, priority);
+    }
+
+    private static String storageClassOf(PrioritizedRequest request) {
+        return request.getMover().getFileAttributes().getStorageClass();
+    }
+}
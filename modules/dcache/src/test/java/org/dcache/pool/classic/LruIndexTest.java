@@ -0,0 +1,149 @@
+package org.dcache.pool.classic;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import diskCacheV111.util.PnfsId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class LruIndexTest {
+
+    private static final PnfsId ID1 = new PnfsId("0000D5A2DE4E7AE64D7DBA2C7CD1B8D2A6F0");
+    private static final PnfsId ID2 = new PnfsId("000100000000000000001060");
+    private static final PnfsId ID3 = new PnfsId("0000F1E2DE4E7AE64D7DBA2C7CD1B8D2A6F0");
+
+    private final LruIndex _index = new LruIndex();
+
+    @Test
+    public void shouldReturnEntriesLeastRecentlyUsedFirst() {
+        _index.add(ID1, 30, 1);
+        _index.add(ID2, 10, 2);
+        _index.add(ID3, 20, 4);
+
+        assertThat(_index.values(), contains(ID2, ID3, ID1));
+        assertThat(_index.getTimeOfLeastRecentlyUsed(), is(10L));
+        assertThat(_index.getTotalSize(), is(7L));
+        assertThat(_index.size(), is(3));
+    }
+
+    @Test
+    public void shouldNotAddDuplicate() {
+        assertThat(_index.add(ID1, 10, 1), is(true));
+        assertThat(_index.add(ID1, 20, 1), is(false));
+
+        assertThat(_index.size(), is(1));
+        assertThat(_index.getTimeOfLeastRecentlyUsed(), is(10L));
+    }
+
+    @Test
+    public void shouldReorderTouchedEntry() {
+        _index.add(ID1, 10, 1);
+        _index.add(ID2, 20, 1);
+
+        assertThat(_index.touch(ID1, 30), is(true));
+
+        assertThat(_index.values(), contains(ID2, ID1));
+    }
+
+    @Test
+    public void shouldIgnoreTouchOfMissingEntry() {
+        assertThat(_index.touch(ID1, 30), is(false));
+        assertThat(_index.values(), is(empty()));
+    }
+
+    @Test
+    public void shouldRemoveEntry() {
+        _index.add(ID1, 10, 1);
+        _index.add(ID2, 20, 2);
+
+        assertThat(_index.remove(ID1), is(true));
+        assertThat(_index.remove(ID1), is(false));
+
+        assertThat(_index.values(), contains(ID2));
+        assertThat(_index.getTotalSize(), is(2L));
+        assertThat(_index.getTimeOfLeastRecentlyUsed(), is(20L));
+    }
+
+    @Test
+    public void shouldReturnZeroLruTimeWhenEmpty() {
+        assertThat(_index.getTimeOfLeastRecentlyUsed(), is(0L));
+    }
+
+    @Test
+    public void shouldAgreeWithReferenceUnderRandomOperations() {
+        Random random = new Random(42);
+        Map<PnfsId, Long> reference = new HashMap<>();
+        List<PnfsId> ids = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            ids.add(new PnfsId(String.format("0000%032X", random.nextLong())));
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            PnfsId id = ids.get(random.nextInt(ids.size()));
+            long time = random.nextInt(1000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertThat(_index.add(id, time, 1),
+                          is(reference.putIfAbsent(id, time) == null));
+                    break;
+                case 1:
+                    assertThat(_index.remove(id), is(reference.remove(id) != null));
+                    break;
+                default:
+                    assertThat(_index.touch(id, time), is(reference.replace(id, time) != null));
+                    break;
+            }
+        }
+
+        List<Map.Entry<PnfsId, Long>> expected = new ArrayList<>(reference.entrySet());
+        expected.sort(Comparator.comparing(Map.Entry::getValue));
+        List<PnfsId> actual = _index.values();
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < actual.size(); i++) {
+            assertThat(reference.get(actual.get(i)), is(expected.get(i).getValue()));
+        }
+        assertThat(_index.getTotalSize(), is((long) reference.size()));
+        assertThat(_index.getTimeOfLeastRecentlyUsed(),
+              is(reference.isEmpty() ? 0L : Collections.min(reference.values())));
+    }
+
+    @Test
+    public void shouldTrackLruTimeUnderRandomOperations() {
+        Random random = new Random(7);
+        Map<PnfsId, Long> reference = new HashMap<>();
+        List<PnfsId> ids = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ids.add(new PnfsId(String.format("0000%032X", random.nextLong())));
+        }
+
+        for (int i = 0; i < 20_000; i++) {
+            PnfsId id = ids.get(random.nextInt(ids.size()));
+            long time = random.nextInt(1000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    _index.add(id, time, 1);
+                    reference.putIfAbsent(id, time);
+                    break;
+                case 1:
+                    _index.remove(id);
+                    reference.remove(id);
+                    break;
+                default:
+                    _index.touch(id, time);
+                    reference.replace(id, time);
+                    break;
+            }
+            assertThat(_index.getTimeOfLeastRecentlyUsed(),
+                  is(reference.isEmpty() ? 0L : Collections.min(reference.values())));
+        }
+    }
+}
@@ -7,6 +7,7 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.collection.IsEmptyCollection.empty;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -15,6 +16,9 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.longThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
@@ -28,6 +32,7 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
 import org.dcache.pool.repository.FileRepositoryChannel;
 import org.dcache.pool.repository.FileStore;
@@ -318,6 +323,64 @@ public class ChecksumChannelTest {
         assertThat(chksumChannel.getChecksums(), contains(expectedChecksum));
     }
 
+    @Test
+    public void shouldComputeAdler32AndMd5IfWrittenOutOfOrder() throws IOException {
+        ChecksumChannel csc = new ChecksumChannel(chksumChannel._channel,
+              EnumSet.of(ChecksumType.ADLER32, ChecksumType.MD5_TYPE));
+        int[] blockorder = getRandomPermutationOfBlockOrder();
+        for (int i = 0; i < blockcount; i++) {
+            csc.write(buffers[blockorder[i]], blockorder[i] * blocksize);
+        }
+
+        assertThat(csc.getChecksums(), containsInAnyOrder(expectedChecksum,
+              ChecksumType.ADLER32.calculate(data)));
+    }
+
+    @Test
+    public void shouldNotReadBackForAdler32() throws IOException {
+        RepositoryChannel inner = spy(chksumChannel._channel);
+        ChecksumChannel csc = new ChecksumChannel(inner, EnumSet.of(ChecksumType.ADLER32));
+        for (int block = blockcount - 1; block >= 0; block--) {
+            csc.write(buffers[block], block * blocksize);
+        }
+
+        assertThat(csc.getChecksums(), contains(ChecksumType.ADLER32.calculate(data)));
+        verify(inner, never()).read(any(), anyLong());
+    }
+
+    @Test
+    public void shouldComputeSeveralChecksumsOfLargeBuffers() throws IOException {
+        byte[] large = new byte[KiB.toBytes(1024)];
+        new Random(1).nextBytes(large);
+        ChecksumChannel csc = new ChecksumChannel(chksumChannel._channel,
+              EnumSet.of(ChecksumType.ADLER32, ChecksumType.MD5_TYPE, ChecksumType.SHA1));
+        csc.write(ByteBuffer.wrap(large, KiB.toBytes(512), KiB.toBytes(512)), KiB.toBytes(512));
+        csc.write(ByteBuffer.wrap(large, 0, KiB.toBytes(512)), 0);
+
+        assertThat(csc.getChecksums(), containsInAnyOrder(
+              ChecksumType.ADLER32.calculate(large),
+              ChecksumType.MD5_TYPE.calculate(large),
+              ChecksumType.SHA1.calculate(large)));
+    }
+
+    @Test
+    public void shouldCompleteParallelChecksumUpdateIfInterrupted() throws IOException {
+        byte[] large = new byte[KiB.toBytes(1024)];
+        new Random(1).nextBytes(large);
+        ChecksumChannel csc = new ChecksumChannel(chksumChannel._channel,
+              EnumSet.of(ChecksumType.ADLER32, ChecksumType.MD5_TYPE, ChecksumType.SHA1));
+        chksumChannel._channel.write(ByteBuffer.wrap(large), 0);
+
+        Thread.currentThread().interrupt();
+        csc.updateChecksum(ByteBuffer.wrap(large), 0, large.length);
+
+        assertThat(Thread.interrupted(), is(true));
+        assertThat(csc.getChecksums(), containsInAnyOrder(
+              ChecksumType.ADLER32.calculate(large),
+              ChecksumType.MD5_TYPE.calculate(large),
+              ChecksumType.SHA1.calculate(large)));
+    }
+
     private Map<Long, ByteBuffer> getNonZeroBlocksFromByteArray(byte[] bytes) {
         Map<Long, ByteBuffer> result = new TreeMap<>();
         for (int position = 0; position < bytes.length; position++) {
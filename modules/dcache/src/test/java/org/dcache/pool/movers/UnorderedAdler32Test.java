@@ -0,0 +1,57 @@
+package org.dcache.pool.movers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.Adler32;
+import org.junit.Test;
+
+public class UnorderedAdler32Test {
+
+    private final byte[] data = new byte[100_000];
+
+    {
+        new Random(42).nextBytes(data);
+    }
+
+    @Test
+    public void shouldCombineChecksums() {
+        Adler32 first = new Adler32();
+        first.update(data, 0, 30_000);
+        Adler32 second = new Adler32();
+        second.update(data, 30_000, 70_000);
+
+        assertThat(UnorderedAdler32.combine(first.getValue(), second.getValue(), 70_000),
+              is(adler32(data)));
+    }
+
+    @Test
+    public void shouldComputeChecksumOfRangesReceivedInReverseOrder() {
+        UnorderedAdler32 adler = new UnorderedAdler32();
+        for (int offset = 90_000; offset >= 0; offset -= 10_000) {
+            adler.update(ByteBuffer.wrap(data, offset, 10_000), offset);
+        }
+
+        assertThat(adler.getLength(), is((long) data.length));
+        assertThat(adler.getValue(), equalTo(ByteBuffer.allocate(4)
+              .putInt((int) adler32(data)).array()));
+    }
+
+    @Test
+    public void shouldNotCombineRangesAfterGap() {
+        UnorderedAdler32 adler = new UnorderedAdler32();
+        adler.update(ByteBuffer.wrap(data, 0, 10_000), 0);
+        adler.update(ByteBuffer.wrap(data, 20_000, 10_000), 20_000);
+
+        assertThat(adler.getLength(), is(10_000L));
+    }
+
+    private static long adler32(byte[] bytes) {
+        Adler32 adler = new Adler32();
+        adler.update(bytes);
+        return adler.getValue();
+    }
+}
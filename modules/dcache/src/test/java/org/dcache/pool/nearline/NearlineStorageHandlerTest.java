@@ -1,19 +1,28 @@
 package org.dcache.pool.nearline;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FileExistsCacheException;
+import diskCacheV111.util.FileNotFoundCacheException;
 import diskCacheV111.util.FileNotInCacheException;
 import diskCacheV111.util.PnfsHandler;
 import diskCacheV111.util.PnfsId;
@@ -21,19 +30,27 @@ import diskCacheV111.util.RetentionPolicy;
 import diskCacheV111.vehicles.GenericStorageInfo;
 import java.net.URI;
 import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import org.dcache.cells.CellStub;
 import org.dcache.chimera.InodeId;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileAttributesHandler;
 import org.dcache.namespace.FileType;
 import org.dcache.pool.classic.ChecksumModule;
+import org.dcache.pool.nearline.spi.FlushRequest;
 import org.dcache.pool.nearline.spi.NearlineRequest;
 import org.dcache.pool.nearline.spi.NearlineStorage;
 import org.dcache.pool.repository.FileStore;
 import org.dcache.pool.repository.ReplicaDescriptor;
+import org.dcache.pool.repository.ReplicaState;
 import org.dcache.pool.repository.Repository;
 import org.dcache.util.Checksum;
 import org.dcache.vehicles.FileAttributes;
@@ -381,6 +398,149 @@ public class NearlineStorageHandlerTest {
         verify(hsmRemoveRequestCallack, times(1)).completed(any(), any());
     }
 
+    @Test
+    public void testPreFlushChecksAreBatched() throws Exception {
+        var first = givenFileWithOwnDescriptor();
+        var second = givenFileWithOwnDescriptor();
+        var third = givenFileWithOwnDescriptor();
+
+        nsh.flush("foo", List.of(first, second, third), hsmMigrationRequestCallack);
+        List<NearlineRequest> requests = givenAllFlushes();
+
+        List<Collection<PnfsId>> batches = new ArrayList<>();
+        doAnswer(invocation -> {
+            Collection<PnfsId> ids = new ArrayList<>(invocation.getArgument(0));
+            batches.add(ids);
+            if (batches.size() == 1) {
+                // flushes activated while the first lookup is in progress are batched
+                requests.subList(1, requests.size()).forEach(NearlineRequest::activate);
+            }
+            FileAttributesHandler<PnfsId> handler = invocation.getArgument(2);
+            ids.forEach(id -> {
+                if (id.equals(third)) {
+                    handler.addError(id, new FileNotFoundCacheException("gone"));
+                } else {
+                    handler.addEntry(id, FileAttributes.ofPnfsId(id));
+                }
+            });
+            return null;
+        }).when(pnfs).getFileAttributes(anyCollection(), any(), any(FileAttributesHandler.class));
+
+        requests.get(0).activate();
+
+        assertThat(batches.stream().map(Collection::size).collect(Collectors.toList()),
+              contains(1, 2));
+        assertThat(batches.stream().flatMap(Collection::stream).collect(Collectors.toList()),
+              containsInAnyOrder(first, second, third));
+        verify(pnfs, never()).getFileAttributes(any(PnfsId.class), any());
+        verify(repository).setState(eq(third), eq(ReplicaState.REMOVED), any());
+        verify(repository, never()).setState(eq(first), any(), any());
+        verify(repository, never()).setState(eq(second), any(), any());
+    }
+
+    @Test
+    public void testPreFlushChecksWithPathAreBatched() throws Exception {
+        var first = givenFileWithOwnDescriptor();
+        var second = givenFileWithOwnDescriptor();
+
+        nsh.flush("foo", List.of(first, second), hsmMigrationRequestCallack);
+        List<NearlineRequest> requests = givenAllFlushes();
+
+        List<ListenableFuture<String>> paths = new ArrayList<>();
+        List<Collection<PnfsId>> batches = new ArrayList<>();
+        doAnswer(invocation -> {
+            Collection<PnfsId> ids = new ArrayList<>(invocation.getArgument(0));
+            batches.add(ids);
+            assertThat(invocation.getArgument(1), is(EnumSet.of(FileAttribute.STORAGEINFO)));
+            if (batches.size() == 1) {
+                paths.add(((FlushRequest) requests.get(1)).activateWithPath());
+            }
+            FileAttributesHandler<PnfsId> handler = invocation.getArgument(2);
+            ids.forEach(id -> {
+                GenericStorageInfo info = new GenericStorageInfo();
+                info.setKey("path", "/" + id);
+                handler.addEntry(id, FileAttributes.ofStorageInfo(info));
+            });
+            return null;
+        }).when(pnfs).getFileAttributes(anyCollection(), any(), any(FileAttributesHandler.class));
+
+        paths.add(0, ((FlushRequest) requests.get(0)).activateWithPath());
+
+        assertThat(batches.stream().map(Collection::size).collect(Collectors.toList()),
+              contains(1, 1));
+        assertThat(paths.get(0).get(), is("/" + first));
+        assertThat(paths.get(1).get(), is("/" + second));
+        verify(pnfs, never()).getPathByPnfsId(any());
+    }
+
+    @Test
+    public void testPreFlushChecksContinueAfterUnexpectedFailure() throws Exception {
+        var first = givenFileWithOwnDescriptor();
+        var second = givenFileWithOwnDescriptor();
+
+        nsh.flush("foo", List.of(first, second), hsmMigrationRequestCallack);
+        List<NearlineRequest> requests = givenAllFlushes();
+
+        doThrow(new IllegalStateException("injected"))
+              .doAnswer(invocation -> {
+                  Collection<PnfsId> ids = invocation.getArgument(0);
+                  FileAttributesHandler<PnfsId> handler = invocation.getArgument(2);
+                  ids.forEach(id -> handler.addEntry(id, FileAttributes.ofPnfsId(id)));
+                  return null;
+              })
+              .when(pnfs).getFileAttributes(anyCollection(), any(), any(FileAttributesHandler.class));
+
+        ListenableFuture<?> failed = requests.get(0).activate();
+        ListenableFuture<?> succeeded = requests.get(1).activate();
+
+        assertThat(failed.isDone(), is(true));
+        try {
+            failed.get();
+            fail("Pre-flush check did not fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+        assertThat(succeeded.isDone(), is(true));
+        succeeded.get();
+    }
+
+    @Test
+    public void testPostFlushUpdateIsBatched() throws Exception {
+        var attr = given(aFile()
+              .withStorageClass("a:b", "foo")
+              .withSize(34567));
+
+        nsh.flush("foo", Set.of(attr.getPnfsId()), hsmMigrationRequestCallack);
+        var requests = givenAllFlushesActive();
+
+        requests.forEach(r -> r.completed(Set.of(URI.create("foo://bar/271"))));
+
+        ArgumentCaptor<Map<PnfsId, FileAttributes>> files = ArgumentCaptor.forClass(Map.class);
+        verify(pnfs).fileFlushed(files.capture());
+        assertThat(files.getValue().keySet(), contains(attr.getPnfsId()));
+        assertThat(files.getValue().get(attr.getPnfsId()).getSize(), is(34567L));
+        verify(pnfs, never()).fileFlushed(any(PnfsId.class), any());
+        verify(repository).setState(eq(attr.getPnfsId()), eq(ReplicaState.CACHED), any());
+        verify(hsmMigrationRequestCallack).completed(any(), any());
+    }
+
+    @Test
+    public void testPostFlushUpdateFailsOnInvalidUpdate() throws Exception {
+        var attr = given(aFile()
+              .withStorageClass("a:b", "foo")
+              .withSize(34567));
+        when(pnfs.fileFlushed(any(Map.class))).thenReturn(Map.of(attr.getPnfsId(),
+              new CacheException(CacheException.INVALID_UPDATE, "injected")));
+
+        nsh.flush("foo", Set.of(attr.getPnfsId()), hsmMigrationRequestCallack);
+        var requests = givenAllFlushesActive();
+
+        requests.forEach(r -> r.completed(Set.of(URI.create("foo://bar/271"))));
+
+        verify(repository, never()).setState(eq(attr.getPnfsId()), any(), any());
+        verify(hsmMigrationRequestCallack).failed(any(), any());
+    }
+
     private class FileBuilder {
 
         FileAttributes.Builder faBuilder;
@@ -426,14 +586,27 @@ public class NearlineStorageHandlerTest {
         return new FileBuilder();
     }
 
-    private List<NearlineRequest> givenAllFlushesActive() {
+    private PnfsId givenFileWithOwnDescriptor() throws CacheException {
+        var attr = given(aFile()
+              .withStorageClass("a:b", "foo")
+              .withSize(34567));
+        var descriptor = mock(ReplicaDescriptor.class);
+        when(descriptor.getFileAttributes()).thenReturn(attr);
+        when(repository.openEntry(eq(attr.getPnfsId()), any())).thenReturn(descriptor);
+        return attr.getPnfsId();
+    }
+
+    private List<NearlineRequest> givenAllFlushes() {
 
         var ac = ArgumentCaptor.forClass(Iterable.class);
         verify(nearlineStorage).flush(ac.capture());
-        List<NearlineRequest> requests = (List<NearlineRequest>) StreamSupport.stream(
+        return (List<NearlineRequest>) StreamSupport.stream(
               ac.getValue().spliterator(), false).collect(
               Collectors.toList());
+    }
 
+    private List<NearlineRequest> givenAllFlushesActive() {
+        List<NearlineRequest> requests = givenAllFlushes();
         requests.forEach(r -> r.activate());
         return requests;
     }
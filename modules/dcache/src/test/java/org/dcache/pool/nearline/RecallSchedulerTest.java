@@ -0,0 +1,100 @@
+package org.dcache.pool.nearline;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import diskCacheV111.vehicles.GenericStorageInfo;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.dcache.pool.nearline.spi.NearlineStorage;
+import org.dcache.pool.nearline.spi.StageRequest;
+import org.dcache.vehicles.FileAttributes;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class RecallSchedulerTest {
+
+    private ScheduledExecutorService executor;
+    private NearlineStorage storage;
+    private List<List<StageRequest>> released;
+    private RecallScheduler<StageRequest> scheduler;
+
+    @Before
+    public void setUp() {
+        executor = mock(ScheduledExecutorService.class);
+        storage = mock(NearlineStorage.class);
+        released = new ArrayList<>();
+        scheduler = new RecallScheduler<>(executor, new UriQueryTapeLocationExtractor(), 5,
+              TimeUnit.SECONDS, (s, requests) -> released.add(requests));
+    }
+
+    @Test
+    public void shouldOrderByTapeThenPosition() {
+        StageRequest a7 = aRequestOn("enstore://enstore/?volume=A&location_cookie=0000_000000000_0000007");
+        StageRequest b3 = aRequestOn("enstore://enstore/?volume=B&location_cookie=0000_000000000_0000003");
+        StageRequest a2 = aRequestOn("enstore://enstore/?volume=A&location_cookie=0000_000000000_0000002");
+        StageRequest unknown = aRequestOn("osm://osm/?store=s&group=g&bfid=1");
+        StageRequest b1 = aRequestOn("enstore://enstore/?volume=B&location_cookie=0000_000000000_0000001");
+        StageRequest a5 = aRequestOn("enstore://enstore/?volume=A&location_cookie=0000_000000000_0000005");
+
+        List<StageRequest> ordered = scheduler.order(List.of(a7, b3, a2, unknown, b1, a5));
+
+        assertThat(ordered, contains(a2, a5, a7, b1, b3, unknown));
+        // arrival order A B A B A needs five mounts, ordered only two
+        assertThat(scheduler.getMountsAvoided(), is(3L));
+    }
+
+    @Test
+    public void shouldReleaseCollectedRequestsAtEndOfWindow() {
+        StageRequest a2 = aRequestOn("hsm://hsm/?tape=A&position=2");
+        StageRequest a1 = aRequestOn("hsm://hsm/?tape=A&position=1");
+
+        scheduler.submit(storage, List.of(a2));
+        scheduler.submit(storage, List.of(a1));
+
+        ArgumentCaptor<Runnable> release = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(release.capture(), eq(5000L), eq(TimeUnit.MILLISECONDS));
+        assertThat(released.isEmpty(), is(true));
+
+        release.getValue().run();
+
+        assertThat(released, contains(List.of(a1, a2)));
+    }
+
+    @Test
+    public void shouldReleaseAllWithoutWaitingForWindow() {
+        StageRequest a1 = aRequestOn("hsm://hsm/?tape=A&position=1");
+
+        scheduler.submit(storage, List.of(a1));
+        scheduler.releaseAll();
+
+        assertThat(released, contains(List.of(a1)));
+    }
+
+    @Test
+    public void shouldNotScheduleEmptySubmission() {
+        scheduler.submit(storage, List.of());
+
+        verify(executor, never()).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    private StageRequest aRequestOn(String location) {
+        GenericStorageInfo info = new GenericStorageInfo("osm", "a:b");
+        info.addLocation(URI.create(location));
+        StageRequest request = mock(StageRequest.class);
+        when(request.getFileAttributes()).thenReturn(FileAttributes.of().storageInfo(info).build());
+        return request;
+    }
+}
@@ -0,0 +1,110 @@
+package org.dcache.pool.repository.meta.db;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+
+import diskCacheV111.util.PnfsId;
+import java.util.Map;
+import org.dcache.pool.repository.FileStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AccessTimeWriterTest {
+
+    private static final PnfsId PNFSID = new PnfsId("0000D4F2A4E9BB8E4D8B8D4F6DBBBD8B1B0A");
+    private static final String ID = PNFSID.toString();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BerkeleyDBMetaDataRepository store;
+    private AccessTimeWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new BerkeleyDBMetaDataRepository(mock(FileStore.class),
+              folder.getRoot().toPath(), "pool");
+        store.setEnvironment(Map.of(
+              "pool.plugins.meta.db.access-time.flush-period", "1",
+              "pool.plugins.meta.db.access-time.flush-period.unit", "HOURS"));
+        store.init();
+        writer = store.accessTimes;
+        store.getAccessTimeInfo().put(ID, new AccessTimeInfo(1000L));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    private Long storedAccessTime() {
+        AccessTimeInfo info = store.getAccessTimeInfo().get(ID);
+        return info == null ? null : info.getLastAccessTime();
+    }
+
+    @Test
+    public void shouldWriteLatestUpdateOnFlush() throws Exception {
+        store.setLastModifiedTime(PNFSID, 2000L);
+        store.setLastModifiedTime(PNFSID, 3000L);
+
+        assertThat(storedAccessTime(), is(nullValue()));
+        assertThat(writer.flush(), is(1L));
+        assertThat(storedAccessTime(), is(3000L));
+        assertThat(writer.getPending(), is(0));
+        assertThat(writer.getPersisted(), is(1L));
+        assertThat(writer.getCoalesced(), is(1L));
+        assertThat(writer.getTransactions(), is(1L));
+    }
+
+    @Test
+    public void shouldWriteSingleReplicaOnFlush() throws Exception {
+        store.setLastModifiedTime(PNFSID, 2000L);
+
+        writer.flush(ID);
+
+        assertThat(storedAccessTime(), is(2000L));
+        assertThat(writer.getPending(), is(0));
+        assertThat(writer.flush(), is(0L));
+    }
+
+    @Test
+    public void shouldNotWriteDiscardedUpdate() throws Exception {
+        store.setLastModifiedTime(PNFSID, 2000L);
+
+        writer.discard(ID);
+
+        assertThat(writer.flush(), is(0L));
+        assertThat(storedAccessTime(), is(nullValue()));
+        assertThat(writer.getDiscarded(), is(1L));
+    }
+
+    @Test
+    public void shouldNotRecreateRecordOfRemovedReplica() throws Exception {
+        store.remove(PNFSID);
+        store.setLastModifiedTime(PNFSID, 2000L);
+
+        assertThat(writer.flush(), is(0L));
+        assertThat(store.getAccessTimeInfo().containsKey(ID), is(false));
+        assertThat(writer.getPending(), is(0));
+        assertThat(writer.getDiscarded(), is(1L));
+    }
+
+    @Test
+    public void shouldWriteThroughWithoutFlushPeriod() throws Exception {
+        store.close();
+        store = new BerkeleyDBMetaDataRepository(mock(FileStore.class),
+              folder.getRoot().toPath(), "pool");
+        store.setEnvironment(Map.of());
+        store.init();
+
+        store.setLastModifiedTime(PNFSID, 2000L);
+
+        assertThat(store.accessTimes, is(nullValue()));
+        assertThat(storedAccessTime(), is(2000L));
+    }
+}
@@ -0,0 +1,114 @@
+package org.dcache.pool.repository.v5;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import diskCacheV111.util.PnfsId;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.StickyRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InventorySnapshotTest {
+
+    private Path _dir;
+    private Path _file;
+
+    @Before
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("snapshot");
+        _file = _dir.resolve("inventory.snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_file);
+        Files.delete(_dir);
+    }
+
+    @Test
+    public void shouldReadWhatWasWritten() throws IOException {
+        PnfsId chimeraId = new PnfsId("0000D5A2DE4E7AE64D7DBA2C7CD1B8D2A6F0");
+        PnfsId pnfsId = new PnfsId("000100000000000000001060");
+        List<InventorySnapshot.Entry> entries = List.of(
+              new InventorySnapshot.Entry(chimeraId, ReplicaState.CACHED, 1024, 42,
+                    List.of(new StickyRecord("system", StickyRecord.NON_EXPIRING),
+                          new StickyRecord("pin:é", 4711))),
+              new InventorySnapshot.Entry(pnfsId, ReplicaState.PRECIOUS, 0, 17,
+                    Collections.emptyList()));
+
+        assertThat(InventorySnapshot.write(_file, entries), is(2L));
+        List<InventorySnapshot.Entry> read = InventorySnapshot.read(_file);
+
+        assertThat(read.size(), is(2));
+        assertThat(read.get(0).getPnfsId(), is(chimeraId));
+        assertThat(read.get(0).getState(), is(ReplicaState.CACHED));
+        assertThat(read.get(0).getReplicaSize(), is(1024L));
+        assertThat(read.get(0).getLastAccessTime(), is(42L));
+        assertThat(read.get(0).getStickyRecords(), contains(
+              new StickyRecord("system", StickyRecord.NON_EXPIRING),
+              new StickyRecord("pin:é", 4711)));
+        assertThat(read.get(1).getPnfsId(), is(pnfsId));
+        assertThat(read.get(1).getState(), is(ReplicaState.PRECIOUS));
+        assertThat(read.get(1).getStickyRecords(), is(empty()));
+    }
+
+    @Test
+    public void shouldReadEmptySnapshot() throws IOException {
+        InventorySnapshot.write(_file, Collections.emptyList());
+
+        assertThat(InventorySnapshot.read(_file), is(empty()));
+    }
+
+    @Test
+    public void shouldReadLargeSnapshot() throws IOException {
+        List<InventorySnapshot.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            entries.add(new InventorySnapshot.Entry(new PnfsId(Integer.toHexString(i)),
+                  ReplicaState.CACHED, i, i, Collections.emptyList()));
+        }
+        InventorySnapshot.write(_file, entries);
+
+        List<InventorySnapshot.Entry> read = InventorySnapshot.read(_file);
+
+        assertThat(read.size(), is(entries.size()));
+        assertThat(read.get(99_999).getPnfsId(), is(new PnfsId(Integer.toHexString(99_999))));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectTruncatedSnapshot() throws IOException {
+        writeSingleEntry();
+        try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        InventorySnapshot.read(_file);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectCorruptedSnapshot() throws IOException {
+        writeSingleEntry();
+        byte[] content = Files.readAllBytes(_file);
+        content[20] ^= 0xff;
+        Files.write(_file, content);
+
+        InventorySnapshot.read(_file);
+    }
+
+    private void writeSingleEntry() throws IOException {
+        InventorySnapshot.write(_file, List.of(
+              new InventorySnapshot.Entry(new PnfsId("000100000000000000001060"),
+                    ReplicaState.CACHED, 1, 1, Collections.emptyList())));
+    }
+}
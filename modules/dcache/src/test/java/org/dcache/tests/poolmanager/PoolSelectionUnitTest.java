@@ -28,10 +28,10 @@ import org.junit.Test;
 
 public class PoolSelectionUnitTest {
 
-    private final PoolSelectionUnitV2 _psu = new PoolSelectionUnitV2();
-    private final CommandInterpreter _ci = new CommandInterpreter(_psu);
+    protected final PoolSelectionUnitV2 _psu = new PoolSelectionUnitV2();
+    protected final CommandInterpreter _ci = new CommandInterpreter(_psu);
 
-    private final Predicate<String> defaultExclude = p -> false;
+    protected final Predicate<String> defaultExclude = p -> false;
 
     @Before
     public void setUp() throws Exception {
@@ -793,6 +793,60 @@ public class PoolSelectionUnitTest {
     }
 
 
+    @Test
+    public void testCachedSelectionAppliesExclusion() throws CommandException {
+        _psu.setSelectionCacheSize(100);
+        _ci.command("psu set allpoolsactive on");
+        FileAttributes fileAttributes = new FileAttributes();
+        StorageInfos.injectInto(GenericStorageInfo.valueOf("h1:u1@osm", "*"), fileAttributes);
+
+        PoolPreferenceLevel[] first = _psu.match(DirectionType.READ, "131.169.214.149", null,
+              fileAttributes, null, defaultExclude);
+        PoolPreferenceLevel[] second = _psu.match(DirectionType.READ, "131.169.214.149", null,
+              fileAttributes, null, p -> p.equals("h1-read"));
+
+        assertEquals(List.of("h1-read"), first[0].getPoolList());
+        assertEquals(List.of(), second[0].getPoolList());
+        assertEquals(List.of("default-read"), second[1].getPoolList());
+    }
+
+    @Test
+    public void testCachedSelectionSharedByClientsOfSameNetUnit() throws CommandException {
+        _psu.setSelectionCacheSize(100);
+        _ci.command("psu set allpoolsactive on");
+        FileAttributes fileAttributes = new FileAttributes();
+        StorageInfos.injectInto(GenericStorageInfo.valueOf("h1:u1@osm", "*"), fileAttributes);
+
+        _psu.match(DirectionType.READ, "131.169.214.149", null, fileAttributes, null,
+              defaultExclude);
+        PoolPreferenceLevel[] second = _psu.match(DirectionType.READ, "131.169.1.1", null,
+              fileAttributes, null, defaultExclude);
+        _psu.match(DirectionType.READ, "192.0.2.1", null, fileAttributes, null,
+              defaultExclude);
+
+        assertEquals(List.of("h1-read"), second[0].getPoolList());
+        String info = _ci.command("psu show selection cache").toString();
+        assertTrue(info, info.matches("(?s).*Hits *: 1\\n.*"));
+        assertTrue(info, info.matches("(?s).*Misses *: 2\\n.*"));
+    }
+
+    @Test
+    public void testCachedSelectionInvalidatedBySetupChange() throws CommandException {
+        _psu.setSelectionCacheSize(100);
+        _ci.command("psu set allpoolsactive on");
+        FileAttributes fileAttributes = new FileAttributes();
+        StorageInfos.injectInto(GenericStorageInfo.valueOf("h1:u1@osm", "*"), fileAttributes);
+
+        PoolPreferenceLevel[] before = _psu.match(DirectionType.READ, "131.169.214.149", null,
+              fileAttributes, null, defaultExclude);
+        _ci.command("psu set pool h1-read disabled");
+        PoolPreferenceLevel[] after = _psu.match(DirectionType.READ, "131.169.214.149", null,
+              fileAttributes, null, defaultExclude);
+
+        assertEquals(List.of("h1-read"), before[0].getPoolList());
+        assertEquals(List.of(), after[0].getPoolList());
+    }
+
     @Test
     public void testActive() throws CommandException {
 
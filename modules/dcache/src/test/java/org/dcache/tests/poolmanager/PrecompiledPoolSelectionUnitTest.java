@@ -0,0 +1,132 @@
+package org.dcache.tests.poolmanager;
+
+import static org.junit.Assert.assertEquals;
+
+import diskCacheV111.poolManager.PoolPreferenceLevel;
+import diskCacheV111.poolManager.PoolSelectionUnit.DirectionType;
+import diskCacheV111.poolManager.PoolSelectionUnitV2;
+import diskCacheV111.pools.PoolV2Mode;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.StorageInfos;
+import dmg.util.CommandException;
+import dmg.util.CommandInterpreter;
+import java.util.ArrayList;
+import java.util.List;
+import org.dcache.util.Args;
+import org.dcache.vehicles.FileAttributes;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the pool selection tests against the precompiled selection snapshot.
+ */
+public class PrecompiledPoolSelectionUnitTest extends PoolSelectionUnitTest {
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        _psu.setSelectionPrecompiled(true);
+    }
+
+    @Test
+    public void shouldSeeSetupChangesAfterMatch() throws CommandException {
+        _ci.command("psu set allpoolsactive on");
+        FileAttributes fileAttributes = new FileAttributes();
+        StorageInfos.injectInto(GenericStorageInfo.valueOf("*", "*"), fileAttributes);
+
+        PoolPreferenceLevel[] before = _psu.match(DirectionType.READ, "131.169.214.149", null,
+              fileAttributes, null, defaultExclude);
+        assertEquals(1, before.length);
+
+        _ci.command(new Args("psu set link default-read-link-in -readpref=0"));
+        _ci.command(new Args("psu set link default-read-link-ex -readpref=0"));
+
+        PoolPreferenceLevel[] after = _psu.match(DirectionType.READ, "131.169.214.149", null,
+              fileAttributes, null, defaultExclude);
+        assertEquals(0, after.length);
+    }
+
+    @Test
+    public void shouldMatchLockedSelectionOnLargeSetup() throws CommandException {
+        PoolSelectionUnitV2 locked = new PoolSelectionUnitV2();
+        PoolSelectionUnitV2 precompiled = new PoolSelectionUnitV2();
+        precompiled.setSelectionPrecompiled(true);
+        createLargeSetup(locked);
+        createLargeSetup(precompiled);
+
+        for (DirectionType type : new DirectionType[]{DirectionType.READ, DirectionType.WRITE,
+              DirectionType.CACHE, DirectionType.P2P}) {
+            for (int i = 0; i < 60; i++) {
+                FileAttributes fileAttributes = new FileAttributes();
+                StorageInfos.injectInto(GenericStorageInfo.valueOf("exp" + i + ":raw@osm", "*"),
+                      fileAttributes);
+                String net = (i % 2 == 0) ? "10.0." + (i % 8) + ".1" : "192.168.1.1";
+                assertEquals(describe(locked.match(type, net, null, fileAttributes, null,
+                            defaultExclude)),
+                      describe(precompiled.match(type, net, null, fileAttributes, null,
+                            defaultExclude)));
+            }
+        }
+    }
+
+    private static void createLargeSetup(PoolSelectionUnitV2 psu) throws CommandException {
+        CommandInterpreter ci = new CommandInterpreter(psu);
+        ci.command("psu set allpoolsactive on");
+        ci.command(new Args("psu create unit -store *@*"));
+        ci.command(new Args("psu create ugroup any-store"));
+        ci.command(new Args("psu addto ugroup any-store *@*"));
+        ci.command(new Args("psu create unit -net 0.0.0.0/0.0.0.0"));
+        ci.command(new Args("psu create ugroup world"));
+        ci.command(new Args("psu addto ugroup world 0.0.0.0/0.0.0.0"));
+
+        for (int net = 0; net < 8; net++) {
+            String unit = "10.0." + net + ".0/255.255.255.0";
+            ci.command(new Args("psu create unit -net " + unit));
+            ci.command(new Args("psu create ugroup net-" + net));
+            ci.command(new Args("psu addto ugroup net-" + net + " " + unit));
+        }
+
+        for (int i = 0; i < 400; i++) {
+            String pool = "pool-" + i;
+            ci.command(new Args("psu create pool " + pool));
+            psu.getPool(pool).setPoolMode(new PoolV2Mode(
+                  i % 7 == 0 ? PoolV2Mode.DISABLED_RDONLY : PoolV2Mode.ENABLED));
+        }
+
+        for (int i = 0; i < 40; i++) {
+            String unit = "exp" + i + ":raw@osm";
+            ci.command(new Args("psu create unit -store " + unit));
+            ci.command(new Args("psu create ugroup exp-" + i));
+            ci.command(new Args("psu addto ugroup exp-" + i + " " + unit));
+
+            ci.command(new Args("psu create pgroup exp-" + i + "-pools"));
+            for (int j = 0; j < 10; j++) {
+                ci.command(new Args("psu addto pgroup exp-" + i + "-pools pool-" + (i * 10 + j)));
+            }
+
+            ci.command(new Args("psu create link exp-" + i + "-link exp-" + i + " net-" + (i % 8)));
+            ci.command(new Args("psu set link exp-" + i + "-link -readpref=" + (10 + i % 3)
+                  + " -writepref=" + (10 + i % 4) + " -cachepref=" + (i % 5)
+                  + " -p2ppref=" + (i % 2 == 0 ? -1 : 5)));
+            ci.command(new Args("psu addto link exp-" + i + "-link exp-" + i + "-pools"));
+            ci.command(new Args("psu addto link exp-" + i + "-link pool-" + (399 - i)));
+        }
+
+        ci.command(new Args("psu create pgroup fallback"));
+        for (int i = 0; i < 400; i += 13) {
+            ci.command(new Args("psu addto pgroup fallback pool-" + i));
+        }
+        ci.command(new Args("psu create link fallback-link any-store world"));
+        ci.command(new Args("psu set link fallback-link -readpref=1 -writepref=1 -cachepref=1"));
+        ci.command(new Args("psu addto link fallback-link fallback"));
+    }
+
+    private static List<String> describe(PoolPreferenceLevel[] levels) {
+        List<String> description = new ArrayList<>();
+        for (PoolPreferenceLevel level : levels) {
+            description.add(level.getTag() + ":" + level.getPoolList());
+        }
+        return description;
+    }
+}
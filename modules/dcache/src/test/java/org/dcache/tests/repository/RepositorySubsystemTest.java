@@ -910,6 +910,52 @@ public class RepositorySubsystemTest
         assertSpaceRecord(repoSize, r.getFreeSpace(), r.getPreciousSpace(), r.getRemovableSpace());
     }
 
+    @Test
+    public void testLoadFromInventorySnapshot()
+          throws IOException, CacheException, InterruptedException {
+        Path snapshot = metaRoot.resolve("inventory.snapshot");
+        repository.setSnapshotFile(snapshot.toFile());
+        repository.init();
+        repository.load();
+        repository.shutdown();
+        replicaStore.close();
+        sweeper.stop();
+        assertTrue(Files.exists(snapshot));
+
+        initRepository();
+        repository.setSnapshotFile(snapshot.toFile());
+        sweeper.setAccount(account);
+        sweeper.setRepository(repository);
+        sweeper.start();
+        repository.init();
+        stateChangeEvents.clear();
+        repository.load();
+
+        assertFalse(Files.exists(snapshot));
+        assertSpaceRecord(repoSize, repoSize - 2048 - 1024, 1024, 0);
+
+        for (int i = 0; i < 100 && repository.getSpaceRecord().getRemovableSpace() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertSpaceRecord(repoSize, repoSize - 2048 - 1024, 1024, 1024);
+        assertCanOpen(id2, size2, CACHED);
+        assertCanOpen(id3, size3, CACHED);
+        assertSpaceRecord(repoSize, repoSize - 2048 - 1024, 1024, 1024);
+    }
+
+    @Test
+    public void testLoadIgnoresIncompleteInventorySnapshot()
+          throws IOException, CacheException, InterruptedException {
+        Path snapshot = metaRoot.resolve("inventory.snapshot");
+        Files.write(snapshot, new byte[64]);
+        repository.setSnapshotFile(snapshot.toFile());
+        repository.init();
+        repository.load();
+
+        assertFalse(Files.exists(snapshot));
+        assertSpaceRecord(repoSize, repoSize - 2048 - 1024, 1024, 1024);
+    }
+
     @Test
     public void testWaitforLoad() throws CacheException, InterruptedException {
 
@@ -0,0 +1,233 @@
+package org.dcache.util;
+
+import com.sun.management.OperatingSystemMXBean;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Loopback benchmark comparing the available {@link NettyTransport}s.
+ * <p>
+ * For every transport, measures the request rate of many connections exchanging single byte
+ * requests and responses, and the CPU time needed to stream bulk data from a server to a client.
+ * Client and server run in the same process, so the CPU time covers both ends of the connection.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *     java -cp ... org.dcache.util.NettyTransportBenchmark [seconds] [GiB]
+ * </pre>
+ */
+public class NettyTransportBenchmark {
+
+    private static final int CONNECTIONS = 16;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long GIB = 1024L * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        long bytes = (args.length > 1 ? Long.parseLong(args[1]) : 4) * GIB;
+
+        System.out.printf("%-6s %14s %14s%n", "", "requests/s", "CPU s/GiB");
+        for (NettyTransport transport : NettyTransport.values()) {
+            if (!transport.isAvailable()) {
+                System.out.printf("%-6s %14s %14s%n", transport, "n/a", "n/a");
+                continue;
+            }
+            EventLoopGroup group = transport.newEventLoopGroup(0,
+                  new DefaultThreadFactory("benchmark-" + transport));
+            try {
+                double requestsPerSecond = requestsPerSecond(transport, group, seconds);
+                double cpuPerGiB = cpuSecondsPerGiB(transport, group, bytes);
+                System.out.printf("%-6s %14.0f %14.3f%n", transport, requestsPerSecond,
+                      cpuPerGiB);
+            } finally {
+                group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+            }
+        }
+    }
+
+    private static double requestsPerSecond(NettyTransport transport, EventLoopGroup group,
+          long seconds) throws Exception {
+        LongAdder responses = new LongAdder();
+        Channel server = listen(transport, group, Echo::new);
+        try {
+            List<Channel> clients = new ArrayList<>();
+            for (int i = 0; i < CONNECTIONS; i++) {
+                clients.add(connect(transport, group, server, new PingPong(responses)));
+            }
+            TimeUnit.SECONDS.sleep(1);
+            long start = responses.sum();
+            long startTime = System.nanoTime();
+            TimeUnit.SECONDS.sleep(seconds);
+            long count = responses.sum() - start;
+            long elapsed = System.nanoTime() - startTime;
+            for (Channel client : clients) {
+                client.close().sync();
+            }
+            return count * 1e9 / elapsed;
+        } finally {
+            server.close().sync();
+        }
+    }
+
+    private static double cpuSecondsPerGiB(NettyTransport transport, EventLoopGroup group,
+          long bytes) throws Exception {
+        OperatingSystemMXBean os =
+              (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        CountDownLatch done = new CountDownLatch(1);
+        Channel server = listen(transport, group, () -> new Source(bytes));
+        try {
+            long cpu = os.getProcessCpuTime();
+            Channel client = connect(transport, group, server, new Sink(bytes, done));
+            done.await();
+            cpu = os.getProcessCpuTime() - cpu;
+            client.close().sync();
+            return cpu / 1e9 / ((double) bytes / GIB);
+        } finally {
+            server.close().sync();
+        }
+    }
+
+    private static Channel listen(NettyTransport transport, EventLoopGroup group,
+          Supplier<ChannelHandler> handler) throws InterruptedException {
+        return new ServerBootstrap()
+              .group(group)
+              .channel(transport.getServerChannelClass())
+              .childHandler(new ChannelInitializer<Channel>() {
+                  @Override
+                  protected void initChannel(Channel ch) {
+                      ch.pipeline().addLast(handler.get());
+                  }
+              })
+              .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+              .sync().channel();
+    }
+
+    private static Channel connect(NettyTransport transport, EventLoopGroup group, Channel server,
+          ChannelHandler handler) throws InterruptedException {
+        return new Bootstrap()
+              .group(group)
+              .channel(transport.getSocketChannelClass())
+              .handler(handler)
+              .connect(server.localAddress())
+              .sync().channel();
+    }
+
+    /**
+     * Returns every request to the client.
+     */
+    private static class Echo extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ctx.writeAndFlush(msg);
+        }
+    }
+
+    /**
+     * Sends a new single byte request whenever a response is received.
+     */
+    private static class PingPong extends ChannelInboundHandlerAdapter {
+
+        private final LongAdder responses;
+
+        PingPong(LongAdder responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            ctx.writeAndFlush(ctx.alloc().buffer(1).writeByte(0));
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ByteBuf buf = (ByteBuf) msg;
+            for (int i = buf.readableBytes(); i > 0; i--) {
+                responses.increment();
+                ctx.write(ctx.alloc().buffer(1).writeByte(0));
+            }
+            buf.release();
+            ctx.flush();
+        }
+    }
+
+    /**
+     * Streams the given number of bytes to the client, respecting back pressure.
+     */
+    private static class Source extends ChannelInboundHandlerAdapter {
+
+        private final ByteBuf chunk = PooledByteBufAllocator.DEFAULT.directBuffer(CHUNK_SIZE)
+              .writeZero(CHUNK_SIZE);
+        private long remaining;
+
+        Source(long bytes) {
+            remaining = bytes;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            send(ctx);
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            send(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            chunk.release();
+        }
+
+        private void send(ChannelHandlerContext ctx) {
+            while (remaining > 0 && ctx.channel().isWritable()) {
+                int length = (int) Math.min(remaining, CHUNK_SIZE);
+                ctx.write(chunk.retainedSlice(0, length));
+                remaining -= length;
+            }
+            ctx.flush();
+        }
+    }
+
+    /**
+     * Discards all data and signals once the expected number of bytes were received.
+     */
+    private static class Sink extends ChannelInboundHandlerAdapter {
+
+        private final CountDownLatch done;
+        private long remaining;
+
+        Sink(long bytes, CountDownLatch done) {
+            this.remaining = bytes;
+            this.done = done;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            remaining -= ((ByteBuf) msg).readableBytes();
+            ReferenceCountUtil.release(msg);
+            if (remaining <= 0) {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.dcache.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import io.netty.channel.epoll.Epoll;
+import org.junit.Test;
+
+public class NettyTransportTest {
+
+    @Test
+    public void shouldSelectNio() {
+        assertThat(NettyTransport.forName("nio"), is(NettyTransport.NIO));
+    }
+
+    @Test
+    public void shouldIgnoreCase() {
+        assertThat(NettyTransport.forName("NIO"), is(NettyTransport.NIO));
+    }
+
+    @Test
+    public void shouldSelectEpollIfAvailable() {
+        assertThat(NettyTransport.forName("epoll"),
+              is(Epoll.isAvailable() ? NettyTransport.EPOLL : NettyTransport.NIO));
+    }
+
+    @Test
+    public void shouldSelectBestTransportForAuto() {
+        assertThat(NettyTransport.forName("auto"),
+              is(Epoll.isAvailable() ? NettyTransport.EPOLL : NettyTransport.NIO));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownTransport() {
+        NettyTransport.forName("kqueue");
+    }
+
+    @Test
+    public void shouldUseToStringAsName() {
+        for (NettyTransport transport : NettyTransport.values()) {
+            assertThat(NettyTransport.forName(transport.toString()).isAvailable(), is(true));
+        }
+    }
+}
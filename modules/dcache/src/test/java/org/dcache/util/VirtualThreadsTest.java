@@ -0,0 +1,30 @@
+package org.dcache.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void testExecutorMatchesSupport() {
+        Optional<ExecutorService> executor = VirtualThreads.newThreadPerTaskExecutor("test-");
+        assertEquals(VirtualThreads.isSupported(), executor.isPresent());
+        executor.ifPresent(ExecutorService::shutdown);
+    }
+
+    @Test
+    public void testExecutorRunsTasks() throws Exception {
+        Optional<ExecutorService> executor = VirtualThreads.newThreadPerTaskExecutor("test-");
+        if (executor.isPresent()) {
+            String name = executor.get().submit(() -> Thread.currentThread().getName())
+                  .get(5, TimeUnit.SECONDS);
+            assertTrue(name.startsWith("test-"));
+            executor.get().shutdown();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.dcache.vehicles.codec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import diskCacheV111.poolManager.RequestContainerV5;
+import diskCacheV111.poolManager.RequestContainerV5.RequestState;
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.DCapProtocolInfo;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.Pool;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.MsgSerializerJos;
+import dmg.cells.nucleus.MsgSerializerSchema;
+import java.net.InetSocketAddress;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.dcache.auth.Subjects;
+import org.dcache.pool.assumption.Assumptions;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+import org.junit.Test;
+
+public class PoolMgrSelectReadPoolMsgCodecTest {
+
+    private static final PnfsId PNFSID = new PnfsId("0000D4F2A4E9BB8E4D8B8D4F6DBBBD8B1B0A");
+
+    private static PoolMgrSelectReadPoolMsg request(EnumSet<RequestState> allowedStates) {
+        FileAttributes attributes = FileAttributes.ofPnfsId(PNFSID);
+        attributes.setStorageInfo(new GenericStorageInfo("osm", "test:disk"));
+        attributes.setStorageClass("test:disk@osm");
+        attributes.setCacheClass(null);
+        attributes.setHsm("osm");
+        attributes.setLocations(List.of("pool1"));
+        attributes.setSize(1234567);
+        attributes.setAccessLatency(AccessLatency.ONLINE);
+        attributes.setRetentionPolicy(RetentionPolicy.REPLICA);
+        attributes.setChecksums(Set.of(new Checksum(ChecksumType.ADLER32, "12345678")));
+        PoolMgrSelectReadPoolMsg request = new PoolMgrSelectReadPoolMsg(attributes,
+              new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress("door.example.org", 22125)),
+              null, allowedStates);
+        request.setSubject(Subjects.ROOT);
+        return request;
+    }
+
+    @Test
+    public void shouldRoundTripRequest() {
+        PoolMgrSelectReadPoolMsg request = request(EnumSet.of(RequestState.ST_INIT,
+              RequestState.ST_POOL_2_POOL));
+        request.setIoQueueName("regular");
+        request.setBillingPath("/data/file");
+        request.setExcludedHosts(Set.of("host1", "host2"));
+        request.setId(42);
+
+        byte[] encoded = MsgSerializerSchema.encode(request);
+        assertThat(MsgSerializerSchema.isSchemaEncoded(encoded), is(true));
+
+        PoolMgrSelectReadPoolMsg decoded = (PoolMgrSelectReadPoolMsg) MsgSerializerSchema.decode(
+              encoded);
+        assertThat(decoded.getPnfsId(), equalTo(PNFSID));
+        assertThat(decoded.getFileAttributes().getDefinedAttributes(),
+              equalTo(request.getFileAttributes().getDefinedAttributes()));
+        assertThat(decoded.getStorageInfo().getStorageClass(), equalTo("test:disk"));
+        assertThat(decoded.getProtocolInfo().getProtocol(), equalTo("DCap"));
+        assertThat(decoded.getAllowedStates(), equalTo(request.getAllowedStates()));
+        assertThat(decoded.requiresAffinity(), is(true));
+        assertThat(decoded.getContext().getRetryCounter(), is(0));
+        assertThat(decoded.getContext().getPreviousStagePool(), is(nullValue()));
+        assertThat(decoded.getIoQueueName(), equalTo("regular"));
+        assertThat(decoded.getBillingPath(), equalTo("/data/file"));
+        assertThat(decoded.getTransferPath(), equalTo("/data/file"));
+        assertThat(decoded.getLinkGroup(), is(nullValue()));
+        assertThat(decoded.getExcludedHosts(), equalTo(Set.of("host1", "host2")));
+        assertThat(decoded.getReplyRequired(), is(true));
+        assertThat(decoded.isReply(), is(false));
+        assertThat(decoded.getId(), is(42L));
+    }
+
+    @Test
+    public void shouldRoundTripReply() {
+        PoolMgrSelectReadPoolMsg reply = request(RequestContainerV5.allStates);
+        reply.setContext(2, null);
+        reply.setPoolGroup("default");
+        reply.setPool(new Pool("pool1", new CellAddressCore("pool1", "poolDomain"),
+              Assumptions.none()));
+        reply.setSucceeded();
+
+        PoolMgrSelectReadPoolMsg decoded = (PoolMgrSelectReadPoolMsg) MsgSerializerSchema.decode(
+              MsgSerializerSchema.encode(reply));
+        assertThat(decoded.getContext().getRetryCounter(), is(2));
+        assertThat(decoded.getPoolGroup(), equalTo("default"));
+        assertThat(decoded.getPool().getName(), equalTo("pool1"));
+        assertThat(decoded.getExcludedHosts(), is(nullValue()));
+        assertThat(decoded.getAllowedStates(), equalTo(RequestContainerV5.allStates));
+        assertThat(decoded.isReply(), is(true));
+        assertThat(decoded.getReturnCode(), is(0));
+    }
+
+    @Test
+    public void shouldRoundTripFailure() {
+        PoolMgrSelectReadPoolMsg reply = request(RequestContainerV5.allStates);
+        reply.setFailed(CacheException.OUT_OF_DATE, "Out of date");
+
+        PoolMgrSelectReadPoolMsg decoded = (PoolMgrSelectReadPoolMsg) MsgSerializerSchema.decode(
+              MsgSerializerSchema.encode(reply));
+        assertThat(decoded.getReturnCode(), is(CacheException.OUT_OF_DATE));
+        assertThat(decoded.getErrorObject(), equalTo("Out of date"));
+    }
+
+    @Test
+    public void shouldBeSmallerThanJavaSerialization() {
+        PoolMgrSelectReadPoolMsg request = request(RequestContainerV5.allStates);
+
+        assertThat(MsgSerializerSchema.encode(request).length,
+              lessThan(MsgSerializerJos.encode(request).length));
+    }
+}